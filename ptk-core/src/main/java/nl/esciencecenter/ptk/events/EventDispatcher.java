@@ -21,7 +21,12 @@
 package nl.esciencecenter.ptk.events;
 
 import java.util.ArrayList;
-import java.util.ListIterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import nl.esciencecenter.ptk.util.logging.PLogger;
 
@@ -31,6 +36,12 @@ import nl.esciencecenter.ptk.util.logging.PLogger;
  * Maintains an event queue of
  * <code>EventT<code> events and dispatches them to registered listeners.
  * Listeners can register themself to many EventSource instances.
+ * <p>
+ * Listeners are indexed by their event source, so an event is only matched against the listeners
+ * registered for the source of that event and the listeners registered for all sources.<br>
+ * Subclasses can merge consecutive events by setting a coalesce window and implementing
+ * {@link #canCoalesce(IEvent)}, {@link #canCoalesce(IEvent, IEvent)} and
+ * {@link #coalesceEvents(List)}.
  * 
  * @param <EventTypeT>
  *            Event Type.
@@ -91,19 +102,35 @@ public class EventDispatcher<EventTypeT, EventT extends IEvent<EventTypeT>, Even
                 }
 
                 if (hasEvents()) {
-                    logger.infoPrintf("hasEvents(): Nr of events=%d\n", events.size());
+                    handleEvent();
+                } else if (hasPendingEvents()) {
+                    // wait for more events to merge with until the coalesce deadline.
+                    long waitTime = pendingDeadline - System.currentTimeMillis();
+                    if (waitTime > 0) {
+                        waitForEvents(waitTime);
+                    }
                     handleEvent();
                 } else {
-                    try {
-                        synchronized (waitMutex) {
-                            waitMutex.wait(eventIdleWaitTime);
-                        }
-
-                        logger.infoPrintf("Wakeup No events\n");
-                    } catch (InterruptedException e) {
-                        logger.infoPrintf("<Interrupted>\n");
+                    waitForEvents(eventIdleWaitTime);
+                }
+            }
+
+            if (hasPendingEvents()) {
+                flushPendingEvents();
+            }
+        }
+
+        protected void waitForEvents(long waitTime) {
+            try {
+                synchronized (waitMutex) {
+                    // check again inside mutex to prevent missing a wakeup.
+                    if ((hasEvents() == false) && (mustStop == false)) {
+                        waitMutex.wait(waitTime);
                     }
                 }
+            } catch (InterruptedException e) {
+                logger.infoPrintf("<Interrupted>\n");
+                Thread.currentThread().interrupt();
             }
         }
 
@@ -156,9 +183,39 @@ public class EventDispatcher<EventTypeT, EventT extends IEvent<EventTypeT>, Even
     //
     // ========================================================================
 
-    protected ArrayList<EventT> events = new ArrayList<EventT>();
+    protected Queue<EventT> events = new ConcurrentLinkedQueue<EventT>();
+
+    /**
+     * Listeners by event source.
+     */
+    protected Map<Object, List<EventListenerEntry>> sourceListeners = new ConcurrentHashMap<Object, List<EventListenerEntry>>();
+
+    /**
+     * Listeners registered without event source, these receive all events.
+     */
+    protected List<EventListenerEntry> allSourcesListeners = new CopyOnWriteArrayList<EventListenerEntry>();
+
+    /**
+     * Time in milliseconds the dispatcher waits for more events which can be merged with a
+     * coalescable event. 0 means no waiting, although already queued events are still merged.
+     */
+    protected long coalesceWindow = 0;
+
+    /**
+     * Maximum number of events merged into one event.
+     */
+    protected int maxCoalescedEvents = 1000;
+
+    /**
+     * Consecutive events which will be merged into one event. Only accessed by the dispatcher
+     * thread.
+     */
+    private List<EventT> pendingEvents = new ArrayList<EventT>();
 
-    protected ArrayList<EventListenerEntry> listeners = new ArrayList<EventListenerEntry>();
+    /**
+     * Time at which the pending events are dispatched, even if more events can be merged.
+     */
+    private long pendingDeadline = 0;
 
     private Dispatcher dispatcher = null;
 
@@ -197,24 +254,44 @@ public class EventDispatcher<EventTypeT, EventT extends IEvent<EventTypeT>, Even
     }
 
     protected void addEvent(EventT newEvent) {
-        synchronized (events) {
-            events.add(newEvent);
-        }
+        events.add(newEvent);
     }
 
     protected void removeEvent(EventT event) {
-        synchronized (events) {
-            events.remove(event);
-        }
+        events.remove(event);
     }
 
     protected void wakeupDispatcher() {
         dispatcher.wakeUp();
     }
 
+    public void setCoalesceWindow(long windowMillis) {
+        this.coalesceWindow = windowMillis;
+    }
+
+    public long getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    public void setMaxCoalescedEvents(int maxEvents) {
+        this.maxCoalescedEvents = maxEvents;
+    }
+
     public void addListener(EventListener listener, Object eventSource) {
-        synchronized (listeners) {
-            this.listeners.add(new EventListenerEntry(listener, eventSource));
+        EventListenerEntry entry = new EventListenerEntry(listener, eventSource);
+
+        if (eventSource == null) {
+            allSourcesListeners.add(entry);
+            return;
+        }
+
+        synchronized (sourceListeners) {
+            List<EventListenerEntry> entries = sourceListeners.get(eventSource);
+            if (entries == null) {
+                entries = new CopyOnWriteArrayList<EventListenerEntry>();
+                sourceListeners.put(eventSource, entries);
+            }
+            entries.add(entry);
         }
     }
 
@@ -225,80 +302,140 @@ public class EventDispatcher<EventTypeT, EventT extends IEvent<EventTypeT>, Even
      *            the EventSourceT object to unregister all the Listeners for.
      */
     public void removeListenersFor(Object source) {
-        synchronized (listeners) {
-            // first filter
-            ListIterator<EventListenerEntry> iterator = listeners.listIterator();
-            EventListenerEntry entry = null;
-            ArrayList<EventListenerEntry> filtered = new ArrayList<EventListenerEntry>();
-            while (iterator.hasNext()) {
-                entry = iterator.next();
-                if (entry.eventSource.equals(source)) {
-                    filtered.add(entry);
-                }
-            }
-            // now remove:
-            for (EventListenerEntry entryDel : filtered) {
-                listeners.remove(entryDel);
-            }
+        if (source == null) {
+            allSourcesListeners.clear();
+            return;
+        }
+
+        synchronized (sourceListeners) {
+            sourceListeners.remove(source);
         }
     }
 
+    /**
+     * Remove listener for all the event sources it has been registered for.
+     */
     public void removeListener(EventListener listener) {
-        synchronized (listeners) {
-            ListIterator<EventListenerEntry> iterator = listeners.listIterator();
-            EventListenerEntry theEntry = null;
-            // search
-            while (iterator.hasNext()) {
-                theEntry = iterator.next();
-                if (theEntry.equals(listener)) {
-                    break;
+        removeEntriesOf(allSourcesListeners, listener);
+
+        synchronized (sourceListeners) {
+            for (Object source : sourceListeners.keySet().toArray()) {
+                List<EventListenerEntry> entries = sourceListeners.get(source);
+                removeEntriesOf(entries, listener);
+                if (entries.isEmpty()) {
+                    sourceListeners.remove(source);
                 }
             }
-            // and destroy
-            if (theEntry != null) {
-                listeners.remove(listener);
-            }
         }
     }
 
-    protected EventT popEvent() {
-        synchronized (this.events) {
-            if (events.size() <= 0) {
-                return null;
+    private void removeEntriesOf(List<EventListenerEntry> entries, EventListener listener) {
+        for (EventListenerEntry entry : entries) {
+            if (entry.listener == listener) {
+                entries.remove(entry);
             }
+        }
+    }
 
-            EventT event = this.events.get(0);
-            this.events.remove(0);
-            return event;
+    /**
+     * @return total number of registered listener entries.
+     */
+    public int getNumListeners() {
+        int num = allSourcesListeners.size();
+        for (List<EventListenerEntry> entries : sourceListeners.values()) {
+            num += entries.size();
         }
+        return num;
+    }
+
+    protected EventT popEvent() {
+        return events.poll();
     }
 
     public boolean hasEvents() {
-        synchronized (this.events) {
-            return (this.events.size() > 0);
-        }
+        return (this.events.isEmpty() == false);
     }
 
     /**
-     * Pop an event and dispatch it to the registered listeners.
+     * @return whether merged events are waiting to be dispatched.
+     */
+    protected boolean hasPendingEvents() {
+        return (pendingEvents.isEmpty() == false);
+    }
+
+    /**
+     * Pop an event and dispatch it to the registered listeners. Coalescable events are held back
+     * and merged with the following events until an event arrives which can not be merged, the
+     * maximum number of merged events has been reached or the coalesce window has expired. Only
+     * consecutive events are merged, so the order of the events is kept.
      */
     protected void handleEvent() {
         EventT event = this.popEvent();
 
-        if (event == null) {
+        if (event != null) {
+            if (hasPendingEvents()) {
+                if (canCoalesce(pendingEvents.get(0), event)) {
+                    pendingEvents.add(event);
+                    event = null;
+                } else {
+                    flushPendingEvents();
+                }
+            }
+
+            if (event != null) {
+                if (canCoalesce(event)) {
+                    pendingEvents.add(event);
+                    pendingDeadline = System.currentTimeMillis() + coalesceWindow;
+                } else {
+                    dispatchEvent(event);
+                }
+            }
+        } else if (hasPendingEvents() == false) {
             logger.infoPrintf("No Event\n");
             return;
         }
 
-        if (listeners.size() <= 0) {
-            logger.infoPrintf("No Event Listeners registered for event:%s\n", event);
+        if (hasPendingEvents()) {
+            boolean expired = (System.currentTimeMillis() >= pendingDeadline);
+            // Without coalesce window, merge the events which are already queued.
+            if ((pendingEvents.size() >= maxCoalescedEvents)
+                    || (expired && ((coalesceWindow > 0) || (hasEvents() == false)))) {
+                flushPendingEvents();
+            }
+        }
+    }
+
+    protected void flushPendingEvents() {
+        EventT event;
+
+        if (pendingEvents.size() == 1) {
+            event = pendingEvents.get(0);
+        } else {
+            event = coalesceEvents(pendingEvents);
+        }
+
+        pendingEvents = new ArrayList<EventT>();
+        dispatchEvent(event);
+    }
+
+    protected void dispatchEvent(EventT event) {
+        Object source = event.getEventSource();
+        List<EventListenerEntry> entries = (source != null) ? sourceListeners.get(source) : null;
+
+        if ((allSourcesListeners.isEmpty()) && ((entries == null) || (entries.isEmpty()))) {
+            logger.debugPrintf("No Event Listeners registered for event:%s\n", event);
             return;
         }
-        // Use iterator
-        ListIterator<EventListenerEntry> iterator = listeners.listIterator();
-        // 
-        while (iterator.hasNext()) {
-            EventListenerEntry entry = iterator.next();
+
+        notifyEntries(allSourcesListeners, event);
+
+        if (entries != null) {
+            notifyEntries(entries, event);
+        }
+    }
+
+    private void notifyEntries(List<EventListenerEntry> entries, EventT event) {
+        for (EventListenerEntry entry : entries) {
             boolean notify = true;
             if (entry.receiveAll == false) {
                 notify = matchEventSource(entry.listener, entry.eventSource, event);
@@ -309,19 +446,46 @@ public class EventDispatcher<EventTypeT, EventT extends IEvent<EventTypeT>, Even
         }
     }
 
+    /**
+     * @return whether the event can be merged with following events. Default is false.
+     */
+    protected boolean canCoalesce(EventT event) {
+        return false;
+    }
+
+    /**
+     * @return whether the next event can be merged with the pending events, of which the first is
+     *         specified. Default is false.
+     */
+    protected boolean canCoalesce(EventT first, EventT next) {
+        return false;
+    }
+
+    /**
+     * Merge consecutive events into one event. Only called for events accepted by
+     * {@link #canCoalesce(IEvent, IEvent)}.
+     * 
+     * @return merged event.
+     */
+    protected EventT coalesceEvents(List<EventT> events) {
+        return events.get(0);
+    }
+
     public void stop() {
         this.dispatcher.stop();
     }
 
     public void dispose() {
         stop();
-        this.listeners.clear();
+        this.allSourcesListeners.clear();
+        this.sourceListeners.clear();
         this.events.clear();
     }
 
     /**
      * When a single listener is registered to many EventSourceT instances, filter out the actual
-     * event which matches the wanted EventSource. The
+     * event which matches the wanted EventSource. This method is only called for listeners which
+     * are registered for all sources or for the source of the event. The
      * <code>equals()<code> method of the EventSourceT is used to match EventSourceT object types.
      * 
      * @param listener
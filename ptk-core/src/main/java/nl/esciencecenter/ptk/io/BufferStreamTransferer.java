@@ -23,10 +23,13 @@ package nl.esciencecenter.ptk.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import nl.esciencecenter.ptk.presentation.Presentation;
 import nl.esciencecenter.ptk.task.ActionTask;
 import nl.esciencecenter.ptk.task.ITaskMonitor;
+import nl.esciencecenter.ptk.task.ThrottledTaskMonitor;
 import nl.esciencecenter.ptk.util.logging.PLogger;
 
 /**
@@ -35,6 +38,12 @@ import nl.esciencecenter.ptk.util.logging.PLogger;
  * the reader in a background thread while waiting for the reader to fill the buffer and starting
  * writing the data in current thread. This parallel read/write will better use the available
  * bandwidth by both reading and writing in parallel.
+ * <p>
+ * The circular buffer is a lock free single producer/single consumer buffer. The reader only
+ * updates <code>totalRead</code> and the writer only updates <code>nrWritten</code>. Both counters
+ * are volatile so that an update of a counter also publishes the buffer contents. A thread waiting
+ * for data or free space parks itself and is unparked by the other side after it has updated its
+ * counter.
  */
 public class BufferStreamTransferer {
 
@@ -44,19 +53,29 @@ public class BufferStreamTransferer {
 
     private String streamCopySubTaskName = "Performing StreamCopy";
 
-    // data buffer: acces is synchronized.
-    // This object is also used as general mutex.
+    /**
+     * Maximum time in nanoseconds a reader or writer parks before checking the stop conditions
+     * again. Normally the other side will unpark the waiting thread.
+     */
+    private static final long maxParkNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // data buffer: region [nrWritten,totalRead) is owned by the writer, the rest by the reader.
     private byte buffer[] = null;
 
-    private long totalRead = 0;
+    /** Only updated by the reader. Volatile write publishes the buffer contents to the writer. */
+    private volatile long totalRead = 0;
 
-    private long nrWritten = 0;
+    /** Only updated by the writer. Volatile write releases buffer space to the reader. */
+    private volatile long nrWritten = 0;
 
-    /** either unkownSize==true or nrToTransfer>0) */
-    private boolean unknownSize = true;
+    /**
+     * either unkownSize==true or nrToTransfer>0). When the reader encounters an EOF, nrToTransfer is
+     * set before unknownSize is cleared.
+     */
+    private volatile boolean unknownSize = true;
 
     /** either unkownSize==true or nrToTransfer>0) */
-    private long nrToTransfer = -1; // keep unknown for now
+    private volatile long nrToTransfer = -1; // keep unknown for now
 
     /** time in milliseconds */
     private long readTime = 0;
@@ -70,6 +89,9 @@ public class BufferStreamTransferer {
      */
     ITaskMonitor transferInfo = null;
 
+    /** Throttled transferInfo for the progress updates of the writer */
+    ThrottledTaskMonitor progressInfo = null;
+
     // ***
     // optimization/limitation options
     // ***
@@ -104,15 +126,15 @@ public class BufferStreamTransferer {
         this.bufferSize = size;
     }
 
-    private Boolean readerWait = new Boolean(true);
+    private volatile Thread readerThread = null;
 
-    private Boolean writerWait = new Boolean(true);
+    private volatile Thread writerThread = null;
 
     private OutputStream outputStream = null;
 
     private InputStream inputStream = null;
 
-    private boolean cancelTransfer = false;
+    private volatile boolean cancelTransfer = false;
 
     private ActionTask readerTask = null;
 
@@ -158,6 +180,7 @@ public class BufferStreamTransferer {
      */
     protected void readLoop() throws Exception {
         int buflen = buffer.length;
+        readerThread = Thread.currentThread();
 
         try {
             // do loop while there is data left
@@ -165,36 +188,30 @@ public class BufferStreamTransferer {
                 if (mustStop())
                     throw new InterruptedException("Transfer interrupted!");
 
-                int start = 0;
-                int delta = 0;
-
-                // Do buffer calculations in MuTex'd time:
-                synchronized (buffer) {
-                    delta = buflen; // ? istr.available();
-                    int free = buflen - (int) (totalRead - nrWritten); // free
-                                                                       // space
-                                                                       // in
-                    // buffer
-                    // do not read past free space in buffer
-                    if (delta > free)
-                        delta = free;
-
-                    // do not read to much at once:
-                    if (delta > readChunkSize)
-                        delta = readChunkSize;
-
-                    // do not read past end of file (if size is known)
-                    if (nrToTransfer >= 0)
-                        if (totalRead + delta > nrToTransfer)
-                            delta = (int) (nrToTransfer - totalRead);
-
-                    start = (int) (totalRead % buflen);// start in cicular
-                                                       // buffer
-
-                    // do not read past buffer end (wrap around)
-                    if (start + delta > buflen)
-                        delta = buflen - start;
-                }
+                // Buffer calculations: no locking needed, only the writer can free space.
+                long numRead = totalRead;
+                int delta = buflen;
+                // free space in buffer
+                int free = buflen - (int) (numRead - nrWritten);
+                // do not read past free space in buffer
+                if (delta > free)
+                    delta = free;
+
+                // do not read to much at once:
+                if (delta > readChunkSize)
+                    delta = readChunkSize;
+
+                // do not read past end of file (if size is known)
+                if (nrToTransfer >= 0)
+                    if (numRead + delta > nrToTransfer)
+                        delta = (int) (nrToTransfer - numRead);
+
+                // start in circular buffer
+                int start = (int) (numRead % buflen);
+
+                // do not read past buffer end (wrap around)
+                if (start + delta > buflen)
+                    delta = buflen - start;
 
                 logger.debugPrintf("reader: nrRead    =%d\n", totalRead);
                 logger.debugPrintf("reader: nrWritten =%d\n", nrWritten);
@@ -218,16 +235,16 @@ public class BufferStreamTransferer {
                             // Set unknownSize to false to trigger updating the
                             // stats.
 
+                            nrToTransfer = numRead;
                             unknownSize = false;
-                            nrToTransfer = totalRead;
                         } else {
                             logger.errorPrintf("Got EOF while reading %d bytes from inputstream\n", nrToTransfer);
                             throw new IOException("Failed to read expected number of bytes: read=" + totalRead
                                     + " while expected=" + nrToTransfer);
                         }
                     } else if (n > 0) {
-                        // MUTEX save: field is only updated by reader:
-                        totalRead += n; // update totalRead;
+                        // Only updated by reader. Volatile write publishes the new data.
+                        totalRead = numRead + n;
                     } else if (n == 0) {
                         logger.debugPrintf("read(): Got 0 bytes ...\n");
                         // ok, try again could be time out.
@@ -237,15 +254,10 @@ public class BufferStreamTransferer {
                     logger.debugPrintf("reader: after read, nrRead=%s\n", totalRead);
 
                     // notify writer there is data (if writer is waiting)
-                    synchronized (writerWait) {
-                        writerWait.notify();
-                    }
+                    unpark(writerThread);
                 } else if ((unknownSize == true) || (totalRead < nrToTransfer)) {
-                    // Wait for writer to free space.
-                    // Wait for .1 second max. or until writer notifies reader.
-                    synchronized (readerWait) {
-                        readerWait.wait(100);
-                    }
+                    // Wait for writer to free space, an unpark() before park() is not lost.
+                    LockSupport.parkNanos(this, maxParkNanos);
                 }
             }
 
@@ -259,10 +271,7 @@ public class BufferStreamTransferer {
             // Signal Strop:
             this.cancelTransfer = true;
             // notify writer since there is a read error !
-
-            synchronized (writerWait) {
-                writerWait.notify();
-            }
+            unpark(writerThread);
 
             throw new IOException("Exception while reading", err);
         }
@@ -271,6 +280,16 @@ public class BufferStreamTransferer {
 
     public void setStop(boolean val) {
         cancelTransfer = val;
+        if (val) {
+            unpark(readerThread);
+            unpark(writerThread);
+        }
+    }
+
+    private void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
     }
 
     protected boolean mustStop() {
@@ -287,28 +306,25 @@ public class BufferStreamTransferer {
 
     protected void writeLoop() throws IOException {
         int buflen = buffer.length;
+        writerThread = Thread.currentThread();
 
         try {
             while ((unknownSize == true) || (nrWritten < nrToTransfer)) {
                 if (mustStop())
                     throw new InterruptedException("Transfer interrupted!");
 
-                int delta = 0;
-                int start = 0;
+                // Buffer calculations: no locking needed, only the reader can add data.
+                long numWritten = nrWritten;
+                // nr bytes to be written
+                int delta = (int) (totalRead - numWritten);
+                // start in circular buffer
+                int start = (int) (numWritten % buflen);
 
-                // Do buffer calculations in MuTex'd time:
-                synchronized (buffer) {
-                    // nr bytes to be written
-                    delta = (int) (totalRead - nrWritten);
-                    // start in cicular buffer
-                    start = (int) (nrWritten % buflen);
+                if (start + delta > buflen)
+                    delta = buflen - start; // wrap around buffer;
 
-                    if (start + delta > buflen)
-                        delta = buflen - start; // wrap around buffer;
-
-                    if (delta > writeChunkSize)
-                        delta = writeChunkSize;
-                }
+                if (delta > writeChunkSize)
+                    delta = writeChunkSize;
 
                 logger.debugPrintf("writer nrRead    =%d\n", totalRead);
                 logger.debugPrintf("writer nrWritten =%d\n", nrWritten);
@@ -324,23 +340,20 @@ public class BufferStreamTransferer {
 
                     writeTime += System.currentTimeMillis() - startTime;
 
-                    // MUTEX safe: field is only updated by writer:
-                    nrWritten += delta;
+                    // Only updated by writer. Volatile write releases the buffer space.
+                    numWritten += delta;
+                    nrWritten = numWritten;
 
-                    if (transferInfo != null) {
+                    // notify reader that buffer space is free
+                    unpark(readerThread);
+
+                    if (progressInfo != null) {
                         // update current transfer:
-                        transferInfo.updateSubTaskDone(streamCopySubTaskName, nrWritten);
-                    }
-                    // notify reader that buffer is empty
-                    synchronized (readerWait) {
-                        readerWait.notify();
+                        progressInfo.updateSubTaskDone(streamCopySubTaskName, numWritten);
                     }
                 } else if ((unknownSize == true) || (nrWritten < nrToTransfer)) {
-                    // Wait for reader to fill buffer.
-                    // wait for .1 second or until reader notifies writer.
-                    synchronized (writerWait) {
-                        writerWait.wait(100);
-                    }
+                    // Wait for reader to fill buffer, an unpark() before park() is not lost.
+                    LockSupport.parkNanos(this, maxParkNanos);
                 }
             }
 
@@ -351,18 +364,13 @@ public class BufferStreamTransferer {
 
             // in the case the reader still is waiting for the writer
             // to finish :
-
-            synchronized (readerWait) {
-                readerWait.notify();
-            }
+            unpark(readerThread);
         } catch (Throwable err) {
             logger.logException(PLogger.ERROR, err, "Exception:%s\n", err);
             // Signal Strop:
             this.cancelTransfer = true;
-            // notify reader since there is a read error !
-            synchronized (readerWait) {
-                readerWait.notify();
-            }
+            // notify reader since there is a write error !
+            unpark(readerThread);
             // rethrow
             throw new IOException("Exception while writing", err);
         }
@@ -392,6 +400,7 @@ public class BufferStreamTransferer {
 
         // update transferinfo
         if (this.transferInfo != null) {
+            progressInfo = new ThrottledTaskMonitor(transferInfo, ThrottledTaskMonitor.DEFAULT_UPDATE_RATE);
             transferInfo.startSubTask(streamCopySubTaskName, numTransfer);
             // set to 0 if unknown; !
             if (numTransfer < 0)
@@ -416,10 +425,19 @@ public class BufferStreamTransferer {
         // Transfer Loop
         // =============================================================
 
+        // register writer before the reader can signal it.
+        writerThread = Thread.currentThread();
         readerTask.startTask();
 
         // writer will be last to finish so start in CURRENT thread.
-        writeLoop();
+        try {
+            writeLoop();
+        } finally {
+            // forward final amount.
+            if (progressInfo != null) {
+                progressInfo.flush();
+            }
+        }
 
         // =============================================================
         // Post Transfer
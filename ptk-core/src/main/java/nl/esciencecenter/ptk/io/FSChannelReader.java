@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File reader which keeps a FileChannel open until close() is called. Reads are positional and
+ * don't change the channel position, so one reader can be shared by multiple threads.
+ * <p>
+ * In memory-mapped mode the file is mapped in regions of {@link #MAP_REGION_SIZE} bytes, which are
+ * mapped when they are read for the first time. The length of a memory-mapped file is fixed when
+ * the reader is created, use this mode only for large files which are not modified while they are
+ * read.
+ */
+public class FSChannelReader implements Readable, RandomReadable, AutoCloseable {
+
+    /** Size of one mapped region, a MappedByteBuffer can't be larger then 2GB. */
+    public static final int MAP_REGION_SIZE = 256 * 1024 * 1024;
+
+    protected Path _path;
+
+    protected FileChannel channel;
+
+    protected boolean memoryMapped;
+
+    protected long mappedLength = -1;
+
+    protected MappedByteBuffer mappedRegions[];
+
+    public FSChannelReader(Path path) throws IOException {
+        this(path, false);
+    }
+
+    /**
+     * @param path
+     *            - path of file to read.
+     * @param memoryMapped
+     *            - use memory-mapped reads. The length is fixed when the reader is opened. If the
+     *            file is truncated, reads beyond the new length fail with an IOException and the
+     *            file must be reopened.
+     */
+    public FSChannelReader(Path path, boolean memoryMapped) throws IOException {
+        this._path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.memoryMapped = memoryMapped;
+
+        if (memoryMapped) {
+            mappedLength = channel.size();
+            mappedRegions = new MappedByteBuffer[(int) ((mappedLength + MAP_REGION_SIZE - 1) / MAP_REGION_SIZE)];
+        }
+    }
+
+    @Override
+    public int readBytes(long fileOffset, byte[] buffer, int bufferOffset, int nrBytes) throws IOException {
+        return readBytes(fileOffset, ByteBuffer.wrap(buffer, bufferOffset, nrBytes));
+    }
+
+    /**
+     * Positional read into the remaining bytes of the ByteBuffer. The position of the buffer is
+     * advanced by the number of bytes read.
+     * 
+     * @return number of bytes read or -1 if fileOffset is at or beyond the end of the file.
+     */
+    public int readBytes(long fileOffset, ByteBuffer buffer) throws IOException {
+        try {
+            if (memoryMapped) {
+                return readMapped(fileOffset, buffer);
+            }
+
+            int numRead = 0;
+
+            // FileChannel.read() might return less bytes then requested, keep reading until EOF.
+            while (buffer.hasRemaining()) {
+                int num = channel.read(buffer, fileOffset + numRead);
+                if (num < 0) {
+                    return (numRead > 0) ? numRead : -1;
+                }
+                numRead += num;
+            }
+
+            return numRead;
+        } catch (IOException e) {
+            throw new IOException("Failed to readBytes from:" + _path, e);
+        }
+    }
+
+    protected int readMapped(long fileOffset, ByteBuffer buffer) throws IOException {
+        if (fileOffset >= mappedLength) {
+            return -1;
+        }
+
+        // Reading a mapped page beyond the end of a truncated file raises SIGBUS, which can crash
+        // the JVM instead of throwing an InternalError.
+        long end = Math.min(mappedLength, fileOffset + buffer.remaining());
+        if (channel.size() < end) {
+            throw new IOException("File was truncated while memory-mapped:" + _path);
+        }
+
+        int numRead = 0;
+
+        while ((buffer.hasRemaining()) && (fileOffset + numRead < mappedLength)) {
+            long offset = fileOffset + numRead;
+            // duplicate: region buffers are shared between threads.
+            ByteBuffer region = getMappedRegion((int) (offset / MAP_REGION_SIZE)).duplicate();
+            region.position((int) (offset % MAP_REGION_SIZE));
+
+            int num = Math.min(region.remaining(), buffer.remaining());
+            region.limit(region.position() + num);
+            try {
+                buffer.put(region);
+            } catch (InternalError e) {
+                // truncated after the size check.
+                throw new IOException("File was truncated while memory-mapped:" + _path, e);
+            }
+            numRead += num;
+        }
+
+        return numRead;
+    }
+
+    protected synchronized MappedByteBuffer getMappedRegion(int index) throws IOException {
+        if (mappedRegions[index] == null) {
+            long start = (long) index * MAP_REGION_SIZE;
+            long size = Math.min(MAP_REGION_SIZE, mappedLength - start);
+            mappedRegions[index] = channel.map(MapMode.READ_ONLY, start, size);
+        }
+
+        return mappedRegions[index];
+    }
+
+    @Override
+    public long getLength() throws IOException {
+        if (memoryMapped) {
+            return mappedLength;
+        }
+
+        return channel.size();
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    @Override
+    public int read(byte[] buffer, int bufferOffset, int numBytes) throws IOException {
+        return readBytes(0, buffer, bufferOffset, numBytes);
+    }
+
+    /**
+     * Closes the FileChannel. Mapped regions are released by the garbage collector.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        mappedRegions = null;
+        channel.close();
+    }
+
+    public String toString() {
+        return "FSChannelReader:[path:" + _path + ",memoryMapped:" + memoryMapped + "]";
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File writer which keeps a FileChannel open until close() is called. The file is created if it
+ * doesn't exist. Writes are positional and don't change the channel position, so one writer can
+ * be shared by multiple threads writing at different offsets.
+ */
+public class FSChannelWriter implements Writable, RandomWritable, AutoCloseable {
+
+    protected Path _path;
+
+    protected FileChannel channel;
+
+    public FSChannelWriter(Path path) throws IOException {
+        _path = path;
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    }
+
+    @Override
+    public void writeBytes(long fileOffset, byte[] buffer, int bufferOffset, int nrBytes) throws IOException {
+        writeBytes(fileOffset, ByteBuffer.wrap(buffer, bufferOffset, nrBytes));
+    }
+
+    /**
+     * Positional write of the remaining bytes of the ByteBuffer.
+     */
+    public void writeBytes(long fileOffset, ByteBuffer buffer) throws IOException {
+        try {
+            long position = fileOffset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new IOException("Failed to writeBytes to:" + _path, e);
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int bufferOffset, int numBytes) throws IOException {
+        writeBytes(0, buffer, bufferOffset, numBytes);
+    }
+
+    /**
+     * Truncate the file to the specified length if it is longer.
+     */
+    public void truncate(long length) throws IOException {
+        channel.truncate(length);
+    }
+
+    /**
+     * Force written bytes to the storage device.
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public long getLength() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public String toString() {
+        return "FSChannelWriter:[path:" + _path + "]";
+    }
+
+}
@@ -27,6 +27,7 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -48,6 +49,7 @@ import nl.esciencecenter.ptk.GlobalProperties;
 import nl.esciencecenter.ptk.data.StringHolder;
 import nl.esciencecenter.ptk.io.exceptions.FileURISyntaxException;
 import nl.esciencecenter.ptk.net.URIFactory;
+import nl.esciencecenter.ptk.task.ITaskMonitor;
 import nl.esciencecenter.ptk.util.ContentReader;
 import nl.esciencecenter.ptk.util.ContentWriter;
 import nl.esciencecenter.ptk.util.ResourceLoader;
@@ -274,15 +276,24 @@ public class FSUtil implements ResourceProvider, FSInterface {
      * Simple Copy File uses URIs to ensure absolute and normalized Paths.
      */
     public long copyFile(URI source, URI destination) throws IOException {
-        long num;
-        // Create
-        try (InputStream finput = createInputStream(resolvePath(source))) {
-            try (OutputStream foutput = createOutputStream(resolvePath(destination), false)) {
-                // Copy
-                num = IOUtil.copyStreams(finput, foutput, false);
+        return copyFile(resolvePath(source), resolvePath(destination), null);
+    }
+
+    /**
+     * Local file copy using FileChannels. The operating system performs the actual copy without
+     * buffering the file contents in the JVM. Destination file is created or truncated.
+     * 
+     * @param monitor
+     *            - optional Task Monitor.
+     * @return number of bytes copied.
+     */
+    public long copyFile(FSPath source, FSPath destination, ITaskMonitor monitor) throws IOException {
+        try (FileChannel sourceChannel = FileChannel.open(source.path(), StandardOpenOption.READ)) {
+            try (FileChannel targetChannel = FileChannel.open(destination.path(), StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                return IOUtil.channelCopy(sourceChannel, targetChannel, -1, monitor);
             }
         }
-        return num;
     }
 
     /**
@@ -588,11 +599,10 @@ public class FSUtil implements ResourceProvider, FSInterface {
         OpenOption openOptions[];
 
         if (append) {
-            openOptions = new OpenOption[4];
+            openOptions = new OpenOption[3];
             openOptions[0] = StandardOpenOption.WRITE;
             openOptions[1] = StandardOpenOption.CREATE; // create if not exists
-            openOptions[2] = StandardOpenOption.TRUNCATE_EXISTING;
-            openOptions[3] = StandardOpenOption.APPEND;
+            openOptions[2] = StandardOpenOption.APPEND;
         } else {
             openOptions = new OpenOption[3];
             openOptions[0] = StandardOpenOption.WRITE;
@@ -603,24 +613,45 @@ public class FSUtil implements ResourceProvider, FSInterface {
         return Files.newOutputStream(node.path(), openOptions); // OpenOptions..
     }
 
+    /**
+     * Create reader which keeps the file open until it is closed.
+     */
     @Override
-    public RandomReadable createRandomReader(URI uri) throws IOException {
-        return new FSReader(resolvePath(uri).path());
+    public FSChannelReader createRandomReader(URI uri) throws IOException {
+        return new FSChannelReader(resolvePath(uri).path());
     }
 
+    /**
+     * Create reader which keeps the file open until it is closed.
+     */
     @Override
-    public RandomReadable createRandomReader(FSPath node) throws IOException {
-        return new FSReader(node._path);
+    public FSChannelReader createRandomReader(FSPath node) throws IOException {
+        return new FSChannelReader(node._path);
+    }
+
+    /**
+     * Create reader which optionally memory maps the file. A memory-mapped reader doesn't see data
+     * appended after it was opened, and fails with an IOException when the file is truncated.
+     * Files which are modified while they are read should be read without memory mapping.
+     */
+    public FSChannelReader createRandomReader(FSPath node, boolean memoryMapped) throws IOException {
+        return new FSChannelReader(node._path, memoryMapped);
     }
 
+    /**
+     * Create writer which keeps the file open until it is closed.
+     */
     @Override
-    public RandomWritable createRandomWriter(FSPath node) throws IOException {
-        return new FSWriter(node._path);
+    public FSChannelWriter createRandomWriter(FSPath node) throws IOException {
+        return new FSChannelWriter(node._path);
     }
 
+    /**
+     * Create writer which keeps the file open until it is closed.
+     */
     @Override
-    public RandomWritable createRandomWriter(URI uri) throws IOException {
-        return new FSWriter((resolvePath(uri)._path));
+    public FSChannelWriter createRandomWriter(URI uri) throws IOException {
+        return new FSChannelWriter((resolvePath(uri)._path));
     }
 
     // ============
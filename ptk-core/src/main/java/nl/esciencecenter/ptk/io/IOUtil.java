@@ -23,7 +23,10 @@ package nl.esciencecenter.ptk.io;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import nl.esciencecenter.ptk.task.ITaskMonitor;
 import nl.esciencecenter.ptk.util.logging.PLogger;
@@ -37,6 +40,18 @@ public class IOUtil {
 
     private static int defaultBufferSize = 1 * 1024 * 1024;
 
+    /**
+     * Number of bytes per transferTo() call. Smaller chunks mean more frequent progress updates and
+     * cancel checks.
+     */
+    private static int defaultChannelChunkSize = 16 * 1024 * 1024;
+
+    /**
+     * Maximum number of consecutive writes which make no progress before a buffered channel copy
+     * fails.
+     */
+    private static final int MAX_ZERO_PROGRESS_WRITES = 100;
+
     public static class ReadFunctor implements Readable {
 
         protected InputStream inps;
@@ -75,6 +90,71 @@ public class IOUtil {
 
     }
 
+    /**
+     * InputStream which reads a RandomReadable sequentially, starting at the specified offset. The
+     * bytes before the offset are never read. Closing the stream closes the reader.
+     */
+    public static class RandomReaderInputStream extends InputStream {
+
+        protected RandomReadable reader;
+
+        protected long position;
+
+        public RandomReaderInputStream(RandomReadable reader, long offset) {
+            this.reader = reader;
+            this.position = offset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte buffer[] = new byte[1];
+            int num = read(buffer, 0, 1);
+            return (num <= 0) ? -1 : (buffer[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte buffer[], int bufferOffset, int numBytes) throws IOException {
+            if (numBytes == 0) {
+                return 0;
+            }
+
+            int num = reader.readBytes(position, buffer, bufferOffset, numBytes);
+            if (num > 0) {
+                position += num;
+            }
+            return (num <= 0) ? -1 : num;
+        }
+
+        @Override
+        public long skip(long numBytes) throws IOException {
+            if (numBytes <= 0) {
+                return 0;
+            }
+
+            long length = reader.getLength();
+            if (length >= 0) {
+                numBytes = Math.max(0, Math.min(numBytes, length - position));
+            }
+            position += numBytes;
+            return numBytes;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * Copy all the data from the InputStream to the OutputStream.
      * 
@@ -221,6 +301,119 @@ public class IOUtil {
         }
     }
 
+    /**
+     * Zero copy transfer between two file channels. The actual copy is delegated to the operating
+     * system using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * so the data isn't buffered in the JVM heap. The transfer is performed in chunks so that the
+     * optional monitor can be updated and checked for cancellation.
+     * 
+     * @param source
+     *            - FileChannel to read from, transfer starts at the current position.
+     * @param target
+     *            - FileChannel to write to.
+     * @param nrToTransfer
+     *            - number of bytes to transfer. Set to -1 to transfer until the end of the source.
+     * @param monitor
+     *            - optional Task Monitor
+     * @return number of bytes transferred.
+     * @throws IOException
+     *             - an InterruptedIOException is thrown if the transfer was cancelled.
+     */
+    public static long channelCopy(FileChannel source, FileChannel target, long nrToTransfer, ITaskMonitor monitor)
+            throws IOException {
+        return channelCopy(source, target, nrToTransfer, defaultChannelChunkSize, monitor);
+    }
+
+    /**
+     * Zero copy transfer between two file channels using the specified chunk size. If transferTo()
+     * makes no progress while the source hasn't shrunk, the chunk is copied using a heap buffer
+     * instead.
+     * 
+     * @see #channelCopy(FileChannel, FileChannel, long, ITaskMonitor)
+     */
+    public static long channelCopy(FileChannel source, FileChannel target, long nrToTransfer, int chunkSize,
+            ITaskMonitor monitor) throws IOException {
+        String subTaskName = "Performing channel copy";
+
+        long position = source.position();
+
+        if (nrToTransfer < 0) {
+            nrToTransfer = source.size() - position;
+        }
+
+        logger.debugPrintf("channelCopy():START: totalToTransfer=%d\n", nrToTransfer);
+
+        if (monitor != null) {
+            monitor.startSubTask(subTaskName, nrToTransfer);
+        }
+
+        long numTransferred = 0;
+
+        while (numTransferred < nrToTransfer) {
+            if (((monitor != null) && (monitor.isCancelled())) || Thread.currentThread().isInterrupted()) {
+                if (monitor != null) {
+                    monitor.endSubTask(subTaskName);
+                }
+                throw new InterruptedIOException("Transfer interrupted!");
+            }
+
+            long size = Math.min(chunkSize, nrToTransfer - numTransferred);
+            long num = source.transferTo(position + numTransferred, size, target);
+
+            if (num <= 0) {
+                // source shrunk during transfer.
+                if (source.size() <= position + numTransferred) {
+                    break;
+                }
+                // no progress, for example a full target: don't spin, use a buffered copy.
+                num = bufferedChannelCopy(source, position + numTransferred, target, (int) Math.min(size,
+                        defaultBufferSize));
+            }
+
+            numTransferred += num;
+
+            if (monitor != null) {
+                monitor.updateSubTaskDone(subTaskName, numTransferred);
+            }
+        }
+
+        if (monitor != null) {
+            monitor.endSubTask(subTaskName);
+        }
+
+        logger.debugPrintf("channelCopy():DONE: totalTransfered=%s\n", numTransferred);
+        return numTransferred;
+    }
+
+    /**
+     * Copy at most numBytes from source at the specified position to the target using a heap buffer.
+     * 
+     * @return number of bytes copied, 0 if the source has no more bytes.
+     * @throws IOException
+     *             if the target accepts no bytes after repeated writes.
+     */
+    private static long bufferedChannelCopy(FileChannel source, long position, FileChannel target, int numBytes)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(numBytes);
+        int numRead = source.read(buffer, position);
+        if (numRead <= 0) {
+            return 0;
+        }
+
+        buffer.flip();
+        int numZeroWrites = 0;
+
+        while (buffer.hasRemaining()) {
+            if (target.write(buffer) > 0) {
+                numZeroWrites = 0;
+            } else if (++numZeroWrites >= MAX_ZERO_PROGRESS_WRITES) {
+                throw new IOException("Target channel doesn't accept any bytes after " + numZeroWrites + " writes");
+            }
+        }
+
+        return numRead;
+    }
+
     /**
      * Read exactly numBytes, if actually returned number of bytes < numBytes the end of the file
      * was encountered !
@@ -22,7 +22,9 @@ package nl.esciencecenter.ptk.task;
 
 /**
  * Abstract Action Task.<br>
- * Manages a runnable task.
+ * Manages a runnable task. Tasks started with {@link #startTask()} are executed by the
+ * {@link ActionTaskExecutor}, which reuses pooled threads and may queue the task if its ITaskSource
+ * has reached its concurrency limit.
  */
 public abstract class ActionTask implements Runnable {
 
@@ -36,13 +38,25 @@ public abstract class ActionTask implements Runnable {
     /**
      * Number of thread associated with this task.
      */
-    private Thread threads[];
+    private volatile Thread threads[];
 
     private Object threadMutex = new Object();
 
     private ITaskMonitor taskMonitor = null;
 
-    private boolean isCancelled = false;
+    private volatile boolean isCancelled = false;
+
+    /** Whether task has been submitted but hasn't started yet */
+    private boolean isQueued = false;
+
+    /** Executor this task has been submitted to */
+    private ActionTaskExecutor executor = null;
+
+    private volatile long submitTime = -1;
+
+    private volatile long startTime = -1;
+
+    private volatile long endTime = -1;
 
     // === protected ===
 
@@ -151,6 +165,9 @@ public abstract class ActionTask implements Runnable {
     final public boolean isAlive() {
         // are you alive? 
         synchronized (threadMutex) {
+            if (isQueued) {
+                return true;
+            }
             if (threads == null) {
                 return false;
             }
@@ -165,76 +182,110 @@ public abstract class ActionTask implements Runnable {
     }
 
     /**
-     * Start a single thread and run this task.
+     * Run this task using the default ActionTaskExecutor.
      */
     final public void startTask() {
-        this.threads = new Thread[1];
-        this.threads[0] = new Thread(this);
-        this.threads[0].start(); // goto run()
+        startTask(ActionTaskExecutor.getDefault());
+    }
+
+    /**
+     * Run this task using the specified executor.
+     */
+    final public void startTask(ActionTaskExecutor executor) {
+        markSubmitted();
+        this.executor = executor;
+        executor.execute(this);
     }
 
     /**
-     * Start a daemon thread for this task which keeps running.
+     * Start a dedicated daemon thread for this task which keeps running. Use this for long running
+     * tasks, so they don't occupy a pooled thread.
      */
     final public void startDaemonTask() {
-        this.threads = new Thread[1];
-        this.threads[0] = new Thread(this);
-        this.threads[0].setDaemon(true);
-        this.threads[0].start(); // goto run()
+        markSubmitted();
+        Thread thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.start(); // goto run()
+    }
+
+    private void markSubmitted() {
+        synchronized (threadMutex) {
+            this.isQueued = true;
+            this.submitTime = System.currentTimeMillis();
+        }
     }
 
     /**
-     * Tries to join with all active threads.
+     * @return time in millis this task was started or submitted for execution, or -1.
+     */
+    final public long getSubmitTime() {
+        return submitTime;
+    }
+
+    /**
+     * @return time in millis this task actually started running, or -1.
+     */
+    final public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return time in millis this task finished, or -1.
+     */
+    final public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return time in millis between submitting and actually starting this task, or -1.
+     */
+    final public long getQueueTime() {
+        if ((submitTime < 0) || (startTime < 0)) {
+            return -1;
+        }
+        return startTime - submitTime;
+    }
+
+    /**
+     * @return running time in millis, or -1 if this task hasn't finished.
+     */
+    final public long getRunTime() {
+        if ((startTime < 0) || (endTime < 0)) {
+            return -1;
+        }
+        return endTime - startTime;
+    }
+
+    /**
+     * Waits until this task has finished. Since pooled threads are reused, this method waits for
+     * the task and not for the actual thread(s) to terminate.
      * 
-     * @return true of all active thread could be joint. False if one of the threads wasn't active
-     *         or the join failed.
+     * @return true if this task was queued or running and has finished. False if the task wasn't
+     *         active.
      */
     final public boolean join() throws InterruptedException {
-        // join all threads:
-        Thread _threadz[];
-        // Join is time expensive, can copy out thread array. 
         synchronized (threadMutex) {
-            if ((threads == null) || (threads.length <= 0)) {
+            if (isAlive() == false) {
                 return false;
             }
-
-            _threadz = threads.clone();
-        }
-
-        boolean joined = true;
-
-        for (Thread thread : _threadz) {
-            if ((thread != null) && (thread.isAlive())) {
-                thread.join();
-            } else {
-                joined = false;
+            while (isAlive()) {
+                threadMutex.wait();
             }
         }
-
-        return joined;
+        return true;
     }
 
     /**
      * Tries to join with active thread.
      */
     final public boolean join(int index) throws InterruptedException {
-        Thread thread;
-
         synchronized (threadMutex) {
-            if ((threads == null) || (threads.length <= 0) || (index >= threads.length)) {
+            if ((threads != null) && (index >= threads.length)) {
                 return false;
             }
-
-            thread = threads[index];
         }
 
-        if (thread.isAlive() == false) {
-            return false;
-        }
-
-        thread.join();
-
-        return true;
+        return join();
     }
 
     /**
@@ -254,24 +305,27 @@ public abstract class ActionTask implements Runnable {
     }
 
     /**
-     * Use the Thread.join() method to join with the running task thread. Will immediately return if
-     * thread already finished.
+     * Wait until this task has finished or the timeout has been reached. Will immediately return if
+     * task already finished.
+     * 
+     * @param timeOutMillis
+     *            - timeout in milli seconds. Use 0 to wait forever.
      */
     final public void joinAll(long timeOutMillis) throws InterruptedException {
-        Thread _threadz[];
-
-        // Join is time expensive, can copy out thread array. 
-        synchronized (threadMutex) {
-            if ((threads == null) || (threads.length <= 0)) {
-                return;
-            }
-
-            _threadz = threads.clone();
+        if (timeOutMillis <= 0) {
+            join();
+            return;
         }
 
-        for (Thread thread : _threadz) {
-            if (thread != null) {
-                thread.join(timeOutMillis);
+        long deadline = System.currentTimeMillis() + timeOutMillis;
+
+        synchronized (threadMutex) {
+            while (isAlive()) {
+                long waitTime = deadline - System.currentTimeMillis();
+                if (waitTime <= 0) {
+                    return;
+                }
+                threadMutex.wait(waitTime);
             }
         }
     }
@@ -284,19 +338,17 @@ public abstract class ActionTask implements Runnable {
      * @see {@link Thread#interrupt()}
      */
     final public void interruptAll() {
-        Thread _threadz[];
-
+        // Interrupt inside mutex: a pooled thread may not be interrupted after it has finished this
+        // task and is executing another task.
         synchronized (threadMutex) {
             if ((threads == null) || (threads.length <= 0)) {
                 return;
             }
 
-            _threadz = threads.clone();
-        }
-
-        for (Thread thread : _threadz) {
-            if (thread != null) {
-                thread.interrupt();
+            for (Thread thread : threads) {
+                if (thread != null) {
+                    thread.interrupt();
+                }
             }
         }
     }
@@ -329,6 +381,15 @@ public abstract class ActionTask implements Runnable {
 
     @Override
     final public void run() {
+        synchronized (threadMutex) {
+            this.threads = new Thread[] { Thread.currentThread() };
+            this.isQueued = false;
+            this.startTime = System.currentTimeMillis();
+            if (submitTime < 0) {
+                // run() invoked directly.
+                submitTime = startTime;
+            }
+        }
         // === PRE ===
         if (this.taskSource != null) {
             this.taskSource.notifyTaskStarted(this);
@@ -337,7 +398,10 @@ public abstract class ActionTask implements Runnable {
         Throwable taskError = null;
 
         try {
-            this.doTask();
+            // task might have been cancelled while it was queued.
+            if (isCancelled == false) {
+                this.doTask();
+            }
         } catch (Throwable t) {
             // unhandled exception by doTask() !
             taskError = t;
@@ -360,6 +424,7 @@ public abstract class ActionTask implements Runnable {
 
             }
         }
+        this.endTime = System.currentTimeMillis();
         if (this.taskSource != null) {
             this.taskSource.notifyTaskTerminated(this);
         }
@@ -370,6 +435,9 @@ public abstract class ActionTask implements Runnable {
     private void clearThreads() {
         // all threads:
         synchronized (threadMutex) {
+            // wakeup join()
+            threadMutex.notifyAll();
+
             if (threads == null) {
                 return;
             }
@@ -411,6 +479,20 @@ public abstract class ActionTask implements Runnable {
             // III) Send interrupt() to all running threads to wake them up.
             interruptAll();
 
+            // IV) Remove from queue if not started yet.
+            if ((executor != null) && (executor.removeQueuedTask(this))) {
+                synchronized (threadMutex) {
+                    this.isQueued = false;
+                    threadMutex.notifyAll();
+                }
+                if (this.taskMonitor != null) {
+                    this.taskMonitor.endTask(taskMonitor.getTaskName());
+                }
+                if (this.taskSource != null) {
+                    this.taskSource.notifyTaskTerminated(this);
+                }
+            }
+
         } catch (Throwable t) {
             t.printStackTrace();
         }
@@ -425,24 +507,15 @@ public abstract class ActionTask implements Runnable {
      * @return true if the one of the current active thread is in interrupted state.
      */
     final public boolean isInterrupted() {
-        // unroll:
-        synchronized (threads) {
-            // unroll for null/zero
-            if ((this.threads == null) || (threads.length <= 0)) {
-                return false;
-            }
-            // unroll for length==1:
-            if (threads.length == 1) {
-                return threads[0].isInterrupted();
-            }
+        // This method might be called al lot during loops, do no copy thread array.
+        Thread _threadz[] = this.threads;
+        if (_threadz == null) {
+            return false;
         }
-        // This method might be called al lot during loops, perform outside mutex, do no copy thread array.
-        int index = 0;
-        while ((threads != null) && (index < threads.length)) {
-            if (threads[index].isInterrupted()) {
+        for (Thread thread : _threadz) {
+            if ((thread != null) && (thread.isInterrupted())) {
                 return true;
             }
-            index++;
         }
         return false;
     }
@@ -461,9 +534,12 @@ public abstract class ActionTask implements Runnable {
     @Override
     public String toString() {
         String threadInfo = "";
-        if (threads != null) {
-            for (int i = 0; i < threads.length; i++) {
-                threadInfo += "[" + threads[i].getId() + "]";
+        Thread _threadz[] = this.threads;
+        if (_threadz != null) {
+            for (Thread thread : _threadz) {
+                if (thread != null) {
+                    threadInfo += "[" + thread.getId() + "]";
+                }
             }
         }
         return "ActionTask:[" + threadInfo + "]" + this.taskName;
@@ -0,0 +1,536 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.task;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.esciencecenter.ptk.GlobalProperties;
+import nl.esciencecenter.ptk.util.logging.PLogger;
+
+/**
+ * Executor for ActionTasks.
+ * <p>
+ * By default tasks are executed by a bounded pool of reusable daemon threads. When all pool
+ * threads are busy, a task is started in an overflow thread, as tasks may wait for other tasks (for
+ * example a copy task waiting for its stream reader task) and queueing them could deadlock. The
+ * number of overflow threads is bounded as well, beyond that tasks wait in a backlog which is
+ * processed by the overflow threads.<br>
+ * Concurrency can be limited per ITaskSource with {@link #setMaxConcurrentTasks(ITaskSource, int)}.
+ * Tasks exceeding this limit are queued and started when a task from the same source has finished.
+ * Nested tasks, started from a running task of the same source, are exempt from this limit since
+ * the parent task might be waiting for them.
+ * <p>
+ * Properties:
+ * <ul>
+ * <li>ptk.task.maxPoolSize - maximum number of pooled threads.
+ * <li>ptk.task.maxOverflowThreads - maximum number of overflow threads.
+ * <li>ptk.task.virtualThreads - use a virtual thread per task if the JVM supports it.
+ * </ul>
+ */
+public class ActionTaskExecutor {
+
+    private static PLogger logger = PLogger.getLogger(ActionTaskExecutor.class);
+
+    public static final String PROP_MAX_POOL_SIZE = "ptk.task.maxPoolSize";
+
+    public static final String PROP_MAX_OVERFLOW_THREADS = "ptk.task.maxOverflowThreads";
+
+    public static final String PROP_VIRTUAL_THREADS = "ptk.task.virtualThreads";
+
+    public static final int DEFAULT_MAX_POOL_SIZE = 64;
+
+    public static final int DEFAULT_MAX_OVERFLOW_THREADS = 256;
+
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 5000;
+
+    private static ActionTaskExecutor instance = null;
+
+    public static synchronized ActionTaskExecutor getDefault() {
+        if (instance == null) {
+            instance = createDefault();
+        }
+        return instance;
+    }
+
+    /**
+     * Replace default executor used by {@link ActionTask#startTask()}. Already started tasks are
+     * not affected.
+     */
+    public static synchronized void setDefault(ActionTaskExecutor executor) {
+        instance = executor;
+    }
+
+    protected static ActionTaskExecutor createDefault() {
+        if ("true".equalsIgnoreCase(GlobalProperties.getStringProperty(PROP_VIRTUAL_THREADS))) {
+            Executor executor = createVirtualThreadExecutor();
+            if (executor != null) {
+                return new ActionTaskExecutor(executor);
+            }
+            logger.warnPrintf("Virtual threads not supported by this JVM, using thread pool.\n");
+        }
+
+        int maxPoolSize = getIntProperty(PROP_MAX_POOL_SIZE, DEFAULT_MAX_POOL_SIZE);
+        int maxOverflowThreads = getIntProperty(PROP_MAX_OVERFLOW_THREADS, DEFAULT_MAX_OVERFLOW_THREADS);
+
+        return new ActionTaskExecutor(maxPoolSize, maxOverflowThreads, DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String valueStr = GlobalProperties.getStringProperty(name);
+        if (valueStr != null) {
+            try {
+                return Integer.parseInt(valueStr.trim());
+            } catch (NumberFormatException e) {
+                logger.warnPrintf("Invalid value for %s:%s\n", name, valueStr);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Uses reflection since virtual threads are only available in newer JVMs.
+     * 
+     * @return virtual thread per task executor or null if not supported.
+     */
+    public static Executor createVirtualThreadExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Queue for tasks of a single task source.
+     */
+    protected static class SourceQueue {
+
+        protected int maxRunning;
+
+        protected int numRunning = 0;
+
+        protected Deque<ActionTask> pending = new ArrayDeque<ActionTask>();
+
+        protected SourceQueue(int maxRunning) {
+            this.maxRunning = maxRunning;
+        }
+    }
+
+    protected class TaskRunner implements Runnable {
+
+        protected final ActionTask task;
+
+        protected final SourceQueue queue;
+
+        /** Whether this task occupies a slot of its source queue. Nested tasks don't. */
+        protected final boolean holdsSlot;
+
+        protected TaskRunner(ActionTask task, SourceQueue queue, boolean holdsSlot) {
+            this.task = task;
+            this.queue = queue;
+            this.holdsSlot = holdsSlot;
+        }
+
+        @Override
+        public void run() {
+            SourceQueue parentQueue = currentQueue.get();
+            currentQueue.set(queue);
+            try {
+                task.run();
+            } finally {
+                if (parentQueue != null) {
+                    currentQueue.set(parentQueue);
+                } else {
+                    currentQueue.remove();
+                }
+                // clear interrupt which might have been send to this task after it finished.
+                Thread.interrupted();
+                if ((queue != null) && (holdsSlot)) {
+                    taskFinished(queue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Overflow thread: runs its first task and then the backlog until it is empty.
+     */
+    protected class OverflowRunner implements Runnable {
+
+        protected Runnable first;
+
+        protected OverflowRunner(Runnable first) {
+            this.first = first;
+        }
+
+        @Override
+        public void run() {
+            Runnable next = first;
+            first = null;
+
+            while (next != null) {
+                try {
+                    next.run();
+                } catch (Throwable t) {
+                    logger.errorPrintf("Overflow task threw exception:%s\n", t);
+                }
+
+                synchronized (overflowBacklog) {
+                    next = overflowBacklog.poll();
+                    if (next == null) {
+                        numActiveOverflowThreads--;
+                    }
+                }
+            }
+        }
+    }
+
+    // ========================================================================
+    // Instance
+    // ========================================================================
+
+    private Executor executor;
+
+    private ThreadPoolExecutor threadPool;
+
+    private final Map<ITaskSource, SourceQueue> sourceQueues = new WeakHashMap<ITaskSource, SourceQueue>();
+
+    /** Source queue of the task running in the current thread, used to detect nested tasks. */
+    private final ThreadLocal<SourceQueue> currentQueue = new ThreadLocal<SourceQueue>();
+
+    private final Deque<Runnable> overflowBacklog = new ArrayDeque<Runnable>();
+
+    private int maxOverflowThreads = DEFAULT_MAX_OVERFLOW_THREADS;
+
+    private int numActiveOverflowThreads = 0;
+
+    private final ThreadFactory overflowThreadFactory = new TaskThreadFactory("ActionTask-overflow");
+
+    private final AtomicInteger numQueued = new AtomicInteger();
+
+    private final AtomicLong numSubmitted = new AtomicLong();
+
+    private final AtomicLong numOverflowThreads = new AtomicLong();
+
+    /**
+     * Create executor with a bounded pool of reusable threads.
+     * 
+     * @param maxPoolSize
+     *            - maximum number of pooled threads.
+     * @param keepAliveMillis
+     *            - time an idle pool thread is kept alive.
+     */
+    public ActionTaskExecutor(int maxPoolSize, long keepAliveMillis) {
+        this(maxPoolSize, DEFAULT_MAX_OVERFLOW_THREADS, keepAliveMillis);
+    }
+
+    /**
+     * Create executor with a bounded pool of reusable threads and a bounded number of overflow
+     * threads.
+     * 
+     * @param maxPoolSize
+     *            - maximum number of pooled threads.
+     * @param maxOverflowThreads
+     *            - maximum number of threads started when the pool is exhausted.
+     * @param keepAliveMillis
+     *            - time an idle pool thread is kept alive.
+     */
+    public ActionTaskExecutor(int maxPoolSize, int maxOverflowThreads, long keepAliveMillis) {
+        this.maxOverflowThreads = Math.max(1, maxOverflowThreads);
+        this.threadPool = new ThreadPoolExecutor(0, Math.max(1, maxPoolSize), keepAliveMillis,
+                TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(), new TaskThreadFactory("ActionTask"),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                        startOverflowThread(runnable);
+                    }
+                });
+        this.executor = threadPool;
+    }
+
+    /**
+     * Create ActionTaskExecutor which uses a custom executor.
+     */
+    public ActionTaskExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Limit the number of concurrently running tasks for the specified source. Tasks started
+     * beyond this limit are queued.
+     * 
+     * @param source
+     *            - ITaskSource to limit
+     * @param maxRunning
+     *            - maximum number of running tasks. Use &lt;=0 to remove the limit.
+     */
+    public void setMaxConcurrentTasks(ITaskSource source, int maxRunning) {
+        synchronized (sourceQueues) {
+            SourceQueue queue = sourceQueues.get(source);
+
+            if (maxRunning <= 0) {
+                if ((queue != null) && (queue.numRunning == 0) && (queue.pending.isEmpty())) {
+                    sourceQueues.remove(source);
+                } else if (queue != null) {
+                    queue.maxRunning = Integer.MAX_VALUE;
+                }
+            } else if (queue == null) {
+                sourceQueues.put(source, new SourceQueue(maxRunning));
+            } else {
+                queue.maxRunning = maxRunning;
+            }
+        }
+        // limit might have been raised.
+        dispatchPending(source);
+    }
+
+    /**
+     * @return concurrency limit for the specified source or -1 if not limited.
+     */
+    public int getMaxConcurrentTasks(ITaskSource source) {
+        synchronized (sourceQueues) {
+            SourceQueue queue = sourceQueues.get(source);
+            if ((queue == null) || (queue.maxRunning == Integer.MAX_VALUE)) {
+                return -1;
+            }
+            return queue.maxRunning;
+        }
+    }
+
+    /**
+     * Execute task now or queue it if the task source has reached its concurrency limit. A task
+     * started from a running task of the same source is never queued.
+     */
+    public void execute(ActionTask task) {
+        numSubmitted.incrementAndGet();
+        ITaskSource source = task.getTaskSource();
+        SourceQueue queue = null;
+        boolean holdsSlot = false;
+
+        if (source != null) {
+            synchronized (sourceQueues) {
+                queue = sourceQueues.get(source);
+                if ((queue != null) && (queue != currentQueue.get())) {
+                    if (queue.numRunning >= queue.maxRunning) {
+                        queue.pending.add(task);
+                        numQueued.incrementAndGet();
+                        return;
+                    }
+                    queue.numRunning++;
+                    holdsSlot = true;
+                }
+            }
+        }
+
+        submit(new TaskRunner(task, queue, holdsSlot));
+    }
+
+    protected void submit(TaskRunner runner) {
+        try {
+            executor.execute(runner);
+        } catch (RejectedExecutionException e) {
+            startOverflowThread(runner);
+        }
+    }
+
+    protected void startOverflowThread(Runnable runnable) {
+        synchronized (overflowBacklog) {
+            if (numActiveOverflowThreads >= maxOverflowThreads) {
+                logger.debugPrintf("startOverflowThread(): all overflow threads busy, adding task to backlog.\n");
+                overflowBacklog.add(runnable);
+                return;
+            }
+            numActiveOverflowThreads++;
+        }
+
+        numOverflowThreads.incrementAndGet();
+        logger.debugPrintf("startOverflowThread(): all pool threads busy, starting new thread.\n");
+        try {
+            overflowThreadFactory.newThread(new OverflowRunner(runnable)).start();
+        } catch (Error e) {
+            // For example OutOfMemoryError: unable to create native thread.
+            synchronized (overflowBacklog) {
+                numActiveOverflowThreads--;
+            }
+            throw e;
+        }
+    }
+
+    protected void taskFinished(SourceQueue queue) {
+        ActionTask next;
+
+        synchronized (sourceQueues) {
+            next = queue.pending.poll();
+            if (next == null) {
+                queue.numRunning--;
+                return;
+            }
+            numQueued.decrementAndGet();
+            // slot is handed over to next task.
+        }
+
+        submit(new TaskRunner(next, queue, true));
+    }
+
+    protected void dispatchPending(ITaskSource source) {
+        while (true) {
+            SourceQueue queue;
+            ActionTask next;
+
+            synchronized (sourceQueues) {
+                queue = sourceQueues.get(source);
+                if ((queue == null) || (queue.numRunning >= queue.maxRunning)) {
+                    return;
+                }
+                next = queue.pending.poll();
+                if (next == null) {
+                    return;
+                }
+                numQueued.decrementAndGet();
+                queue.numRunning++;
+            }
+
+            submit(new TaskRunner(next, queue, true));
+        }
+    }
+
+    /**
+     * Remove queued task which hasn't been started yet.
+     * 
+     * @return true if the task was removed from the queue.
+     */
+    public boolean removeQueuedTask(ActionTask task) {
+        ITaskSource source = task.getTaskSource();
+        if (source == null) {
+            return false;
+        }
+
+        synchronized (sourceQueues) {
+            SourceQueue queue = sourceQueues.get(source);
+            if ((queue != null) && (queue.pending.remove(task))) {
+                numQueued.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // =========
+    // Metrics
+    // =========
+
+    /** @return number of tasks waiting for their task source to drop below its limit. */
+    public int getQueuedTaskCount() {
+        return numQueued.get();
+    }
+
+    /** @return number of queued tasks for the specified task source. */
+    public int getQueuedTaskCount(ITaskSource source) {
+        synchronized (sourceQueues) {
+            SourceQueue queue = sourceQueues.get(source);
+            return (queue != null) ? queue.pending.size() : 0;
+        }
+    }
+
+    /** @return number of busy pool threads or -1 when a custom executor is used. */
+    public int getActivePoolThreadCount() {
+        return (threadPool != null) ? threadPool.getActiveCount() : -1;
+    }
+
+    /** @return number of pool threads or -1 when a custom executor is used. */
+    public int getPoolSize() {
+        return (threadPool != null) ? threadPool.getPoolSize() : -1;
+    }
+
+    public int getMaxPoolSize() {
+        return (threadPool != null) ? threadPool.getMaximumPoolSize() : -1;
+    }
+
+    public long getSubmittedTaskCount() {
+        return numSubmitted.get();
+    }
+
+    /** @return number of tasks which were started in a new thread because the pool was full. */
+    public long getOverflowThreadCount() {
+        return numOverflowThreads.get();
+    }
+
+    /** @return number of currently running overflow threads. */
+    public int getActiveOverflowThreadCount() {
+        synchronized (overflowBacklog) {
+            return numActiveOverflowThreads;
+        }
+    }
+
+    /** @return number of tasks waiting for an overflow thread. */
+    public int getOverflowBacklogCount() {
+        synchronized (overflowBacklog) {
+            return overflowBacklog.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ActionTaskExecutor:[poolSize=" + getPoolSize() + "/" + getMaxPoolSize() + ",active="
+                + getActivePoolThreadCount() + ",queued=" + getQueuedTaskCount() + ",submitted="
+                + getSubmittedTaskCount() + ",overflow=" + getOverflowThreadCount() + ",backlog="
+                + getOverflowBacklogCount() + "]";
+    }
+
+    // ========================================================================
+    //
+    // ========================================================================
+
+    protected static class TaskThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+
+        private final AtomicInteger threadNr = new AtomicInteger();
+
+        protected TaskThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + threadNr.incrementAndGet());
+            // idle pool threads may not keep the JVM from exiting.
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
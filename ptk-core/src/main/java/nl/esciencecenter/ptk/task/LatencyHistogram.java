@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.task;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with exponential (power of 2) millisecond buckets.<br>
+ * Bucket 0 counts latencies below 1ms, bucket <code>i</code> counts latencies in the range
+ * [2^(i-1),2^i) milliseconds. The last bucket counts all larger latencies.
+ */
+public class LatencyHistogram {
+
+    public static final int NUM_BUCKETS = 24;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalMillis = new AtomicLong();
+
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public LatencyHistogram() {
+    }
+
+    public void record(long millis) {
+        if (millis < 0) {
+            millis = 0;
+        }
+
+        buckets.incrementAndGet(bucketIndex(millis));
+        count.incrementAndGet();
+        totalMillis.addAndGet(millis);
+
+        long max = maxMillis.get();
+        while ((millis > max) && (maxMillis.compareAndSet(max, millis) == false)) {
+            max = maxMillis.get();
+        }
+    }
+
+    protected static int bucketIndex(long millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        // 1 => 1, [2,4) => 2, [4,8) => 3, etc.
+        int index = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(index, NUM_BUCKETS - 1);
+    }
+
+    /**
+     * @return upper bound (exclusive) in milliseconds of the specified bucket, or
+     *         Long.MAX_VALUE for the last bucket.
+     */
+    public static long getBucketUpperBound(int index) {
+        if (index >= NUM_BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        return 1L << index;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getBucketCount(int index) {
+        return buckets.get(index);
+    }
+
+    public long[] getBucketCounts() {
+        long counts[] = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    /**
+     * @return average latency in milliseconds or -1 if nothing has been recorded.
+     */
+    public double getMeanMillis() {
+        long num = count.get();
+        if (num <= 0) {
+            return -1;
+        }
+        return (double) totalMillis.get() / num;
+    }
+
+    /**
+     * Returns upper bound of the bucket which contains the specified percentile. Since buckets are
+     * exponential, this is an estimate which is at most twice the actual value.
+     * 
+     * @param percentile
+     *            - percentile between 0 and 100.
+     * @return estimated percentile in milliseconds, or -1 if nothing has been recorded.
+     */
+    public long getPercentileMillis(double percentile) {
+        long counts[] = getBucketCounts();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total <= 0) {
+            return -1;
+        }
+
+        long wanted = (long) Math.ceil(total * percentile / 100.0);
+        long sum = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            sum += counts[i];
+            if ((sum >= wanted) && (counts[i] > 0)) {
+                return Math.min(getBucketUpperBound(i), getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalMillis.set(0);
+        maxMillis.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram:[count=" + getCount() + ",mean=" + String.format("%.1f", getMeanMillis())
+                + "ms,p50=" + getPercentileMillis(50) + "ms,p99=" + getPercentileMillis(99) + "ms,max="
+                + getMaxMillis() + "ms]";
+    }
+
+}
@@ -20,6 +20,10 @@
 
 package nl.esciencecenter.ptk.task;
 
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
 import nl.esciencecenter.ptk.presentation.Presentation;
 import nl.esciencecenter.ptk.task.ITaskMonitor.TaskStats;
 import nl.esciencecenter.ptk.util.StringUtil;
@@ -36,12 +40,78 @@ public class MonitorStats {
         TOTAL_BYTES_TRANSFERRED, CURRENT_BYTES_TRANSFERRED, TOTAL_SOURCES_COPIED, TOTAL_SOURCES_DELETED
     };
 
+    /**
+     * Default time window for the windowed speed.
+     */
+    public static final long DEFAULT_SPEED_WINDOW_MILLIS = 10 * 1000;
+
+    /**
+     * Samples closer together are skipped.
+     */
+    public static final long MIN_SAMPLE_INTERVAL_MILLIS = 100;
+
+    /**
+     * Sliding window of (time,done) samples.
+     */
+    protected static class SpeedWindow {
+
+        private final ArrayDeque<long[]> samples = new ArrayDeque<long[]>();
+
+        protected synchronized void addSample(long time, long done, long windowMillis) {
+            long[] last = samples.peekLast();
+
+            if (last != null) {
+                if (done < last[1]) {
+                    // task restarted
+                    samples.clear();
+                } else if (time - last[0] < MIN_SAMPLE_INTERVAL_MILLIS) {
+                    return;
+                }
+            }
+
+            samples.addLast(new long[] { time, done });
+
+            // keep one sample at or before the start of the window.
+            long windowStart = time - windowMillis;
+            while (samples.size() > 2) {
+                long[] first = samples.removeFirst();
+                if (samples.peekFirst()[0] > windowStart) {
+                    samples.addFirst(first);
+                    break;
+                }
+            }
+        }
+
+        /**
+         * @return speed in work/second or -1 if not enough samples.
+         */
+        protected synchronized double getSpeed() {
+            if (samples.size() < 2) {
+                return -1;
+            }
+            long[] first = samples.peekFirst();
+            long[] last = samples.peekLast();
+            long delta = last[0] - first[0];
+            if (delta <= 0) {
+                return -1;
+            }
+            return (1000.0 * (last[1] - first[1])) / delta;
+        }
+    }
+
     // ========================================================================
     //
     // ========================================================================
 
     protected ITaskMonitor monitor = null;
 
+    protected long speedWindowMillis = DEFAULT_SPEED_WINDOW_MILLIS;
+
+    /**
+     * Speed windows per task. Main task has key "".
+     */
+    protected Map<String, SpeedWindow> speedWindows = new HashMap<String, SpeedWindow>();
+
     Presentation presentation = new Presentation();
 
     public MonitorStats(ITaskMonitor monitor) {
@@ -53,6 +123,17 @@ public class MonitorStats {
         this.presentation = presentation;
     }
 
+    /**
+     * Set time window used to calculate the windowed speed and ETA.
+     */
+    public void setSpeedWindow(long windowMillis) {
+        this.speedWindowMillis = windowMillis;
+    }
+
+    public long getSpeedWindow() {
+        return speedWindowMillis;
+    }
+
     /**
      * @return total current running time or total time it took to finish the task in milliseconds.
      */
@@ -98,7 +179,13 @@ public class MonitorStats {
         if (monitor.isDone()) {
             return 0; // done
         }
-        return calcETA(monitor.getTaskStats().done, monitor.getTaskStats().todo, getTotalSpeed());
+
+        // prefer recent speed, fall back to average speed.
+        double speed = getWindowSpeed();
+        if (speed <= 0) {
+            speed = getTotalSpeed();
+        }
+        return calcETA(monitor.getTaskStats().done, monitor.getTaskStats().todo, speed);
     }
 
     public String getStatusText() {
@@ -154,6 +241,65 @@ public class MonitorStats {
         return speed;
     }
 
+    /**
+     * Returns speed over the last speed window in work/second, for example bytes/second for
+     * transfers. Each call adds a sample, so this method must be called regularly, for example by
+     * a monitoring panel.
+     * 
+     * @return windowed speed or -1 if not enough samples have been collected.
+     */
+    public double getWindowSpeed() {
+        if (monitor == null) {
+            return -1;
+        }
+        return updateSpeedWindow("", monitor.getTaskStats());
+    }
+
+    /**
+     * @return windowed speed, or the average speed if not enough samples have been collected yet.
+     */
+    public double getCurrentSpeed() {
+        double speed = getWindowSpeed();
+        if (speed < 0) {
+            speed = getTotalSpeed();
+        }
+        return speed;
+    }
+
+    /**
+     * @return ETA in millis based on the windowed speed. See {@link #calcETA(long, long, double)}
+     */
+    public long getWindowETA() {
+        if (monitor == null) {
+            return -1;
+        }
+        if (monitor.isDone()) {
+            return 0;
+        }
+        TaskStats stats = monitor.getTaskStats();
+        return calcETA(stats.done, stats.todo, updateSpeedWindow("", stats));
+    }
+
+    protected double updateSpeedWindow(String key, TaskStats stats) {
+        if ((stats == null) || (stats.done < 0)) {
+            return -1;
+        }
+
+        SpeedWindow window;
+        synchronized (speedWindows) {
+            window = speedWindows.get(key);
+            if (window == null) {
+                window = new SpeedWindow();
+                speedWindows.put(key, window);
+            }
+        }
+
+        // stopped tasks don't progress anymore.
+        long time = stats.isDone ? stats.stopTimeMillies : System.currentTimeMillis();
+        window.addSample(time, stats.done, speedWindowMillis);
+        return window.getSpeed();
+    }
+
     public double getTotalProgress() {
         if (this.monitor.getTaskStats().todo <= 0) {
             return 0;
@@ -237,6 +383,25 @@ public class MonitorStats {
         return calculateTaskSpeed(stats);
     }
 
+    /**
+     * Return speed of sub task over the last speed window, falls back to average speed if not
+     * enough samples have been collected yet.
+     * 
+     * @see #getWindowSpeed()
+     */
+    public double getSubTaskWindowSpeed(String subTaskName) {
+        if (subTaskName == null) {
+            return 0.0;
+        }
+
+        TaskStats stats = monitor.getSubTaskStats(subTaskName);
+        double speed = updateSpeedWindow(subTaskName, stats);
+        if (speed < 0) {
+            speed = calculateTaskSpeed(stats);
+        }
+        return speed;
+    }
+
     /**
      * Returns Task speed in &lt;task steps&gt;/second.
      * 
@@ -253,9 +418,9 @@ public class MonitorStats {
         double subTime = (double) getTaskDoneDeltaTime(stats);
         double speed = 0;
 
-        if (speed > 0) {
+        if (subTime > 0) {
             speed = stats.done / subTime;
-        } else if (speed < 0) {
+        } else if (subTime < 0) {
             speed = 0; // unknown, speed = 0!
         } else {
             // avoid divide by zero!
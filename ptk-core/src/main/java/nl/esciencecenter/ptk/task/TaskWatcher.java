@@ -21,6 +21,7 @@
 package nl.esciencecenter.ptk.task;
 
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import nl.esciencecenter.ptk.util.logging.PLogger;
 
@@ -43,6 +44,16 @@ public class TaskWatcher implements ITaskSource {
 
     protected Vector<ActionTask> terminatedTasks = new Vector<ActionTask>();
 
+    // === metrics ===
+
+    private final AtomicInteger numRunning = new AtomicInteger();
+
+    /** Time between submitting and starting a task */
+    private final LatencyHistogram queueTimes = new LatencyHistogram();
+
+    /** Running time of finished tasks */
+    private final LatencyHistogram runTimes = new LatencyHistogram();
+
     public static ITaskSource getTaskWatcher() {
         if (instance == null) {
             instance = new TaskWatcher("Global Taskwatcher");
@@ -84,12 +95,19 @@ public class TaskWatcher implements ITaskSource {
     @Override
     public void notifyTaskStarted(ActionTask actionTask) {
         logger.debugPrintf("(>)notifyTaskStarted:%s\n", actionTask);
+        numRunning.incrementAndGet();
+        queueTimes.record(actionTask.getQueueTime());
         this.setHasActiveTasks(true);
     }
 
     @Override
     public void notifyTaskTerminated(ActionTask actionTask) {
         logger.debugPrintf("(*)notifyTaskTerminated:%s\n", actionTask);
+        // cancelled tasks which were still queued never started.
+        if (actionTask.getStartTime() >= 0) {
+            numRunning.decrementAndGet();
+            runTimes.record(actionTask.getRunTime());
+        }
         deschedule(actionTask);
         this.setHasActiveTasks(checkHasActiveTasks());
     }
@@ -251,4 +269,44 @@ public class TaskWatcher implements ITaskSource {
         }
     }
 
+    // =========
+    // Metrics
+    // =========
+
+    /**
+     * Limit the number of concurrently running tasks of this TaskWatcher. Tasks started beyond this
+     * limit are queued by the default ActionTaskExecutor.
+     * 
+     * @param maxRunning
+     *            - maximum number of running tasks. Use &lt;=0 to remove the limit.
+     */
+    public void setMaxConcurrentTasks(int maxRunning) {
+        ActionTaskExecutor.getDefault().setMaxConcurrentTasks(this, maxRunning);
+    }
+
+    /** @return number of tasks of this TaskWatcher which are currently running. */
+    public int getRunningTaskCount() {
+        return numRunning.get();
+    }
+
+    /** @return number of tasks of this TaskWatcher which are queued and not started yet. */
+    public int getQueuedTaskCount() {
+        return ActionTaskExecutor.getDefault().getQueuedTaskCount(this);
+    }
+
+    /** @return histogram of the time tasks had to wait before they were started. */
+    public LatencyHistogram getQueueTimeHistogram() {
+        return queueTimes;
+    }
+
+    /** @return histogram of the running time of finished tasks. */
+    public LatencyHistogram getRunTimeHistogram() {
+        return runTimes;
+    }
+
+    public String getMetricsString() {
+        return "TaskWatcher:" + name + ":[running=" + getRunningTaskCount() + ",queued=" + getQueuedTaskCount()
+                + ",queueTimes=" + queueTimes + ",runTimes=" + runTimes + "]";
+    }
+
 }
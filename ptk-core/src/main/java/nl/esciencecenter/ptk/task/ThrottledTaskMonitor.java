@@ -0,0 +1,282 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.task;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.esciencecenter.ptk.data.StringHolder;
+
+/**
+ * ITaskMonitor decorator which throttles progress updates.<br>
+ * Calls to {@link #updateTaskDone(long)} and {@link #updateSubTaskDone(String, long)} are
+ * collected and forwarded to the wrapped monitor at most <code>maxUpdateRate</code> times per
+ * second. Only the last value is forwarded, so intermediate values may be skipped.<br>
+ * Pending updates are flushed before any start, end, cancel or error call is forwarded, so final
+ * totals are always exact. Use {@link #flush()} when the final value isn't followed by an end
+ * call.
+ * <p>
+ * Getters delegate to the wrapped monitor, so the returned progress may lag behind up to one
+ * update interval.
+ */
+public class ThrottledTaskMonitor implements ITaskMonitor {
+
+    /** Default update rate in updates per second */
+    public static final double DEFAULT_UPDATE_RATE = 10;
+
+    /**
+     * Wrap monitor with default update rate. Returns null if the monitor is null and returns the
+     * monitor itself if it already has been throttled.
+     */
+    public static ITaskMonitor wrap(ITaskMonitor monitor) {
+        if ((monitor == null) || (monitor instanceof ThrottledTaskMonitor)) {
+            return monitor;
+        }
+        return new ThrottledTaskMonitor(monitor, DEFAULT_UPDATE_RATE);
+    }
+
+    // ========================================================================
+    //
+    // ========================================================================
+
+    private final ITaskMonitor monitor;
+
+    private final long updateIntervalMillis;
+
+    private final Object updateMutex = new Object();
+
+    private long lastFlushTime = 0;
+
+    private long pendingTaskDone = -1;
+
+    private boolean hasPendingTaskDone = false;
+
+    private Map<String, Long> pendingSubTasksDone = new LinkedHashMap<String, Long>();
+
+    // stats
+
+    private long numUpdates = 0;
+
+    private long numForwarded = 0;
+
+    /**
+     * @param monitor
+     *            - monitor to forward the updates to.
+     * @param maxUpdateRate
+     *            - maximum number of forwarded updates per second. Use &lt;= 0 to forward all
+     *            updates.
+     */
+    public ThrottledTaskMonitor(ITaskMonitor monitor, double maxUpdateRate) {
+        this.monitor = monitor;
+        if (maxUpdateRate > 0) {
+            this.updateIntervalMillis = (long) (1000.0 / maxUpdateRate);
+        } else {
+            this.updateIntervalMillis = 0;
+        }
+    }
+
+    /** @return the wrapped monitor */
+    public ITaskMonitor getMonitor() {
+        return monitor;
+    }
+
+    @Override
+    public void updateTaskDone(long numDone) {
+        synchronized (updateMutex) {
+            numUpdates++;
+            pendingTaskDone = numDone;
+            hasPendingTaskDone = true;
+            checkFlush();
+        }
+    }
+
+    @Override
+    public void updateSubTaskDone(String subTaskName, long numDone) {
+        if (subTaskName == null) {
+            return;
+        }
+
+        synchronized (updateMutex) {
+            numUpdates++;
+            pendingSubTasksDone.put(subTaskName, numDone);
+            checkFlush();
+        }
+    }
+
+    private void checkFlush() {
+        long time = System.currentTimeMillis();
+        if (time - lastFlushTime >= updateIntervalMillis) {
+            doFlush(time);
+        }
+    }
+
+    /**
+     * Forward pending updates to the wrapped monitor.
+     */
+    public void flush() {
+        synchronized (updateMutex) {
+            doFlush(System.currentTimeMillis());
+        }
+    }
+
+    private void doFlush(long time) {
+        lastFlushTime = time;
+
+        if (hasPendingTaskDone) {
+            monitor.updateTaskDone(pendingTaskDone);
+            hasPendingTaskDone = false;
+            numForwarded++;
+        }
+
+        if (pendingSubTasksDone.isEmpty() == false) {
+            for (Map.Entry<String, Long> entry : pendingSubTasksDone.entrySet()) {
+                monitor.updateSubTaskDone(entry.getKey(), entry.getValue());
+                numForwarded++;
+            }
+            pendingSubTasksDone.clear();
+        }
+    }
+
+    /** @return number of progress updates received. */
+    public long getNumUpdates() {
+        synchronized (updateMutex) {
+            return numUpdates;
+        }
+    }
+
+    /** @return number of progress updates forwarded to the wrapped monitor. */
+    public long getNumForwarded() {
+        synchronized (updateMutex) {
+            return numForwarded;
+        }
+    }
+
+    // ========================================================================
+    // Flushing calls
+    // ========================================================================
+
+    @Override
+    public void startTask(String taskName, long numTodo) {
+        flush();
+        monitor.startTask(taskName, numTodo);
+    }
+
+    @Override
+    public void endTask(String taskName) {
+        flush();
+        monitor.endTask(taskName);
+    }
+
+    @Override
+    public void startSubTask(String subTaskName, long numTodo) {
+        synchronized (updateMutex) {
+            doFlush(System.currentTimeMillis());
+            // startSubTask() resets done.
+            pendingSubTasksDone.remove(subTaskName);
+        }
+        monitor.startSubTask(subTaskName, numTodo);
+    }
+
+    @Override
+    public void endSubTask(String subTaskName) {
+        flush();
+        monitor.endSubTask(subTaskName);
+    }
+
+    @Override
+    public void setIsCancelled() {
+        flush();
+        monitor.setIsCancelled();
+    }
+
+    @Override
+    public void setException(Throwable t) {
+        flush();
+        monitor.setException(t);
+    }
+
+    // ========================================================================
+    // Delegated calls
+    // ========================================================================
+
+    @Override
+    public String getTaskName() {
+        return monitor.getTaskName();
+    }
+
+    @Override
+    public TaskStats getTaskStats() {
+        return monitor.getTaskStats();
+    }
+
+    @Override
+    public String getCurrentSubTaskName() {
+        return monitor.getCurrentSubTaskName();
+    }
+
+    @Override
+    public TaskStats getSubTaskStats(String subTaskName) {
+        return monitor.getSubTaskStats(subTaskName);
+    }
+
+    @Override
+    public boolean isDone() {
+        return monitor.isDone();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return monitor.isCancelled();
+    }
+
+    @Override
+    public long getStartTime() {
+        return monitor.getStartTime();
+    }
+
+    @Override
+    public void logPrintf(String format, Object... args) {
+        monitor.logPrintf(format, args);
+    }
+
+    @Override
+    public int getLogText(boolean clearLogBuffer, int logEventOffset, StringHolder logTextHolder) {
+        return monitor.getLogText(clearLogBuffer, logEventOffset, logTextHolder);
+    }
+
+    @Override
+    public boolean hasError() {
+        return monitor.hasError();
+    }
+
+    @Override
+    public Throwable getException() {
+        return monitor.getException();
+    }
+
+    @Override
+    public String toString() {
+        return "ThrottledTaskMonitor:[interval=" + updateIntervalMillis + "ms,updates=" + getNumUpdates()
+                + ",forwarded=" + getNumForwarded() + ",monitor=" + monitor + "]";
+    }
+
+}
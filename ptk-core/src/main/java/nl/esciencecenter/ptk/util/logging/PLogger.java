@@ -145,11 +145,16 @@ public class PLogger {
 
     public boolean isLoggable(Level jLevel) {
         // Java Logger compatible logging levels:
+        // Same mapping as log(): FINEST and FINER are logged as debug.
         int level = jLevel.intValue();
-        return (((level <= Level.FINE.intValue()) && logger.isDebugEnabled())
-                || ((level <= Level.INFO.intValue()) && logger.isInfoEnabled())
-                || ((level <= Level.WARNING.intValue()) && logger.isWarnEnabled()) || ((level <= Level.SEVERE
-                .intValue()) && logger.isErrorEnabled()));
+        if (level <= Level.FINE.intValue())
+            return logger.isDebugEnabled();
+        else if (level <= Level.INFO.intValue())
+            return logger.isInfoEnabled();
+        else if (level <= Level.WARNING.intValue())
+            return logger.isWarnEnabled();
+        else
+            return logger.isErrorEnabled();
     }
 
     public boolean hasDebugLevel() {
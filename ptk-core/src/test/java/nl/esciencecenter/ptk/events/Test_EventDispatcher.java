@@ -0,0 +1,259 @@
+/*
+ * Copyrighted 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").  
+ * You may not use this file except in compliance with the License. 
+ * For details, see the LICENCE.txt file location in the root directory of this 
+ * distribution or obtain the Apache License at the following location: 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENCE.txt (located in the root folder of this distribution). 
+ * ---
+ */
+// source: 
+
+package nl.esciencecenter.ptk.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_EventDispatcher
+{
+    public static class TestEvent implements IEvent<String>
+    {
+        protected String type;
+
+        protected Object source;
+
+        protected int count;
+
+        public TestEvent(String type, Object source, int count)
+        {
+            this.type = type;
+            this.source = source;
+            this.count = count;
+        }
+
+        public String getEventType()
+        {
+            return type;
+        }
+
+        public Object getEventSource()
+        {
+            return source;
+        }
+    }
+
+    public static class TestListener implements IEventListener<TestEvent>
+    {
+        protected List<TestEvent> events = new ArrayList<TestEvent>();
+
+        public synchronized void notifyEvent(TestEvent event)
+        {
+            events.add(event);
+        }
+    }
+
+    public static class CoalescingDispatcher extends EventDispatcher<String, TestEvent, TestListener>
+    {
+        public CoalescingDispatcher()
+        {
+            super(false);
+        }
+
+        protected boolean canCoalesce(TestEvent event)
+        {
+            return true;
+        }
+
+        protected boolean canCoalesce(TestEvent first, TestEvent next)
+        {
+            return (first.type.equals(next.type)) && (first.source.equals(next.source));
+        }
+
+        protected TestEvent coalesceEvents(List<TestEvent> events)
+        {
+            int count = 0;
+            for (TestEvent event : events)
+            {
+                count += event.count;
+            }
+            return new TestEvent(events.get(0).type, events.get(0).source, count);
+        }
+    }
+
+    @Test
+    public void testDispatchBySource()
+    {
+        EventDispatcher<String, TestEvent, TestListener> dispatcher = new EventDispatcher<String, TestEvent, TestListener>(false);
+
+        TestListener listenerA = new TestListener();
+        TestListener listenerB = new TestListener();
+        TestListener listenerAll = new TestListener();
+
+        dispatcher.addListener(listenerA, "sourceA");
+        dispatcher.addListener(listenerB, "sourceB");
+        dispatcher.addListener(listenerAll, null);
+        Assert.assertEquals("Number of registered listeners", 3, dispatcher.getNumListeners());
+
+        dispatcher.addEvent(new TestEvent("update", "sourceA", 1));
+        dispatcher.addEvent(new TestEvent("update", "sourceB", 1));
+        dispatcher.addEvent(new TestEvent("update", "sourceC", 1));
+
+        while (dispatcher.hasEvents())
+        {
+            dispatcher.handleEvent();
+        }
+
+        Assert.assertEquals("Listener for sourceA should only receive events from sourceA", 1, listenerA.events.size());
+        Assert.assertEquals("sourceA", listenerA.events.get(0).getEventSource());
+        Assert.assertEquals("Listener for sourceB should only receive events from sourceB", 1, listenerB.events.size());
+        Assert.assertEquals("sourceB", listenerB.events.get(0).getEventSource());
+        Assert.assertEquals("Listener without source should receive all events", 3, listenerAll.events.size());
+    }
+
+    @Test
+    public void testRemoveListener()
+    {
+        EventDispatcher<String, TestEvent, TestListener> dispatcher = new EventDispatcher<String, TestEvent, TestListener>(false);
+
+        TestListener listener = new TestListener();
+        TestListener otherListener = new TestListener();
+
+        dispatcher.addListener(listener, "sourceA");
+        dispatcher.addListener(listener, "sourceB");
+        dispatcher.addListener(listener, null);
+        dispatcher.addListener(otherListener, "sourceA");
+
+        dispatcher.removeListener(listener);
+        Assert.assertEquals("Only other listener should remain", 1, dispatcher.getNumListeners());
+
+        dispatcher.addEvent(new TestEvent("update", "sourceA", 1));
+        dispatcher.handleEvent();
+
+        Assert.assertEquals("Removed listener should not receive events", 0, listener.events.size());
+        Assert.assertEquals(1, otherListener.events.size());
+
+        dispatcher.removeListenersFor("sourceA");
+        Assert.assertEquals(0, dispatcher.getNumListeners());
+    }
+
+    @Test
+    public void testCoalesceEvents()
+    {
+        CoalescingDispatcher dispatcher = new CoalescingDispatcher();
+        TestListener listener = new TestListener();
+        dispatcher.addListener(listener, "sourceA");
+
+        dispatcher.addEvent(new TestEvent("create", "sourceA", 1));
+        dispatcher.addEvent(new TestEvent("create", "sourceA", 2));
+        dispatcher.addEvent(new TestEvent("delete", "sourceA", 4));
+        dispatcher.addEvent(new TestEvent("create", "sourceA", 8));
+        dispatcher.addEvent(new TestEvent("create", "sourceA", 16));
+
+        while (dispatcher.hasEvents())
+        {
+            dispatcher.handleEvent();
+        }
+
+        // only consecutive events are merged, order must be kept.
+        Assert.assertEquals("Number of merged events", 3, listener.events.size());
+        Assert.assertEquals("create", listener.events.get(0).type);
+        Assert.assertEquals(3, listener.events.get(0).count);
+        Assert.assertEquals("delete", listener.events.get(1).type);
+        Assert.assertEquals(4, listener.events.get(1).count);
+        Assert.assertEquals("create", listener.events.get(2).type);
+        Assert.assertEquals(24, listener.events.get(2).count);
+    }
+
+    @Test
+    public void testMaxCoalescedEvents()
+    {
+        CoalescingDispatcher dispatcher = new CoalescingDispatcher();
+        dispatcher.setMaxCoalescedEvents(4);
+        TestListener listener = new TestListener();
+        dispatcher.addListener(listener, "sourceA");
+
+        for (int i = 0; i < 10; i++)
+        {
+            dispatcher.addEvent(new TestEvent("create", "sourceA", 1));
+        }
+
+        while (dispatcher.hasEvents() || dispatcher.hasPendingEvents())
+        {
+            dispatcher.handleEvent();
+        }
+
+        Assert.assertEquals("Number of merged events", 3, listener.events.size());
+        Assert.assertEquals(4, listener.events.get(0).count);
+        Assert.assertEquals(4, listener.events.get(1).count);
+        Assert.assertEquals(2, listener.events.get(2).count);
+    }
+
+    @Test
+    public void testCoalesceDeadlineWithFullQueue() throws Exception
+    {
+        CoalescingDispatcher dispatcher = new CoalescingDispatcher();
+        dispatcher.setCoalesceWindow(50);
+        TestListener listener = new TestListener();
+        dispatcher.addListener(listener, "sourceA");
+
+        dispatcher.addEvent(new TestEvent("create", "sourceA", 1));
+        dispatcher.handleEvent();
+        Thread.sleep(100);
+        // queue is never empty: the expired deadline must still dispatch the merged event.
+        dispatcher.addEvent(new TestEvent("create", "sourceA", 2));
+        dispatcher.addEvent(new TestEvent("create", "sourceA", 4));
+        dispatcher.handleEvent();
+
+        Assert.assertEquals("Expired events should be dispatched", 1, listener.events.size());
+        Assert.assertEquals(3, listener.events.get(0).count);
+    }
+
+    @Test
+    public void testCoalesceWindow() throws Exception
+    {
+        CoalescingDispatcher dispatcher = new CoalescingDispatcher();
+        dispatcher.setCoalesceWindow(500);
+        final TestListener listener = new TestListener();
+        dispatcher.addListener(listener, "sourceA");
+
+        dispatcher.fireEvent(new TestEvent("create", "sourceA", 1));
+        dispatcher.fireEvent(new TestEvent("create", "sourceA", 2));
+        dispatcher.start();
+        Thread.sleep(100);
+        // arrives within the window of the first event.
+        dispatcher.fireEvent(new TestEvent("create", "sourceA", 4));
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < timeout)
+        {
+            synchronized (listener)
+            {
+                if (listener.events.size() > 0)
+                {
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+        dispatcher.dispose();
+
+        synchronized (listener)
+        {
+            Assert.assertEquals("Events within coalesce window should be merged", 1, listener.events.size());
+            Assert.assertEquals(7, listener.events.get(0).count);
+        }
+    }
+
+}
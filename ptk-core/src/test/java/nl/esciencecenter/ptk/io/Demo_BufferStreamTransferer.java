@@ -0,0 +1,141 @@
+/*
+ * Copyrighted 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").  
+ * You may not use this file except in compliance with the License. 
+ * For details, see the LICENCE.txt file location in the root directory of this 
+ * distribution or obtain the Apache License at the following location: 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENCE.txt (located in the root folder of this distribution). 
+ * ---
+ */
+// source: 
+
+package nl.esciencecenter.ptk.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Throughput demo for the BufferStreamTransferer. Compares the dual threaded transfer against a
+ * plain single threaded read/write loop for several chunk sizes.
+ * <p>
+ * To compare with another implementation, compile that version of BufferStreamTransferer into a
+ * separate directory and put it in front of the classpath, for example:
+ * 
+ * <pre>
+ * git show &lt;commit&gt;:ptk-core/src/main/java/nl/esciencecenter/ptk/io/BufferStreamTransferer.java &gt; baseline/BufferStreamTransferer.java
+ * javac -cp &lt;classpath&gt; -d baseline/classes baseline/BufferStreamTransferer.java
+ * java -cp baseline/classes:&lt;classpath&gt; nl.esciencecenter.ptk.io.Demo_BufferStreamTransferer
+ * </pre>
+ * 
+ * Run both on a machine with at least two cores, since reader and writer are separate threads.
+ */
+public class Demo_BufferStreamTransferer
+{
+    public static final int DATA_SIZE = 256 * 1024 * 1024;
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    public static final int CHUNK_SIZES[] = { 4 * 1024, 64 * 1024, 1024 * 1024 };
+
+    public static final int NUM_RUNS = 5;
+
+    /**
+     * Null OutputStream which only counts the bytes.
+     */
+    public static class NullOutputStream extends OutputStream
+    {
+        public long count = 0;
+
+        @Override
+        public void write(int b)
+        {
+            count++;
+        }
+
+        @Override
+        public void write(byte buffer[], int offset, int len)
+        {
+            count += len;
+        }
+    }
+
+    public static void main(String args[])
+    {
+        try
+        {
+            byte data[] = new byte[DATA_SIZE];
+
+            for (int chunkSize : CHUNK_SIZES)
+            {
+                // warm up
+                transfer(data, chunkSize);
+                plainCopy(data, chunkSize);
+
+                long transferTime = 0;
+                long plainTime = 0;
+
+                for (int i = 0; i < NUM_RUNS; i++)
+                {
+                    transferTime += transfer(data, chunkSize);
+                    plainTime += plainCopy(data, chunkSize);
+                }
+
+                outPrintf("chunk=%7d: BufferStreamTransferer=%6.1f MB/s, plain copy=%6.1f MB/s\n", chunkSize,
+                        speed(transferTime), speed(plainTime));
+            }
+        }
+        catch (Throwable e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    protected static double speed(long nanos)
+    {
+        return ((double) DATA_SIZE * NUM_RUNS / (1024 * 1024)) / (nanos / 1e9);
+    }
+
+    protected static long transfer(byte data[], int chunkSize) throws Exception
+    {
+        InputStream inps = new ByteArrayInputStream(data);
+        NullOutputStream outps = new NullOutputStream();
+
+        long start = System.nanoTime();
+        BufferStreamTransferer transferer = new BufferStreamTransferer(BUFFER_SIZE, inps, outps);
+        transferer.setMaxReadChunkSize(chunkSize);
+        transferer.setMaxWriteChunkSize(chunkSize);
+        transferer.startTransfer(data.length);
+        return System.nanoTime() - start;
+    }
+
+    protected static long plainCopy(byte data[], int chunkSize) throws Exception
+    {
+        InputStream inps = new ByteArrayInputStream(data);
+        NullOutputStream outps = new NullOutputStream();
+
+        long start = System.nanoTime();
+        byte buffer[] = new byte[chunkSize];
+        int len;
+        while ((len = inps.read(buffer)) > 0)
+        {
+            outps.write(buffer, 0, len);
+        }
+        return System.nanoTime() - start;
+    }
+
+    protected static void outPrintf(String format, Object... args)
+    {
+        System.out.printf(format, args);
+    }
+
+}
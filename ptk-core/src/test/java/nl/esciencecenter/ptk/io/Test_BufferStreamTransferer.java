@@ -0,0 +1,138 @@
+/*
+ * Copyrighted 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").  
+ * You may not use this file except in compliance with the License. 
+ * For details, see the LICENCE.txt file location in the root directory of this 
+ * distribution or obtain the Apache License at the following location: 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENCE.txt (located in the root folder of this distribution). 
+ * ---
+ */
+// source: 
+
+package nl.esciencecenter.ptk.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_BufferStreamTransferer
+{
+    /**
+     * InputStream which returns small and irregular chunks to force many buffer wrap arounds.
+     */
+    public static class ChunkedInputStream extends InputStream
+    {
+        private InputStream source;
+
+        private int maxChunk;
+
+        private int count = 0;
+
+        public ChunkedInputStream(byte bytes[], int maxChunk)
+        {
+            this.source = new ByteArrayInputStream(bytes);
+            this.maxChunk = maxChunk;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            return source.read();
+        }
+
+        @Override
+        public int read(byte buffer[], int offset, int len) throws IOException
+        {
+            int chunk = 1 + (count++ % maxChunk);
+            return source.read(buffer, offset, Math.min(len, chunk));
+        }
+    }
+
+    protected static byte[] createData(int size)
+    {
+        byte bytes[] = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            bytes[i] = (byte) ((i * 31) % 253);
+        }
+        return bytes;
+    }
+
+    protected void doTransfer(int dataSize, int bufferSize, int maxChunk, boolean knownSize) throws Exception
+    {
+        byte data[] = createData(dataSize);
+        ByteArrayOutputStream outps = new ByteArrayOutputStream(dataSize);
+
+        BufferStreamTransferer transferer = new BufferStreamTransferer(bufferSize, new ChunkedInputStream(data,
+                maxChunk), outps);
+        transferer.setMaxReadChunkSize(maxChunk);
+        transferer.setMaxWriteChunkSize(maxChunk);
+        transferer.startTransfer(knownSize ? dataSize : -1);
+
+        Assert.assertEquals("Number of written bytes doesn't match", dataSize, transferer.getTotalWritten());
+        Assert.assertArrayEquals("Transferred data doesn't match", data, outps.toByteArray());
+    }
+
+    @Test
+    public void testTransferKnownSize() throws Exception
+    {
+        doTransfer(1000 * 1000 + 7, 4096, 1000, true);
+        doTransfer(1, 4096, 1000, true);
+        doTransfer(0, 4096, 1000, true);
+    }
+
+    @Test
+    public void testTransferUnknownSize() throws Exception
+    {
+        doTransfer(1000 * 1000 + 7, 4096, 1000, false);
+        doTransfer(13, 4096, 1000, false);
+        doTransfer(0, 4096, 1000, false);
+    }
+
+    @Test
+    public void testTransferSmallBuffer() throws Exception
+    {
+        // buffer smaller then chunks: reader and writer must wait for each other.
+        doTransfer(100 * 1000 + 3, 17, 64, true);
+        doTransfer(100 * 1000 + 3, 17, 64, false);
+    }
+
+    @Test
+    public void testTransferReadError() throws Exception
+    {
+        InputStream errorStream = new InputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                throw new IOException("Read error");
+            }
+        };
+
+        BufferStreamTransferer transferer = new BufferStreamTransferer(1024, errorStream, new ByteArrayOutputStream());
+
+        try
+        {
+            transferer.startTransfer(10000);
+            Assert.fail("Transfer should fail when the InputStream fails");
+        }
+        catch (Exception e)
+        {
+            // ok
+        }
+    }
+
+}
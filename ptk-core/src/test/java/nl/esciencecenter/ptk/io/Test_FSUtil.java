@@ -23,6 +23,8 @@ package nl.esciencecenter.ptk.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -191,6 +193,154 @@ public class Test_FSUtil
         testCreateReadWriteFile(getTestDir(), "test RWFile1");
     }
 
+    @Test
+    public void testCopyFile() throws Exception
+    {
+        FSPath tDir = getTestDir();
+
+        FSPath source = tDir.resolve("testCopySource");
+        FSPath target = tDir.resolve("testCopyTarget");
+
+        // larger then the default buffer size
+        byte buffer[] = new byte[3 * 1024 * 1024 + 13];
+        for (int i = 0; i < buffer.length; i++)
+        {
+            buffer[i] = (byte) (i % 251);
+        }
+
+        OutputStream outps = getFSUtil().createOutputStream(source, false);
+        outps.write(buffer);
+        outps.close();
+
+        long num = getFSUtil().copyFile(source, target, null);
+        Assert.assertEquals("Number of copied bytes must match file size", buffer.length, num);
+        Assert.assertEquals("Target file must have same size as source", buffer.length, target.getFileSize());
+
+        InputStream inps = getFSUtil().createInputStream(target);
+        byte buffer2[] = IOUtil.readAll(inps, true);
+        Assert.assertArrayEquals("Contents of copied file differs!", buffer, buffer2);
+
+        source.delete();
+        target.delete();
+    }
+
+    @Test
+    public void testChannelCopyChunks() throws Exception
+    {
+        FSPath tDir = getTestDir();
+
+        FSPath source = tDir.resolve("testChannelCopySource");
+        FSPath target = tDir.resolve("testChannelCopyTarget");
+
+        byte buffer[] = new byte[1024 * 1024 + 13];
+        for (int i = 0; i < buffer.length; i++)
+        {
+            buffer[i] = (byte) (i % 251);
+        }
+
+        OutputStream outps = getFSUtil().createOutputStream(source, false);
+        outps.write(buffer);
+        outps.close();
+
+        // chunk size much smaller then file size: multiple transferTo() calls.
+        try (FileChannel sourceChannel = FileChannel.open(source.path(), StandardOpenOption.READ);
+                FileChannel targetChannel = FileChannel.open(target.path(), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            long num = IOUtil.channelCopy(sourceChannel, targetChannel, -1, 64 * 1024, null);
+            Assert.assertEquals("Number of copied bytes must match file size", buffer.length, num);
+        }
+
+        InputStream inps = getFSUtil().createInputStream(target);
+        byte buffer2[] = IOUtil.readAll(inps, true);
+        Assert.assertArrayEquals("Contents of copied file differs!", buffer, buffer2);
+
+        source.delete();
+        target.delete();
+    }
+
+    @Test
+    public void testRandomReadWrite() throws Exception
+    {
+        testRandomReadWrite(false);
+        testRandomReadWrite(true);
+    }
+
+    public void testRandomReadWrite(boolean memoryMapped) throws Exception
+    {
+        FSPath file = getTestDir().resolve("testRandomRW");
+
+        byte buffer[] = new byte[1024 * 1024 + 13];
+        for (int i = 0; i < buffer.length; i++)
+        {
+            buffer[i] = (byte) (i % 251);
+        }
+
+        // write blocks in reverse order using one writer.
+        FSChannelWriter writer = getFSUtil().createRandomWriter(file);
+        int blockSize = 64 * 1024;
+        for (int offset = (buffer.length / blockSize) * blockSize; offset >= 0; offset -= blockSize)
+        {
+            writer.writeBytes(offset, buffer, offset, Math.min(blockSize, buffer.length - offset));
+        }
+        Assert.assertEquals("Length of written file doesn't match", buffer.length, writer.getLength());
+        writer.close();
+
+        FSChannelReader reader = getFSUtil().createRandomReader(file, memoryMapped);
+        Assert.assertEquals("Length of file doesn't match", buffer.length, reader.getLength());
+
+        byte buffer2[] = new byte[buffer.length];
+        int num = IOUtil.readAll(reader, 0, buffer2, 0, buffer2.length);
+        Assert.assertEquals("Number of bytes read doesn't match", buffer.length, num);
+        Assert.assertArrayEquals("Contents of random read file differs!", buffer, buffer2);
+
+        java.nio.ByteBuffer byteBuffer = java.nio.ByteBuffer.allocate(100);
+        Assert.assertEquals(100, reader.readBytes(12345, byteBuffer));
+        for (int i = 0; i < 100; i++)
+        {
+            Assert.assertEquals("Byte at #" + (12345 + i) + " differs!", buffer[12345 + i], byteBuffer.get(i));
+        }
+
+        Assert.assertEquals("Read at end of file must return EOF", -1, reader.readBytes(buffer.length, buffer2, 0, 10));
+        reader.close();
+
+        file.delete();
+    }
+
+    @Test
+    public void testMappedReadAfterTruncate() throws Exception
+    {
+        FSPath file = getTestDir().resolve("testMappedTruncate");
+        byte buffer[] = new byte[64 * 1024];
+        try (OutputStream outps = getFSUtil().createOutputStream(file, false))
+        {
+            outps.write(buffer);
+        }
+
+        FSChannelReader reader = getFSUtil().createRandomReader(file, true);
+        try
+        {
+            Assert.assertEquals(100, reader.readBytes(0, new byte[100], 0, 100));
+
+            try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file.toJavaFile(), "rw"))
+            {
+                raf.setLength(10);
+            }
+
+            reader.readBytes(32 * 1024, new byte[100], 0, 100);
+            Assert.fail("Mapped read beyond truncated end must throw IOException");
+        }
+        catch (IOException e)
+        {
+            // expected, not an InternalError.
+        }
+        finally
+        {
+            reader.close();
+            file.delete();
+        }
+    }
+
     // ========================================================================
     // Finalize Test Suite: cleanup test dir!
     // ========================================================================
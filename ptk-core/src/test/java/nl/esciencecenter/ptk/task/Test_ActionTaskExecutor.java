@@ -0,0 +1,268 @@
+package nl.esciencecenter.ptk.task;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_ActionTaskExecutor
+{
+
+    public static class SleepTask extends ActionTask
+    {
+        protected static AtomicInteger running = new AtomicInteger();
+
+        protected static AtomicInteger maxRunning = new AtomicInteger();
+
+        protected long sleepTime;
+
+        protected boolean done = false;
+
+        public SleepTask(ITaskSource source, long sleepTime)
+        {
+            super(source, "SleepTask");
+            this.sleepTime = sleepTime;
+        }
+
+        protected void doTask() throws Exception
+        {
+            int num = running.incrementAndGet();
+            synchronized (maxRunning)
+            {
+                if (num > maxRunning.get())
+                {
+                    maxRunning.set(num);
+                }
+            }
+            try
+            {
+                Thread.sleep(sleepTime);
+                done = true;
+            }
+            finally
+            {
+                running.decrementAndGet();
+            }
+        }
+
+        protected void stopTask() throws Exception
+        {
+        }
+    }
+
+    @Test
+    public void testJoin() throws Exception
+    {
+        ActionTaskExecutor executor = new ActionTaskExecutor(4, 1000);
+        TaskWatcher watcher = new TaskWatcher("testJoin");
+
+        SleepTask task = new SleepTask(watcher, 100);
+        task.startTask(executor);
+        Assert.assertTrue("Started task must be alive", task.isAlive());
+        Assert.assertTrue("join() must return true for active task", task.join());
+        Assert.assertTrue("Task must have finished after join()", task.done);
+        Assert.assertFalse("Finished task can not be alive", task.isAlive());
+        Assert.assertFalse("join() must return false for finished task", task.join());
+        Assert.assertTrue("Run time must be recorded", task.getRunTime() >= 100);
+        Assert.assertEquals(1, watcher.getRunTimeHistogram().getCount());
+        Assert.assertEquals(0, watcher.getRunningTaskCount());
+    }
+
+    @Test
+    public void testThreadReuse() throws Exception
+    {
+        ActionTaskExecutor executor = new ActionTaskExecutor(4, 10000);
+        TaskWatcher watcher = new TaskWatcher("testThreadReuse");
+
+        for (int i = 0; i < 10; i++)
+        {
+            SleepTask task = new SleepTask(watcher, 1);
+            task.startTask(executor);
+            task.join();
+        }
+
+        Assert.assertEquals(10, executor.getSubmittedTaskCount());
+        Assert.assertTrue("Sequential tasks should reuse pool threads", executor.getPoolSize() <= 2);
+        Assert.assertEquals(0, executor.getOverflowThreadCount());
+    }
+
+    @Test
+    public void testMaxConcurrentTasks() throws Exception
+    {
+        ActionTaskExecutor executor = new ActionTaskExecutor(8, 1000);
+        TaskWatcher watcher = new TaskWatcher("testMaxConcurrentTasks");
+        executor.setMaxConcurrentTasks(watcher, 2);
+        SleepTask.maxRunning.set(0);
+
+        SleepTask tasks[] = new SleepTask[6];
+        for (int i = 0; i < tasks.length; i++)
+        {
+            tasks[i] = new SleepTask(watcher, 50);
+            tasks[i].startTask(executor);
+        }
+
+        Assert.assertEquals("Tasks beyond limit must be queued", 4, executor.getQueuedTaskCount(watcher));
+
+        for (SleepTask task : tasks)
+        {
+            task.joinAll(10000);
+            Assert.assertTrue("Queued task must have been executed", task.done);
+        }
+
+        Assert.assertTrue("Concurrency limit exceeded", SleepTask.maxRunning.get() <= 2);
+        Assert.assertEquals(0, executor.getQueuedTaskCount());
+        Assert.assertEquals(6, watcher.getQueueTimeHistogram().getCount());
+    }
+
+    @Test
+    public void testCancelQueuedTask() throws Exception
+    {
+        ActionTaskExecutor executor = new ActionTaskExecutor(8, 1000);
+        TaskWatcher watcher = new TaskWatcher("testCancelQueuedTask");
+        executor.setMaxConcurrentTasks(watcher, 1);
+
+        SleepTask first = new SleepTask(watcher, 200);
+        SleepTask second = new SleepTask(watcher, 200);
+        first.startTask(executor);
+        second.startTask(executor);
+
+        second.signalTerminate();
+        Assert.assertFalse("Cancelled queued task can not be alive", second.isAlive());
+        Assert.assertFalse(second.join());
+
+        first.join();
+        Assert.assertTrue(first.done);
+        Assert.assertFalse("Cancelled queued task may not run", second.done);
+        Assert.assertEquals(0, executor.getQueuedTaskCount());
+    }
+
+    public static class ParentTask extends ActionTask
+    {
+        protected SleepTask child;
+
+        protected ActionTaskExecutor executor;
+
+        public ParentTask(ITaskSource source, ActionTaskExecutor executor)
+        {
+            super(source, "ParentTask");
+            this.executor = executor;
+        }
+
+        protected void doTask() throws Exception
+        {
+            // child of same source, parent holds the only slot.
+            child = new SleepTask(getTaskSource(), 10);
+            child.startTask(executor);
+            child.join();
+        }
+
+        protected void stopTask() throws Exception
+        {
+        }
+    }
+
+    @Test
+    public void testNestedTaskNotQueued() throws Exception
+    {
+        ActionTaskExecutor executor = new ActionTaskExecutor(8, 1000);
+        TaskWatcher watcher = new TaskWatcher("testNestedTaskNotQueued");
+        executor.setMaxConcurrentTasks(watcher, 1);
+
+        ParentTask parent = new ParentTask(watcher, executor);
+        parent.startTask(executor);
+        parent.joinAll(5000);
+
+        Assert.assertFalse("Parent waiting for nested task may not deadlock", parent.isAlive());
+        Assert.assertTrue("Nested task must have been executed", parent.child.done);
+
+        // slot must have been released by the parent only.
+        SleepTask next = new SleepTask(watcher, 1);
+        next.startTask(executor);
+        next.joinAll(5000);
+        Assert.assertTrue(next.done);
+        Assert.assertEquals(0, executor.getQueuedTaskCount());
+    }
+
+    @Test
+    public void testOverflowThreadsBounded() throws Exception
+    {
+        ActionTaskExecutor executor = new ActionTaskExecutor(1, 2, 1000);
+        TaskWatcher watcher = new TaskWatcher("testOverflowThreadsBounded");
+        SleepTask.maxRunning.set(0);
+
+        SleepTask tasks[] = new SleepTask[8];
+        for (int i = 0; i < tasks.length; i++)
+        {
+            tasks[i] = new SleepTask(watcher, 50);
+            tasks[i].startTask(executor);
+        }
+
+        Assert.assertTrue("Overflow threads exceeded", executor.getActiveOverflowThreadCount() <= 2);
+        Assert.assertTrue("Excess tasks must wait in backlog", executor.getOverflowBacklogCount() > 0);
+
+        for (SleepTask task : tasks)
+        {
+            task.joinAll(10000);
+            Assert.assertTrue("Backlog task must have been executed", task.done);
+        }
+
+        Assert.assertTrue("Thread bound exceeded", SleepTask.maxRunning.get() <= 3);
+        Assert.assertEquals(0, executor.getOverflowBacklogCount());
+    }
+
+    @Test
+    public void testDaemonThreads() throws Exception
+    {
+        ActionTaskExecutor executor = new ActionTaskExecutor(1, 1000);
+        final boolean daemon[] = new boolean[2];
+
+        ActionTask tasks[] = new ActionTask[2];
+        for (int i = 0; i < tasks.length; i++)
+        {
+            final int index = i;
+            tasks[i] = new ActionTask(null, "DaemonTask")
+            {
+                protected void doTask() throws Exception
+                {
+                    daemon[index] = Thread.currentThread().isDaemon();
+                    Thread.sleep(50);
+                }
+
+                protected void stopTask() throws Exception
+                {
+                }
+            };
+            tasks[i].startTask(executor);
+        }
+
+        for (ActionTask task : tasks)
+        {
+            task.joinAll(5000);
+        }
+
+        Assert.assertEquals("Second task must run in overflow thread", 1, executor.getOverflowThreadCount());
+        Assert.assertTrue("Pool thread must be daemon", daemon[0]);
+        Assert.assertTrue("Overflow thread must be daemon", daemon[1]);
+    }
+
+    @Test
+    public void testLatencyHistogram()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(-1, histogram.getPercentileMillis(50));
+
+        for (int i = 0; i < 99; i++)
+        {
+            histogram.record(3);
+        }
+        histogram.record(1000);
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(1000, histogram.getMaxMillis());
+        // 3ms is in bucket [2,4)
+        Assert.assertEquals(99, histogram.getBucketCount(2));
+        Assert.assertEquals(4, histogram.getPercentileMillis(50));
+        Assert.assertEquals(1000, histogram.getPercentileMillis(100));
+    }
+
+}
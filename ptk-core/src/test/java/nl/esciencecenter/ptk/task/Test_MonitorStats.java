@@ -26,5 +26,34 @@ public class Test_MonitorStats
         Assert.assertEquals("NULL MonitorStats getETA() should return -1",-1,empty.getETA()); 
         Assert.assertEquals("NULL MonitorStats getTotalDoneTime() should return -1",-1, empty.getTotalDoneTime());
     }
-    
+
+    @Test
+    public void testWindowSpeed() throws Exception
+    {
+        TaskMonitorAdaptor taskMonitor=new TaskMonitorAdaptor();
+        taskMonitor.startTask("task", 1000000);
+        MonitorStats stats=new MonitorStats(taskMonitor);
+
+        Assert.assertEquals("No samples, no window speed",-1.0,stats.getWindowSpeed(),0.0);
+
+        // slow start
+        taskMonitor.updateTaskDone(1000);
+        stats.getWindowSpeed();
+        Thread.sleep(200);
+        // fast period
+        taskMonitor.updateTaskDone(101000);
+        Thread.sleep(200);
+        double speed=stats.getWindowSpeed();
+        Assert.assertTrue("Window speed should be positive:"+speed,speed>0);
+
+        // after the window has passed without progress, window speed drops to zero.
+        stats.setSpeedWindow(150);
+        Thread.sleep(200);
+        stats.getWindowSpeed();
+        Thread.sleep(200);
+        Assert.assertEquals("Stalled task should have zero window speed",0.0,stats.getWindowSpeed(),0.0);
+        Assert.assertEquals("Stalled task has unknown window ETA",-1,stats.getWindowETA());
+        Assert.assertTrue("Total speed should still be positive",stats.getTotalSpeed()>0);
+    }
+
 }
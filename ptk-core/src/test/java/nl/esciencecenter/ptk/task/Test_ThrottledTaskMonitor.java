@@ -0,0 +1,76 @@
+package nl.esciencecenter.ptk.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_ThrottledTaskMonitor
+{
+
+    @Test
+    public void testThrottleUpdates()
+    {
+        TaskMonitorAdaptor monitor = new TaskMonitorAdaptor();
+        // very low rate: no updates are forwarded until a flush.
+        ThrottledTaskMonitor throttled = new ThrottledTaskMonitor(monitor, 0.001);
+
+        throttled.startTask("task", 1000);
+        throttled.startSubTask("subtask", 1000);
+
+        for (int i = 1; i <= 1000; i++)
+        {
+            throttled.updateTaskDone(i);
+            throttled.updateSubTaskDone("subtask", i);
+        }
+
+        Assert.assertEquals(2000, throttled.getNumUpdates());
+        Assert.assertEquals("No updates should have been forwarded", 0, throttled.getNumForwarded());
+        Assert.assertEquals(0, monitor.getTaskStats().done);
+        Assert.assertEquals(0, monitor.getSubTaskStats("subtask").done);
+
+        // end calls must flush the final values
+        throttled.endSubTask("subtask");
+        Assert.assertEquals(1000, monitor.getSubTaskStats("subtask").done);
+        throttled.endTask("task");
+        Assert.assertEquals(1000, monitor.getTaskStats().done);
+        Assert.assertTrue(monitor.isDone());
+    }
+
+    @Test
+    public void testFlush()
+    {
+        TaskMonitorAdaptor monitor = new TaskMonitorAdaptor();
+        ThrottledTaskMonitor throttled = new ThrottledTaskMonitor(monitor, 0.001);
+
+        throttled.startTask("task", 100);
+        throttled.updateTaskDone(1);
+        throttled.updateTaskDone(50);
+        Assert.assertEquals(0, monitor.getTaskStats().done);
+
+        throttled.flush();
+        Assert.assertEquals(50, monitor.getTaskStats().done);
+    }
+
+    @Test
+    public void testNoThrottle()
+    {
+        TaskMonitorAdaptor monitor = new TaskMonitorAdaptor();
+        ThrottledTaskMonitor throttled = new ThrottledTaskMonitor(monitor, 0);
+
+        throttled.startTask("task", 100);
+        for (int i = 1; i <= 100; i++)
+        {
+            throttled.updateTaskDone(i);
+            Assert.assertEquals(i, monitor.getTaskStats().done);
+        }
+        Assert.assertEquals(100, throttled.getNumForwarded());
+    }
+
+    @Test
+    public void testWrap()
+    {
+        Assert.assertNull(ThrottledTaskMonitor.wrap(null));
+        ITaskMonitor throttled = ThrottledTaskMonitor.wrap(new TaskMonitorAdaptor());
+        Assert.assertSame("Throttled monitor should not be wrapped again", throttled, ThrottledTaskMonitor.wrap(throttled));
+    }
+
+}
@@ -238,7 +238,7 @@ public class TaskMonitorPanel extends JPanel implements ActionListener {
 
         // TransferSpeed ONLY for VFS Transfers !
         if (showTransfersSpeeds)
-            progstr += " (" + speedStr + ")";
+            progstr += " (" + sizeString((int) monitorStats.getCurrentSpeed()) + "B/s)";
 
         progstr += monitorStats.createTotalBytesTransferredString();
 
@@ -224,7 +224,7 @@ public class TransferMonitorPanel extends JPanel {
         progstr += ", " + amountStr;
 
         // TransferSpeed ONLY for VFS Transfers !
-        progstr += " (" + speedStr + ")";
+        progstr += " (" + sizeString((int) monitorStats.getCurrentSpeed()) + "B/s)";
 
         return progstr;
     }
@@ -254,7 +254,7 @@ public class TransferMonitorPanel extends JPanel {
         }
 
         progstr = doneStr + "B (of " + todoStr + "B)";
-        progstr += " (" + sizeString((int) this.monitorStats.getSubTaskSpeed(subTask)) + "B/s)";
+        progstr += " (" + sizeString((int) this.monitorStats.getSubTaskWindowSpeed(subTask)) + "B/s)";
 
         return progstr;
     }
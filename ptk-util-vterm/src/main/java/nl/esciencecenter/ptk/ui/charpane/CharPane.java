@@ -61,6 +61,15 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
 
     public static final String OPTION_ALWAYS_SYNCHRONIZED_SCROLLING = "optionAlwaysSynchronizedScrolling";
 
+    /** Maximum number of lines in the scrollback buffer */
+    public static final String OPTION_SCROLLBACK_LINES = "optionScrollbackLines";
+
+    /** Blink animation interval in milliseconds */
+    public static final int ANIMATION_INTERVAL = 40;
+
+    /** Maximum time the renderer waits for changes */
+    public static final int RENDER_IDLE_TIMEOUT = 1000;
+
     // Graphics Set:Reverse engineered from xterm codes:
     // echo <ESC>")0"<CTRL-N>"abcdefghijklmnopqrstuvwxyz"<CTRL-O>
     // Note, java uses 16-bit chars, following string are utf-8:
@@ -128,7 +137,7 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
                 for (int x = 0; x < nr_columns; x++)
                     textBuffer[y][x].clear();
 
-            this.bufferChanged = true;
+            markChanged();
         }
 
         /** Puts actual object into text array. Doesn't copy object ! */
@@ -138,7 +147,7 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
 
             textBuffer[y][x] = newChar;
             newChar.hasChanged = true;
-            this.bufferChanged = true;
+            markChanged();
         }
 
         public boolean checkBounds(int x, int y) {
@@ -165,6 +174,14 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
             return val;
         }
 
+        /** Returns actual row of StyleChars. Doesn't copy objects ! */
+        protected StyleChar[] getRow(int y) {
+            if ((textBuffer == null) || (y < 0) || (y >= textBuffer.length))
+                return null;
+
+            return textBuffer[y];
+        }
+
         /** Returns actual object in text array */
         public StyleChar get(int x, int y) {
             if (checkBounds(x, y) == false)
@@ -202,7 +219,7 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
                         }
 
                     }
-            this.bufferChanged = true;
+            markChanged();
         }
 
         public void needsRepaint(int x, int y, boolean val) {
@@ -212,7 +229,7 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
             textBuffer[y][x].hasChanged = val;
 
             if (val == true)
-                this.bufferChanged = true;
+                markChanged();
         }
 
         public void clear(int x, int y) {
@@ -220,23 +237,48 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
                 return;
 
             textBuffer[y][x].clear();
-            this.bufferChanged = true;
+            markChanged();
         }
 
         /** Copy [dest]=[source] */
         public void copy(int destx, int desty, int sourcex, int sourcey) {
+            copy(destx, desty, sourcex, sourcey, false);
+        }
+
+        /**
+         * Copy [dest]=[source]. If keepChanged==true, the destination keeps the repaint state of the
+         * source, for when the rendered image has been moved as well.
+         */
+        public void copy(int destx, int desty, int sourcex, int sourcey, boolean keepChanged) {
             if (checkBounds(sourcex, sourcey) == false)
                 return;
             if (checkBounds(destx, desty) == false)
                 return;
             // copy values !
             // do not copy object reference.
-            textBuffer[desty][destx].copyFrom(textBuffer[sourcey][sourcex]);
-            this.bufferChanged = true;
+            StyleChar source = textBuffer[sourcey][sourcex];
+            boolean sourceChanged = source.hasChanged;
+            textBuffer[desty][destx].copyFrom(source);
+
+            if (keepChanged)
+                textBuffer[desty][destx].hasChanged = sourceChanged;
+
+            markChanged();
         }
 
         public void setChanged(boolean val) {
-            this.bufferChanged = val;
+            if (val)
+                markChanged();
+            else
+                this.bufferChanged = false;
+        }
+
+        /** Set changed and wake up renderer if this is the first change since last rendering */
+        private void markChanged() {
+            if (bufferChanged == false) {
+                bufferChanged = true;
+                requestRender();
+            }
         }
 
         public boolean hasChanged() {
@@ -304,6 +346,15 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
 
     private TextBuffer fullBuffer;
 
+    /** Lines scrolled off the top of the (full) screen */
+    private ScrollbackBuffer scrollbackBuffer = new ScrollbackBuffer();
+
+    /** Number of lines the view has been scrolled back into the scrollback buffer */
+    private int scrollbackOffset = 0;
+
+    /** Composed view of scrollback lines and screen lines when scrolled back */
+    private TextBuffer historyView;
+
     // === Font Metrics ===
     private java.awt.Font fontPlain;
 
@@ -319,6 +370,9 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
 
     private Font fontItalicBold;
 
+    /** Rendered character cells */
+    private GlyphCache glyphCache = new GlyphCache();
+
     // === Curent Draw Style ===
     private int drawStyle = 0;
 
@@ -345,6 +399,19 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
     /** Whether whole text buffer should be painted or only the characters which have changed */
     private boolean paintCompleteTextBuffer = false;
 
+    /** Renderer waits on this mutex until the text buffer has changed */
+    private Object renderMutex = new Object();
+
+    private boolean renderRequested = false;
+
+    /** Area of the text image which has been updated, but not repainted by Swing yet */
+    private Rectangle dirtyArea = null;
+
+    /** Position where the cursor has been drawn in the text image, -1 if not drawn */
+    private int paintedCursorX = -1;
+
+    private int paintedCursorY = -1;
+
     // ===============================
     // Text Rendering options
     // ===============================
@@ -367,6 +434,15 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
     /** set to false: Delta character renderer seems to work now */
     private boolean optionAlwaysPaintCompleteTextBuffer = false;
 
+    /** Render characters from cached cell images. Italic characters are always rendered directly. */
+    private boolean optionUseGlyphCache = true;
+
+    /** Scroll the text image together with the text buffer instead of rendering all lines again */
+    private boolean optionBlitScroll = true;
+
+    /** Minimum time between two renderings, so that updates are combined into one frame */
+    private int optionRenderInterval = 15;
+
     private Map<Key, ?> renderingHints;
 
     // ========================================================================
@@ -426,7 +502,7 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
 
         if ((refreshTimer == null) || (refreshTimer.isRunning() == false)) {
             // timer
-            refreshTimer = new Timer(10, this);
+            refreshTimer = new Timer(ANIMATION_INTERVAL, this);
             refreshTimer.setInitialDelay(100); // animate 10 per second (blink)
             refreshTimer.start();
         }
@@ -434,6 +510,8 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
 
     private void doRender() {
         while (this.mustStop == false) {
+            boolean rendered = false;
+
             synchronized (this.textBufferMutex) {
                 if (this.currentBuffer != null) {
                     // check whether complete buffer need to be render or a part:
@@ -455,14 +533,26 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
                         if (succesfull == false)
                             this.currentBuffer.setChanged(true);
 
-                        // call repaint anyway
-                        repaint();
+                        rendered = true;
                     }
                 }
             }
 
+            // repaint updated area only
+            if (rendered)
+                repaintDirtyArea();
+
             try {
-                Thread.sleep(10);
+                // combine updates which arrive during the render interval.
+                if (rendered)
+                    Thread.sleep(optionRenderInterval);
+
+                // sleep until text buffer changes:
+                synchronized (renderMutex) {
+                    if ((renderRequested == false) && (mustStop == false))
+                        renderMutex.wait(RENDER_IDLE_TIMEOUT);
+                    renderRequested = false;
+                }
             } catch (InterruptedException e) {
                 logger.debugPrintf("***Interrupted:%s\n", e);
             }
@@ -471,6 +561,36 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
         logger.debugPrintf(">>> EXIT DO RENDER <<<\n");
     }
 
+    /** Wake up render thread */
+    private void requestRender() {
+        synchronized (renderMutex) {
+            renderRequested = true;
+            renderMutex.notifyAll();
+        }
+    }
+
+    /** Add pixel area of text image which must be repainted by Swing */
+    private void addDirtyArea(int x, int y, int width, int height) {
+        synchronized (paintImageMutex) {
+            if (dirtyArea == null)
+                dirtyArea = new Rectangle(x, y, width, height);
+            else
+                dirtyArea.add(new Rectangle(x, y, width, height));
+        }
+    }
+
+    private void repaintDirtyArea() {
+        Rectangle area;
+
+        synchronized (paintImageMutex) {
+            area = dirtyArea;
+            dirtyArea = null;
+        }
+
+        if (area != null)
+            repaint(area.x, area.y, area.width, area.height);
+    }
+
     /**
      * Initialize Backing Image. Since the parent is used to as image source, it must be diplayable,
      * so this method fails when the parent isn't visible. !
@@ -583,6 +703,9 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
 
         renderingHints = finfo.getRenderingHints();
 
+        // new font or rendering hints: render cells again.
+        glyphCache.clear();
+
         // DISPOSE:
         dummyImage.flush();
     }
@@ -663,8 +786,21 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
             int h = currentImage.getHeight(null);
             int imageOffsetx = 0;
             int imageOffsety = 0;
+
+            // only copy the (dirty) area which must be repainted:
+            if (clip != null) {
+                int x2 = Math.min(clip.x + clip.width, w);
+                int y2 = Math.min(clip.y + clip.height, h);
+                imageOffsetx = Math.max(clip.x, 0);
+                imageOffsety = Math.max(clip.y, 0);
+                w = x2 - imageOffsetx;
+                h = y2 - imageOffsety;
+            }
+
             // Note: Component offset has already been added into graphics context by Parent!
-            g.drawImage(currentImage, 0, 0, w, h, imageOffsetx, imageOffsety, w, h, this);
+            if ((w > 0) && (h > 0))
+                g.drawImage(currentImage, imageOffsetx, imageOffsety, imageOffsetx + w, imageOffsety + h,
+                        imageOffsetx, imageOffsety, imageOffsetx + w, imageOffsety + h, this);
         }
 
         // Post painting: Notify waiting threads:
@@ -748,6 +884,21 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
             graphics.setFont(fontPlain);
             graphics.setColor(this.colorMap.getForeground());
 
+            // when scrolled back, paint composed view of history and screen lines.
+            TextBuffer buffer = currentBuffer;
+            int cursorViewY = cursorY;
+            if (scrollbackOffset > 0) {
+                buffer = updateHistoryView();
+                cursorViewY = cursorY + scrollbackOffset;
+                paintAll = true;
+            }
+
+            // bounds of painted characters:
+            int dirtyX1 = x2;
+            int dirtyY1 = y2;
+            int dirtyX2 = x1;
+            int dirtyY2 = y1;
+
             for (int y = y1; y < y2; y++) {
                 // whether next character already has been cleared:
                 boolean paintBackgroundAheadDone = false;
@@ -756,7 +907,7 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
                     int xpos = x * charwidth;
                     int ypos = y * charheight;
 
-                    StyleChar sChar = currentBuffer.get(x, y);
+                    StyleChar sChar = buffer.get(x, y);
 
                     if (sChar == null) {
                         logger.errorPrintf("NULL char at:%d,%d\n", x, y);
@@ -780,7 +931,8 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
                     boolean paintBackground = true;
                     boolean paintBackgroundAhead = false;
 
-                    if (sChar.isItalic() || sChar.isUberBold()) {
+                    // cached uberbold characters are clipped to their own cell.
+                    if (sChar.isItalic() || (sChar.isUberBold() && (optionUseGlyphCache == false))) {
                         // clear next char
                         paintBackgroundAhead = true;
                     }
@@ -789,29 +941,34 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
                     if (paintBackgroundAheadDone)
                         paintBackground = false;
 
+                    paintBackgroundAheadDone = false;
+
                     // ====
 
                     // first clear next:
-                    if (paintBackgroundAhead == true)
-                        ;
-                    {
-                        StyleChar nextChar = currentBuffer.get(x + 1, y);
+                    if (paintBackgroundAhead == true) {
+                        StyleChar nextChar = buffer.get(x + 1, y);
 
                         if (nextChar != null) {
                             // clear neighbour background:
                             renderChar(graphics, nextChar, xpos + charwidth, ypos, true, false);
                             // form next drawing that field already has been cleared.
-                            this.currentBuffer.needsRepaint(x + 1, y, true); // update draw field !
+                            buffer.needsRepaint(x + 1, y, true); // update draw field !
                             paintBackgroundAheadDone = true;
                         }
                     }
 
                     // draw current:
                     renderChar(graphics, sChar, xpos, ypos, paintBackground, true);
-                    this.currentBuffer.needsRepaint(x, y, false); // has been drawn
+                    buffer.needsRepaint(x, y, false); // has been drawn
+
+                    dirtyX1 = Math.min(dirtyX1, x);
+                    dirtyY1 = Math.min(dirtyY1, y);
+                    dirtyX2 = Math.max(dirtyX2, paintBackgroundAheadDone ? x + 2 : x + 1);
+                    dirtyY2 = Math.max(dirtyY2, y + 1);
 
                     // check/update cursor:
-                    if ((showCursor) && (x == cursorX) && (y == cursorY)) {
+                    if ((showCursor) && (x == cursorX) && (y == cursorViewY)) {
                         // System.err.println("paintCursor="+x+","+y);
                         // draw cursor:
                         graphics.setXORMode(this.colorMap.getForeground());
@@ -819,9 +976,23 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
 
                         graphics.fillRect(xpos, ypos, charwidth - 1, charheight - 1);
                         graphics.setPaintMode();
+
+                        paintedCursorX = x;
+                        paintedCursorY = y;
+                    } else if ((x == paintedCursorX) && (y == paintedCursorY)) {
+                        // cursor has been painted over.
+                        paintedCursorX = -1;
+                        paintedCursorY = -1;
                     }
                 } // for y
             } // for x
+
+            graphics.dispose();
+
+            if ((dirtyX1 < dirtyX2) && (dirtyY1 < dirtyY2)) {
+                addDirtyArea(dirtyX1 * charwidth, dirtyY1 * charheight, (dirtyX2 - dirtyX1) * charwidth,
+                        (dirtyY2 - dirtyY1) * charheight);
+            }
         }
 
         // notify waiting threads:
@@ -832,6 +1003,38 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
         return true;
     }
 
+    /**
+     * Compose view of the scrollback lines and the top screen lines. Must be called with the
+     * textBufferMutex.
+     */
+    private TextBuffer updateHistoryView() {
+        Dimension size = (historyView != null) ? historyView.getSize() : null;
+
+        if ((size == null) || (size.width != nr_columns) || (size.height != nr_rows)) {
+            historyView = new TextBuffer(nr_columns, nr_rows, nr_rows);
+        }
+
+        int numHistoryLines = scrollbackBuffer.getNumLines();
+
+        for (int y = 0; y < nr_rows; y++) {
+            if (y < scrollbackOffset) {
+                StyleChar row[] = historyView.getRow(y);
+                if (row != null) {
+                    scrollbackBuffer.getLine(numHistoryLines - scrollbackOffset + y, row, nr_columns);
+                }
+            } else {
+                for (int x = 0; x < nr_columns; x++) {
+                    StyleChar sChar = currentBuffer.get(x, y - scrollbackOffset);
+                    if (sChar != null) {
+                        historyView.set(x, y, sChar);
+                    }
+                }
+            }
+        }
+
+        return historyView;
+    }
+
     private void updateRenderingHints(Graphics2D graphics) {
         if (this.renderingHints == null)
             return;
@@ -892,6 +1095,13 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
         int charHeight = getLineHeight();
         int charWidth = getCharWidth();
 
+        // Cached cell contains background and character: italic chars 'lean' into the next cell.
+        if ((paintBackground) && (paintForeground) && (optionUseGlyphCache) && (sChar.isItalic() == false)
+                && (sChar.isChar(' ') == false)) {
+            renderCachedChar(imageGraphics, fg, bg, xpos, ypos, charWidth, charHeight, sChar);
+            return;
+        }
+
         // Paint background
         if (paintBackground) {
             imageGraphics.setColor(bg);
@@ -905,13 +1115,48 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
             // background image ?
             // ; space already drawn.
         } else {
-            boolean isGraphicsChar = isGraphicsCharSet(sChar.charSet);
-            if (isGraphicsChar && this.optionUseOwnGraphicsCharsetRenderer)
-                renderGraphicsChar(imageGraphics, fg, bg, xpos, ypos, charWidth, charHeight, sChar);
-            else
-                renderPlainChar(imageGraphics, fg, bg, xpos, ypos, charWidth, charHeight, sChar);
+            renderForeground(imageGraphics, fg, bg, xpos, ypos, charWidth, charHeight, sChar);
+        }
+
+    }
+
+    private void renderForeground(Graphics imageGraphics, Color fg, Color bg, int xpos, int ypos,
+            int charWidth, int charHeight, StyleChar sChar) {
+        boolean isGraphicsChar = isGraphicsCharSet(sChar.charSet);
+        if (isGraphicsChar && this.optionUseOwnGraphicsCharsetRenderer)
+            renderGraphicsChar(imageGraphics, fg, bg, xpos, ypos, charWidth, charHeight, sChar);
+        else
+            renderPlainChar(imageGraphics, fg, bg, xpos, ypos, charWidth, charHeight, sChar);
+    }
+
+    /**
+     * Copy character cell from the glyph cache. The cell is rendered once per combination of
+     * character, style and colors.
+     */
+    private void renderCachedChar(Graphics imageGraphics, Color fg, Color bg, int xpos, int ypos,
+            int charWidth, int charHeight, StyleChar sChar) {
+        int codePoint = sChar.getCodePoint();
+        int style = sChar.style;
+
+        if (isGraphicsCharSet(sChar.charSet))
+            style |= GlyphCache.STYLE_GRAPHICS_CHARSET;
+
+        glyphCache.setCellSize(charWidth, charHeight);
+        BufferedImage cell = glyphCache.get(codePoint, style, fg.getRGB(), bg.getRGB());
+
+        if (cell == null) {
+            cell = glyphCache.createCellImage();
+            Graphics2D cellGraphics = cell.createGraphics();
+            updateRenderingHints(cellGraphics);
+            cellGraphics.setColor(bg);
+            cellGraphics.fillRect(0, 0, charWidth, charHeight);
+            renderForeground(cellGraphics, fg, bg, 0, 0, charWidth, charHeight, sChar);
+            cellGraphics.dispose();
+
+            glyphCache.put(codePoint, style, fg.getRGB(), bg.getRGB(), cell);
         }
 
+        imageGraphics.drawImage(cell, xpos, ypos, null);
     }
 
     private void renderGraphicsChar(Graphics imageGraphics, Color fg, Color bg, int xpos, int ypos,
@@ -1134,17 +1379,13 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
         else
             imageGraphics.setFont(fontPlain);
 
-        Graphics2D g2d = (Graphics2D) imageGraphics;
-
-        if (this.fontInfo.getRenderingHints() != null) {
-            g2d.setRenderingHints(fontInfo.getRenderingHints());
-        }
+        // Rendering hints have already been set by paintTextBuffer() or renderCachedChar().
 
         // =========================
         // Actual Rendering
         // =========================
 
-        // slow :
+        // slow, but cached:
         if (uberbold) {
             Color shadedFG = ColorMap.blendColor(bg, fg, 0.5, true);
 
@@ -1307,6 +1548,15 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
     // not fully tested yet. If filler==null => clear values
     public void move(int startX, int startY, int width, int height, int toX, int toY,
             StyleChar filler) {
+        move(startX, startY, width, height, toX, toY, filler, false);
+    }
+
+    /**
+     * Move characters. If keepChanged==true, the moved characters keep their repaint state, for when
+     * the text image has been moved as well.
+     */
+    private void move(int startX, int startY, int width, int height, int toX, int toY,
+            StyleChar filler, boolean keepChanged) {
         int beginx = 0;
         int stepx = 1;
         int endx = width;
@@ -1334,7 +1584,7 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
                 // rows
                 for (int i = beginx; i != endx; i += stepx) // columns
                 {
-                    currentBuffer.copy(toX + i, toY + j, startX + i, startY + j);
+                    currentBuffer.copy(toX + i, toY + j, startX + i, startY + j, keepChanged);
                     if (filler == null)
                         currentBuffer.clear(startX + i, startY + j);// clear source
                     else
@@ -1345,10 +1595,162 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
     }
 
     public void scrollRegion(int startline, int endline, int lines, boolean up) {
-        if (up)
-            move(0, startline + lines, nr_columns, endline - startline - lines, 0, startline);
-        else
-            move(0, startline, nr_columns, endline - startline - lines, 0, startline + lines);
+        // save lines which scroll off the top of the main screen:
+        if ((up) && (startline == 0)) {
+            addScrollbackLines(Math.min(lines, endline - startline));
+        }
+
+        synchronized (textBufferMutex) {
+            // scroll rendered image as well: only the cleared lines have to be rendered.
+            boolean blitted = blitScrollRegion(startline, endline, lines, up);
+
+            if (up)
+                move(0, startline + lines, nr_columns, endline - startline - lines, 0, startline, null,
+                        blitted);
+            else
+                move(0, startline, nr_columns, endline - startline - lines, 0, startline + lines, null,
+                        blitted);
+
+            // cursor has been moved along with the image, repaint it at its new position:
+            if (blitted) {
+                int sourceLine = (up) ? startline + lines : startline;
+                int sourceEnd = (up) ? endline : endline - lines;
+                if ((paintedCursorY >= sourceLine) && (paintedCursorY < sourceEnd)) {
+                    paintedCursorY += (up) ? -lines : lines;
+                    characterChanged(paintedCursorX, paintedCursorY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scroll the lines of the text image. The repaint state of the characters must be moved
+     * together with the lines. Must be called with the textBufferMutex.
+     * 
+     * @return true if the image has been scrolled.
+     */
+    private boolean blitScrollRegion(int startline, int endline, int lines, boolean up) {
+        int numLines = endline - startline - lines;
+
+        if ((optionBlitScroll == false) || (currentImage == null) || (numLines <= 0))
+            return false;
+
+        // complete (history) view will be painted anyway:
+        if ((scrollbackOffset > 0) || (paintCompleteTextBuffer) || (optionAlwaysPaintCompleteTextBuffer))
+            return false;
+
+        int lineHeight = getLineHeight();
+        int width = getImageWidth();
+        int dy = (up) ? -lines : lines;
+        int sourceLine = (up) ? startline + lines : startline;
+
+        Graphics graphics = currentImage.getGraphics();
+        try {
+            graphics.copyArea(0, sourceLine * lineHeight, width, numLines * lineHeight, 0, dy * lineHeight);
+        } finally {
+            graphics.dispose();
+        }
+
+        addDirtyArea(0, startline * lineHeight, width, (endline - startline) * lineHeight);
+        currentBuffer.setChanged(true);
+
+        return true;
+    }
+
+    private void addScrollbackLines(int numLines) {
+        synchronized (textBufferMutex) {
+            if ((currentBuffer != fullBuffer) || (numLines <= 0)) {
+                return;
+            }
+
+            for (int y = 0; y < numLines; y++) {
+                StyleChar row[] = fullBuffer.getRow(y);
+                if (row != null) {
+                    scrollbackBuffer.addLine(row, nr_columns);
+                }
+            }
+
+            if (scrollbackOffset > 0) {
+                // keep current view while new lines are added.
+                scrollbackOffset = Math.min(scrollbackOffset + numLines, scrollbackBuffer.getNumLines());
+            }
+        }
+    }
+
+    /**
+     * Scroll view into the scrollback buffer.
+     * 
+     * @param numLines
+     *            - number of lines to scroll back, negative values scroll forward.
+     */
+    public void scrollHistory(int numLines) {
+        synchronized (textBufferMutex) {
+            setScrollbackOffset(scrollbackOffset + numLines);
+        }
+    }
+
+    /** Scroll view back to the current screen */
+    public void scrollToBottom() {
+        synchronized (textBufferMutex) {
+            setScrollbackOffset(0);
+        }
+    }
+
+    private void setScrollbackOffset(int offset) {
+        // no history for alternative screen buffer.
+        if (currentBuffer != fullBuffer) {
+            offset = 0;
+        }
+
+        offset = Math.max(0, Math.min(offset, scrollbackBuffer.getNumLines()));
+
+        if (offset != scrollbackOffset) {
+            scrollbackOffset = offset;
+            paintCompleteTextBuffer = true;
+            requestRender();
+        }
+    }
+
+    /** @return number of lines the view has been scrolled back. 0 means the current screen. */
+    public int getScrollbackOffset() {
+        return scrollbackOffset;
+    }
+
+    public ScrollbackBuffer getScrollbackBuffer() {
+        return scrollbackBuffer;
+    }
+
+    /**
+     * Search backwards in the scrollback buffer, starting above the top line of the current view.
+     * When found, the view is scrolled so that the matching line is the top line. Repeat to find
+     * the previous occurrence.
+     * 
+     * @return true if the text has been found.
+     */
+    public boolean searchHistory(String text, boolean ignoreCase) {
+        synchronized (textBufferMutex) {
+            int numLines = scrollbackBuffer.getNumLines();
+            int index = scrollbackBuffer.search(text, numLines - scrollbackOffset - 1, true, ignoreCase);
+            if (index < 0) {
+                return false;
+            }
+            setScrollbackOffset(numLines - index);
+            return true;
+        }
+    }
+
+    public void clearScrollback() {
+        synchronized (textBufferMutex) {
+            scrollbackBuffer.clear();
+            setScrollbackOffset(0);
+        }
+    }
+
+    public void setScrollbackSize(int maxLines) {
+        synchronized (textBufferMutex) {
+            scrollbackBuffer.setLimits(maxLines, scrollbackBuffer.getMaxChars());
+            setScrollbackOffset(scrollbackOffset);
+        }
     }
 
     /** Method blocks until current text image is painted by Swing */
@@ -1658,6 +2060,12 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
             this.altTextBuffer.dispose();
             this.altTextBuffer = null;
         }
+        if (this.historyView != null) {
+            this.historyView.dispose();
+            this.historyView = null;
+        }
+        this.scrollbackBuffer.clear();
+        this.glyphCache.clear();
 
         this.currentBuffer = null;
     }
@@ -1737,11 +2145,11 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
     }
 
     public void pageUp() {
-        // virtual page up!
+        scrollHistory(Math.max(1, nr_rows - 1));
     }
 
     public void pageDown() {
-
+        scrollHistory(-Math.max(1, nr_rows - 1));
     }
 
     public void actionPerformed(ActionEvent e) {
@@ -1757,7 +2165,7 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
     public void doAnimation() {
         Dimension size = this.currentBuffer.getSize();
 
-        int div = 8; // slowdown
+        int div = 2; // slowdown: 80ms per step
         int numSteps = 32;
         // smooth cosinus
         double phase = ((animationCounter / div) % numSteps);
@@ -1787,6 +2195,9 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
         if (optStr.compareTo(CharPane.OPTION_ALWAYS_SYNCHRONIZED_SCROLLING) == 0)
             return "" + this.optionAlwaysSynchronizedScrolling;
 
+        if (optStr.compareTo(CharPane.OPTION_SCROLLBACK_LINES) == 0)
+            return "" + this.scrollbackBuffer.getMaxLines();
+
         return null;
     }
 
@@ -1798,6 +2209,14 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
             this.optionAlwaysSynchronizedScrolling = new Boolean(value);
         }
 
+        if (name.compareTo(CharPane.OPTION_SCROLLBACK_LINES) == 0) {
+            try {
+                setScrollbackSize(Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                logger.warnPrintf("Invalid value for option %s:%s\n", name, value);
+            }
+        }
+
     }
 
     public void setEnableCursor(boolean value) {
@@ -1816,7 +2235,10 @@ public class CharPane extends JComponent implements ICharacterTerminal, ActionLi
             else
                 this.currentBuffer = this.fullBuffer;
 
+            this.scrollbackOffset = 0;
+
             this.paintCompleteTextBuffer = true;
+            requestRender();
         }
 
         return true;
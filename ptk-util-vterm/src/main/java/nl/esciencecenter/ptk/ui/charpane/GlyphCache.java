@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+package nl.esciencecenter.ptk.ui.charpane;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of rendered character cells. A cell image contains the background, the glyph and the
+ * underline of one combination of code point, style and colors, so repainting a character is a
+ * single image copy instead of font selection and text layout.
+ * <p>
+ * The least recently used cells are removed when the cache is full. The cache must be cleared when
+ * the font, cell size or rendering hints change. Not synchronized: only use from the render thread.
+ */
+public class GlyphCache {
+
+    public static final int DEFAULT_MAX_GLYPHS = 4096;
+
+    /** Style flag for characters from the graphics charset, outside the StyleChar style bits. */
+    public static final int STYLE_GRAPHICS_CHARSET = 0x0001 << 16;
+
+    protected static class GlyphKey {
+        int codePoint;
+
+        int style;
+
+        int foreground;
+
+        int background;
+
+        protected GlyphKey() {
+        }
+
+        protected GlyphKey(GlyphKey other) {
+            this.codePoint = other.codePoint;
+            this.style = other.style;
+            this.foreground = other.foreground;
+            this.background = other.background;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = codePoint;
+            hash = hash * 31 + style;
+            hash = hash * 31 + foreground;
+            hash = hash * 31 + background;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof GlyphKey == false)
+                return false;
+
+            GlyphKey other = (GlyphKey) obj;
+            return (codePoint == other.codePoint) && (style == other.style)
+                    && (foreground == other.foreground) && (background == other.background);
+        }
+    }
+
+    // ========================================================================
+    // Instance
+    // ========================================================================
+
+    private final Map<GlyphKey, BufferedImage> glyphs;
+
+    /** Reused for lookups, so a cache hit doesn't allocate */
+    private final GlyphKey lookupKey = new GlyphKey();
+
+    private int cellWidth;
+
+    private int cellHeight;
+
+    private long numHits = 0;
+
+    private long numMisses = 0;
+
+    public GlyphCache(final int maxGlyphs) {
+        this.glyphs = new LinkedHashMap<GlyphKey, BufferedImage>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<GlyphKey, BufferedImage> eldest) {
+                if (size() > maxGlyphs) {
+                    eldest.getValue().flush();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public GlyphCache() {
+        this(DEFAULT_MAX_GLYPHS);
+    }
+
+    /**
+     * Set cell size of new cell images. Clears the cache if the size changed.
+     */
+    public void setCellSize(int width, int height) {
+        if ((width != cellWidth) || (height != cellHeight)) {
+            clear();
+            this.cellWidth = width;
+            this.cellHeight = height;
+        }
+    }
+
+    /**
+     * @param codePoint
+     *            - unicode code point of the character.
+     * @param style
+     *            - StyleChar style flags, optionally with STYLE_GRAPHICS_CHARSET.
+     * @param foreground
+     *            - ARGB value of the foreground color.
+     * @param background
+     *            - ARGB value of the background color.
+     * @return cached cell image or null.
+     */
+    public BufferedImage get(int codePoint, int style, int foreground, int background) {
+        lookupKey.codePoint = codePoint;
+        lookupKey.style = style;
+        lookupKey.foreground = foreground;
+        lookupKey.background = background;
+
+        BufferedImage image = glyphs.get(lookupKey);
+
+        if (image != null)
+            numHits++;
+        else
+            numMisses++;
+
+        return image;
+    }
+
+    public void put(int codePoint, int style, int foreground, int background, BufferedImage image) {
+        lookupKey.codePoint = codePoint;
+        lookupKey.style = style;
+        lookupKey.foreground = foreground;
+        lookupKey.background = background;
+
+        glyphs.put(new GlyphKey(lookupKey), image);
+    }
+
+    /** Create new opaque image of one cell. Opaque images keep sub pixel anti-aliasing. */
+    public BufferedImage createCellImage() {
+        return new BufferedImage(Math.max(1, cellWidth), Math.max(1, cellHeight), BufferedImage.TYPE_INT_RGB);
+    }
+
+    public void clear() {
+        for (BufferedImage image : glyphs.values()) {
+            image.flush();
+        }
+        glyphs.clear();
+    }
+
+    public int size() {
+        return glyphs.size();
+    }
+
+    public long getNumHits() {
+        return numHits;
+    }
+
+    public long getNumMisses() {
+        return numMisses;
+    }
+
+    public String toString() {
+        return "GlyphCache:[size=" + glyphs.size() + ",cell=" + cellWidth + "x" + cellHeight + ",hits="
+                + numHits + ",misses=" + numMisses + "]";
+    }
+}
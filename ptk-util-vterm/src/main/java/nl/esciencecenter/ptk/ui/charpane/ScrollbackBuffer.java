@@ -0,0 +1,479 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.ui.charpane;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact scrollback (history) buffer for lines which are scrolled off the screen.
+ * <p>
+ * Each line is stored as an array of code points and an array of run length encoded style runs,
+ * instead of one StyleChar object per cell. Trailing spaces without visible style are not stored.
+ * The buffer is a ring buffer which is bounded by both the number of lines and the total size of
+ * the stored lines, so memory stays bounded for long running output.<br>
+ * Line index 0 is the oldest line. This class is not synchronized.
+ */
+public class ScrollbackBuffer {
+
+    public static final int DEFAULT_MAX_LINES = 100000;
+
+    /** Default maximum size of the stored lines: 8M ints (32MB) */
+    public static final long DEFAULT_MAX_CHARS = 8 * 1024 * 1024;
+
+    /**
+     * Size of a line without its code points and style runs, in ints: the line object and the
+     * headers of its arrays.
+     */
+    public static final int LINE_OVERHEAD = 12;
+
+    private static final int[] EMPTY = new int[0];
+
+    // === Style packing ===
+
+    private static final int CHARSET_SHIFT = 26;
+
+    /** Maximum number of different charset names, 6 bits including 'none'. */
+    private static final int MAX_CHARSETS = 64;
+
+    /**
+     * Packed style value of an unstyled cell: no style bits, default colors and no charset.
+     */
+    private static final int BLANK_STYLE = 0;
+
+    /**
+     * Style bits which are visible on a space.
+     */
+    private static final int VISIBLE_BLANK_STYLES = StyleChar.STYLE_INVERSE | StyleChar.STYLE_UNDERSCORE;
+
+    /**
+     * Pack style, colors and charset into one int: style(8 bits), foreground+1 (9 bits),
+     * background+1 (9 bits), charset index (6 bits).
+     */
+    protected int packStyle(StyleChar schar) {
+        return (schar.style & 0xff) | (((schar.foregroundColor + 1) & 0x1ff) << 8)
+                | (((schar.backgroundColor + 1) & 0x1ff) << 17) | (charsetIndex(schar.charSet) << CHARSET_SHIFT);
+    }
+
+    protected void unpackStyle(int packed, StyleChar schar) {
+        schar.style = packed & 0xff;
+        schar.foregroundColor = ((packed >> 8) & 0x1ff) - 1;
+        schar.backgroundColor = ((packed >> 17) & 0x1ff) - 1;
+        schar.charSet = charsetNames.get(packed >>> CHARSET_SHIFT);
+    }
+
+    /**
+     * Whether a space with the specified packed style looks like an empty cell. The charset and
+     * foreground color of a space are not visible.
+     */
+    protected static boolean isBlankStyle(int packed) {
+        int style = packed & 0xff;
+        int background = ((packed >> 17) & 0x1ff) - 1;
+        return ((style & VISIBLE_BLANK_STYLES) == 0) && (background < 0);
+    }
+
+    /**
+     * @return index of charset name, new names are added to the charset table.
+     */
+    private int charsetIndex(String charSet) {
+        if (charSet == null) {
+            return 0;
+        }
+
+        // small table: linear search.
+        for (int i = 1; i < charsetNames.size(); i++) {
+            if (charSet.equals(charsetNames.get(i))) {
+                return i;
+            }
+        }
+
+        if (charsetNames.size() >= MAX_CHARSETS) {
+            // not expected: terminals only use a few charsets.
+            return charsetIndex(ICharacterTerminal.VT_CHARSET_US);
+        }
+
+        charsetNames.add(charSet);
+        return charsetNames.size() - 1;
+    }
+
+    /**
+     * Single stored line.
+     */
+    protected static class Line {
+        /** Code points, trailing unstyled spaces removed */
+        protected final int codePoints[];
+
+        /** Style runs as (runLength,packedStyle) pairs */
+        protected final int styleRuns[];
+
+        protected Line(int codePoints[], int styleRuns[]) {
+            this.codePoints = codePoints;
+            this.styleRuns = styleRuns;
+        }
+    }
+
+    // ========================================================================
+    // Instance
+    // ========================================================================
+
+    /** Charset names by packed charset index, index 0 is no (inherited) charset. */
+    private List<String> charsetNames = new ArrayList<String>();
+
+    private Line lines[];
+
+    /** Index of oldest line in ring buffer */
+    private int head = 0;
+
+    private int numLines = 0;
+
+    private int maxLines;
+
+    private long maxChars;
+
+    private long numChars = 0;
+
+    /** Total number of lines ever added, including dropped ones */
+    private long totalAdded = 0;
+
+    // reused conversion buffers
+    private int[] tmpCodePoints = new int[256];
+
+    private int[] tmpRuns = new int[64];
+
+    public ScrollbackBuffer() {
+        this(DEFAULT_MAX_LINES, DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * @param maxLines
+     *            - maximum number of lines
+     * @param maxChars
+     *            - maximum size in ints of all lines together: the code points, style runs and
+     *            {@link #LINE_OVERHEAD} per line.
+     */
+    public ScrollbackBuffer(int maxLines, long maxChars) {
+        this.maxLines = Math.max(0, maxLines);
+        this.maxChars = maxChars;
+        this.charsetNames.add(null);
+        this.charsetNames.add(ICharacterTerminal.VT_CHARSET_US);
+        this.charsetNames.add(ICharacterTerminal.VT_CHARSET_UK);
+        this.charsetNames.add(ICharacterTerminal.VT_CHARSET_GRAPHICS);
+        // grow ring buffer on demand.
+        this.lines = new Line[Math.min(this.maxLines, 1024)];
+    }
+
+    /**
+     * Add row of StyleChars as new (newest) line.
+     * 
+     * @param row
+     *            - row of StyleChars, null entries are stored as spaces.
+     * @param numColumns
+     *            - number of columns to store.
+     */
+    public void addLine(StyleChar row[], int numColumns) {
+        if (maxLines <= 0) {
+            return;
+        }
+
+        numColumns = Math.min(numColumns, row.length);
+
+        if (tmpCodePoints.length < numColumns) {
+            tmpCodePoints = new int[numColumns];
+        }
+
+        // find last non space character or space with visible style:
+        int length = 0;
+        for (int x = 0; x < numColumns; x++) {
+            StyleChar schar = row[x];
+            if (schar == null) {
+                tmpCodePoints[x] = ' ';
+                continue;
+            }
+            int codePoint = schar.getCodePoint();
+            tmpCodePoints[x] = codePoint;
+            if ((codePoint != ' ') || (isBlankStyle(packStyle(schar)) == false)) {
+                length = x + 1;
+            }
+        }
+
+        int codePoints[] = EMPTY;
+        int runs[] = EMPTY;
+
+        if (length > 0) {
+            codePoints = new int[length];
+            System.arraycopy(tmpCodePoints, 0, codePoints, 0, length);
+
+            int numRuns = 0;
+            int runStyle = 0;
+            int runLength = 0;
+
+            for (int x = 0; x < length; x++) {
+                int style = (row[x] != null) ? packStyle(row[x]) : 0;
+                if ((runLength > 0) && (style == runStyle)) {
+                    runLength++;
+                    continue;
+                }
+                if (runLength > 0) {
+                    numRuns = addRun(numRuns, runLength, runStyle);
+                }
+                runStyle = style;
+                runLength = 1;
+            }
+            numRuns = addRun(numRuns, runLength, runStyle);
+
+            // single unstyled run is implicit.
+            if ((numRuns > 2) || (tmpRuns[1] != BLANK_STYLE)) {
+                runs = new int[numRuns];
+                System.arraycopy(tmpRuns, 0, runs, 0, numRuns);
+            }
+        }
+
+        addLine(new Line(codePoints, runs));
+    }
+
+    private int addRun(int numRuns, int runLength, int runStyle) {
+        if (numRuns + 2 > tmpRuns.length) {
+            int newRuns[] = new int[tmpRuns.length * 2];
+            System.arraycopy(tmpRuns, 0, newRuns, 0, numRuns);
+            tmpRuns = newRuns;
+        }
+        tmpRuns[numRuns++] = runLength;
+        tmpRuns[numRuns++] = runStyle;
+        return numRuns;
+    }
+
+    protected void addLine(Line line) {
+        if (numLines == maxLines) {
+            removeOldest();
+        }
+
+        if (numLines == lines.length) {
+            grow();
+        }
+
+        lines[(head + numLines) % lines.length] = line;
+        numLines++;
+        numChars += sizeOf(line);
+        totalAdded++;
+
+        // memory bound, keep at least the newest line.
+        while ((numChars > maxChars) && (numLines > 1)) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * @return size of the line in ints.
+     */
+    protected static int sizeOf(Line line) {
+        return LINE_OVERHEAD + line.codePoints.length + line.styleRuns.length;
+    }
+
+    private void grow() {
+        int newSize = (int) Math.min((long) lines.length * 2, maxLines);
+        Line newLines[] = new Line[Math.max(newSize, 1)];
+        for (int i = 0; i < numLines; i++) {
+            newLines[i] = lines[(head + i) % lines.length];
+        }
+        this.lines = newLines;
+        this.head = 0;
+    }
+
+    private void removeOldest() {
+        Line line = lines[head];
+        lines[head] = null;
+        head = (head + 1) % lines.length;
+        numLines--;
+        numChars -= sizeOf(line);
+    }
+
+    protected Line getLine(int index) {
+        if ((index < 0) || (index >= numLines)) {
+            return null;
+        }
+        return lines[(head + index) % lines.length];
+    }
+
+    /**
+     * Fill row of StyleChars with the specified line. Columns beyond the stored line are cleared.
+     * 
+     * @return false if the line doesn't exist.
+     */
+    public boolean getLine(int index, StyleChar row[], int numColumns) {
+        Line line = getLine(index);
+        if (line == null) {
+            return false;
+        }
+
+        numColumns = Math.min(numColumns, row.length);
+        int x = 0;
+        int runIndex = 0;
+        int runEnd = (line.styleRuns.length > 0) ? line.styleRuns[0] : Integer.MAX_VALUE;
+        int style = (line.styleRuns.length > 0) ? line.styleRuns[1] : 0;
+
+        for (; (x < numColumns) && (x < line.codePoints.length); x++) {
+            while (x >= runEnd) {
+                runIndex += 2;
+                runEnd += line.styleRuns[runIndex];
+                style = line.styleRuns[runIndex + 1];
+            }
+            StyleChar schar = row[x];
+            schar.clear();
+            schar.setCodePoint(line.codePoints[x]);
+            unpackStyle(style, schar);
+        }
+
+        for (; x < numColumns; x++) {
+            row[x].clear();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return text of line without style information or null if the line doesn't exist.
+     */
+    public String getText(int index) {
+        Line line = getLine(index);
+        if (line == null) {
+            return null;
+        }
+        return new String(line.codePoints, 0, line.codePoints.length);
+    }
+
+    /**
+     * Search text in the stored lines. Matches don't span multiple lines.
+     * 
+     * @param text
+     *            - text to search for.
+     * @param fromIndex
+     *            - line to start searching from (inclusive).
+     * @param backwards
+     *            - search towards older lines.
+     * @param ignoreCase
+     *            - case insensitive search.
+     * @return index of line containing the text or -1.
+     */
+    public int search(String text, int fromIndex, boolean backwards, boolean ignoreCase) {
+        if ((text == null) || (text.length() == 0)) {
+            return -1;
+        }
+
+        int pattern[] = text.codePoints().toArray();
+        if (ignoreCase) {
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = Character.toLowerCase(pattern[i]);
+            }
+        }
+
+        int step = backwards ? -1 : 1;
+        for (int index = fromIndex; (index >= 0) && (index < numLines); index += step) {
+            if (matches(getLine(index).codePoints, pattern, ignoreCase)) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean matches(int codePoints[], int pattern[], boolean ignoreCase) {
+        int last = codePoints.length - pattern.length;
+        for (int start = 0; start <= last; start++) {
+            int i = 0;
+            while (i < pattern.length) {
+                int c = codePoints[start + i];
+                if (ignoreCase) {
+                    c = Character.toLowerCase(c);
+                }
+                if (c != pattern[i]) {
+                    break;
+                }
+                i++;
+            }
+            if (i == pattern.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = null;
+        }
+        head = 0;
+        numLines = 0;
+        numChars = 0;
+    }
+
+    /**
+     * Change limits. Oldest lines are dropped if the buffer exceeds the new limits.
+     */
+    public void setLimits(int maxLines, long maxChars) {
+        this.maxLines = Math.max(0, maxLines);
+        this.maxChars = maxChars;
+
+        // memory bound, like addLine() keep at least the newest line.
+        while ((numLines > this.maxLines) || ((numChars > this.maxChars) && (numLines > 1))) {
+            removeOldest();
+        }
+
+        // shrink ring buffer
+        if (lines.length > Math.max(this.maxLines, 1)) {
+            Line newLines[] = new Line[Math.max(this.maxLines, 1)];
+            for (int i = 0; i < numLines; i++) {
+                newLines[i] = lines[(head + i) % lines.length];
+            }
+            this.lines = newLines;
+            this.head = 0;
+        }
+    }
+
+    public int getNumLines() {
+        return numLines;
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    public long getMaxChars() {
+        return maxChars;
+    }
+
+    /** @return size of the stored lines in ints, see {@link #sizeOf(Line)}. */
+    public long getNumChars() {
+        return numChars;
+    }
+
+    /** @return total number of lines added, including lines which have been dropped. */
+    public long getTotalAdded() {
+        return totalAdded;
+    }
+
+    @Override
+    public String toString() {
+        return "ScrollbackBuffer:[lines=" + numLines + "/" + maxLines + ",chars=" + numChars + "/" + maxChars
+                + ",totalAdded=" + totalAdded + "]";
+    }
+
+}
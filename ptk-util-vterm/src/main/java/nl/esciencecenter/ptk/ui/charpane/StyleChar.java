@@ -83,6 +83,69 @@ public class StyleChar {
         numBytes = len;
     }
 
+    /**
+     * Decode UTF-8 bytes into a single code point. Invalid sequences return the first byte.
+     */
+    public int getCodePoint() {
+        if (numBytes <= 0) {
+            return ' ';
+        }
+
+        int b0 = charBytes[0] & 0xff;
+        if ((b0 < 0x80) || (numBytes == 1)) {
+            return b0;
+        }
+
+        int len;
+        int codePoint;
+        if ((b0 & 0xe0) == 0xc0) {
+            len = 2;
+            codePoint = b0 & 0x1f;
+        } else if ((b0 & 0xf0) == 0xe0) {
+            len = 3;
+            codePoint = b0 & 0x0f;
+        } else if ((b0 & 0xf8) == 0xf0) {
+            len = 4;
+            codePoint = b0 & 0x07;
+        } else {
+            return b0;
+        }
+
+        if (numBytes < len) {
+            return b0;
+        }
+
+        for (int i = 1; i < len; i++) {
+            codePoint = (codePoint << 6) | (charBytes[i] & 0x3f);
+        }
+        return codePoint;
+    }
+
+    /**
+     * Set character as UTF-8 encoded code point.
+     */
+    public void setCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            charBytes[0] = (byte) codePoint;
+            numBytes = 1;
+        } else if (codePoint < 0x800) {
+            charBytes[0] = (byte) (0xc0 | (codePoint >> 6));
+            charBytes[1] = (byte) (0x80 | (codePoint & 0x3f));
+            numBytes = 2;
+        } else if (codePoint < 0x10000) {
+            charBytes[0] = (byte) (0xe0 | (codePoint >> 12));
+            charBytes[1] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            charBytes[2] = (byte) (0x80 | (codePoint & 0x3f));
+            numBytes = 3;
+        } else {
+            charBytes[0] = (byte) (0xf0 | (codePoint >> 18));
+            charBytes[1] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            charBytes[2] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            charBytes[3] = (byte) (0x80 | (codePoint & 0x3f));
+            numBytes = 4;
+        }
+    }
+
     public void setChar(byte c) {
         charBytes[0] = c;
         numBytes = 1;
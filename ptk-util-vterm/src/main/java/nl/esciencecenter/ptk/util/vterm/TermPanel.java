@@ -26,6 +26,8 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 
 import javax.swing.JPanel;
 import javax.swing.border.BevelBorder;
@@ -58,6 +60,12 @@ public class TermPanel extends JPanel implements ComponentListener {
         // JPanel 
         this.setBorder(new BevelBorder(BevelBorder.RAISED));
         this.enableEvents(AWTEvent.KEY_EVENT_MASK);
+        this.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                handleScrollbackKeys(e);
+            }
+        });
         // unset focus, must get TAB chars: 
         this.setFocusTraversalKeysEnabled(false);
         this.setLayout(new BorderLayout());
@@ -124,6 +132,28 @@ public class TermPanel extends JPanel implements ComponentListener {
         return charPane.getFontInfo();
     }
 
+    /**
+     * CTRL PAGE UP/DOWN scrolls through the scrollback buffer, other keys scroll back to the
+     * current screen.
+     */
+    protected void handleScrollbackKeys(KeyEvent e) {
+        if (charPane == null) {
+            return;
+        }
+
+        int keycode = e.getKeyCode();
+        boolean ctrl = (e.getModifiersEx() & KeyEvent.CTRL_DOWN_MASK) > 0;
+
+        if ((ctrl) && (keycode == KeyEvent.VK_PAGE_UP)) {
+            charPane.pageUp();
+        } else if ((ctrl) && (keycode == KeyEvent.VK_PAGE_DOWN)) {
+            charPane.pageDown();
+        } else if ((keycode != KeyEvent.VK_SHIFT) && (keycode != KeyEvent.VK_CONTROL)
+                && (keycode != KeyEvent.VK_ALT) && (charPane.getScrollbackOffset() > 0)) {
+            charPane.scrollToBottom();
+        }
+    }
+
     /**
      * Set Emulator but do not start anything
      */
@@ -481,7 +481,7 @@ public class VT10xEmulator extends Emulator {
                 break;
             case CHAR:
                 // one or more characters: moves cursor !
-                writeChar(bytes);
+                writeChars(bytes);
                 break;
             case XGRAPHMODE: {
                 // Graph mode 
@@ -648,8 +648,35 @@ public class VT10xEmulator extends Emulator {
         savedCursorY = term.getCursorY();
     }
 
-    //byte[] singleChar=new byte[1]; 
-    //byte[] wChar=new byte[2]; 
+    /** Reusable character buffers indexed by number of bytes. The terminal copies the bytes. */
+    private byte[][] charBuffers = new byte[7][];
+
+    /**
+     * Write CHAR token, which is a sequence of one or more (utf-8) characters.
+     */
+    private void writeChars(byte[] bytes) {
+        int index = 0;
+
+        while (index < bytes.length) {
+            int len = tokenizer.getCharLength(bytes[index] & 0x00ff);
+
+            if (index + len > bytes.length)
+                len = bytes.length - index;
+
+            if ((index == 0) && (len == bytes.length)) {
+                writeChar(bytes);
+                return;
+            }
+
+            byte charBytes[] = charBuffers[len];
+            if (charBytes == null)
+                charBytes = charBuffers[len] = new byte[len];
+
+            System.arraycopy(bytes, index, charBytes, 0, len);
+            writeChar(charBytes);
+            index += len;
+        }
+    }
 
     private void writeChar(byte[] bytes) {
         // let terminal do auto wrap around. 
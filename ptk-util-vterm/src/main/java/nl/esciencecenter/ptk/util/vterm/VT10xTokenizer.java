@@ -63,6 +63,10 @@ import nl.esciencecenter.ptk.util.vterm.VT10xEmulatorDefs.TokenOption;
 /**
  * Simple tokenizer class. issue nextToken() to parse inputStream. getBytes(); returns parse byte
  * sequence.
+ * <p>
+ * The input stream is read in bulk into a read buffer. Runs of printable characters which are
+ * already buffered are returned as one CHAR token and escape sequences are matched against a
+ * precompiled trie of the token table instead of scanning the token table per byte.
  * 
  * @author Piter T. de Boer.
  */
@@ -77,6 +81,12 @@ public class VT10xTokenizer {
 
     // token bytes buffer: 
     private static final int MAX_BYTES = 256;
+    // max size of CHAR token: a run of printable characters.
+    private static final int MAX_TEXT_BYTES = 4096;
+    // utf-8 characters have at most 6 bytes.
+    private static final int MAX_CHAR_BYTES = 6;
+    // bulk read buffer 
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
     // typically unput buffer should not be bigger then 1. 
     private static int MAX_BUF = 1024;
 
@@ -96,6 +106,11 @@ public class VT10xTokenizer {
             index++;
         }
 
+        public void put(byte[] source, int offset, int len) {
+            System.arraycopy(source, offset, bytes, index, len);
+            index += len;
+        }
+
         public byte pop() throws IOException {
             if (index <= 0)
                 throw new IOException("Byte Byffer is empty: can not pop");
@@ -169,12 +184,82 @@ public class VT10xTokenizer {
 
     }
 
+    /**
+     * Node of the compiled token table. Each node matches a (prefix) sequence of the token table.
+     * The children are indexed by the next (ASCII) character of the sequence.
+     */
+    public static class TokenNode {
+        private TokenNode next[] = null;
+
+        /** First token definition from the token table which matches this sequence exactly. */
+        private Object tokenDef[] = null;
+
+        /** Returns node for the sequence extended with c or null if no token starts with it. */
+        public TokenNode get(int c) {
+            if ((next == null) || (c < 0) || (c >= next.length))
+                return null;
+
+            return next[c];
+        }
+
+        protected TokenNode add(int c) {
+            if (next == null)
+                next = new TokenNode[128];
+
+            if (next[c] == null)
+                next[c] = new TokenNode();
+
+            return next[c];
+        }
+
+        public Object[] getTokenDef() {
+            return tokenDef;
+        }
+    }
+
+    /**
+     * Compile token table into a trie. When a sequence is defined more than once, the first
+     * definition is used, as with the linear scan of the token table.
+     */
+    public static TokenNode compileTokenTable(Object tokenDefs[][]) {
+        TokenNode root = new TokenNode();
+
+        for (Object tokenDef[] : tokenDefs) {
+            String sequence = tokenDef[0].toString();
+            TokenNode node = root;
+
+            for (int i = 0; (node != null) && (i < sequence.length()); i++) {
+                char c = sequence.charAt(i);
+                if (c >= 128) {
+                    // can never match a (signed) byte from the input.
+                    logger.warnPrintf("Ignoring non ASCII token sequence for:%s\n",
+                            tokenDef[tokenDef.length - 1]);
+                    node = null;
+                } else {
+                    node = node.add(c);
+                }
+            }
+
+            if ((node != null) && (node != root) && (node.tokenDef == null)) {
+                node.tokenDef = tokenDef;
+            }
+        }
+
+        return root;
+    }
+
     // =======================================================================
     //
     // ======================================================================
 
     private InputStream inputStream = null;
 
+    private byte readBuffer[] = new byte[READ_BUFFER_SIZE];
+
+    private int readIndex = 0;
+
+    private int readLength = 0;
+
     private int verbose = 1;
 
     boolean ansi_mode = false;
@@ -187,13 +272,19 @@ public class VT10xTokenizer {
     private Token currentToken;
 
     /** Buffer which hold current parsed byte sequence */
-    MiniBuffer byteBuffer = new MiniBuffer(MAX_BYTES); // sequence parsed:  
+    MiniBuffer byteBuffer = new MiniBuffer(MAX_TEXT_BYTES); // sequence parsed:  
     MiniBuffer putBuffer = new MiniBuffer(MAX_BYTES);
     private MiniBuffer patternBuffer = new MiniBuffer(MAX_BUF);
 
     private boolean stateKeepPatternBuffer = false;
     private boolean stateScanningTokenEscapePrefix = false;
 
+    /** Token table and its compiled trie. */
+    private Object[][] compiledTokenTable = null;
+    private TokenNode tokenTrie = null;
+    /** Node matching current patternBuffer or null if no token starts with the pattern. */
+    private TokenNode stateTokenNode = null;
+
     /** Token Arguments */
     private int integerList[] = new int[16];
     private int tokenNumIntegers;
@@ -211,6 +302,32 @@ public class VT10xTokenizer {
         this.inputStream = inps;
     }
 
+    /**
+     * Tokenizer without emulator which uses the default token table of VT10xEmulatorDefs.
+     */
+    VT10xTokenizer(InputStream inps) {
+        this(null, inps);
+    }
+
+    protected Object[][] getTokenTable() {
+        if (emulator != null)
+            return emulator.getTokenTable();
+
+        return VT10xEmulatorDefs.getTokenTable();
+    }
+
+    /** Returns compiled token table, (re)compiles if the token table of the emulator changed. */
+    protected TokenNode getTokenTrie() {
+        Object[][] tokenTable = getTokenTable();
+
+        if (tokenTable != compiledTokenTable) {
+            tokenTrie = compileTokenTable(tokenTable);
+            compiledTokenTable = tokenTable;
+        }
+
+        return tokenTrie;
+    }
+
     /**
      * Returns parsed bytes in duplicate byte array. hold bytes which are parsed after nextToken()
      * was called. A new nextToken() call will clear this sequence.
@@ -226,19 +343,43 @@ public class VT10xTokenizer {
             throw new IOException("Token Buffer Overflow");
 
         if (putBuffer.size() > 0) {
-            c = putBuffer.pop();
-        } else
-            c = inputStream.read();
+            c = putBuffer.pop() & 0x00ff;
+        } else if ((readIndex < readLength) || (fillReadBuffer() > 0)) {
+            c = readBuffer[readIndex++] & 0x00ff;
+        } else {
+            c = -1; // EOF
+        }
 
         byteBuffer.put(c);
 
         return c;
     }
 
+    /**
+     * Read next block from the input stream into the (empty) read buffer. Blocks until at least one
+     * byte is available.
+     * 
+     * @return number of bytes read or -1 for EOF.
+     */
+    private int fillReadBuffer() throws IOException {
+        int numRead;
+
+        do {
+            numRead = inputStream.read(readBuffer, 0, readBuffer.length);
+        } while (numRead == 0);
+
+        readIndex = 0;
+        readLength = (numRead > 0) ? numRead : 0;
+
+        return numRead;
+    }
+
     public void ungetChar(int c) throws IOException {
         if (putBuffer.freeSpace() <= 0)
             throw new IOException("Token PutBuffer (unget) Overflow");
-        putBuffer.put((byte) c);
+        // EOF doesn't have to be put back: next read returns EOF again.
+        if (c >= 0)
+            putBuffer.put((byte) c);
         byteBuffer.pop();
     }
 
@@ -246,7 +387,6 @@ public class VT10xTokenizer {
 
     public Token nextToken() throws IOException {
         VT10xTokenizer tokenizer = this;
-        Object[][] _tokens = emulator.getTokenTable();
 
         // Clear State(s): 
         currentToken = null;
@@ -262,6 +402,7 @@ public class VT10xTokenizer {
             this.tokenNumIntegers = 0;
             this.tokenStringArgument = null;
             stateScanningTokenEscapePrefix = false; //whether current sequence is an esc prefix
+            stateTokenNode = getTokenTrie();
         } else {
             //reset next time unless stated otherwise: 
             stateKeepPatternBuffer = false;
@@ -295,6 +436,9 @@ public class VT10xTokenizer {
 
             // Put current in pattern buffer for matching 
             patternBuffer.put(c);
+            // and advance in compiled token table: 
+            if (stateTokenNode != null)
+                stateTokenNode = stateTokenNode.get(c);
 
             // log character bugger only at finest logging level !
             if (logger.isLoggable(Level.FINEST))
@@ -362,63 +506,50 @@ public class VT10xTokenizer {
             // scan token table:
             // =================
 
-            boolean hasMatch = false;
+            // current pattern is an exact match or (escape) prefix of a token sequence:  
+            boolean hasMatch = (stateTokenNode != null);
 
-            // Scan tokens by linear matching: 
-            for (int i = 0; i < _tokens.length; i++) {
-                Object tokenDef[] = _tokens[i];
+            Object tokenDef[] = (hasMatch) ? stateTokenNode.getTokenDef() : null;
 
-                String sequence = tokenDef[0].toString();
+            if (tokenDef != null) {
                 Object tokObj = tokenDef[tokenDef.length - 1];
                 TokenOption tokenOption = null;
 
                 if (tokenDef[1] instanceof TokenOption)
                     tokenOption = (TokenOption) tokenDef[1];
 
-                // simple linear checking: todo: pattern compiling and matching
-                if (patternBuffer.isPrefixFor(sequence)) {
-                    // PREFIX MATCH:
-                    hasMatch = true;
-
-                    if (patternBuffer.size() != sequence.getBytes().length) {
-                        // No exact MATCH: continue parsing. 
-                        continue;
-                    }
-
-                    logger.debugPrintf("Pre: Matching:%s\n", tokObj);
+                logger.debugPrintf("Pre: Matching:%s\n", tokObj);
 
-                    // MATCHED Sequence! 
-                    if (tokObj instanceof Token) {
-                        currentToken = (Token) tokObj;
-                    } else // if (tokObj instanceof String)
-                    {
-                        // Unimplemented token: Check String definition. 
-                        fixmePrintf("Tokenizer: Unknown or umimplemented token object:%d", tokObj);
-                        if (tokenizer.tokenStringArgument == null)
-                            tokenizer.tokenStringArgument = "";
-                        tokenizer.tokenStringArgument = ">>> Token Object='" + tokObj + "'"
-                                + tokenStringArgument;
-                        return match(Token.UNKNOWN);
-                    }
-
-                    // ***
-                    // Dirty tokenizer, scan integer list first then continue
-                    // to find complete token matching against patternBuffer !
-                    // ***
-                    if (tokenOption == TokenOption.OPTION_PARSE_INTEGERS) {
-                        // update integer list: might be empty ! 
-                        tokenNumIntegers = parseIntegerList(integerList);
-                    } else if ((tokenOption == TokenOption.OPTION_PARSE_GRAPHMODE)) {
-                        parseGraphModeArguments();
-                    }
+                // MATCHED Sequence! 
+                if (tokObj instanceof Token) {
+                    currentToken = (Token) tokObj;
+                } else // if (tokObj instanceof String)
+                {
+                    // Unimplemented token: Check String definition. 
+                    fixmePrintf("Tokenizer: Unknown or umimplemented token object:%s", tokObj);
+                    if (tokenizer.tokenStringArgument == null)
+                        tokenizer.tokenStringArgument = "";
+                    tokenizer.tokenStringArgument = ">>> Token Object='" + tokObj + "'"
+                            + tokenStringArgument;
+                    return match(Token.UNKNOWN);
+                }
 
-                    // check terminating Token: ESC and _PREFIX Tokens are Non Terminating 
-                    if ((currentToken != null) && (currentToken.isTerminator())) {
-                        return match(currentToken);
-                    }
+                // ***
+                // Dirty tokenizer, scan integer list first then continue
+                // to find complete token matching against patternBuffer !
+                // ***
+                if (tokenOption == TokenOption.OPTION_PARSE_INTEGERS) {
+                    // update integer list: might be empty ! 
+                    tokenNumIntegers = parseIntegerList(integerList);
+                } else if ((tokenOption == TokenOption.OPTION_PARSE_GRAPHMODE)) {
+                    parseGraphModeArguments();
+                }
 
+                // check terminating Token: ESC and _PREFIX Tokens are Non Terminating 
+                if ((currentToken != null) && (currentToken.isTerminator())) {
+                    return match(currentToken);
                 }
-            }// for
+            }
 
             // update current state: 
             stateScanningTokenEscapePrefix = hasMatch;
@@ -489,8 +620,7 @@ public class VT10xTokenizer {
 
     private Token match(Token token) {
         if (logger.isLoggable(PLogger.DEBUG))
-            ;
-        logger.debugPrintf("MATCHED:%s,args=%s\n", currentToken, getFormattedArguments());
+            logger.debugPrintf("MATCHED:%s,args=%s\n", token, getFormattedArguments());
 
         this.currentToken = token;
         return token;
@@ -504,27 +634,7 @@ public class VT10xTokenizer {
             if (((c & 0x80) > 0) && (ansi_mode == false)) {
                 // posible utf-8 sequence. Check utf-8 prefixes:
 
-                int num = 1; //already have first byte 
-
-                // utf-8 can exist of 6 bytes length (32bits encoded) 
-                // binary prefix are:
-                //  110xxxxx (c0) for 2 bytes
-                //  1110xxxx (e0) for 3 bytes 
-                //  11110xxx (fo) for 4 bytes 
-                //  111110xx (f8) for 5 bytes 
-                //  1111110x (fc) for 6 bytes 
-
-                if ((c & 0xe0) == 0xc0) {
-                    num = 2;
-                } else if ((c & 0xf0) == 0xe0) {
-                    num = 3;
-                } else if ((c & 0xf8) == 0xf0) {
-                    num = 4;
-                } else if ((c & 0xfc) == 0xf8) {
-                    num = 5;
-                } else if ((c & 0xfd) == 0xfc) {
-                    num = 6;
-                }
+                int num = getCharLength(c); //already have first byte 
 
                 // read bytes as-is: 
                 for (int i = 1; i < num; i++) {
@@ -541,7 +651,10 @@ public class VT10xTokenizer {
                 }
             }
 
-            // Char sequence of one 
+            // Fast path: append buffered printable characters. 
+            readTextRun();
+
+            // Char sequence of one or more characters
             token = Token.CHAR;
             //Debug(2,"CHARS='"+getText("UTF-8")+"'");
             return token;
@@ -550,6 +663,71 @@ public class VT10xTokenizer {
         return null;
     }
 
+    /**
+     * Returns the number of bytes of the (utf-8) character which starts with byte c.
+     */
+    public int getCharLength(int c) {
+        if (((c & 0x80) == 0) || (ansi_mode == true))
+            return 1;
+
+        // utf-8 can exist of 6 bytes length (32bits encoded) 
+        // binary prefix are:
+        //  110xxxxx (c0) for 2 bytes
+        //  1110xxxx (e0) for 3 bytes 
+        //  11110xxx (fo) for 4 bytes 
+        //  111110xx (f8) for 5 bytes 
+        //  1111110x (fc) for 6 bytes 
+
+        if ((c & 0xe0) == 0xc0) {
+            return 2;
+        } else if ((c & 0xf0) == 0xe0) {
+            return 3;
+        } else if ((c & 0xf8) == 0xf0) {
+            return 4;
+        } else if ((c & 0xfc) == 0xf8) {
+            return 5;
+        } else if ((c & 0xfd) == 0xfc) {
+            return 6;
+        }
+
+        return 1;
+    }
+
+    /**
+     * Append the printable characters which are already in the read buffer to the current CHAR
+     * token. Stops at the first non printable character, at a character which isn't completely
+     * buffered or when the token is full. Never blocks.
+     */
+    private void readTextRun() {
+        // ungotten bytes must be read first. 
+        if (putBuffer.size() > 0)
+            return;
+
+        int index = readIndex;
+        // keep room for one complete character: 
+        int maxIndex = readIndex + byteBuffer.freeSpace() - MAX_CHAR_BYTES;
+
+        while ((index < readLength) && (index < maxIndex)) {
+            int c = readBuffer[index] & 0x00ff;
+
+            if ((c >= 0x20) && (c < 0x7f)) {
+                index++;
+            } else if ((c >= 0x80) && (ansi_mode == false)) {
+                int len = getCharLength(c);
+                if (index + len > readLength)
+                    break;
+                index += len;
+            } else {
+                break;
+            }
+        }
+
+        if (index > readIndex) {
+            byteBuffer.put(readBuffer, readIndex, index - readIndex);
+            readIndex = index;
+        }
+    }
+
     /**
      * Read Unsigned Byte value: 0<= value <=255. This method does NOT return values < 0 ! If this
      * is the case an IOEception is thrown. This contrary to getChar(), which may return -1 in the
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+package nl.esciencecenter.ptk.ui.charpane;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_ScrollbackBuffer {
+
+    protected StyleChar[] newRow(int numColumns) {
+        StyleChar row[] = new StyleChar[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            row[i] = new StyleChar();
+            row[i].clear();
+        }
+        return row;
+    }
+
+    /**
+     * Row as written by the terminal: all cells have the current charset.
+     */
+    protected StyleChar[] newRow(String text, int numColumns, String charSet) {
+        StyleChar row[] = newRow(numColumns);
+        for (int i = 0; i < numColumns; i++) {
+            row[i].setCodePoint(i < text.length() ? text.charAt(i) : ' ');
+            row[i].charSet = charSet;
+        }
+        return row;
+    }
+
+    @Test
+    public void testWrapMaxLines() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(3, ScrollbackBuffer.DEFAULT_MAX_CHARS);
+
+        for (int i = 0; i < 10; i++) {
+            buffer.addLine(newRow("line" + i, 20, null), 20);
+        }
+
+        Assert.assertEquals("Buffer must be bounded by maxLines", 3, buffer.getNumLines());
+        Assert.assertEquals(10, buffer.getTotalAdded());
+        Assert.assertEquals("Oldest line must be evicted", "line7", buffer.getText(0));
+        Assert.assertEquals("line8", buffer.getText(1));
+        Assert.assertEquals("line9", buffer.getText(2));
+        Assert.assertNull(buffer.getText(3));
+    }
+
+    @Test
+    public void testEvictMaxChars() {
+        // 2 lines of 10 characters with US charset: 10 code points + 2 run ints + overhead.
+        int lineSize = 10 + 2 + ScrollbackBuffer.LINE_OVERHEAD;
+        ScrollbackBuffer buffer = new ScrollbackBuffer(1000, 2 * lineSize);
+
+        for (int i = 0; i < 5; i++) {
+            buffer.addLine(newRow("0123456789", 10, ICharacterTerminal.VT_CHARSET_US), 10);
+            Assert.assertTrue("Size must stay within maxChars", buffer.getNumChars() <= 2 * lineSize);
+        }
+
+        Assert.assertEquals(2, buffer.getNumLines());
+        Assert.assertEquals(2 * lineSize, buffer.getNumChars());
+
+        // style runs count as well: alternating styles need more room per line.
+        StyleChar row[] = newRow("0123456789", 10, ICharacterTerminal.VT_CHARSET_US);
+        for (int i = 0; i < 10; i += 2) {
+            row[i].style = StyleChar.STYLE_BOLD;
+        }
+        buffer.addLine(row, 10);
+        Assert.assertEquals("Styled line must evict both older lines", 1, buffer.getNumLines());
+        Assert.assertEquals(10 + 20 + ScrollbackBuffer.LINE_OVERHEAD, buffer.getNumChars());
+
+        // lowering the limit keeps the newest line.
+        buffer.setLimits(1000, 1);
+        Assert.assertEquals(1, buffer.getNumLines());
+    }
+
+    @Test
+    public void testTrimTrailingBlanks() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(100, ScrollbackBuffer.DEFAULT_MAX_CHARS);
+
+        // written blanks have a charset and a foreground color, but aren't visible.
+        StyleChar row[] = newRow("abc", 80, ICharacterTerminal.VT_CHARSET_US);
+        for (int i = 3; i < 80; i++) {
+            row[i].foregroundColor = 2;
+            row[i].style = StyleChar.STYLE_BOLD;
+        }
+        buffer.addLine(row, 80);
+        Assert.assertEquals("abc", buffer.getText(0));
+
+        // empty line
+        buffer.addLine(newRow("", 80, ICharacterTerminal.VT_CHARSET_GRAPHICS), 80);
+        Assert.assertEquals("", buffer.getText(1));
+
+        // blanks with background color or inverse are visible and must be kept.
+        row = newRow("abc", 80, ICharacterTerminal.VT_CHARSET_US);
+        row[9].backgroundColor = 4;
+        buffer.addLine(row, 80);
+        Assert.assertEquals(10, buffer.getText(2).length());
+
+        row = newRow("abc", 80, ICharacterTerminal.VT_CHARSET_US);
+        row[19].style = StyleChar.STYLE_INVERSE;
+        buffer.addLine(row, 80);
+        Assert.assertEquals(20, buffer.getText(3).length());
+
+        // trimmed columns are returned as cleared cells.
+        StyleChar result[] = newRow(80);
+        Assert.assertTrue(buffer.getLine(0, result, 80));
+        Assert.assertEquals('c', result[2].getCodePoint());
+        Assert.assertEquals(' ', result[3].getCodePoint());
+        Assert.assertEquals(-1, result[3].foregroundColor);
+        Assert.assertNull(result[3].charSet);
+    }
+
+    @Test
+    public void testStyleRoundTrip() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(100, ScrollbackBuffer.DEFAULT_MAX_CHARS);
+
+        int numColumns = 40;
+        StyleChar row[] = newRow("The quick brown fox jumps over the dog", numColumns, null);
+        for (int i = 0; i < numColumns; i++) {
+            // runs of different length and mixed attributes.
+            int run = i / 7;
+            row[i].style = (run % 2 == 0) ? StyleChar.STYLE_NONE : (StyleChar.STYLE_BOLD | StyleChar.STYLE_UNDERSCORE);
+            row[i].foregroundColor = (run % 3) - 1;
+            row[i].backgroundColor = (run == 2) ? 255 : -1;
+            row[i].charSet = (run == 4) ? ICharacterTerminal.VT_CHARSET_GRAPHICS : ICharacterTerminal.VT_CHARSET_UK;
+        }
+        buffer.addLine(row, numColumns);
+
+        StyleChar result[] = newRow(numColumns + 10);
+        Assert.assertTrue(buffer.getLine(0, result, result.length));
+
+        for (int i = 0; i < numColumns; i++) {
+            if (row[i].getCodePoint() == ' ' && i >= 38) {
+                continue; // trimmed
+            }
+            Assert.assertEquals("Code point at:" + i, row[i].getCodePoint(), result[i].getCodePoint());
+            Assert.assertEquals("Style at:" + i, row[i].style, result[i].style);
+            Assert.assertEquals("Foreground at:" + i, row[i].foregroundColor, result[i].foregroundColor);
+            Assert.assertEquals("Background at:" + i, row[i].backgroundColor, result[i].backgroundColor);
+            Assert.assertEquals("Charset at:" + i, row[i].charSet, result[i].charSet);
+        }
+
+        for (int i = numColumns; i < result.length; i++) {
+            Assert.assertEquals(' ', result[i].getCodePoint());
+            Assert.assertNull(result[i].charSet);
+        }
+
+        Assert.assertFalse(buffer.getLine(1, result, result.length));
+    }
+
+    @Test
+    public void testUnknownCharsetRoundTrip() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(100, ScrollbackBuffer.DEFAULT_MAX_CHARS);
+
+        StyleChar row[] = newRow("abcdef", 6, "CHARSET_DEC_SUPPLEMENTAL");
+        row[3].charSet = "CHARSET_OTHER";
+        row[4].charSet = null;
+        buffer.addLine(row, 6);
+
+        StyleChar result[] = newRow(6);
+        Assert.assertTrue(buffer.getLine(0, result, 6));
+        Assert.assertEquals("CHARSET_DEC_SUPPLEMENTAL", result[0].charSet);
+        Assert.assertEquals("CHARSET_OTHER", result[3].charSet);
+        Assert.assertNull(result[4].charSet);
+        Assert.assertEquals("CHARSET_DEC_SUPPLEMENTAL", result[5].charSet);
+    }
+
+    @Test
+    public void testSearch() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(100, ScrollbackBuffer.DEFAULT_MAX_CHARS);
+        buffer.addLine(newRow("first Line", 20, null), 20);
+        buffer.addLine(newRow("second line", 20, null), 20);
+
+        Assert.assertEquals(1, buffer.search("line", 0, false, false));
+        Assert.assertEquals(0, buffer.search("Line", 1, true, false));
+        Assert.assertEquals(0, buffer.search("LINE", 0, false, true));
+        Assert.assertEquals(-1, buffer.search("third", 1, true, true));
+    }
+}
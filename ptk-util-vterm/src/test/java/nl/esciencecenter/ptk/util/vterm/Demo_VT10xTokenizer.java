@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+package nl.esciencecenter.ptk.util.vterm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.esciencecenter.ptk.util.vterm.VT10xEmulatorDefs.Token;
+
+/**
+ * Throughput benchmark for the VT10xTokenizer. Tokenizes recorded terminal streams, for example
+ * recorded with 'script -q /tmp/ls.rec', or generated streams when no files are specified.
+ * 
+ * <pre>
+ * Demo_VT10xTokenizer [-chunk &lt;size&gt;] [-size &lt;MB&gt;] [recorded stream files...]
+ * </pre>
+ * 
+ * Option -chunk limits the number of bytes returned per read() to simulate a network stream. Option
+ * -size specifies the size of the generated streams.
+ */
+public class Demo_VT10xTokenizer {
+
+    public static final int STREAM_SIZE = 16 * 1024 * 1024;
+
+    public static final int NUM_RUNS = 5;
+
+    /** Input stream which returns at most chunkSize bytes per read. */
+    public static class ChunkedInputStream extends InputStream {
+        private byte data[];
+
+        private int index = 0;
+
+        private int chunkSize;
+
+        public ChunkedInputStream(byte data[], int chunkSize) {
+            this.data = data;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read() {
+            if (index >= data.length)
+                return -1;
+
+            return data[index++] & 0x00ff;
+        }
+
+        @Override
+        public int read(byte buffer[], int offset, int len) {
+            if (index >= data.length)
+                return -1;
+
+            int num = Math.min(Math.min(len, chunkSize), data.length - index);
+            System.arraycopy(data, index, buffer, offset, num);
+            index += num;
+            return num;
+        }
+    }
+
+    public static void main(String args[]) {
+        try {
+            int chunkSize = Integer.MAX_VALUE;
+            int size = STREAM_SIZE;
+            Map<String, byte[]> streams = new LinkedHashMap<String, byte[]>();
+
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-chunk")) {
+                    chunkSize = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-size")) {
+                    size = Integer.parseInt(args[++i]) * 1024 * 1024;
+                } else {
+                    streams.put(args[i], Files.readAllBytes(Paths.get(args[i])));
+                }
+            }
+
+            if (streams.size() == 0) {
+                streams.put("plain text (cat)", createPlainText(size));
+                streams.put("colored listing (ls --color)", createColoredListing(size));
+                streams.put("cursor addressing (top)", createCursorUpdates(size));
+                streams.put("utf-8 text", createUtf8Text(size));
+            }
+
+            for (String name : streams.keySet()) {
+                byte data[] = streams.get(name);
+
+                // warm up
+                tokenize(data, chunkSize);
+
+                long time = 0;
+                long numTokens = 0;
+
+                for (int i = 0; i < NUM_RUNS; i++) {
+                    long start = System.nanoTime();
+                    numTokens += tokenize(data, chunkSize);
+                    time += System.nanoTime() - start;
+                }
+
+                double seconds = time / 1.0e9;
+                double megaBytes = ((double) data.length * NUM_RUNS) / (1024 * 1024);
+
+                System.out.printf("%-32s: %6.1f MB/s, %10.0f tokens/s, %8d bytes/run, %8d tokens/run\n",
+                        name, megaBytes / seconds, numTokens / seconds, data.length, numTokens / NUM_RUNS);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Returns number of tokens, EOF excluded */
+    public static long tokenize(byte data[], int chunkSize) throws IOException {
+        VT10xTokenizer tokenizer = new VT10xTokenizer(new ChunkedInputStream(data, chunkSize));
+        long numTokens = 0;
+
+        while (tokenizer.nextToken() != Token.EOF) {
+            numTokens++;
+        }
+
+        return numTokens;
+    }
+
+    public static byte[] createPlainText(int size) throws IOException {
+        ByteArrayOutputStream outps = new ByteArrayOutputStream(size);
+        String line = "    public static void main(String args[]) throws IOException { // line:";
+
+        for (int i = 0; outps.size() < size; i++) {
+            outps.write((line + i + "\r\n").getBytes("UTF-8"));
+        }
+
+        return outps.toByteArray();
+    }
+
+    public static byte[] createColoredListing(int size) throws IOException {
+        ByteArrayOutputStream outps = new ByteArrayOutputStream(size);
+        String esc = "\033";
+
+        for (int i = 0; outps.size() < size; i++) {
+            String entry = esc + "[0m" + esc + "[01;34mdirectory" + i + esc + "[0m  " + esc
+                    + "[01;32mscript" + i + ".sh" + esc + "[0m  file" + i + ".txt\r\n";
+            outps.write(entry.getBytes("UTF-8"));
+        }
+
+        return outps.toByteArray();
+    }
+
+    public static byte[] createCursorUpdates(int size) throws IOException {
+        ByteArrayOutputStream outps = new ByteArrayOutputStream(size);
+        String esc = "\033";
+
+        for (int i = 0; outps.size() < size; i++) {
+            int row = (i % 24) + 1;
+            String update = esc + "[" + row + ";1H" + esc + "[K" + esc + "[7m " + (1000 + i) + " "
+                    + esc + "[m user  20   0  " + (i % 997) + "  S  0.3 " + esc + "[1mjava" + esc
+                    + "[m";
+            outps.write(update.getBytes("UTF-8"));
+        }
+
+        return outps.toByteArray();
+    }
+
+    public static byte[] createUtf8Text(int size) throws IOException {
+        ByteArrayOutputStream outps = new ByteArrayOutputStream(size);
+        String line = "Gr\u00fc\u00dfe, \u00e9t\u00e9 \u2192 \u2500\u2500\u2500 \u03b1\u03b2\u03b3 line:";
+
+        for (int i = 0; outps.size() < size; i++) {
+            outps.write((line + i + "\r\n").getBytes("UTF-8"));
+        }
+
+        return outps.toByteArray();
+    }
+
+}
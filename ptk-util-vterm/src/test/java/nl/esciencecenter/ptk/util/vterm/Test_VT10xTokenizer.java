@@ -0,0 +1,234 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+package nl.esciencecenter.ptk.util.vterm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.esciencecenter.ptk.util.vterm.Demo_VT10xTokenizer.ChunkedInputStream;
+import nl.esciencecenter.ptk.util.vterm.VT10xEmulatorDefs.Token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Regression test for the VT10xTokenizer. Tokenizes the supported (escape) sequences as one
+ * stream and as a stream which is split at every possible read boundary.
+ */
+public class Test_VT10xTokenizer {
+
+    public static final String ESC = "\033";
+
+    public static final String CSI = ESC + "[";
+
+    /**
+     * Stream of supported sequences and the expected tokens. Character tokens are listed with their
+     * text, other tokens with their arguments as formatted by getFormattedArguments().
+     */
+    public static final String[][] SEQUENCES = {
+            { "plain text", "CHAR:plain text" },
+            { "\r\n", "CR", "LF" },
+            { "\b\t\007\013\014", "BS", "HT", "BEEP", "VT", "FF" },
+            { "\016\017", "CHARSET_G1", "CHARSET_G0" },
+            // utf-8 characters of 2 and 3 bytes:
+            { "Gr\u00fc\u00dfe \u2500\u2502", "CHAR:Gr\u00fc\u00dfe \u2500\u2502" },
+            { ESC + "7", "SAVE_CURSOR" },
+            { ESC + "8", "RESTORE_CURSOR" },
+            { ESC + "=", "APPLICATION_KEYPAD" },
+            { ESC + ">", "NUMERIC_KEYPAD" },
+            { ESC + "D", "INDEX" },
+            { ESC + "E", "NEXT_LINE" },
+            { ESC + "H", "TAB_SET" },
+            { ESC + "M", "REVERSE_INDEX" },
+            { ESC + "(0", "CHARSET_GO_GRAPHICS" },
+            { ESC + "(B", "CHARSET_GO_US" },
+            { ESC + ")A", "CHARSET_G1_UK" },
+            { ESC + "#8", "DEC_SCREEN_ALIGNMENT" },
+            { CSI + "H", "SET_CURSOR" },
+            { CSI + "12;40H", "SET_CURSOR(12;40)" },
+            { CSI + "5;10f", "SET_CURSOR(5;10)" },
+            { CSI + "m", "SET_FONT_STYLE" },
+            { CSI + "0;1;34m", "SET_FONT_STYLE(0;1;34)" },
+            // empty arguments are zero:
+            { CSI + ";7m", "SET_FONT_STYLE(0;7)" },
+            { CSI + "38;5;196m", "SET_FONT_STYLE(38;5;196)" },
+            { CSI + "K", "LINE_ERASE" },
+            { CSI + "2J", "SCREEN_ERASE(2)" },
+            { CSI + "3A", "UP(3)" },
+            { CSI + "B", "DOWN" },
+            { CSI + "C", "RIGHT" },
+            { CSI + "D", "LEFT" },
+            { CSI + "7G", "SET_COLUMN(7)" },
+            { CSI + "4d", "SET_ROW(4)" },
+            { CSI + "2L", "INSERT_LINES(2)" },
+            { CSI + "2M", "DELETE_LINES(2)" },
+            { CSI + "3P", "DEL_CHAR(3)" },
+            { CSI + "4@", "INSERT_BLANK_CHARS(4)" },
+            { CSI + "5X", "ERASE_CHARS(5)" },
+            { CSI + "1;24r", "SET_REGION(1;24)" },
+            { CSI + "4h", "SET_MODE(4)" },
+            { CSI + "4l", "RESET_MODE(4)" },
+            { CSI + "6n", "DEVICE_STATUS(6)" },
+            { CSI + "c", "REQ_IDENTIFY" },
+            { CSI + "?25l", "DEC_RESETMODE(25)" },
+            { CSI + "?1;1049h", "DEC_SETMODE(1;1049)" },
+            { ESC + "]0;title" + "\007", "XGRAPHMODE(0,'title')" },
+            { "end", "CHAR:end" },
+    };
+
+    protected byte[] createStream() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String sequence[] : SEQUENCES) {
+            sb.append(sequence[0]);
+        }
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    protected List<String> expectedTokens() {
+        List<String> tokens = new ArrayList<String>();
+        for (String sequence[] : SEQUENCES) {
+            for (int i = 1; i < sequence.length; i++) {
+                tokens.add(sequence[i]);
+            }
+        }
+        tokens.add("EOF");
+        return tokens;
+    }
+
+    /**
+     * Tokenize stream until EOF. Adjacent CHAR tokens are merged, since the length of a run of
+     * characters depends on the read boundaries.
+     */
+    protected List<String> tokenize(InputStream inps) throws IOException {
+        VT10xTokenizer tokenizer = new VT10xTokenizer(inps);
+        List<String> tokens = new ArrayList<String>();
+        Token token;
+
+        do {
+            token = tokenizer.nextToken();
+            if (token == Token.CHAR) {
+                String text = tokenizer.getText("UTF-8");
+                int last = tokens.size() - 1;
+                if ((last >= 0) && tokens.get(last).startsWith("CHAR:")) {
+                    tokens.set(last, tokens.get(last) + text);
+                } else {
+                    tokens.add("CHAR:" + text);
+                }
+            } else {
+                tokens.add(token + tokenizer.getFormattedArguments());
+            }
+            // guard against a tokenizer which doesn't advance.
+            Assert.assertTrue("Too many tokens", tokens.size() < 1000);
+        } while (token != Token.EOF);
+
+        return tokens;
+    }
+
+    @Test
+    public void testSequences() throws IOException {
+        List<String> tokens = tokenize(new ByteArrayInputStream(createStream()));
+        Assert.assertEquals(expectedTokens(), tokens);
+    }
+
+    @Test
+    public void testSingleSequences() throws IOException {
+        for (String sequence[] : SEQUENCES) {
+            List<String> expected = new ArrayList<String>();
+            for (int i = 1; i < sequence.length; i++) {
+                expected.add(sequence[i]);
+            }
+            expected.add("EOF");
+
+            List<String> tokens = tokenize(new ByteArrayInputStream(sequence[0].getBytes("UTF-8")));
+            Assert.assertEquals("Wrong tokens for sequence:" + expected.get(0), expected, tokens);
+        }
+    }
+
+    /**
+     * Each read returns at most chunkSize bytes, so every sequence and utf-8 character is split
+     * across read boundaries at all positions.
+     */
+    @Test
+    public void testSplitReads() throws IOException {
+        byte stream[] = createStream();
+
+        for (int chunkSize = 1; chunkSize <= 16; chunkSize++) {
+            List<String> tokens = tokenize(new ChunkedInputStream(stream, chunkSize));
+            Assert.assertEquals("Wrong tokens for chunk size:" + chunkSize, expectedTokens(), tokens);
+        }
+    }
+
+    /**
+     * Split the stream once at every position: first read returns the bytes before the split.
+     */
+    @Test
+    public void testSplitAtEveryPosition() throws IOException {
+        final byte stream[] = createStream();
+
+        for (int split = 1; split < stream.length; split++) {
+            final int splitIndex = split;
+
+            InputStream inps = new InputStream() {
+                private int index = 0;
+
+                @Override
+                public int read() {
+                    if (index >= stream.length)
+                        return -1;
+                    return stream[index++] & 0x00ff;
+                }
+
+                @Override
+                public int read(byte buffer[], int offset, int len) {
+                    if (index >= stream.length)
+                        return -1;
+                    int end = (index < splitIndex) ? splitIndex : stream.length;
+                    int num = Math.min(len, end - index);
+                    System.arraycopy(stream, index, buffer, offset, num);
+                    index += num;
+                    return num;
+                }
+            };
+
+            Assert.assertEquals("Wrong tokens for split at:" + split, expectedTokens(), tokenize(inps));
+        }
+    }
+
+    @Test
+    public void testLongText() throws IOException {
+        // longer than one CHAR token and one read buffer.
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 100 * 1024) {
+            sb.append("0123456789abcdef\u00e9");
+        }
+        String text = sb.toString();
+
+        List<String> tokens = tokenize(new ByteArrayInputStream((text + "\r\n").getBytes("UTF-8")));
+        Assert.assertEquals(4, tokens.size());
+        Assert.assertEquals("CHAR:" + text, tokens.get(0));
+        Assert.assertEquals("CR", tokens.get(1));
+        Assert.assertEquals("LF", tokens.get(2));
+        Assert.assertEquals("EOF", tokens.get(3));
+    }
+}
@@ -20,7 +20,9 @@
 
 package nl.esciencecenter.ptk.vbrowser.ui.model;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import nl.esciencecenter.ptk.vbrowser.ui.proxy.ProxyException;
 import nl.esciencecenter.vbrowser.vrs.data.Attribute;
@@ -42,4 +44,20 @@ public interface AttributeDataSource {
     public List<String> getAttributeNames(VRL locator) throws ProxyException;
 
     public List<Attribute> getAttributes(VRL locator, String attrNames[]) throws ProxyException;
+
+    /**
+     * Bulk version of {@link #getAttributes(VRL, String[])}. Fetches the same attributes for many
+     * resources in one call. The default implementation fetches the attributes one resource at a
+     * time, data sources which can combine the requests should override this method.
+     * 
+     * @return Map of VRL to attributes, in the order of the specified locators.
+     */
+    public default Map<VRL, List<Attribute>> getAttributes(List<VRL> locators, String attrNames[])
+            throws ProxyException {
+        Map<VRL, List<Attribute>> attrsMap = new LinkedHashMap<VRL, List<Attribute>>();
+        for (VRL locator : locators) {
+            attrsMap.put(locator, getAttributes(locator, attrNames));
+        }
+        return attrsMap;
+    }
 }
@@ -23,6 +23,10 @@ public class UIProperties extends VRSProperties {
 
     private static int default_mouse_popup_button = default_mouse_alt_button;
 
+    private static int default_proxy_cache_max_size = 10000;
+
+    private static int default_proxy_cache_max_age = 600;
+
     // ========
     // Instance
     // ========
@@ -175,4 +179,15 @@ public class UIProperties extends VRSProperties {
         return getBooleanProperty(UIPropertyNames.UI_MONITOR_ALWAYS_SHOW_DIALOG, true);
     }
 
+    public int getProxyCacheMaxSize() {
+        return getIntegerProperty(UIPropertyNames.PROXY_CACHE_MAX_SIZE, default_proxy_cache_max_size);
+    }
+
+    /**
+     * @return maximum age of unused proxy nodes in seconds.
+     */
+    public int getProxyCacheMaxAge() {
+        return getIntegerProperty(UIPropertyNames.PROXY_CACHE_MAX_AGE, default_proxy_cache_max_age);
+    }
+
 }
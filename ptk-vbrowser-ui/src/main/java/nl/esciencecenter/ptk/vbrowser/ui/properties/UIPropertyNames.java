@@ -30,4 +30,11 @@ public class UIPropertyNames {
 
     public static final String UI_MONITOR_SHOW_DIALOG_DELAY = "ui.monitoring.showDialogDelay";
 
+    // proxy node cache
+
+    public static final String PROXY_CACHE_MAX_SIZE = "ui.proxy.cache.maxSize";
+
+    /** Maximum age of unused proxy nodes in seconds */
+    public static final String PROXY_CACHE_MAX_AGE = "ui.proxy.cache.maxAge";
+
 }
@@ -20,14 +20,25 @@
 
 package nl.esciencecenter.ptk.vbrowser.ui.proxy;
 
-import java.util.Hashtable;
-import java.util.Map;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import nl.esciencecenter.ptk.data.StringHolder;
+import nl.esciencecenter.ptk.task.ActionTask;
 import nl.esciencecenter.ptk.util.logging.PLogger;
 import nl.esciencecenter.ptk.vbrowser.ui.browser.BrowserPlatform;
 import nl.esciencecenter.ptk.vbrowser.ui.model.ProxyNodeDnDHandler;
 import nl.esciencecenter.ptk.vbrowser.ui.model.ViewNode;
+import nl.esciencecenter.ptk.vbrowser.ui.properties.UIProperties;
 import nl.esciencecenter.vbrowser.vrs.event.VRSEventNotifier;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VRLSyntaxException;
 import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
@@ -54,12 +65,14 @@ public abstract class ProxyFactory {
          */
         protected final VRL locator;
 
-        private ProxyNode node;
+        /** volatile: read without locking the element, which is locked during openLocation() */
+        private volatile ProxyNode node;
 
-        private long time;
+        private volatile long time;
 
         protected ProxyCacheElement(VRL locator) {
             this.locator = locator;
+            mark();
         }
 
         public ProxyCacheElement(VRL vrl, ProxyNode newNode) {
@@ -68,7 +81,7 @@ public abstract class ProxyFactory {
             mark();
         }
 
-        public synchronized ProxyNode getNode() {
+        public ProxyNode getNode() {
             return node;
         }
 
@@ -77,7 +90,7 @@ public abstract class ProxyFactory {
             mark();
         }
 
-        public synchronized boolean hasNode() {
+        public boolean hasNode() {
             return (this.node != null);
         }
 
@@ -85,6 +98,9 @@ public abstract class ProxyFactory {
             time = System.currentTimeMillis();
         }
 
+        /**
+         * @return time of last access.
+         */
         public long getTime() {
             return time;
         }
@@ -98,35 +114,143 @@ public abstract class ProxyFactory {
         }
     }
 
-    protected class ProxyCache {
-        protected Map<VRL, ProxyCacheElement> _nodes = new Hashtable<VRL, ProxyCacheElement>();
+    /**
+     * Weak reference to an evicted ProxyNode.
+     */
+    protected static class EvictedNodeRef extends WeakReference<ProxyNode> {
+        protected final VRL locator;
+
+        protected EvictedNodeRef(VRL locator, ProxyNode node, ReferenceQueue<ProxyNode> queue) {
+            super(node, queue);
+            this.locator = locator;
+        }
+    }
+
+    /**
+     * Size and age bounded ProxyNode cache. When the cache grows beyond its maximum size the least
+     * recently used nodes are evicted. Nodes which haven't been used for longer than the maximum age
+     * are evicted as well.<br>
+     * Eviction is 'soft': evicted nodes are not disposed but only weakly referenced. Nodes which are
+     * still in use, for example because they are shown on screen, are returned to the cache when
+     * they are looked up again. Unused nodes can be garbage collected.<br>
+     * Eviction is done by a background task, so lookups don't wait for it.
+     */
+    public class ProxyCache {
+
+        protected final ConcurrentMap<VRL, ProxyCacheElement> _nodes = new ConcurrentHashMap<VRL, ProxyCacheElement>();
+
+        protected final ConcurrentMap<VRL, EvictedNodeRef> _evicted = new ConcurrentHashMap<VRL, EvictedNodeRef>();
+
+        private final ReferenceQueue<ProxyNode> evictedQueue = new ReferenceQueue<ProxyNode>();
+
+        private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+        private volatile int maxSize = DEFAULT_CACHE_MAX_SIZE;
+
+        private volatile long maxAgeMillis = DEFAULT_CACHE_MAX_AGE * 1000L;
+
+        private volatile long lastSweep = System.currentTimeMillis();
+
+        private final AtomicLong numHits = new AtomicLong();
+
+        private final AtomicLong numMisses = new AtomicLong();
+
+        private final AtomicLong numSoftHits = new AtomicLong();
+
+        private final AtomicLong numEvictions = new AtomicLong();
 
         protected ProxyCacheElement get(VRL locator) {
-            return _nodes.get(locator);
+            ProxyCacheElement el = _nodes.get(locator);
+
+            if (el == null) {
+                el = restoreEvicted(locator);
+            }
+
+            if (el != null) {
+                el.mark();
+            }
+
+            return el;
+        }
+
+        /**
+         * Get cache element and update hit/miss statistics.
+         */
+        protected ProxyCacheElement lookup(VRL locator) {
+            ProxyCacheElement el = get(locator);
+
+            if ((el != null) && (el.hasNode())) {
+                numHits.incrementAndGet();
+            } else {
+                numMisses.incrementAndGet();
+            }
+
+            evictIfNeeded();
+            return el;
+        }
+
+        /**
+         * Put evicted node back into the cache if it hasn't been garbage collected yet. The
+         * reference is removed after the node is back, so a concurrent lookup either finds the
+         * reference or the restored node and never opens a duplicate node.
+         */
+        private ProxyCacheElement restoreEvicted(VRL locator) {
+            EvictedNodeRef ref = _evicted.get(locator);
+            ProxyNode node = (ref != null) ? ref.get() : null;
+
+            if (node == null) {
+                return null;
+            }
+
+            ProxyCacheElement el = new ProxyCacheElement(locator, node);
+            ProxyCacheElement prev = _nodes.putIfAbsent(locator, el);
+            _evicted.remove(locator, ref);
+
+            if (prev != null) {
+                return prev;
+            }
+
+            numSoftHits.incrementAndGet();
+            return el;
         }
 
         protected ProxyCacheElement put(VRL locator, ProxyCacheElement proxyCacheElement) {
-            return _nodes.put(locator, proxyCacheElement);
+            _evicted.remove(locator);
+            ProxyCacheElement prev = _nodes.put(locator, proxyCacheElement);
+            evictIfNeeded();
+            return prev;
         }
 
         protected void clear() {
             _nodes.clear();
+            _evicted.clear();
         }
 
         protected boolean exists(VRL locator) {
             return (_nodes.get(locator) != null);
         }
 
+        /**
+         * @return true if the element is (still) in the cache.
+         */
+        protected boolean contains(ProxyCacheElement el) {
+            return (_nodes.get(el.locator) == el);
+        }
+
         protected ProxyCacheElement createEntry(VRL locator) {
             ProxyCacheElement cacheEl = new ProxyCacheElement(locator);
-            proxyCache.put(locator, cacheEl);
+            ProxyCacheElement prev = _nodes.putIfAbsent(locator, cacheEl);
+            if (prev != null) {
+                return prev;
+            }
+            evictIfNeeded();
             return cacheEl;
         }
 
-        protected synchronized ProxyCacheElement put(ProxyNode node) {
+        protected ProxyCacheElement put(ProxyNode node) {
             VRL vrl = node.getVRL();
             ProxyCacheElement cacheEl = new ProxyCacheElement(vrl, node);
-            proxyCache.put(vrl, cacheEl);
+            put(vrl, cacheEl);
             return cacheEl;
         }
 
@@ -135,35 +259,219 @@ public abstract class ProxyFactory {
         }
 
         protected ProxyCacheElement remove(VRL locator) {
-            synchronized (_nodes) {
-                ProxyCacheElement el = _nodes.remove(locator);
-                if (el != null) {
-                    el.dispose();
-                    return el;
-                }
+            _evicted.remove(locator);
+            ProxyCacheElement el = _nodes.remove(locator);
+            if (el != null) {
+                el.dispose();
+                return el;
             }
             return null;
         }
 
+        /**
+         * Remove element without node, for example after openLocation() failed.
+         */
+        protected void removeEntry(ProxyCacheElement el) {
+            _nodes.remove(el.locator, el);
+        }
+
+        /**
+         * Set cache limits.
+         * 
+         * @param maxSize
+         *            - maximum number of cached nodes.
+         * @param maxAgeMillis
+         *            - maximum time in milliseconds an unused node is kept in the cache, &lt;=0
+         *            means no maximum.
+         */
+        public void setLimits(int maxSize, long maxAgeMillis) {
+            this.maxSize = (maxSize > 0) ? maxSize : 1;
+            this.maxAgeMillis = maxAgeMillis;
+            evictIfNeeded();
+        }
+
+        /**
+         * Start eviction of expired and least recently used nodes in the background if needed. Only
+         * one eviction task runs at a time, other threads continue without waiting.
+         */
+        protected void evictIfNeeded() {
+            long now = System.currentTimeMillis();
+            boolean checkAge = (maxAgeMillis > 0) && (now - lastSweep > maxAgeMillis / 2);
+
+            if ((_nodes.size() <= maxSize) && (checkAge == false)) {
+                return;
+            }
+
+            if (evicting.compareAndSet(false, true) == false) {
+                return;
+            }
+
+            lastSweep = now;
+
+            ActionTask task = new ActionTask(null, "ProxyCache eviction") {
+                @Override
+                protected void doTask() {
+                    try {
+                        evict();
+                    } finally {
+                        evicting.set(false);
+                    }
+                }
+
+                @Override
+                public void stopTask() {
+                }
+            };
+
+            task.startTask();
+        }
+
+        /**
+         * Evict expired and least recently used nodes. The cache is shrunk to 90% of the maximum
+         * size so the eviction doesn't need to run for every new node.
+         */
+        protected void evict() {
+            long now = System.currentTimeMillis();
+
+            List<ProxyCacheElement> candidates = new ArrayList<ProxyCacheElement>(_nodes.size());
+
+            for (ProxyCacheElement el : _nodes.values()) {
+                // skip elements being opened.
+                if (el.hasNode() == false) {
+                    continue;
+                }
+                if ((maxAgeMillis > 0) && (now - el.getTime() > maxAgeMillis)) {
+                    softEvict(el);
+                } else {
+                    candidates.add(el);
+                }
+            }
+
+            int lowWaterMark = maxSize - maxSize / 10;
+            int numToEvict = _nodes.size() - lowWaterMark;
+
+            if ((_nodes.size() > maxSize) && (numToEvict > 0)) {
+                Collections.sort(candidates, new Comparator<ProxyCacheElement>() {
+                    @Override
+                    public int compare(ProxyCacheElement el1, ProxyCacheElement el2) {
+                        return Long.compare(el1.getTime(), el2.getTime());
+                    }
+                });
+
+                for (int i = 0; (i < numToEvict) && (i < candidates.size()); i++) {
+                    softEvict(candidates.get(i));
+                }
+            }
+
+            purgeCollected();
+        }
+
+        /**
+         * Replace element by a weak reference to its node. The reference is added before the
+         * element is removed, so a concurrent lookup either finds the element or the reference.
+         */
+        private void softEvict(ProxyCacheElement el) {
+            ProxyNode node = el.getNode();
+            if (node == null) {
+                return;
+            }
+
+            EvictedNodeRef ref = new EvictedNodeRef(el.locator, node, evictedQueue);
+            _evicted.put(el.locator, ref);
+
+            if (_nodes.remove(el.locator, el) == false) {
+                // replaced or removed meanwhile.
+                _evicted.remove(el.locator, ref);
+                return;
+            }
+
+            numEvictions.incrementAndGet();
+        }
+
+        private void purgeCollected() {
+            Reference<? extends ProxyNode> ref;
+            while ((ref = evictedQueue.poll()) != null) {
+                EvictedNodeRef nodeRef = (EvictedNodeRef) ref;
+                _evicted.remove(nodeRef.locator, nodeRef);
+            }
+        }
+
+        // === Statistics ===
+
+        public int size() {
+            return _nodes.size();
+        }
+
+        /**
+         * @return number of evicted nodes which haven't been garbage collected yet.
+         */
+        public int getNumSoftEvicted() {
+            return _evicted.size();
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public long getMaxAgeMillis() {
+            return maxAgeMillis;
+        }
+
+        public long getNumHits() {
+            return numHits.get();
+        }
+
+        public long getNumMisses() {
+            return numMisses.get();
+        }
+
+        /**
+         * @return number of evicted nodes which were still in use and have been put back into the
+         *         cache.
+         */
+        public long getNumSoftHits() {
+            return numSoftHits.get();
+        }
+
+        public long getNumEvictions() {
+            return numEvictions.get();
+        }
+
+        public String toString() {
+            return "ProxyCache:[size:" + size() + "/" + maxSize + ",maxAge:" + maxAgeMillis + "ms,hits:"
+                    + getNumHits() + ",misses:" + getNumMisses() + ",softHits:" + getNumSoftHits() + ",evictions:"
+                    + getNumEvictions() + ",softEvicted:" + getNumSoftEvicted() + "]";
+        }
     }
 
     // ========================================================================
     //
     // ========================================================================
 
+    public static final int DEFAULT_CACHE_MAX_SIZE = 10000;
+
+    /** Default maximum age of unused cached nodes in seconds */
+    public static final int DEFAULT_CACHE_MAX_AGE = 600;
+
     protected boolean enableCache = true;
 
     protected ProxyCache proxyCache = new ProxyCache();
 
-    protected ProxyCache cacheRemoved = new ProxyCache();
-
     protected BrowserPlatform platform;
 
     protected ProxyFactory(BrowserPlatform browserPlatform) {
         this.platform = browserPlatform;
+        initProxyCache();
         initProxyEventCacheUpdater();
     }
 
+    protected void initProxyCache() {
+        UIProperties settings = platform.getGuiSettings();
+        if (settings != null) {
+            proxyCache.setLimits(settings.getProxyCacheMaxSize(), settings.getProxyCacheMaxAge() * 1000L);
+        }
+    }
+
     public BrowserPlatform getPlatform() {
         return platform;
     }
@@ -188,6 +496,20 @@ public abstract class ProxyFactory {
         this.enableCache = value;
     }
 
+    /**
+     * @see ProxyCache#setLimits(int, long)
+     */
+    public void setCacheLimits(int maxSize, long maxAgeMillis) {
+        this.proxyCache.setLimits(maxSize, maxAgeMillis);
+    }
+
+    /**
+     * @return ProxyCache for monitoring purposes.
+     */
+    public ProxyCache getProxyCache() {
+        return this.proxyCache;
+    }
+
     final public ProxyNode openLocation(VRL locator) throws ProxyException {
         if (locator == null) {
             throw new ProxyException("NULL Locator!");
@@ -196,16 +518,13 @@ public abstract class ProxyFactory {
         if (enableCache == false) {
             return doOpenLocation(locator);
         } else {
-            ProxyCacheElement cacheEl;
-
-            synchronized (this.proxyCache) {
-                cacheEl = this.proxyCache.get(locator);
-                // create new element
-                if (cacheEl == null) {
-                    cacheEl = this.proxyCache.createEntry(locator);
-                    logger.debugPrintf("+++ Cache: new element for:%s\n", locator);
-                }
+            ProxyCacheElement cacheEl = this.proxyCache.lookup(locator);
 
+            // create new element
+            if (cacheEl == null) {
+                cacheEl = this.proxyCache.createEntry(locator);
+                logger.debugPrintf("+++ Cache: new element for:%s\n", locator);
+            } else {
                 logger.debugPrintf("--- Cache: cached element for:%s\n", locator);
             }
 
@@ -213,7 +532,11 @@ public abstract class ProxyFactory {
 
             // Now synchronized around cache element !
             synchronized (cacheEl) {
-                if (cacheEl.hasNode() == true) {
+                if ((cacheEl.hasNode() == false) && (proxyCache.contains(cacheEl) == false)) {
+                    // removed while waiting, for example because the open of another thread failed.
+                    logger.debugPrintf("--- Cache: removed element, retrying:%s\n", locator);
+                    node = null;
+                } else if (cacheEl.hasNode() == true) {
                     // ====================
                     // Cache hit
                     // ====================
@@ -227,15 +550,24 @@ public abstract class ProxyFactory {
                     // ====================
                     logger.debugPrintf(">>> Cache: START OpenLocation for:%s\n", locator);
 
-                    {
+                    try {
                         node = doOpenLocation(locator);
                         cacheEl.setNode(node);
+                    } finally {
+                        // don't keep empty elements of failed opens.
+                        if (cacheEl.hasNode() == false) {
+                            proxyCache.removeEntry(cacheEl);
+                        }
                     }
 
                     logger.debugPrintf(">>> Cache: FINISHED OpenLocation for:%s\n", locator);
                 }
             }
 
+            if (node == null) {
+                return openLocation(locator);
+            }
+
             // New Node: Perform prefetch here, but outside mutex erea.
             node.doPrefetchAttributes();
 
@@ -244,22 +576,20 @@ public abstract class ProxyFactory {
     }
 
     public void cacheClear() {
-        synchronized (proxyCache) {
-            this.proxyCache.clear();
-        }
+        this.proxyCache.clear();
     }
 
     public void refreshChilds(VRL parentVrl) {
-        ProxyCacheElement cacheEl = this.proxyCache.get(parentVrl);
-        if (cacheEl != null) {
-            cacheEl.getNode().refresh();
+        ProxyNode node = cacheFetch(parentVrl);
+        if (node != null) {
+            node.refresh();
         }
     }
 
     public void refreshNode(VRL vrl) {
-        ProxyCacheElement cacheEl = this.proxyCache.get(vrl);
-        if (cacheEl != null) {
-            cacheEl.getNode().refresh();
+        ProxyNode node = cacheFetch(vrl);
+        if (node != null) {
+            node.refresh();
         }
     }
 
@@ -268,32 +598,26 @@ public abstract class ProxyFactory {
     }
 
     protected boolean cacheExists(VRL vrl) {
-        synchronized (proxyCache) {
-            return proxyCache.exists(vrl);
-        }
+        return proxyCache.exists(vrl);
     }
 
     protected ProxyNode cacheFetch(VRL locator) {
-        synchronized (proxyCache) {
-            ProxyCacheElement el = proxyCache.get(locator);
-            if (el == null) {
-                return null;
-            }
-            return el.node;
+        ProxyCacheElement el = proxyCache.get(locator);
+        if (el == null) {
+            return null;
         }
+        return el.getNode();
     }
 
     protected void cacheUpdate(ProxyNode node) {
-        synchronized (proxyCache) {
-            proxyCache.put(node);
-        }
+        proxyCache.put(node);
     }
 
     protected void cacheRemove(ProxyNode proxyNode) {
         ProxyNode cacheNode = cacheFetch(proxyNode.getVRL());
         this.proxyCache.remove(proxyNode);
 
-        if (cacheNode.equals(proxyNode)) {
+        if ((cacheNode != null) && (cacheNode.equals(proxyNode) == false)) {
             logger.errorPrintf("cacheRemove(): Warning: given ProxyNode does not match cached node: %s != %s\n",
                     proxyNode, cacheNode);
             this.proxyCache.remove(cacheNode);
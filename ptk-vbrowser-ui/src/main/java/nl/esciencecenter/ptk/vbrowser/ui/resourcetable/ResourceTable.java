@@ -38,9 +38,11 @@ import javax.swing.table.TableModel;
 
 import nl.esciencecenter.ptk.data.StringList;
 import nl.esciencecenter.ptk.presentation.Presentation;
+import nl.esciencecenter.ptk.task.ITaskSource;
 import nl.esciencecenter.ptk.util.StringUtil;
 import nl.esciencecenter.ptk.util.logging.PLogger;
 import nl.esciencecenter.ptk.vbrowser.ui.browser.BrowserInterface;
+import nl.esciencecenter.ptk.vbrowser.ui.browser.BrowserTask;
 import nl.esciencecenter.ptk.vbrowser.ui.model.ProxyDataSource;
 import nl.esciencecenter.ptk.vbrowser.ui.model.UIViewModel;
 import nl.esciencecenter.ptk.vbrowser.ui.model.ViewNode;
@@ -641,10 +643,36 @@ public class ResourceTable extends JTable implements UIDisposable, ViewNodeConta
         controller.handle(action, e);
     }
 
-    public void doSortColumn(String name, boolean reverse) {
-        this.getResourceTableModel().doSortColumn(name, reverse);
+    /**
+     * Sort rows in a background task. The model swaps in the sorted rows and fires the
+     * TableDataChanged event on the Swing event thread. When the column is sorted again before a
+     * previous sort has finished, the model drops the outdated sort.
+     */
+    public void doSortColumn(final String name, final boolean reverse) {
+        final ResourceTableModel model = this.getResourceTableModel();
         this.sortColumnName = name;
         this.columnSortOrderIsReversed = reverse;
+
+        BrowserTask task = new BrowserTask(getTaskSource(), "Sorting column:" + name) {
+            public void doTask() {
+                model.doSortColumn(name, reverse);
+            }
+        };
+
+        task.startTask();
+    }
+
+    protected ITaskSource getTaskSource() {
+        if (controller == null) {
+            return null;
+        }
+
+        BrowserInterface browser = getBrowserInterface();
+        if (browser == null) {
+            return null;
+        }
+
+        return browser.getTaskSource();
     }
 
     public boolean getColumnSortOrderIsReversed() {
@@ -20,18 +20,23 @@
 
 package nl.esciencecenter.ptk.vbrowser.ui.resourcetable;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListDataListener;
 import javax.swing.table.AbstractTableModel;
 
 import nl.esciencecenter.ptk.data.StringList;
+import nl.esciencecenter.ptk.util.Comparer;
 import nl.esciencecenter.ptk.util.QSort;
 import nl.esciencecenter.ptk.util.logging.PLogger;
+import nl.esciencecenter.ptk.vbrowser.ui.UIGlobal;
 import nl.esciencecenter.ptk.vbrowser.ui.model.ViewNode;
 import nl.esciencecenter.vbrowser.vrs.data.Attribute;
 import nl.esciencecenter.vbrowser.vrs.data.AttributeSet;
@@ -48,6 +53,27 @@ public class ResourceTableModel extends AbstractTableModel implements
 
     private static PLogger logger = PLogger.getLogger(ResourceTableModel.class);
 
+    private static final int SORT_SWAPPED = 0;
+
+    private static final int SORT_RETRY = 1;
+
+    private static final int SORT_STALE = 2;
+
+    /**
+     * Row with a copy of its sort attribute, taken within the rows mutex so the sort doesn't read
+     * row attributes which are being updated.
+     */
+    private static class SortKey {
+        private final RowData row;
+
+        private final Attribute value;
+
+        private SortKey(RowData row, Attribute value) {
+            this.row = row;
+            this.value = value;
+        }
+    }
+
     /**
      * Resource Row Data
      */
@@ -59,6 +85,9 @@ public class ResourceTableModel extends AbstractTableModel implements
 
         private ViewNode viewNode;
 
+        /** Current index in the table, -1 if this row isn't part of the table (anymore) */
+        private int index = -1;
+
         public RowData(ViewNode viewNode, String rowKey, AttributeSet attrs) {
             this.rowKey = rowKey;
             this.viewNode = viewNode;
@@ -122,9 +151,8 @@ public class ResourceTableModel extends AbstractTableModel implements
         }
 
         public int getIndex() {
-            // check entry inside Table Rows !
             synchronized (ResourceTableModel.this.rows) {
-                return ResourceTableModel.this.rows.indexOf(this);
+                return this.index;
             }
         }
 
@@ -154,9 +182,21 @@ public class ResourceTableModel extends AbstractTableModel implements
     private Vector<RowData> rows = new Vector<RowData>();
 
     /**
-     * Mapping of Key String to row Index number
+     * Mapping of Key String to row. The row itself carries its current index, so reordering rows
+     * only updates the row indices and not this mapping. Guarded by the rows mutex.
+     */
+    private Map<String, RowData> rowKeyIndex = new HashMap<String, RowData>();
+
+    /**
+     * Incremented on each structural change of the rows (insert, delete or replace).
+     */
+    private long rowsModCount = 0;
+
+    /**
+     * Incremented for each sort request, a sort which isn't the latest request is dropped. Guarded
+     * by the rows mutex.
      */
-    private Map<String, Integer> rowKeyIndex = new Hashtable<String, Integer>();
+    private long sortGeneration = 0;
 
     // Current HeaderModel default empty, NOT null
     private HeaderModel headers = new HeaderModel();
@@ -203,10 +243,11 @@ public class ResourceTableModel extends AbstractTableModel implements
      */
     public void clearData() {
         synchronized (rows) // for rows and keys
-
         {
+            clearRowIndices();
             this.rows.clear();
             this.rowKeyIndex.clear();
+            this.rowsModCount++;
         }
 
         this.fireTableDataChanged();
@@ -225,49 +266,162 @@ public class ResourceTableModel extends AbstractTableModel implements
         return rootViewNode;
     }
 
+    /**
+     * Sort rows by the specified column. The rows are sorted on a copy of the sort keys without
+     * holding the rows mutex, so this method can be called from a background thread without
+     * blocking the table. The sorted rows are swapped in and the TableDataChanged event is fired on
+     * the Swing event thread. If the rows were changed during the sort, the sort is repeated. If
+     * another sort has been requested in the mean time, this sort is dropped.
+     * 
+     * @return mapping of new row index to old row index or null if the column doesn't exist or the
+     *         sort has been dropped.
+     */
     public int[] doSortColumn(String name, boolean reverse) {
-        PLogger.getLogger(ResourceTableModel.class).debugPrintf("sortBy:%s , reverse=%s\n", name,
-                reverse);
+        logger.debugPrintf("sortBy:%s , reverse=%s\n", name, reverse);
 
         int colnr = getHeaderIndex(name);
 
         if (colnr < 0)
             return null;
 
-        PLogger.getLogger(ResourceTableModel.class).debugPrintf("sortBy column number=%d\n", colnr);
-
-        TableRowComparer comparer = new TableRowComparer(name, reverse);
-        QSort<RowData> sorter = new QSort<RowData>(comparer);
+        logger.debugPrintf("sortBy column number=%d\n", colnr);
 
-        int mapping[];
+        long generation;
 
         synchronized (rows) {
-            // in memory sort !
-            mapping = sorter.sort(rows);
+            generation = ++sortGeneration;
+        }
+
+        final TableRowComparer comparer = new TableRowComparer(name, reverse);
+        QSort<SortKey> sorter = new QSort<SortKey>(new Comparer<SortKey>() {
+            public int compare(SortKey key1, SortKey key2) {
+                return comparer.compareAttributes(key1.value, key2.value);
+            }
+        });
+
+        while (true) {
+            SortKey keys[];
+            long modCount;
+
+            synchronized (rows) {
+                if (generation != sortGeneration) {
+                    logger.debugPrintf("doSortColumn(): dropping outdated sort of:%s\n", name);
+                    return null;
+                }
+
+                keys = new SortKey[rows.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    RowData row = rows.get(i);
+                    Attribute attr = row.getAttribute(name);
+                    keys[i] = new SortKey(row, (attr != null) ? attr.duplicate() : null);
+                }
+                modCount = rowsModCount;
+            }
+
+            // in memory sort of copy!
+            int mapping[] = sorter.sort(keys);
+
+            RowData sortedRows[] = new RowData[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                sortedRows[i] = keys[i].row;
+            }
 
-            // reINdex key vecto:
-            reindexKeyVector();
+            int result = swapSortedRows(sortedRows, modCount, generation);
+
+            if (result == SORT_SWAPPED) {
+                return mapping;
+            } else if (result == SORT_STALE) {
+                logger.debugPrintf("doSortColumn(): dropping outdated sort of:%s\n", name);
+                return null;
+            }
+
+            logger.debugPrintf("doSortColumn(): rows changed during sort, sorting again.\n");
         }
+    }
 
-        this.fireTableDataChanged();
-        return mapping;
+    /**
+     * Swap in sorted rows and fire TableDataChanged on the Swing event thread. The rows are only
+     * swapped if they haven't been changed since the sort keys were copied and no newer sort has
+     * been requested.
+     */
+    private int swapSortedRows(final RowData sortedRows[], final long modCount, final long generation) {
+        final int result[] = new int[] { SORT_STALE };
+
+        Runnable swapTask = new Runnable() {
+            public void run() {
+                synchronized (rows) {
+                    if (generation != sortGeneration) {
+                        result[0] = SORT_STALE;
+                        return;
+                    }
+
+                    if (modCount != rowsModCount) {
+                        result[0] = SORT_RETRY;
+                        return;
+                    }
+
+                    rows.clear();
+                    rows.addAll(Arrays.asList(sortedRows));
+                    // keys are unchanged, only update row indices:
+                    reindexRows(0);
+                    result[0] = SORT_SWAPPED;
+                }
+
+                fireTableDataChanged();
+            }
+        };
+
+        if (UIGlobal.isGuiThread()) {
+            swapTask.run();
+            return result[0];
+        }
+
+        try {
+            SwingUtilities.invokeAndWait(swapTask);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SORT_STALE;
+        } catch (InvocationTargetException e) {
+            logger.errorPrintf("Failed to update sorted rows:%s\n", e.getCause());
+            return SORT_STALE;
+        }
+
+        return result[0];
+    }
+
+    /**
+     * Update the indices of the rows starting from 'offset'. Must be called within the rows mutex.
+     */
+    private void reindexRows(int offset) {
+        int n = rows.size();
+
+        for (int i = offset; i < n; i++) {
+            this.rows.get(i).index = i;
+        }
     }
 
     /**
-     * Reindex key to index mapping.
+     * Reset indices of all rows before the rows are removed. Must be called within the rows mutex.
+     */
+    private void clearRowIndices() {
+        for (RowData row : rows) {
+            row.index = -1;
+        }
+    }
+
+    /**
+     * Rebuild key to row mapping and row indices.
      */
     protected void reindexKeyVector() {
-        // Mutex: Lock both rows AND rowKeyIndex !
         synchronized (rows) {
-            synchronized (rowKeyIndex) {
-                this.rowKeyIndex.clear();
+            this.rowKeyIndex.clear();
 
-                int n = rows.size();
+            int n = rows.size();
 
-                for (int i = 0; i < n; i++) {
-                    RowData row = this.rows.get(i);
-                    this.rowKeyIndex.put(row.getKey(), new Integer(i));
-                }
+            for (int i = 0; i < n; i++) {
+                RowData row = this.rows.get(i);
+                row.index = i;
+                this.rowKeyIndex.put(row.getKey(), row);
             }
         }
     }
@@ -425,8 +579,10 @@ public class ResourceTableModel extends AbstractTableModel implements
      */
     public void allocRows(List<String> rowKeys) {
         synchronized (rows) {
+            clearRowIndices();
             this.rows.clear();
             this.rowKeyIndex.clear();
+            this.rowsModCount++;
 
             for (String key : rowKeys) {
                 // add to internal data structure only
@@ -449,37 +605,103 @@ public class ResourceTableModel extends AbstractTableModel implements
     }
 
     private int addRow(RowData rowData, boolean fireEvent) {
-        boolean rowExists = false;
+        boolean rowExists;
+        int index;
+
+        synchronized (rows) {
+            rowExists = rowKeyIndex.containsKey(rowData.rowKey);
+            index = _addRow(rowData);
+        }
+
+        logger.debugPrintf("addRow(): %s new row at index %d\n", (rowExists ? "replaced"
+                : "created"), index);
+
+        if (fireEvent) {
+            if (rowExists) {
+                this.fireTableRowsUpdated(index, index);
+            } else {
+                this.fireTableRowsInserted(index, index);
+            }
+        }
+
+        return index;
+    }
 
+    /**
+     * Add or replace row in internal data structure. Must be called within the rows mutex.
+     * 
+     * @return index of new row.
+     */
+    private int _addRow(RowData rowData) {
         if ((rowData == null) || (rowData.rowKey == null)) {
             throw new NullPointerException(
                     "Cannot add NULL RowData or row with NULL key (use nill rowdata and nill key).");
         }
 
-        Integer index;
+        int index;
+        RowData oldRow = rowKeyIndex.get(rowData.rowKey);
+
+        if (oldRow != null) {
+            // row exist, replace!
+            index = oldRow.index;
+            oldRow.index = -1;
+            rows.set(index, rowData);
+        } else {
+            index = rows.size();
+            this.rows.add(rowData);
+        }
+
+        rowData.index = index;
+        this.rowKeyIndex.put(rowData.rowKey, rowData);
+        this.rowsModCount++;
+
+        return index;
+    }
+
+    /**
+     * Add or replace multiple rows with empty attributes and fire one event for the new rows and one
+     * for the replaced rows, instead of an event per row.
+     * 
+     * @return number of new rows.
+     */
+    public int addRows(List<ViewNode> viewNodes) {
+        int firstNew = -1;
+        int lastNew = -1;
+        int firstReplaced = -1;
+        int lastReplaced = -1;
 
         synchronized (rows) {
-            String key = rowData.rowKey;
-            index = rowKeyIndex.get(key);// Note: NULL for non-existing keys!
-            if ((index != null) && (index >= 0)) {
-                // row exist, replace!
-                rows.set(index, rowData);
-                rowExists = true;
-            } else {
-                index = rows.size();
-                this.rows.add(rowData);
-                this.rowKeyIndex.put(rowData.rowKey, new Integer(index));
+            for (ViewNode viewNode : viewNodes) {
+                RowData rowData = new RowData(viewNode, createRowKey(viewNode), null);
+                boolean rowExists = rowKeyIndex.containsKey(rowData.rowKey);
+                int index = _addRow(rowData);
+
+                if (rowExists) {
+                    firstReplaced = ((firstReplaced < 0) || (index < firstReplaced)) ? index
+                            : firstReplaced;
+                    lastReplaced = Math.max(lastReplaced, index);
+                } else {
+                    if (firstNew < 0) {
+                        firstNew = index;
+                    }
+                    lastNew = index;
+                }
             }
         }
 
-        logger.debugPrintf("addRow(): %s new row at index %d\n", (rowExists ? "replaced"
-                : "created"), index);
+        logger.debugPrintf("addRows(): new rows [%d,%d], replaced rows [%d,%d]\n", firstNew,
+                lastNew, firstReplaced, lastReplaced);
 
-        if (fireEvent) {
-            this.fireTableRowsInserted(index, index);
+        if (firstReplaced >= 0) {
+            this.fireTableRowsUpdated(firstReplaced, lastReplaced);
         }
 
-        return index;
+        if (firstNew >= 0) {
+            this.fireTableRowsInserted(firstNew, lastNew);
+            return lastNew - firstNew + 1;
+        }
+
+        return 0;
     }
 
     // add row to internal data structure
@@ -522,25 +744,45 @@ public class ResourceTableModel extends AbstractTableModel implements
      */
     public boolean delRows(int indices[]) {
         // multi delete to avoid O(N*N) rekeying of key mapping !
-        boolean result = this._delRows(indices, false);
+        int sorted[] = sortDescending(indices);
+        boolean result = this._delRows(sorted, false);
 
-        for (int i = 0; i < indices.length; i++) {
-            this.fireTableRowsDeleted(indices[i], indices[i]);
+        for (int i = 0; i < sorted.length; i++) {
+            this.fireTableRowsDeleted(sorted[i], sorted[i]);
         }
 
         return result;
     }
 
+    /**
+     * Return the unique row indices sorted highest first, so deleting a row doesn't shift the
+     * indices of the rows which still have to be deleted.
+     */
+    private int[] sortDescending(int indices[]) {
+        int sorted[] = indices.clone();
+        Arrays.sort(sorted);
+
+        int unique[] = new int[sorted.length];
+        int num = 0;
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            if ((num == 0) || (sorted[i] != unique[num - 1])) {
+                unique[num++] = sorted[i];
+            }
+        }
+
+        return Arrays.copyOf(unique, num);
+    }
+
     // delete row from internal data structure
     private RowData _delRow(String key, boolean fireEvent) {
         // synchronized for ROWS and rowKeyIndex as well !
         synchronized (rows) {
-            Integer index = this.rowKeyIndex.get(key);
-            if (index == null) {
+            RowData row = this.rowKeyIndex.get(key);
+            if (row == null) {
                 return null;
             }
 
-            return this._delRow(index, fireEvent);
+            return this._delRow(row.index, fireEvent);
         }
     }
 
@@ -567,13 +809,11 @@ public class ResourceTableModel extends AbstractTableModel implements
             String key = rowObj.getKey();
             rows.remove(rowIndex);
             rowKeyIndex.remove(key);
+            rowObj.index = -1;
+            rowsModCount++;
 
             // update indices: start from 'index'
-            // index=0;
-            // rowKeyIndex.clear();
-            for (int i = rowIndex; i < rows.size(); i++) {
-                this.rowKeyIndex.put(rows.get(i).getKey(), new Integer(i));
-            }
+            reindexRows(rowIndex);
         }
 
         if (fireEvent) {
@@ -593,23 +833,27 @@ public class ResourceTableModel extends AbstractTableModel implements
         boolean allDeleted = true;
         synchronized (rows)// sync for both rows and rowKeyIndex!
         {
+            // indices are unique and sorted highest first, see delRows().
             for (int index : indices) {
                 if ((index < 0) || (index >= rows.size())) {
                     allDeleted = false;
+                    continue;
                 }
 
                 RowData rowObj = rows.get(index);
                 String key = rowObj.getKey();
                 rows.remove(index);
                 this.rowKeyIndex.remove(key);
+                rowObj.index = -1;
 
                 if (fireEvent) {
                     // Concurrency note: Within Synchronized(!): Fire event per row
                     this.fireTableRowsDeleted(index, index);
                 }
             }
-            // within sync(rows)
-            this.reindexKeyVector();
+            rowsModCount++;
+            // within sync(rows), keys of remaining rows are unchanged.
+            reindexRows(0);
         }
 
         return allDeleted;
@@ -624,13 +868,13 @@ public class ResourceTableModel extends AbstractTableModel implements
         }
 
         synchronized (rows) {
-            Integer index = this.rowKeyIndex.get(key);
+            RowData row = this.rowKeyIndex.get(key);
 
-            if (index == null) {
+            if (row == null) {
                 return -1;
             }
 
-            return index;
+            return row.index;
         }
     }
 
@@ -670,12 +914,12 @@ public class ResourceTableModel extends AbstractTableModel implements
     }
 
     public RowData getRow(String key) {
+        if (key == null) {
+            return null;
+        }
+
         synchronized (rows) {
-            int index = this.getRowIndex(key);
-            if ((index < 0) || (index >= rows.size())) {
-                return null;
-            }
-            return this.rows.get(index);
+            return this.rowKeyIndex.get(key);
         }
     }
 
@@ -710,16 +954,14 @@ public class ResourceTableModel extends AbstractTableModel implements
 
         synchronized (rows) {
             oldRow = rows.get(index);
-            String oldKey = null;
             if (oldRow != null) {
-                oldKey = oldRow.rowKey;
+                rowKeyIndex.remove(oldRow.rowKey);
+                oldRow.index = -1;
             }
             rows.set(index, newRow);
-
-            synchronized (rowKeyIndex) {
-                rowKeyIndex.remove(oldKey);
-                rowKeyIndex.put(newKey, new Integer(index));
-            }
+            newRow.index = index;
+            rowKeyIndex.put(newKey, newRow);
+            rowsModCount++;
         }
 
         return oldRow;
@@ -852,6 +1094,48 @@ public class ResourceTableModel extends AbstractTableModel implements
         }
     }
 
+    /**
+     * Merge the attribute values of multiple rows. Fires one update event for the range of updated
+     * rows instead of one event per row. Rows which do not exist (anymore) are skipped.
+     * 
+     * @param rowValues
+     *            - Map of row key to attribute values.
+     * @return number of updated rows.
+     */
+    public int setValues(Map<String, List<Attribute>> rowValues) {
+        int minIndex = -1;
+        int maxIndex = -1;
+        int numUpdated = 0;
+
+        synchronized (rows) {
+            for (Map.Entry<String, List<Attribute>> entry : rowValues.entrySet()) {
+                int rowIndex = this.getRowIndex(entry.getKey());
+                if ((rowIndex < 0) || (entry.getValue() == null)) {
+                    continue;
+                }
+
+                RowData row = this.rows.get(rowIndex);
+                for (Attribute attr : entry.getValue()) {
+                    row.rowAttributes.put(attr);
+                }
+
+                if ((minIndex < 0) || (rowIndex < minIndex)) {
+                    minIndex = rowIndex;
+                }
+                if (rowIndex > maxIndex) {
+                    maxIndex = rowIndex;
+                }
+                numUpdated++;
+            }
+        }
+
+        if (numUpdated > 0) {
+            this.fireTableRowsUpdated(minIndex, maxIndex);
+        }
+
+        return numUpdated;
+    }
+
     public void setValueAt(Object value, int rowNr, int colNr) {
         RowData row = getRow(rowNr);
 
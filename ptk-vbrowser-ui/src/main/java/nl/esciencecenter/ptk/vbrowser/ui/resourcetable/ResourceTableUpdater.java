@@ -20,12 +20,27 @@
 
 package nl.esciencecenter.ptk.vbrowser.ui.resourcetable;
 
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 
 import nl.esciencecenter.ptk.data.StringList;
 import nl.esciencecenter.ptk.presentation.Presentation;
 import nl.esciencecenter.ptk.task.ITaskSource;
 import nl.esciencecenter.ptk.util.logging.PLogger;
+import nl.esciencecenter.ptk.vbrowser.ui.UIGlobal;
 import nl.esciencecenter.ptk.vbrowser.ui.browser.BrowserInterface;
 import nl.esciencecenter.ptk.vbrowser.ui.browser.BrowserTask;
 import nl.esciencecenter.ptk.vbrowser.ui.browser.ProxyBrowserController;
@@ -48,6 +63,48 @@ import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
 public class ResourceTableUpdater implements VRSEventListener, ProxyDataSourceUpdater {
     private static PLogger logger = PLogger.getLogger(ResourceTableUpdater.class);
 
+    /**
+     * Number of nodes for which the attributes are fetched in one bulk call.
+     */
+    public static final int ATTRIBUTE_BATCH_SIZE = 64;
+
+    /**
+     * Maximum number of tasks fetching attribute batches in parallel.
+     */
+    public static final int MAX_ATTRIBUTE_FETCHERS = 4;
+
+    /**
+     * Collects the attribute names of fetched nodes. Nodes of the same resource type have the same
+     * attribute names, so the names are only requested for the first node of each resource type.
+     */
+    private class AttributeNamesCollector {
+
+        private final StringList allAttributes;
+
+        private final Set<String> resourceTypes = new HashSet<String>();
+
+        private AttributeNamesCollector(StringList allAttributes) {
+            this.allAttributes = allAttributes;
+        }
+
+        private void collect(ViewNode node) {
+            synchronized (resourceTypes) {
+                if (resourceTypes.add(node.getResourceType()) == false) {
+                    return;
+                }
+            }
+
+            try {
+                List<String> names = dataSource.getAttributeNames(node.getVRL());
+                synchronized (allAttributes) {
+                    allAttributes.add(names, true);
+                }
+            } catch (ProxyException e) {
+                handle("Couldn't get attribute names of:" + node, e);
+            }
+        }
+    }
+
     // ========================================================================
     // Instance
     // ========================================================================
@@ -431,27 +488,20 @@ public class ResourceTableUpdater implements VRSEventListener, ProxyDataSourceUp
                         return;
                     }
 
-                    for (ViewNode node : nodes) {
-                        if (isCancelled() == true) {
-                            return;
-                        }
-
-                        createRow(node);
+                    if (isCancelled() == true) {
+                        return;
                     }
 
+                    // one insert event for all rows:
+                    List<ViewNode> rowNodes = Arrays.asList(nodes);
+                    tableModel.addRows(rowNodes);
+
                     StringList allAttributes = new StringList();
+                    // null attribute names: use current headers.
+                    fetchAttributes(this, rowNodes, null, allAttributes);
 
-                    for (ViewNode node : nodes) {
-                        if (isCancelled() == true) {
-                            return;
-                        }
-                        try {
-                            String hdrs[] = tableModel.getHeaders();
-                            updateNodeAttributes(node, hdrs);
-                            allAttributes.add(dataSource.getAttributeNames(node.getVRL()), true);
-                        } catch (ProxyException e) {
-                            handle("Couldn't update node attributes of:" + node, e);
-                        }
+                    if (isCancelled() == true) {
+                        return;
                     }
 
                     // Keep all attribute names which are actually availabl from the nodes.
@@ -481,28 +531,228 @@ public class ResourceTableUpdater implements VRSEventListener, ProxyDataSourceUp
                 + rowKeys.length + ",#attrNames="
                 + ((attrNames != null) ? "" + attrNames.length : "?")) {
             public void doTask() {
+                List<ViewNode> nodes = new ArrayList<ViewNode>(rowKeys.length);
 
                 for (String rowKey : rowKeys) {
-                    if (this.isCancelled()) {
-                        return;
-                    }
-
                     ViewNode node = model.getViewNode(rowKey);
-
-                    try {
-                        if (node != null) {
-                            updateNodeAttributes(node, finalAttrs);
-                        }
-                    } catch (ProxyException e) {
-                        handle("Couldn't update node attributes of:" + node, e);
+                    if (node != null) {
+                        nodes.add(node);
                     }
                 }
+
+                fetchAttributes(this, nodes, finalAttrs, null);
             }
         };
 
         task.startTask();
     }
 
+    /**
+     * Fetch the attributes of the specified nodes in batches of {@link #ATTRIBUTE_BATCH_SIZE} using
+     * at most {@link #MAX_ATTRIBUTE_FETCHERS} parallel tasks. Nodes which are visible in the table
+     * are fetched first. The results are merged into the table model per batch. Returns when all
+     * batches have been fetched or the parent task has been cancelled.
+     * 
+     * @param parentTask
+     *            - task which performs the update, also fetches batches itself.
+     * @param attrNames
+     *            - attributes to fetch, if null the current table headers are used.
+     * @param allAttributes
+     *            - optional list to collect the attribute names of all nodes in.
+     */
+    protected void fetchAttributes(final BrowserTask parentTask, List<ViewNode> nodes,
+            final String attrNames[], StringList allAttributes) {
+        final AttributeNamesCollector namesCollector = (allAttributes != null) ? new AttributeNamesCollector(
+                allAttributes) : null;
+        List<ViewNode> orderedNodes = prioritizeVisibleNodes(nodes);
+        final Deque<List<ViewNode>> batches = new ArrayDeque<List<ViewNode>>();
+
+        for (int i = 0; i < orderedNodes.size(); i += ATTRIBUTE_BATCH_SIZE) {
+            int end = Math.min(orderedNodes.size(), i + ATTRIBUTE_BATCH_SIZE);
+            batches.add(orderedNodes.subList(i, end));
+        }
+
+        int numFetchers = Math.min(MAX_ATTRIBUTE_FETCHERS, batches.size());
+        List<BrowserTask> fetchers = new ArrayList<BrowserTask>();
+
+        // Helper tasks have no task source, so a concurrency limit on the browser's task source
+        // can't queue them behind the parent task which is waiting for them.
+        for (int i = 1; i < numFetchers; i++) {
+            BrowserTask fetcher = new BrowserTask((ITaskSource) null, "fetchAttributes() fetcher #" + i) {
+                public void doTask() {
+                    fetchAttributeBatches(parentTask, batches, attrNames, namesCollector);
+                }
+            };
+            fetchers.add(fetcher);
+            fetcher.startTask();
+        }
+
+        fetchAttributeBatches(parentTask, batches, attrNames, namesCollector);
+
+        for (BrowserTask fetcher : fetchers) {
+            try {
+                fetcher.join();
+            } catch (InterruptedException e) {
+                logger.warnPrintf("Interrupted while waiting for attribute fetchers\n");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void fetchAttributeBatches(BrowserTask parentTask, Deque<List<ViewNode>> batches,
+            String attrNames[], AttributeNamesCollector namesCollector) {
+        while (parentTask.isCancelled() == false) {
+            List<ViewNode> batch;
+
+            synchronized (batches) {
+                batch = batches.poll();
+            }
+
+            if (batch == null) {
+                return;
+            }
+
+            fetchAttributeBatch(batch, attrNames, namesCollector);
+        }
+    }
+
+    private void fetchAttributeBatch(List<ViewNode> batch, String attrNames[],
+            AttributeNamesCollector namesCollector) {
+        if (attrNames == null) {
+            attrNames = tableModel.getHeaders();
+        }
+
+        List<VRL> vrls = new ArrayList<VRL>(batch.size());
+        for (ViewNode node : batch) {
+            vrls.add(node.getVRL());
+        }
+
+        Map<VRL, List<Attribute>> attrsMap;
+
+        try {
+            attrsMap = dataSource.getAttributes(vrls, attrNames);
+        } catch (ProxyException e) {
+            // fall back to single node requests, so one failing node doesn't fail the whole batch.
+            logger.debugPrintf("Bulk attribute fetch failed, fetching per node:%s\n", e);
+            attrsMap = new LinkedHashMap<VRL, List<Attribute>>();
+
+            for (ViewNode node : batch) {
+                try {
+                    attrsMap.put(node.getVRL(), dataSource.getAttributes(node.getVRL(), attrNames));
+                } catch (ProxyException e2) {
+                    handle("Couldn't update node attributes of:" + node, e2);
+                }
+            }
+        }
+
+        Map<String, List<Attribute>> rowValues = new LinkedHashMap<String, List<Attribute>>();
+
+        for (ViewNode node : batch) {
+            List<Attribute> attrs = attrsMap.get(node.getVRL());
+            String rowKey = tableModel.createRowKey(node);
+            RowData row = tableModel.getRow(rowKey);
+
+            if ((attrs == null) || (row == null)) {
+                continue;
+            }
+
+            row.setViewNode(node);
+            rowValues.put(rowKey, attrs);
+        }
+
+        tableModel.setValues(rowValues);
+
+        if (namesCollector == null) {
+            return;
+        }
+
+        for (ViewNode node : batch) {
+            namesCollector.collect(node);
+        }
+    }
+
+    /**
+     * Returns nodes in fetch order: nodes which rows are currently visible first.
+     */
+    protected List<ViewNode> prioritizeVisibleNodes(List<ViewNode> nodes) {
+        int range[] = getVisibleRowRange();
+
+        if (range == null) {
+            return nodes;
+        }
+
+        List<ViewNode> visible = new ArrayList<ViewNode>();
+        List<ViewNode> others = new ArrayList<ViewNode>(nodes.size());
+
+        for (ViewNode node : nodes) {
+            int index = tableModel.getRowIndex(tableModel.createRowKey(node));
+            if ((index >= range[0]) && (index <= range[1])) {
+                visible.add(node);
+            } else {
+                others.add(node);
+            }
+        }
+
+        visible.addAll(others);
+        return visible;
+    }
+
+    /**
+     * Returns {first,last} index of the rows currently visible in the table or null if not known.
+     * The JTable is queried on the Swing event thread.
+     */
+    protected int[] getVisibleRowRange() {
+        if ((tableContainer instanceof JTable) == false) {
+            return null;
+        }
+
+        final JTable table = (JTable) tableContainer;
+
+        if (UIGlobal.isGuiThread()) {
+            return getVisibleRowRange(table);
+        }
+
+        final int range[][] = new int[1][];
+
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    range[0] = getVisibleRowRange(table);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (InvocationTargetException e) {
+            logger.warnPrintf("Couldn't get visible rows:%s\n", e.getCause());
+            return null;
+        }
+
+        return range[0];
+    }
+
+    private int[] getVisibleRowRange(JTable table) {
+        Rectangle rect = table.getVisibleRect();
+
+        if ((rect == null) || (rect.height <= 0)) {
+            return null;
+        }
+
+        int first = table.rowAtPoint(rect.getLocation());
+        int last = table.rowAtPoint(new Point(rect.x, rect.y + rect.height - 1));
+
+        if (first < 0) {
+            return null;
+        }
+
+        if (last < 0) {
+            last = table.getRowCount() - 1;
+        }
+
+        return new int[] { first, last };
+    }
+
     private void addRows(final VRL[] vrls, final String optAttrNames[], final boolean mergeRows) {
         if (dataSource == null) {
             return;
@@ -513,6 +763,7 @@ public class ResourceTableUpdater implements VRSEventListener, ProxyDataSourceUp
             public void doTask() {
                 try {
                     ViewNode[] nodes = dataSource.createViewNodes(uiModel, vrls);
+                    List<ViewNode> newNodes = new ArrayList<ViewNode>(nodes.length);
 
                     for (ViewNode node : nodes) {
                         String rowKey = tableModel.createRowKey(node);
@@ -523,10 +774,14 @@ public class ResourceTableUpdater implements VRSEventListener, ProxyDataSourceUp
                             rowData.setViewNode(node);
                         } else {
                             // create/replace complete row: 
-                            tableModel.addRow(node, new AttributeSet());
+                            newNodes.add(node);
                         }
                     }
 
+                    if (newNodes.size() > 0) {
+                        tableModel.addRows(newNodes);
+                    }
+
                     doUpdateAttributes(tableModel.createRowKeys(vrls), optAttrNames);
 
                     // update row data.
@@ -64,9 +64,13 @@ public class TableRowComparer implements Comparer<RowData> {
         RowData r1 = (RowData) v1;
         RowData r2 = (RowData) v2;
 
-        Attribute o1 = r1.getAttribute(columnName);
-        Attribute o2 = r2.getAttribute(columnName);
+        return compareAttributes(r1.getAttribute(columnName), r2.getAttribute(columnName));
+    }
 
+    /**
+     * Compare the (column) attributes of two rows.
+     */
+    public int compareAttributes(Attribute o1, Attribute o2) {
         debug("comparing:" + o1 + " <==> " + o2);
 
         if (o1 == null)
@@ -0,0 +1,215 @@
+/*
+ * Copyrighted 2012-2013 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").  
+ * You may not use this file except in compliance with the License. 
+ * For details, see the LICENCE.txt file location in the root directory of this 
+ * distribution or obtain the Apache License at the following location: 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENCE.txt (located in the root folder of this distribution). 
+ * ---
+ */
+// source: 
+
+package nl.esciencecenter.ptk.vbrowser.ui.proxy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.esciencecenter.ptk.browser.uitest.dummy.DummyProxyFactory;
+import nl.esciencecenter.ptk.vbrowser.ui.proxy.ProxyFactory.ProxyCache;
+import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_ProxyCache {
+
+    /**
+     * Factory without browser platform which counts the opened locations. Locations with 'fail' in
+     * their path can't be opened.
+     */
+    public static class TestProxyFactory extends DummyProxyFactory {
+
+        protected AtomicInteger numOpened = new AtomicInteger();
+
+        protected volatile boolean failOpen = true;
+
+        public TestProxyFactory() {
+            super(null);
+        }
+
+        @Override
+        protected void initProxyCache() {
+        }
+
+        @Override
+        protected void initProxyEventCacheUpdater() {
+        }
+
+        @Override
+        public ProxyNode doOpenLocation(VRL locator) {
+            if ((failOpen) && (locator.getPath().contains("fail"))) {
+                throw new RuntimeException("Failed to open:" + locator);
+            }
+            numOpened.incrementAndGet();
+            return super.doOpenLocation(locator);
+        }
+    }
+
+    protected VRL vrl(String path) throws Exception {
+        return new VRL("dummy:///" + path);
+    }
+
+    /**
+     * Wait until the background eviction has shrunk the cache.
+     */
+    protected void waitForSize(ProxyCache cache, int maxSize) throws Exception {
+        long end = System.currentTimeMillis() + 10000;
+
+        while ((cache.size() > maxSize) && (System.currentTimeMillis() < end)) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertTrue("Cache must be shrunk to:" + maxSize + ", cache=" + cache, cache.size() <= maxSize);
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        TestProxyFactory factory = new TestProxyFactory();
+        ProxyCache cache = factory.getProxyCache();
+
+        ProxyNode node = factory.openLocation(vrl("dir/file"));
+        Assert.assertEquals(1, cache.getNumMisses());
+        Assert.assertEquals(0, cache.getNumHits());
+
+        Assert.assertSame(node, factory.openLocation(vrl("dir/file")));
+        Assert.assertEquals(1, cache.getNumHits());
+        Assert.assertEquals(1, factory.numOpened.get());
+        Assert.assertEquals(1, cache.size());
+
+        Assert.assertNotSame(node, factory.openLocation(vrl("dir/other")));
+        Assert.assertEquals(2, cache.getNumMisses());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testFailedOpenNotCached() throws Exception {
+        TestProxyFactory factory = new TestProxyFactory();
+        ProxyCache cache = factory.getProxyCache();
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                factory.openLocation(vrl("fail/file"));
+                Assert.fail("openLocation() must fail");
+            } catch (RuntimeException e) {
+                // expected
+            }
+
+            Assert.assertEquals("Failed open may not leave an entry", 0, cache.size());
+        }
+
+        // retried, not served from a negative entry.
+        factory.failOpen = false;
+        ProxyNode node = factory.openLocation(vrl("fail/file"));
+        Assert.assertNotNull(node);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertSame(node, factory.openLocation(vrl("fail/file")));
+    }
+
+    @Test
+    public void testEvictionBySize() throws Exception {
+        TestProxyFactory factory = new TestProxyFactory();
+        ProxyCache cache = factory.getProxyCache();
+        cache.setLimits(10, 0);
+
+        // keep nodes in use: evicted nodes must be restored.
+        List<ProxyNode> nodes = new ArrayList<ProxyNode>();
+        for (int i = 0; i < 50; i++) {
+            nodes.add(factory.openLocation(vrl("file" + i)));
+        }
+
+        waitForSize(cache, 10);
+        Assert.assertTrue(cache.getNumEvictions() > 0);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            Assert.assertSame("Node in use must be restored", nodes.get(i), factory.openLocation(vrl("file" + i)));
+        }
+
+        Assert.assertEquals("Restored nodes may not be opened again", 50, factory.numOpened.get());
+        Assert.assertTrue(cache.getNumSoftHits() > 0);
+    }
+
+    @Test
+    public void testEvictionByAge() throws Exception {
+        TestProxyFactory factory = new TestProxyFactory();
+        ProxyCache cache = factory.getProxyCache();
+        cache.setLimits(100, 50);
+
+        ProxyNode node = factory.openLocation(vrl("old"));
+        Thread.sleep(100);
+        cache.evict();
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(1, cache.getNumEvictions());
+        Assert.assertSame(node, factory.openLocation(vrl("old")));
+        Assert.assertEquals(1, factory.numOpened.get());
+    }
+
+    /**
+     * Lookups during eviction may not open a second node for a location while the first one is in
+     * use.
+     */
+    @Test
+    public void testConcurrentLookupAndEviction() throws Exception {
+        final TestProxyFactory factory = new TestProxyFactory();
+        factory.getProxyCache().setLimits(10, 0);
+
+        final int numLocations = 40;
+        final ConcurrentMap<VRL, ProxyNode> nodes = new ConcurrentHashMap<VRL, ProxyNode>();
+        final List<String> errors = new ArrayList<String>();
+        Thread threads[] = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            VRL vrl = vrl("file" + (i % numLocations));
+                            ProxyNode node = factory.openLocation(vrl);
+                            ProxyNode prev = nodes.putIfAbsent(vrl, node);
+
+                            if ((prev != null) && (prev != node)) {
+                                synchronized (errors) {
+                                    errors.add("Duplicate node for:" + vrl);
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        synchronized (errors) {
+                            errors.add("Exception:" + e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals("No duplicate nodes expected", new ArrayList<String>(), errors);
+        Assert.assertEquals(numLocations, factory.numOpened.get());
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyrighted 2012-2013 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").  
+ * You may not use this file except in compliance with the License. 
+ * For details, see the LICENCE.txt file location in the root directory of this 
+ * distribution or obtain the Apache License at the following location: 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENCE.txt (located in the root folder of this distribution). 
+ * ---
+ */
+// source: 
+
+package nl.esciencecenter.ptk.vbrowser.ui.resourcetable;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import nl.esciencecenter.ptk.vbrowser.ui.model.ViewNode;
+import nl.esciencecenter.ptk.vbrowser.ui.resourcetable.ResourceTableModel.RowData;
+import nl.esciencecenter.vbrowser.vrs.data.AttributeSet;
+import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_ResourceTableModel {
+
+    public static class EventRecorder implements TableModelListener {
+
+        protected List<String> events = new ArrayList<String>();
+
+        protected boolean allOnGuiThread = true;
+
+        @Override
+        public synchronized void tableChanged(TableModelEvent e) {
+            String type;
+            if (e.getType() == TableModelEvent.INSERT) {
+                type = "insert";
+            } else if (e.getType() == TableModelEvent.DELETE) {
+                type = "delete";
+            } else if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+                type = "structure";
+            } else if (e.getLastRow() == Integer.MAX_VALUE) {
+                type = "data";
+            } else {
+                type = "update";
+            }
+
+            if (type.equals("data")) {
+                events.add(type);
+            } else {
+                events.add(type + ":" + e.getFirstRow() + "-" + e.getLastRow());
+            }
+
+            allOnGuiThread &= SwingUtilities.isEventDispatchThread();
+        }
+
+        public synchronized List<String> getEvents() {
+            return new ArrayList<String>(events);
+        }
+
+        public synchronized void clear() {
+            events.clear();
+            allOnGuiThread = true;
+        }
+    }
+
+    private static Icon icon = new ImageIcon(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+
+    protected ViewNode createNode(String name) throws Exception {
+        return new ViewNode(new VRL("file:///data/" + name), icon, name, false);
+    }
+
+    protected List<ViewNode> createNodes(String... names) throws Exception {
+        List<ViewNode> nodes = new ArrayList<ViewNode>();
+        for (String name : names) {
+            nodes.add(createNode(name));
+        }
+        return nodes;
+    }
+
+    protected String key(String name) {
+        try {
+            return new VRL("file:///data/" + name).toString();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected ResourceTableModel createModel(String... names) throws Exception {
+        ResourceTableModel model = new ResourceTableModel(new String[] { "name" });
+        for (String name : names) {
+            AttributeSet attrs = new AttributeSet();
+            attrs.set("name", name);
+            model.addRow(null, key(name), attrs, false);
+        }
+        return model;
+    }
+
+    protected void assertRows(ResourceTableModel model, String... names) {
+        Assert.assertEquals("Number of rows", names.length, model.getRowCount());
+
+        for (int i = 0; i < names.length; i++) {
+            Assert.assertEquals("Key of row #" + i, key(names[i]), model.getRowKey(i));
+            Assert.assertEquals("Index of row:" + names[i], i, model.getRow(key(names[i])).getIndex());
+            Assert.assertEquals("Index of key:" + names[i], i, model.getRowIndex(key(names[i])));
+        }
+    }
+
+    @Test
+    public void testAddRowsRanges() throws Exception {
+        ResourceTableModel model = new ResourceTableModel(new String[] { "name" });
+        EventRecorder recorder = new EventRecorder();
+        model.addTableModelListener(recorder);
+
+        Assert.assertEquals(3, model.addRows(createNodes("a", "b", "c")));
+        assertRows(model, "a", "b", "c");
+        Assert.assertEquals("[insert:0-2]", recorder.getEvents().toString());
+
+        recorder.clear();
+        // one replaced and two new rows:
+        Assert.assertEquals(2, model.addRows(createNodes("d", "b", "e")));
+        assertRows(model, "a", "b", "c", "d", "e");
+        Assert.assertEquals("[update:1-1, insert:3-4]", recorder.getEvents().toString());
+
+        recorder.clear();
+        Assert.assertEquals(0, model.addRows(createNodes("c", "a")));
+        Assert.assertEquals("[update:0-2]", recorder.getEvents().toString());
+    }
+
+    @Test
+    public void testReplaceRow() throws Exception {
+        ResourceTableModel model = createModel("a", "b", "c");
+        RowData oldRow = model.getRow(key("b"));
+
+        RowData replaced = model.replaceRow(1, createNode("x"), new AttributeSet());
+        Assert.assertSame(oldRow, replaced);
+        Assert.assertEquals("Replaced row isn't part of table anymore", -1, oldRow.getIndex());
+        Assert.assertEquals(-1, model.getRowIndex(key("b")));
+        assertRows(model, "a", "x", "c");
+
+        // add row with existing key: replace at same index.
+        RowData row = model.getRow(key("c"));
+        AttributeSet attrs = new AttributeSet();
+        attrs.set("name", "c2");
+        Assert.assertEquals(2, model.addRow(null, key("c"), attrs, true));
+        Assert.assertEquals(-1, row.getIndex());
+        Assert.assertEquals("c2", model.getAttrStringValue(key("c"), "name"));
+        assertRows(model, "a", "x", "c");
+    }
+
+    @Test
+    public void testDelRowReindex() throws Exception {
+        ResourceTableModel model = createModel("a", "b", "c", "d", "e");
+        RowData row = model.getRow(key("b"));
+
+        Assert.assertSame(row, model.delRow(key("b")));
+        Assert.assertEquals(-1, row.getIndex());
+        Assert.assertFalse(model.hasRow(key("b")));
+        assertRows(model, "a", "c", "d", "e");
+
+        Assert.assertEquals(key("e"), model.delRow(3).getKey());
+        assertRows(model, "a", "c", "d");
+
+        Assert.assertNull("Out of range", model.delRow(3));
+        Assert.assertNull("Unknown key", model.delRow(key("b")));
+        assertRows(model, "a", "c", "d");
+    }
+
+    @Test
+    public void testDelRowsReindex() throws Exception {
+        ResourceTableModel model = createModel("a", "b", "c", "d", "e", "f");
+        EventRecorder recorder = new EventRecorder();
+        model.addTableModelListener(recorder);
+
+        // unsorted indices with duplicate: deleting a row may not shift the other indices.
+        Assert.assertTrue(model.delRows(new int[] { 1, 4, 1, 2 }));
+        assertRows(model, "a", "d", "f");
+        Assert.assertEquals("[delete:4-4, delete:2-2, delete:1-1]", recorder.getEvents().toString());
+
+        Assert.assertFalse("Out of range index", model.delRows(new int[] { 2, 5 }));
+        assertRows(model, "a", "d");
+    }
+
+    @Test
+    public void testSortSwap() throws Exception {
+        ResourceTableModel model = createModel("c", "a", "d", "b");
+        EventRecorder recorder = new EventRecorder();
+        model.addTableModelListener(recorder);
+
+        int mapping[] = model.doSortColumn("name", false);
+        assertRows(model, "a", "b", "c", "d");
+        Assert.assertArrayEquals(new int[] { 1, 3, 0, 2 }, mapping);
+        Assert.assertEquals("[data]", recorder.getEvents().toString());
+        Assert.assertTrue("Sort event must be fired on the event thread", recorder.allOnGuiThread);
+
+        model.doSortColumn("name", true);
+        assertRows(model, "d", "c", "b", "a");
+
+        Assert.assertNull("Unknown column", model.doSortColumn("size", false));
+    }
+
+    @Test
+    public void testOutdatedSortDropped() throws Exception {
+        final ResourceTableModel model = createModel("c", "a", "d", "b");
+        final CountDownLatch eventThreadBlocked = new CountDownLatch(1);
+        final CountDownLatch releaseEventThread = new CountDownLatch(1);
+
+        // block the event thread, so both sorts wait for the swap.
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                eventThreadBlocked.countDown();
+                try {
+                    releaseEventThread.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        eventThreadBlocked.await();
+
+        final Object results[] = new Object[2];
+        Thread first = startSort(model, "name", false, results, 0);
+        waitForSwap(first);
+        Thread second = startSort(model, "name", true, results, 1);
+        waitForSwap(second);
+
+        releaseEventThread.countDown();
+        first.join(10000);
+        second.join(10000);
+
+        Assert.assertNull("First sort should have been dropped", results[0]);
+        Assert.assertNotNull("Latest sort should have been applied", results[1]);
+        assertRows(model, "d", "c", "b", "a");
+    }
+
+    private Thread startSort(final ResourceTableModel model, final String name, final boolean reverse,
+            final Object results[], final int index) {
+        Thread thread = new Thread() {
+            public void run() {
+                results[index] = model.doSortColumn(name, reverse);
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Wait until the sort thread waits for the swap on the (blocked) event thread.
+     */
+    private void waitForSwap(Thread thread) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while ((thread.getState() != Thread.State.WAITING) && (System.currentTimeMillis() < timeout)) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+}
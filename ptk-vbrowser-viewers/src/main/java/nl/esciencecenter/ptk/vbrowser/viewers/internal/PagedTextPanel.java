@@ -0,0 +1,742 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.vbrowser.viewers.internal;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Insets;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.JToggleButton;
+import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import nl.esciencecenter.ptk.io.FSChannelReader;
+import nl.esciencecenter.ptk.io.RandomReadable;
+import nl.esciencecenter.ptk.task.ActionTask;
+import nl.esciencecenter.ptk.util.logging.PLogger;
+import nl.esciencecenter.ptk.vbrowser.viewers.vrs.ViewerResourceLoader;
+import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
+
+/**
+ * Read-only text view for (very) large text files. The lines are indexed in the background by a
+ * TextLineIndex and only the visible lines are read and decoded. Supports jumping to a line
+ * number or to the end of the file, and following a growing file.
+ */
+public class PagedTextPanel extends JPanel implements ActionListener, AdjustmentListener, KeyListener,
+        MouseWheelListener {
+
+    private static final long serialVersionUID = 3311416046390734208L;
+
+    private static final PLogger logger = PLogger.getLogger(PagedTextPanel.class);
+
+    /** Interval in milliseconds between checks whether a followed file has grown. */
+    public static final int FOLLOW_INTERVAL = 1000;
+
+    /** Number of indexed bytes between two updates of the line count. */
+    public static final long INDEX_UPDATE_SIZE = 32 * 1024 * 1024;
+
+    // ========
+    // Instance
+    // ========
+
+    private ViewerResourceLoader resourceLoader;
+
+    private VRL vrl;
+
+    private Charset charset;
+
+    private TextLineIndex lineIndex;
+
+    /** Number of indexed lines as last reported by the index task */
+    private volatile long numLines = 0;
+
+    private volatile boolean indexing = false;
+
+    private volatile long firstLine = 0;
+
+    /** Show the last lines, which are read backwards from the end while indexing. */
+    private volatile boolean showingEnd = false;
+
+    /** Line to show when it has been indexed or -1 */
+    private volatile long pendingLine = -1;
+
+    private volatile int visibleRows = 1;
+
+    private long scrollMultiplier = 1;
+
+    private boolean following = false;
+
+    private volatile boolean closed = true;
+
+    private final Object renderMutex = new Object();
+
+    private boolean renderRequested = false;
+
+    private boolean rendering = false;
+
+    private boolean updatingScrollBar = false;
+
+    private ActionTask indexTask;
+
+    // === GUI components ===
+
+    private JTextArea textArea;
+
+    private JScrollBar scrollBar;
+
+    private JTextField lineField;
+
+    private JButton endButton;
+
+    private JToggleButton followButton;
+
+    private JLabel statusLabel;
+
+    private Timer followTimer;
+
+    public PagedTextPanel(ViewerResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+        initGui();
+    }
+
+    protected void initGui() {
+        this.setLayout(new BorderLayout());
+
+        {
+            textArea = new JTextArea();
+            this.add(textArea, BorderLayout.CENTER);
+            textArea.setEditable(false);
+            textArea.setLineWrap(false);
+            textArea.addKeyListener(this);
+            textArea.addMouseWheelListener(this);
+            textArea.addComponentListener(new ComponentAdapter() {
+                public void componentResized(ComponentEvent e) {
+                    updateVisibleRows();
+                }
+            });
+        }
+        {
+            scrollBar = new JScrollBar(JScrollBar.VERTICAL, 0, 1, 0, 1);
+            this.add(scrollBar, BorderLayout.EAST);
+            scrollBar.addAdjustmentListener(this);
+            scrollBar.setFocusable(false);
+        }
+        {
+            JToolBar toolBar = new JToolBar();
+            toolBar.setLayout(new FlowLayout(FlowLayout.LEFT));
+            toolBar.setFloatable(false);
+            this.add(toolBar, BorderLayout.SOUTH);
+            {
+                toolBar.add(new JLabel("Line:"));
+                lineField = new JTextField(10);
+                toolBar.add(lineField);
+                lineField.addActionListener(this);
+                lineField.setToolTipText("Go to line");
+            }
+            {
+                endButton = new JButton("End");
+                toolBar.add(endButton);
+                endButton.addActionListener(this);
+                endButton.setToolTipText("Go to end of file");
+            }
+            {
+                followButton = new JToggleButton("Follow");
+                toolBar.add(followButton);
+                followButton.addActionListener(this);
+                followButton.setToolTipText("Follow growing file");
+            }
+            {
+                statusLabel = new JLabel("");
+                toolBar.add(statusLabel);
+            }
+        }
+
+        followTimer = new Timer(FOLLOW_INTERVAL, this);
+    }
+
+    // ==========
+    // Public API
+    // ==========
+
+    /**
+     * Show text of resource. Can be called from a background thread. The reader is owned by this
+     * panel and closed when another resource is opened or this panel is closed.
+     * 
+     * @param reader
+     *            - reader of the resource, local files should be memory-mapped.
+     * @param encoding
+     *            - text encoding, see {@link TextLineIndex#isSupportedEncoding(String)}.
+     */
+    public void open(VRL vrl, RandomReadable reader, String encoding) throws IOException {
+        close();
+
+        synchronized (renderMutex) {
+            this.vrl = vrl;
+            this.charset = Charset.forName(encoding);
+            this.lineIndex = new TextLineIndex(reader);
+            this.numLines = 0;
+            this.firstLine = 0;
+            this.showingEnd = false;
+            this.pendingLine = -1;
+            this.following = false;
+            this.closed = false;
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                followButton.setSelected(false);
+                textArea.setText("");
+            }
+        });
+
+        startIndexTask();
+    }
+
+    /**
+     * Stop background tasks and close the reader.
+     */
+    public void close() {
+        TextLineIndex index;
+
+        synchronized (renderMutex) {
+            closed = true;
+            index = lineIndex;
+        }
+
+        if (followTimer != null) {
+            followTimer.stop();
+        }
+
+        if (indexTask != null) {
+            indexTask.signalTerminate();
+        }
+
+        if (index != null) {
+            closeReader(index.getReader());
+        }
+    }
+
+    public void setTextFont(Font font) {
+        textArea.setFont(font);
+        updateVisibleRows();
+    }
+
+    /**
+     * Show lines starting at the specified (zero based) line number. While indexing, a line which
+     * hasn't been indexed yet is shown when the index reaches it.
+     */
+    public void showLine(long line) {
+        long indexed = getIndexedLines();
+        long maxFirst = Math.max(0, indexed - visibleRows);
+
+        if ((following) && (line < maxFirst)) {
+            // scrolling up stops following.
+            setFollow(false);
+        }
+
+        showingEnd = false;
+
+        if ((indexing) && (line > maxFirst)) {
+            pendingLine = line;
+            updateStatus();
+            return;
+        }
+
+        pendingLine = -1;
+        numLines = indexed;
+        firstLine = Math.max(0, Math.min(line, maxFirst));
+        updateScrollBar();
+        requestRender();
+    }
+
+    /**
+     * Show the last lines. While indexing the last lines are read backwards from the end, since
+     * their line numbers aren't known yet.
+     */
+    public void showEnd() {
+        if (indexing == false) {
+            showLine(Long.MAX_VALUE);
+            return;
+        }
+
+        pendingLine = -1;
+        showingEnd = true;
+        numLines = getIndexedLines();
+        firstLine = Math.max(0, numLines - visibleRows);
+        updateScrollBar();
+        requestRender();
+    }
+
+    public void setFollow(boolean value) {
+        this.following = value;
+        followButton.setSelected(value);
+
+        if (value) {
+            showEnd();
+            followTimer.start();
+        } else {
+            followTimer.stop();
+        }
+    }
+
+    public long getNumLines() {
+        return numLines;
+    }
+
+    private long getIndexedLines() {
+        TextLineIndex index = lineIndex;
+        return (index != null) ? index.getNumLines() : 0;
+    }
+
+    // ================
+    // Background tasks
+    // ================
+
+    protected void startIndexTask() {
+        indexing = true;
+
+        indexTask = new ActionTask(null, "Indexing lines of:" + vrl) {
+            @Override
+            protected void doTask() {
+                _index(lineIndex);
+            }
+
+            @Override
+            public void stopTask() {
+            }
+        };
+
+        indexTask.startTask();
+    }
+
+    /**
+     * Index (remaining) lines, the line count is updated every INDEX_UPDATE_SIZE bytes.
+     */
+    protected void _index(TextLineIndex index) {
+        try {
+            long lastUpdate = -1;
+
+            while ((closed == false) && (index == lineIndex)) {
+                if (index.scan() <= 0) {
+                    break;
+                }
+
+                long scanned = index.getScannedLength();
+
+                if ((lastUpdate < 0) || (scanned - lastUpdate >= INDEX_UPDATE_SIZE)) {
+                    boolean first = (lastUpdate < 0);
+                    lastUpdate = scanned;
+                    updateLineCount(index);
+                    if (first) {
+                        requestRender();
+                    }
+                }
+
+                final long pending = pendingLine;
+                if ((pending >= 0) && (index.getNumLines() > pending + visibleRows)) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            if (pendingLine == pending) {
+                                showLine(pending);
+                            }
+                        }
+                    });
+                }
+            }
+        } catch (IOException e) {
+            if (closed == false) {
+                logger.errorPrintf("Failed to index lines of:%s:%s\n", vrl, e);
+                setStatus("Error indexing lines:" + e.getMessage());
+            }
+        } finally {
+            indexing = false;
+        }
+
+        if ((closed == false) && (index == lineIndex)) {
+            updateLineCount(index);
+            // all lines are indexed: replace the last lines or pending line by the indexed lines.
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    if ((following) || (showingEnd)) {
+                        showEnd();
+                    } else if (pendingLine >= 0) {
+                        showLine(pendingLine);
+                    } else {
+                        requestRender();
+                    }
+                }
+            });
+        }
+    }
+
+    private void updateLineCount(TextLineIndex index) {
+        numLines = index.getNumLines();
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                updateScrollBar();
+            }
+        });
+    }
+
+    /**
+     * Reopen the resource and index the lines which have been added since the last check. A
+     * followed file is read without memory mapping, since a mapped reader has a fixed length and
+     * fails when the file is truncated. A memory-mapped reader is therefore replaced on the first
+     * check.
+     */
+    protected void startFollowUpdate() {
+        if ((closed) || (indexing)) {
+            return;
+        }
+
+        indexing = true;
+
+        indexTask = new ActionTask(null, "Following:" + vrl) {
+            @Override
+            protected void doTask() {
+                _followUpdate(lineIndex);
+            }
+
+            @Override
+            public void stopTask() {
+            }
+        };
+
+        indexTask.startTask();
+    }
+
+    protected void _followUpdate(TextLineIndex index) {
+        RandomReadable oldReader = index.getReader();
+        RandomReadable newReader = null;
+        boolean unmap = isMemoryMapped(oldReader);
+
+        try {
+            newReader = resourceLoader.createRandomReader(vrl, false);
+
+            if ((unmap == false) && (newReader.getLength() == index.getScannedLength())) {
+                closeReader(newReader);
+                indexing = false;
+                return;
+            }
+
+            if (index.setReader(newReader) == false) {
+                // truncated, for example by log rotation.
+                firstLine = 0;
+                pendingLine = -1;
+            }
+            closeReader(oldReader);
+        } catch (Exception e) {
+            closeReader(newReader);
+            indexing = false;
+            logger.warnPrintf("Failed to reopen:%s:%s\n", vrl, e);
+            return;
+        }
+
+        _index(index);
+    }
+
+    private boolean isMemoryMapped(RandomReadable reader) {
+        return (reader instanceof FSChannelReader) && ((FSChannelReader) reader).isMemoryMapped();
+    }
+
+    private void closeReader(RandomReadable reader) {
+        if (reader == null) {
+            return;
+        }
+
+        try {
+            reader.close();
+        } catch (Exception e) {
+            logger.warnPrintf("Failed to close reader of:%s:%s\n", vrl, e);
+        }
+    }
+
+    /**
+     * Read and decode visible lines in the background. Requests are coalesced: while reading,
+     * new requests only cause one more read of the latest window.
+     */
+    protected void requestRender() {
+        synchronized (renderMutex) {
+            renderRequested = true;
+
+            if ((rendering) || (closed)) {
+                return;
+            }
+            rendering = true;
+        }
+
+        ActionTask renderTask = new ActionTask(null, "Reading lines of:" + vrl) {
+            @Override
+            protected void doTask() {
+                _render();
+            }
+
+            @Override
+            public void stopTask() {
+            }
+        };
+
+        renderTask.startTask();
+    }
+
+    protected void _render() {
+        boolean finished = false;
+
+        try {
+            _renderLoop();
+            finished = true;
+        } finally {
+            if (finished == false) {
+                // unexpected error: allow new render requests.
+                synchronized (renderMutex) {
+                    rendering = false;
+                }
+            }
+        }
+    }
+
+    private void _renderLoop() {
+        while (true) {
+            long line;
+            int rows;
+            boolean end;
+            TextLineIndex index;
+            Charset textCharset;
+
+            synchronized (renderMutex) {
+                if ((renderRequested == false) || (closed)) {
+                    rendering = false;
+                    return;
+                }
+                renderRequested = false;
+                line = firstLine;
+                rows = visibleRows;
+                end = showingEnd;
+                index = lineIndex;
+                textCharset = charset;
+            }
+
+            try {
+                List<String> lines;
+                if (end) {
+                    lines = index.readLastLines(rows, textCharset);
+                } else {
+                    lines = index.readLines(line, rows, textCharset);
+                }
+                StringBuilder sb = new StringBuilder();
+
+                for (int i = 0; i < lines.size(); i++) {
+                    if (i > 0) {
+                        sb.append('\n');
+                    }
+                    sb.append(lines.get(i));
+                }
+
+                final String text = sb.toString();
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (closed == false) {
+                            textArea.setText(text);
+                            textArea.setCaretPosition(0);
+                            updateStatus();
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                logger.errorPrintf("Failed to read lines of:%s:%s\n", vrl, e);
+                setStatus("Error reading lines:" + e.getMessage());
+            }
+        }
+    }
+
+    // ===========
+    // GUI updates
+    // ===========
+
+    protected void updateVisibleRows() {
+        FontMetrics metrics = textArea.getFontMetrics(textArea.getFont());
+        Insets insets = textArea.getInsets();
+        int height = textArea.getHeight() - insets.top - insets.bottom;
+        int rows = Math.max(1, height / Math.max(1, metrics.getHeight()));
+
+        if (rows != visibleRows) {
+            visibleRows = rows;
+            updateScrollBar();
+            requestRender();
+        }
+    }
+
+    protected void updateScrollBar() {
+        long total = Math.max(numLines, visibleRows);
+        scrollMultiplier = (total >= Integer.MAX_VALUE) ? (total / Integer.MAX_VALUE) + 1 : 1;
+
+        updatingScrollBar = true;
+        try {
+            int extent = (int) Math.max(1, visibleRows / scrollMultiplier);
+            scrollBar.setValues((int) (firstLine / scrollMultiplier), extent, 0, (int) (total / scrollMultiplier));
+            scrollBar.setUnitIncrement(1);
+            scrollBar.setBlockIncrement(extent);
+        } finally {
+            updatingScrollBar = false;
+        }
+
+        updateStatus();
+    }
+
+    protected void updateStatus() {
+        String suffix = (indexing ? " (indexing...)" : "");
+
+        if (showingEnd) {
+            statusLabel.setText("Last lines, indexed " + numLines + " lines" + suffix);
+        } else if (pendingLine >= 0) {
+            statusLabel.setText("Going to line " + (pendingLine + 1) + ", indexed " + getIndexedLines() + " lines"
+                    + suffix);
+        } else {
+            long lastLine = Math.min(numLines, firstLine + visibleRows);
+            statusLabel.setText("Lines " + (firstLine + 1) + "-" + lastLine + " of " + numLines + suffix);
+        }
+    }
+
+    protected void setStatus(final String text) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                statusLabel.setText(text);
+            }
+        });
+    }
+
+    // ======
+    // Events
+    // ======
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        Object source = e.getSource();
+
+        if (source == followTimer) {
+            startFollowUpdate();
+        } else if (source == lineField) {
+            try {
+                // line numbers start at 1.
+                showLine(Long.parseLong(lineField.getText().trim()) - 1);
+                textArea.requestFocusInWindow();
+            } catch (NumberFormatException ex) {
+                setStatus("Invalid line number:" + lineField.getText());
+            }
+        } else if (source == endButton) {
+            showEnd();
+        } else if (source == followButton) {
+            setFollow(followButton.isSelected());
+        }
+    }
+
+    @Override
+    public void adjustmentValueChanged(AdjustmentEvent e) {
+        if (updatingScrollBar) {
+            return;
+        }
+
+        long line = e.getValue() * scrollMultiplier;
+
+        if ((following) && (line < firstLine)) {
+            setFollow(false);
+        }
+
+        if ((line != firstLine) || (showingEnd)) {
+            showingEnd = false;
+            pendingLine = -1;
+            firstLine = line;
+            requestRender();
+            updateStatus();
+        }
+    }
+
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        showLine(firstLine + e.getWheelRotation() * 3);
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        boolean ctrl = ((e.getModifiers() & KeyEvent.CTRL_MASK) > 0);
+
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_PAGE_DOWN:
+                showLine(firstLine + visibleRows);
+                break;
+            case KeyEvent.VK_PAGE_UP:
+                showLine(firstLine - visibleRows);
+                break;
+            case KeyEvent.VK_DOWN:
+                showLine(firstLine + 1);
+                break;
+            case KeyEvent.VK_UP:
+                showLine(firstLine - 1);
+                break;
+            case KeyEvent.VK_HOME:
+                if (ctrl) {
+                    showLine(0);
+                }
+                break;
+            case KeyEvent.VK_END:
+                if (ctrl) {
+                    showEnd();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+    }
+
+}
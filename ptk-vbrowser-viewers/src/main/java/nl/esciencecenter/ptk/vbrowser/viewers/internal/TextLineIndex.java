@@ -0,0 +1,455 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.vbrowser.viewers.internal;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.esciencecenter.ptk.io.RandomReadable;
+
+/**
+ * Sparse line offset index of a text resource which is read using a RandomReadable. Only the
+ * offset of every {@link #INDEX_INTERVAL}-th line and of lines following a line longer than
+ * {@link #MAX_LINE_BYTES} is stored, other lines are found by scanning forward from the nearest
+ * indexed line. The index is built incrementally by calling scan(), so indexing can be done in the
+ * background and a growing file can be followed.
+ * <p>
+ * Lines are separated by '\n' bytes. This only works for encodings in which a '\n' is a single
+ * byte which doesn't occur inside multi-byte sequences, see {@link #isSupportedEncoding(String)}.
+ */
+public class TextLineIndex {
+
+    public static final int INDEX_INTERVAL = 64;
+
+    public static final int SCAN_BLOCK_SIZE = 1024 * 1024;
+
+    /** Maximum number of bytes decoded per line, the rest of a longer line isn't shown. */
+    public static final int MAX_LINE_BYTES = 64 * 1024;
+
+    /** Block size for reading lines. */
+    public static final int READ_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * @return true if lines encoded with the specified encoding can be indexed.
+     */
+    public static boolean isSupportedEncoding(String encoding) {
+        try {
+            Charset charset = Charset.forName(encoding);
+            byte bytes[] = "\n".getBytes(charset);
+            // UTF-16 and UTF-32 encode '\n' using multiple bytes.
+            return (bytes.length == 1) && (bytes[0] == '\n');
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // ========
+    // Instance
+    // ========
+
+    private RandomReadable reader;
+
+    /** Offsets of line 0, INDEX_INTERVAL, 2*INDEX_INTERVAL, ... */
+    private long lineOffsets[] = new long[1024];
+
+    private int numLineOffsets = 1;
+
+    /** Line numbers of lines following a line longer than MAX_LINE_BYTES, in ascending order. */
+    private long longLineNumbers[] = new long[16];
+
+    /** Offsets of the lines in longLineNumbers. */
+    private long longLineOffsets[] = new long[16];
+
+    private int numLongLines = 0;
+
+    /** Number of '\n' terminated lines scanned */
+    private long numLines = 0;
+
+    /** Offset after the last scanned '\n' */
+    private long lastLineStart = 0;
+
+    /** Number of bytes scanned */
+    private volatile long scannedLength = 0;
+
+    /** Value of getNumLines(), updated after each scan so it can be read without waiting for a scan. */
+    private volatile long indexedLines = 0;
+
+    private byte scanBuffer[] = new byte[SCAN_BLOCK_SIZE];
+
+    public TextLineIndex(RandomReadable reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Replace reader, for example after the resource has grown. The index is kept if the new reader
+     * isn't shorter then the scanned length.
+     * 
+     * @return false if the resource has been truncated and the index has been cleared.
+     */
+    public synchronized boolean setReader(RandomReadable newReader) throws IOException {
+        this.reader = newReader;
+
+        if (newReader.getLength() < scannedLength) {
+            clear();
+            return false;
+        }
+
+        return true;
+    }
+
+    public synchronized RandomReadable getReader() {
+        return reader;
+    }
+
+    public synchronized void clear() {
+        lineOffsets = new long[1024];
+        numLineOffsets = 1;
+        longLineNumbers = new long[16];
+        longLineOffsets = new long[16];
+        numLongLines = 0;
+        numLines = 0;
+        lastLineStart = 0;
+        scannedLength = 0;
+        indexedLines = 0;
+    }
+
+    /**
+     * Scan the next block of the resource.
+     * 
+     * @return number of bytes scanned, 0 if the end of the resource has been reached.
+     */
+    public synchronized int scan() throws IOException {
+        long length = reader.getLength();
+
+        if (scannedLength >= length) {
+            return 0;
+        }
+
+        int len = (int) Math.min(scanBuffer.length, length - scannedLength);
+        int num = reader.readBytes(scannedLength, scanBuffer, 0, len);
+
+        if (num <= 0) {
+            return 0;
+        }
+
+        for (int i = 0; i < num; i++) {
+            if (scanBuffer[i] == '\n') {
+                long lineStart = lastLineStart;
+                numLines++;
+                lastLineStart = scannedLength + i + 1;
+
+                if ((numLines % INDEX_INTERVAL) == 0) {
+                    addLineOffset(lastLineStart);
+                } else if (lastLineStart - 1 - lineStart > MAX_LINE_BYTES) {
+                    // readLines() skips the rest of a long line by jumping to the next line.
+                    addLongLineOffset(numLines, lastLineStart);
+                }
+            }
+        }
+
+        scannedLength += num;
+        indexedLines = numLines + ((scannedLength > lastLineStart) ? 1 : 0);
+        return num;
+    }
+
+    private void addLineOffset(long offset) {
+        if (numLineOffsets >= lineOffsets.length) {
+            lineOffsets = Arrays.copyOf(lineOffsets, lineOffsets.length * 2);
+        }
+        lineOffsets[numLineOffsets++] = offset;
+    }
+
+    private void addLongLineOffset(long line, long offset) {
+        if (numLongLines >= longLineNumbers.length) {
+            longLineNumbers = Arrays.copyOf(longLineNumbers, longLineNumbers.length * 2);
+            longLineOffsets = Arrays.copyOf(longLineOffsets, longLineOffsets.length * 2);
+        }
+        longLineNumbers[numLongLines] = line;
+        longLineOffsets[numLongLines++] = offset;
+    }
+
+    /**
+     * @return number of bytes indexed so far.
+     */
+    public long getScannedLength() {
+        return scannedLength;
+    }
+
+    /**
+     * @return number of lines indexed so far, including a last line which isn't terminated by a
+     *         '\n'. Doesn't wait for a running scan().
+     */
+    public long getNumLines() {
+        return indexedLines;
+    }
+
+    /**
+     * @return offset of a line which is stored in the index or -1.
+     */
+    private long getIndexedLineOffset(long line) {
+        if (line == numLines) {
+            return lastLineStart;
+        }
+
+        if ((line < 0) || (line > numLines)) {
+            return -1;
+        }
+
+        if ((line % INDEX_INTERVAL) == 0) {
+            return lineOffsets[(int) (line / INDEX_INTERVAL)];
+        }
+
+        int index = Arrays.binarySearch(longLineNumbers, 0, numLongLines, line);
+        return (index >= 0) ? longLineOffsets[index] : -1;
+    }
+
+    /**
+     * @return file offset of the start of the specified line, which must have been indexed.
+     */
+    public synchronized long getLineOffset(long line) throws IOException {
+        if ((line < 0) || (line > numLines)) {
+            throw new IndexOutOfBoundsException("Line not indexed:" + line + " (numLines=" + numLines + ")");
+        }
+
+        if (line == numLines) {
+            return lastLineStart;
+        }
+
+        int index = (int) (line / INDEX_INTERVAL);
+        long start = (long) index * INDEX_INTERVAL;
+        long offset = lineOffsets[index];
+
+        // start after the nearest long line if it is closer.
+        int longIndex = Arrays.binarySearch(longLineNumbers, 0, numLongLines, line);
+        if (longIndex < 0) {
+            longIndex = -longIndex - 2;
+        }
+        if ((longIndex >= 0) && (longLineNumbers[longIndex] > start)) {
+            start = longLineNumbers[longIndex];
+            offset = longLineOffsets[longIndex];
+        }
+
+        long remaining = line - start;
+
+        while (remaining > 0) {
+            int len = (int) Math.min(scanBuffer.length, scannedLength - offset);
+            int num = reader.readBytes(offset, scanBuffer, 0, len);
+
+            if (num <= 0) {
+                throw new IOException("Unexpected end of file while looking for line:" + line);
+            }
+
+            for (int i = 0; (i < num) && (remaining > 0); i++) {
+                if (scanBuffer[i] == '\n') {
+                    remaining--;
+                    if (remaining == 0) {
+                        return offset + i + 1;
+                    }
+                }
+            }
+
+            offset += num;
+        }
+
+        return offset;
+    }
+
+    /**
+     * Read and decode indexed lines. Line terminators are removed. Only the first
+     * {@link #MAX_LINE_BYTES} of a longer line are read, the rest is skipped using the index.
+     * 
+     * @param firstLine
+     *            - first line to read.
+     * @param maxLines
+     *            - maximum number of lines to read.
+     * @param charset
+     *            - encoding of the text.
+     * @return list of at most maxLines lines.
+     */
+    public synchronized List<String> readLines(long firstLine, int maxLines, Charset charset) throws IOException {
+        List<String> lines = new ArrayList<String>(maxLines);
+        long numIndexed = getNumLines();
+
+        if ((firstLine < 0) || (firstLine >= numIndexed)) {
+            return lines;
+        }
+
+        long offset = getLineOffset(firstLine);
+        byte block[] = new byte[READ_BLOCK_SIZE];
+        byte lineBytes[] = new byte[1024];
+        int lineLength = 0;
+
+        blocks: while ((lines.size() < maxLines) && (offset < scannedLength)) {
+            int len = (int) Math.min(block.length, scannedLength - offset);
+            int num = reader.readBytes(offset, block, 0, len);
+
+            if (num <= 0) {
+                break;
+            }
+
+            for (int i = 0; (i < num) && (lines.size() < maxLines); i++) {
+                if (block[i] == '\n') {
+                    lines.add(decodeLine(lineBytes, lineLength, charset));
+                    lineLength = 0;
+                } else if (lineLength < MAX_LINE_BYTES) {
+                    if (lineLength >= lineBytes.length) {
+                        lineBytes = Arrays.copyOf(lineBytes, Math.min(lineBytes.length * 2, MAX_LINE_BYTES));
+                    }
+                    lineBytes[lineLength++] = block[i];
+                } else {
+                    // Long line: jump to the next line, which has been indexed if the long line
+                    // has been scanned completely. Otherwise it is the last (indexed) line.
+                    lines.add(decodeLine(lineBytes, lineLength, charset));
+                    lineLength = 0;
+                    offset = getIndexedLineOffset(firstLine + lines.size());
+                    if (offset < 0) {
+                        return lines;
+                    }
+                    continue blocks;
+                }
+            }
+
+            offset += num;
+        }
+
+        // last line without '\n'.
+        if ((lines.size() < maxLines) && (lineLength > 0)) {
+            lines.add(decodeLine(lineBytes, lineLength, charset));
+        }
+
+        return lines;
+    }
+
+    /**
+     * Read and decode the last lines of the resource without using the index, so the end of the
+     * resource can be shown before it has been indexed. The lines are found by reading backwards
+     * from the end of the resource. Of a line longer than {@link #MAX_LINE_BYTES} only the last
+     * MAX_LINE_BYTES are returned and older lines aren't read.
+     * 
+     * @param maxLines
+     *            - maximum number of lines to read.
+     * @param charset
+     *            - encoding of the text.
+     * @return list of at most maxLines lines, the last line of the resource is the last element.
+     */
+    public synchronized List<String> readLastLines(int maxLines, Charset charset) throws IOException {
+        List<String> lines = new ArrayList<String>(maxLines);
+        long end = reader.getLength();
+        byte block[] = new byte[READ_BLOCK_SIZE];
+
+        // a final '\n' terminates the last line.
+        if ((end > 0) && (readFully(end - 1, block, 1) == 1) && (block[0] == '\n')) {
+            end--;
+        }
+
+        if ((end <= 0) || (maxLines <= 0)) {
+            return lines;
+        }
+
+        // line starts, newest line first.
+        List<Long> lineStarts = new ArrayList<Long>(maxLines);
+        long lineEnd = end;
+        long pos = end;
+        boolean done = false;
+
+        while ((done == false) && (pos > 0)) {
+            int len = (int) Math.min(block.length, pos);
+            long blockStart = pos - len;
+
+            if (readFully(blockStart, block, len) < len) {
+                throw new IOException("Unexpected end of file at:" + blockStart);
+            }
+
+            for (int i = len - 1; (i >= 0) && (done == false); i--) {
+                if (block[i] == '\n') {
+                    lineStarts.add(blockStart + i + 1);
+                    lineEnd = blockStart + i;
+                    done = (lineStarts.size() >= maxLines);
+                } else if (lineEnd - (blockStart + i) >= MAX_LINE_BYTES) {
+                    lineStarts.add(blockStart + i);
+                    done = true;
+                }
+            }
+
+            pos = blockStart;
+        }
+
+        if (done == false) {
+            // first line of the resource.
+            lineStarts.add(0L);
+        }
+
+        byte lineBytes[] = new byte[1024];
+
+        for (int i = lineStarts.size() - 1; i >= 0; i--) {
+            long start = lineStarts.get(i);
+            long stop = (i > 0) ? lineStarts.get(i - 1) - 1 : end;
+            int length = (int) (stop - start);
+
+            if (lineBytes.length < length) {
+                lineBytes = new byte[length];
+            }
+
+            if (readFully(start, lineBytes, length) < length) {
+                throw new IOException("Unexpected end of file at:" + start);
+            }
+
+            lines.add(decodeLine(lineBytes, length, charset));
+        }
+
+        return lines;
+    }
+
+    /**
+     * Read len bytes unless the end of the resource is reached.
+     * 
+     * @return number of bytes read.
+     */
+    private int readFully(long offset, byte buffer[], int len) throws IOException {
+        int numRead = 0;
+
+        while (numRead < len) {
+            int num = reader.readBytes(offset + numRead, buffer, numRead, len - numRead);
+            if (num <= 0) {
+                break;
+            }
+            numRead += num;
+        }
+
+        return numRead;
+    }
+
+    private String decodeLine(byte bytes[], int length, Charset charset) {
+        if ((length > 0) && (bytes[length - 1] == '\r')) {
+            length--;
+        }
+        return new String(bytes, 0, length, charset);
+    }
+
+    public String toString() {
+        return "TextLineIndex:[numLines:" + getNumLines() + ",scannedLength:" + getScannedLength() + "]";
+    }
+
+}
@@ -46,10 +46,12 @@ import javax.swing.JSeparator;
 import javax.swing.JTextArea;
 import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
 import javax.swing.border.BevelBorder;
 
 import nl.esciencecenter.ptk.data.HashMapList;
 import nl.esciencecenter.ptk.data.StringList;
+import nl.esciencecenter.ptk.io.RandomReadable;
 import nl.esciencecenter.ptk.task.ActionTask;
 import nl.esciencecenter.ptk.ui.fonts.FontInfo;
 import nl.esciencecenter.ptk.ui.fonts.FontToolBar;
@@ -79,6 +81,12 @@ public class TextViewer extends ViewerJPanel implements ActionListener, FontTool
 
     public static final String ACTION_EDIT = "Edit";
 
+    /**
+     * Files of at least this size are shown read-only in a paged view, which only reads the visible
+     * lines.
+     */
+    public static final long PAGED_VIEW_MIN_SIZE = 8 * 1024 * 1024;
+
     /**
      * The mimetypes i can view
      */
@@ -115,6 +123,11 @@ public class TextViewer extends ViewerJPanel implements ActionListener, FontTool
 
     private JScrollPane textScrollPane;
 
+    private PagedTextPanel pagedTextPanel;
+
+    /** Whether the pagedTextPanel is shown instead of the textScrollPane */
+    private boolean pagedView = false;
+
     private FontToolBar fontToolbar;
 
     private JPanel toolPanel;
@@ -339,6 +352,9 @@ public class TextViewer extends ViewerJPanel implements ActionListener, FontTool
                 textArea.setEditable(this.editable);
                 textScrollPane.setViewportView(textArea);
             }
+
+            // added instead of textScrollPane for large files:
+            pagedTextPanel = new PagedTextPanel(getResourceHandler());
         }
 
         // update with stored settings:
@@ -374,6 +390,7 @@ public class TextViewer extends ViewerJPanel implements ActionListener, FontTool
 
     public void updateFont(Font font, Map<?, ?> renderingHints) {
         textArea.setFont(font);
+        pagedTextPanel.setTextFont(font);
         FontUtil.updateRenderingHints(textArea, renderingHints);// doesn't work.
         textArea.repaint();
     }
@@ -457,6 +474,13 @@ public class TextViewer extends ViewerJPanel implements ActionListener, FontTool
             //            }
             //
 
+            if (_loadPaged(uri)) {
+                loadError = false;
+                updateTitle();
+                return;
+            }
+
+            setPagedView(false);
             txt = getResourceHandler().readText(uri, textEncoding);
             // Override
             if (StringUtil.equals(mimeType, "text/x-nfo")) {
@@ -487,6 +511,75 @@ public class TextViewer extends ViewerJPanel implements ActionListener, FontTool
         }
     }
 
+    /**
+     * Show large files in the paged view. Local files are memory-mapped.
+     * 
+     * @return true if the resource is shown in the paged view, false if the complete text must be
+     *         loaded.
+     */
+    protected boolean _loadPaged(VRL uri) {
+        if ((editable) || (TextLineIndex.isSupportedEncoding(textEncoding) == false)) {
+            return false;
+        }
+
+        RandomReadable reader = null;
+
+        try {
+            reader = getResourceHandler().createRandomReader(uri, true);
+
+            if (reader.getLength() < PAGED_VIEW_MIN_SIZE) {
+                reader.close();
+                return false;
+            }
+
+            setPagedView(true);
+            pagedTextPanel.open(uri, reader, textEncoding);
+            return true;
+        } catch (Exception e) {
+            // no random access, for example a web server without range requests.
+            infoPrintf("Can't use paged view for:%s:%s\n", uri, e);
+
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception ex) {
+                    warnPrintf("Failed to close reader of:%s:%s\n", uri, ex);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Switch between the paged view and the (editable) text area.
+     */
+    protected void setPagedView(final boolean paged) {
+        if (paged == pagedView) {
+            return;
+        }
+
+        pagedView = paged;
+
+        if (paged == false) {
+            pagedTextPanel.close();
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if (paged) {
+                    remove(textScrollPane);
+                    add(pagedTextPanel, BorderLayout.CENTER);
+                    textArea.setText("");
+                } else {
+                    remove(pagedTextPanel);
+                    add(textScrollPane, BorderLayout.CENTER);
+                }
+                revalidate();
+                repaint();
+            }
+        });
+    }
+
     public void setFont(String name) {
         this.fontToolbar.selectFont(name);
     }
@@ -500,6 +593,9 @@ public class TextViewer extends ViewerJPanel implements ActionListener, FontTool
     }
 
     protected void requestFocusOnText() {
+        if (pagedView) {
+            return;
+        }
         this.textArea.requestFocusInWindow();
     }
 
@@ -515,6 +611,7 @@ public class TextViewer extends ViewerJPanel implements ActionListener, FontTool
 
     @Override
     public void doDisposeViewer() {
+        this.pagedTextPanel.close();
         this.textArea = null;
     }
 
@@ -671,6 +768,11 @@ public class TextViewer extends ViewerJPanel implements ActionListener, FontTool
      * Enable/Disable edit
      */
     protected void enableEdit(boolean val) {
+        if ((val == true) && (pagedView)) {
+            showMessage("Edit", "File is too large to edit:%s", getURIBasename());
+            val = false;
+        }
+
         if (val == true) {
 
             this.editable = true;
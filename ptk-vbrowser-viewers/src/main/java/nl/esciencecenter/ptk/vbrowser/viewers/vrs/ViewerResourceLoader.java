@@ -41,6 +41,7 @@ import nl.esciencecenter.vbrowser.vrs.VFSPath;
 import nl.esciencecenter.vbrowser.vrs.VPath;
 import nl.esciencecenter.vbrowser.vrs.VRSClient;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VrsException;
+import nl.esciencecenter.vbrowser.vrs.localfs.LocalFSPathNode;
 import nl.esciencecenter.vbrowser.vrs.mimetypes.MimeTypes;
 import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
 
@@ -140,6 +141,19 @@ public class ViewerResourceLoader {
         return vrsClient.createRandomReader(vrsClient.openPath(loc));
     }
 
+    /**
+     * Create RandomReadable, local files are memory-mapped if preferMemoryMapped is true.
+     */
+    public RandomReadable createRandomReader(VRL loc, boolean preferMemoryMapped) throws Exception {
+        VPath path = vrsClient.openPath(loc);
+
+        if ((preferMemoryMapped) && (path instanceof LocalFSPathNode)) {
+            return ((LocalFSPathNode) path).createRandomReadable(true);
+        }
+
+        return vrsClient.createRandomReader(path);
+    }
+
     public RandomWritable createRandomWriter(VRL loc) throws Exception {
         return vrsClient.createRandomWriter(vrsClient.openPath(loc));
     }
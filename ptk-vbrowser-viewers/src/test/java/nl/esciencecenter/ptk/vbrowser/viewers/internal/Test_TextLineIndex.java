@@ -0,0 +1,225 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+package nl.esciencecenter.ptk.vbrowser.viewers.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.esciencecenter.ptk.io.FSChannelReader;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class Test_TextLineIndex {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File file;
+
+    private List<FSChannelReader> readers = new ArrayList<FSChannelReader>();
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("textlineindex", ".txt");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        for (FSChannelReader reader : readers) {
+            reader.close();
+        }
+        file.delete();
+    }
+
+    protected FSChannelReader createReader(String text, boolean memoryMapped) throws IOException {
+        Files.write(file.toPath(), text.getBytes(UTF8));
+        FSChannelReader reader = new FSChannelReader(file.toPath(), memoryMapped);
+        readers.add(reader);
+        return reader;
+    }
+
+    protected TextLineIndex createIndex(String text, boolean memoryMapped) throws IOException {
+        TextLineIndex index = new TextLineIndex(createReader(text, memoryMapped));
+        scanAll(index);
+        return index;
+    }
+
+    protected void scanAll(TextLineIndex index) throws IOException {
+        while (index.scan() > 0) {
+            // scan next block
+        }
+    }
+
+    protected String createLines(int numLines, String terminator) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numLines; i++) {
+            sb.append("line:").append(i).append(terminator);
+        }
+        return sb.toString();
+    }
+
+    protected String repeat(char c, int num) {
+        char chars[] = new char[num];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void testCRLF() throws IOException {
+        TextLineIndex index = createIndex("first\r\nsecond\r\n\r\nlast\r\n", false);
+
+        Assert.assertEquals(4, index.getNumLines());
+        Assert.assertEquals(Arrays.asList("first", "second", "", "last"), index.readLines(0, 10, UTF8));
+        Assert.assertEquals(Arrays.asList("second", ""), index.readLines(1, 2, UTF8));
+        Assert.assertEquals(7, index.getLineOffset(1));
+    }
+
+    @Test
+    public void testNoFinalNewline() throws IOException {
+        TextLineIndex index = createIndex("first\nsecond\nlast", false);
+
+        Assert.assertEquals(3, index.getNumLines());
+        Assert.assertEquals(Arrays.asList("first", "second", "last"), index.readLines(0, 10, UTF8));
+        Assert.assertEquals(Arrays.asList("last"), index.readLines(2, 10, UTF8));
+        Assert.assertEquals(0, index.readLines(3, 10, UTF8).size());
+
+        index = createIndex("", false);
+        Assert.assertEquals(0, index.getNumLines());
+        Assert.assertEquals(0, index.readLines(0, 10, UTF8).size());
+    }
+
+    @Test
+    public void testIndexIntervalBoundaries() throws IOException {
+        int interval = TextLineIndex.INDEX_INTERVAL;
+        // more than one scan block.
+        int numLines = (2 * TextLineIndex.SCAN_BLOCK_SIZE) / 10 + 5;
+        String text = createLines(numLines, "\n");
+
+        for (boolean memoryMapped : new boolean[] { false, true }) {
+            TextLineIndex index = createIndex(text, memoryMapped);
+            Assert.assertEquals(numLines, index.getNumLines());
+            Assert.assertEquals(text.length(), index.getScannedLength());
+
+            long lines[] = { 0, 1, interval - 1, interval, interval + 1, 2 * interval - 1, 2 * interval,
+                    numLines / 2, numLines - interval, numLines - 2, numLines - 1 };
+
+            for (long line : lines) {
+                List<String> result = index.readLines(line, 3, UTF8);
+                Assert.assertEquals("line:" + line, result.get(0));
+                Assert.assertEquals(Math.min(3, numLines - line), result.size());
+                Assert.assertEquals("line:" + (line + result.size() - 1), result.get(result.size() - 1));
+                Assert.assertEquals(text.indexOf("line:" + line + "\n"), index.getLineOffset(line));
+            }
+        }
+    }
+
+    @Test
+    public void testLongLines() throws IOException {
+        int max = TextLineIndex.MAX_LINE_BYTES;
+        String exact = repeat('e', max);
+        String text = "first\n" + repeat('x', 3 * max) + "\r\nafter\n" + exact + "\n" + repeat('y', max + 1)
+                + "\nlast";
+
+        TextLineIndex index = createIndex(text, false);
+        Assert.assertEquals(6, index.getNumLines());
+
+        List<String> lines = index.readLines(0, 10, UTF8);
+        Assert.assertEquals(6, lines.size());
+        Assert.assertEquals("first", lines.get(0));
+        Assert.assertEquals(repeat('x', max), lines.get(1));
+        Assert.assertEquals("after", lines.get(2));
+        Assert.assertEquals(exact, lines.get(3));
+        Assert.assertEquals(repeat('y', max), lines.get(4));
+        Assert.assertEquals("last", lines.get(5));
+
+        Assert.assertEquals(Arrays.asList("after"), index.readLines(2, 1, UTF8));
+        Assert.assertEquals("last", index.readLines(4, 2, UTF8).get(1));
+        Assert.assertEquals(text.indexOf("last"), index.getLineOffset(5));
+    }
+
+    @Test
+    public void testLongLastLineWhileScanning() throws IOException {
+        // long line which isn't terminated: reading stops after it.
+        int max = TextLineIndex.MAX_LINE_BYTES;
+        TextLineIndex index = createIndex("first\n" + repeat('x', 2 * max), false);
+
+        List<String> lines = index.readLines(0, 10, UTF8);
+        Assert.assertEquals(2, lines.size());
+        Assert.assertEquals(repeat('x', max), lines.get(1));
+    }
+
+    @Test
+    public void testReadLastLines() throws IOException {
+        // not indexed: lines are read backwards from the end.
+        TextLineIndex index = new TextLineIndex(createReader(createLines(1000, "\r\n"), false));
+        Assert.assertEquals(0, index.getNumLines());
+        Assert.assertEquals(Arrays.asList("line:997", "line:998", "line:999"), index.readLastLines(3, UTF8));
+
+        index = new TextLineIndex(createReader("first\nsecond\nlast", true));
+        Assert.assertEquals(Arrays.asList("second", "last"), index.readLastLines(2, UTF8));
+        Assert.assertEquals(Arrays.asList("first", "second", "last"), index.readLastLines(10, UTF8));
+
+        index = new TextLineIndex(createReader("\n\nlast\n", false));
+        Assert.assertEquals(Arrays.asList("", "", "last"), index.readLastLines(10, UTF8));
+
+        index = new TextLineIndex(createReader("", false));
+        Assert.assertEquals(0, index.readLastLines(10, UTF8).size());
+
+        // long line: only the end of the long line and the lines after it.
+        int max = TextLineIndex.MAX_LINE_BYTES;
+        index = new TextLineIndex(createReader("first\n" + repeat('x', 2 * max) + "y\nlast\n", false));
+        List<String> lines = index.readLastLines(10, UTF8);
+        Assert.assertEquals(2, lines.size());
+        Assert.assertEquals(repeat('x', max - 1) + "y", lines.get(0));
+        Assert.assertEquals("last", lines.get(1));
+    }
+
+    @Test
+    public void testSetReader() throws IOException {
+        String text = createLines(200, "\n");
+        TextLineIndex index = createIndex(text, false);
+        Assert.assertEquals(200, index.getNumLines());
+
+        // grown: index is kept and continues.
+        String grown = text + createLines(300, "\n").substring(text.length());
+        Assert.assertTrue(index.setReader(createReader(grown, false)));
+        Assert.assertEquals(200, index.getNumLines());
+        scanAll(index);
+        Assert.assertEquals(300, index.getNumLines());
+        Assert.assertEquals(Arrays.asList("line:199", "line:200"), index.readLines(199, 2, UTF8));
+
+        // truncated: index is cleared.
+        Assert.assertFalse(index.setReader(createReader("new\nlines\n", false)));
+        Assert.assertEquals(0, index.getNumLines());
+        Assert.assertEquals(0, index.getScannedLength());
+        Assert.assertEquals(0, index.readLines(0, 10, UTF8).size());
+
+        scanAll(index);
+        Assert.assertEquals(Arrays.asList("new", "lines"), index.readLines(0, 10, UTF8));
+    }
+}
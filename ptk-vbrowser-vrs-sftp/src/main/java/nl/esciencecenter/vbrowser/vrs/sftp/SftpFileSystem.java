@@ -29,6 +29,8 @@ import java.util.List;
 
 import nl.esciencecenter.ptk.crypt.Secret;
 import nl.esciencecenter.ptk.exec.ShellChannel;
+import nl.esciencecenter.ptk.io.RandomReadable;
+import nl.esciencecenter.ptk.io.RandomWritable;
 import nl.esciencecenter.ptk.ui.UI;
 import nl.esciencecenter.vbrowser.vrs.VCloseable;
 import nl.esciencecenter.vbrowser.vrs.VFSPath;
@@ -43,6 +45,7 @@ import nl.esciencecenter.vbrowser.vrs.io.VStreamCreator;
 import nl.esciencecenter.vbrowser.vrs.node.VFileSystemNode;
 import nl.esciencecenter.vbrowser.vrs.registry.ResourceConfigInfo;
 import nl.esciencecenter.vbrowser.vrs.sftp.jsch.SftpChannel;
+import nl.esciencecenter.vbrowser.vrs.sftp.jsch.SftpChannelPool;
 import nl.esciencecenter.vbrowser.vrs.sftp.jsch.SftpConfig;
 import nl.esciencecenter.vbrowser.vrs.sftp.jsch.SftpEntry;
 import nl.esciencecenter.vbrowser.vrs.sftp.jsch.SshSession;
@@ -73,9 +76,18 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
     /** Users identidyf files, matching the global ResourceSystemInfo property name */
     public static final String SSH_USER_IDENTITY_FILES = ResourceConfigInfo.ATTR_USER_KEY_FILES;
 
+    /** Maximum number of concurrent sftp channels used for browsing, for example "4" */
+    public static final String SSH_MAX_SFTP_CHANNELS_PROPERTY = "sshMaxSftpChannels";
+
+    /** Number of outstanding read requests when reading a file, for example "64" */
+    public static final String SFTP_BULK_REQUESTS_PROPERTY = "sftpBulkRequests";
+
+    /** Size of a single write request in bytes, for example "32000" */
+    public static final String SFTP_REQUEST_SIZE_PROPERTY = "sftpRequestSize";
+
     private SshSession sftpSession;
 
-    private SftpChannel sftpChannel;
+    private SftpChannelPool channelPool;
 
     public SftpFileSystem(JSch jsch, VRSContext context, ResourceConfigInfo info, VRL vrl)
             throws VrsException {
@@ -96,9 +108,10 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
                 this.sftpSession.setUserUI(userUI);
             }
             this.sftpSession.connect();
-            // one SftpChannel per FileSystem
-            this.sftpChannel = sftpSession.createSftpChannel();
-            this.sftpChannel.connect();
+            // SftpChannels are shared with the SshSession
+            this.channelPool = sftpSession.getSftpChannelPool();
+            // connect first channel now so connection errors are reported here.
+            this.channelPool.returnChannel(channelPool.borrowChannel());
         } catch (Exception e) {
             throw new VrsException(e.getMessage(), e);
         }
@@ -134,18 +147,50 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
         }
         config.privateKeys = new String[] { "id_rsa", "id_dsa" };
 
+        config.maxSftpChannels = getIntProperty(info, SSH_MAX_SFTP_CHANNELS_PROPERTY,
+                config.maxSftpChannels);
+        config.sftpBulkRequests = getIntProperty(info, SFTP_BULK_REQUESTS_PROPERTY,
+                config.sftpBulkRequests);
+        config.sftpRequestSize = getIntProperty(info, SFTP_REQUEST_SIZE_PROPERTY,
+                config.sftpRequestSize);
+
         config.sshKnowHostFile = SftpConfig.SSH_USER_KNOWN_HOSTS;
         logger.info("updateSftpConfig(): config:{}", config);
 
         return config;
     }
 
+    private int getIntProperty(ResourceConfigInfo info, String name, int defaultValue) {
+        String value = info.getProperty(name);
+        if ((value == null) || (value.trim().length() <= 0)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("updateSftpConfig(): Invalid value for {}:{}", name, value);
+            return defaultValue;
+        }
+    }
+
     public SshSession getSftpSession() {
         return sftpSession;
     }
 
-    public SftpChannel getSftpChannel() {
-        return this.sftpChannel;
+    public SftpChannelPool getSftpChannelPool() {
+        return this.channelPool;
+    }
+
+    protected SftpChannel borrowChannel() throws VrsException {
+        try {
+            return channelPool.borrowChannel();
+        } catch (JSchException e) {
+            throw new VrsException("Couldn't get SftpChannel for:" + this + "\n" + e.getMessage(), e);
+        }
+    }
+
+    protected void returnChannel(SftpChannel channel) {
+        channelPool.returnChannel(channel);
     }
 
     @Override
@@ -157,20 +202,33 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
         return new SftpPathNode(this, vrl);
     }
 
+    protected SftpPathNode createNode(VRL vrl, SftpATTRS attrs) throws VrsException {
+        return new SftpPathNode(this, vrl, attrs);
+    }
+
     public List<SftpPathNode> listNodes(String remotePath) throws VrsException {
         //
         logger.debug("listNodes():remotePath='{}'", remotePath);
 
+        SftpChannel channel = borrowChannel();
         try {
-            List<SftpEntry> entries = sftpChannel.list(remotePath);
+            List<SftpEntry> entries = channel.list(remotePath);
             List<SftpPathNode> nodes = new ArrayList<SftpPathNode>();
 
             for (SftpEntry entry : entries) {
-                nodes.add(this.createNode(resolveVRL(remotePath, entry.getFilename())));
+                // Seed nodes with attributes from the 'ls' reply to avoid a 'stat' per node.
+                // These are 'lstat' attributes, so (sym)links are resolved later using 'stat'.
+                SftpATTRS attrs = entry.getAttrs();
+                if ((attrs != null) && (attrs.isLink())) {
+                    attrs = null;
+                }
+                nodes.add(this.createNode(resolveVRL(remotePath, entry.getFilename()), attrs));
             }
             return nodes;
         } catch (Exception e) {
             throw new VrsException(e.getMessage(), e);
+        } finally {
+            returnChannel(channel);
         }
     }
 
@@ -182,21 +240,27 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
         logger.debug("fetchSftpAttrs():resolveLink,remotePath='{}'",
                 resolveLink ? "true" : "false", remotePath);
 
+        SftpChannel channel = borrowChannel();
         try {
-            return sftpChannel.statSftpAttrs(remotePath, resolveLink);
+            return channel.statSftpAttrs(remotePath, resolveLink);
         } catch (SftpException e) {
             logger.error("fetchSftpAttrs():remotePath='{}' => SftpException:{}", remotePath,
                     e.getMessage());
             throw convertSftpException(e, "Fetching attributes from:" + remotePath);
+        } finally {
+            returnChannel(channel);
         }
     }
 
     public boolean exists(String remotePath) throws VrsException {
+        SftpChannel channel = borrowChannel();
         try {
-            return sftpChannel.exists(remotePath);
+            return channel.exists(remotePath);
         } catch (SftpException e) {
             logger.error("exists():remotePath='{}' => SftpException:{}", remotePath, e.getMessage());
             throw new VrsException(e.getMessage(), e);
+        } finally {
+            returnChannel(channel);
         }
     }
 
@@ -208,6 +272,7 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
         logger.debug("mkdir(),ignoreExisting={},remotePath={}", ignoreExisting, remotePath);
         boolean exists = exists(remotePath);
 
+        SftpChannel channel = borrowChannel();
         try {
             if (ignoreExisting == true) {
                 if (exists) {
@@ -222,34 +287,42 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
                 }
             }
 
-            return sftpChannel.mkdir(remotePath);
+            return channel.mkdir(remotePath);
 
         } catch (SftpException e) {
             logger.error("mkdir():remotePath='{}' => SftpException:{}", remotePath, e.getMessage());
             throw convertSftpException(e, "Performing mkdir():exists=" + exists
                     + ",ignoreExisting=" + ignoreExisting + ",remotePath='" + remotePath + "'");
+        } finally {
+            returnChannel(channel);
         }
     }
 
     public boolean delete(String remotePath, boolean isDir, LinkOption[] options)
             throws VrsException {
+        SftpChannel channel = borrowChannel();
         try {
-            return sftpChannel.delete(remotePath, isDir);
+            return channel.delete(remotePath, isDir);
         } catch (SftpException e) {
             logger.error("mkdir():delete='{}' => SftpException:{}", remotePath, e.getMessage());
             throw new VrsException(e.getMessage(), e);
+        } finally {
+            returnChannel(channel);
         }
     }
 
     public VFSPath renameTo(VFSPath sourcePath, VFSPath otherPath) throws VrsException {
+        SftpChannel channel = borrowChannel();
         try {
             String otherPathStr = otherPath.getVRL().getPath();
-            sftpChannel.rename(sourcePath.getVRL().getPath(), otherPathStr);
+            channel.rename(sourcePath.getVRL().getPath(), otherPathStr);
             return otherPath;
         } catch (SftpException e) {
             logger.error("mkdir():renameTo='{}' => '{}' => SftpException:{}", sourcePath,
                     otherPath, e.getMessage());
             throw new VrsException(e.getMessage(), e);
+        } finally {
+            returnChannel(channel);
         }
     }
 
@@ -268,8 +341,15 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
     }
 
     public InputStream createInputStream(String remotePath) throws VrsException {
+        return createInputStream(remotePath, 0);
+    }
+
+    /**
+     * Create InputStream which starts reading at the specified offset.
+     */
+    public InputStream createInputStream(String remotePath, long offset) throws VrsException {
         try {
-            return this.sftpSession.createSftpInputStream(remotePath);
+            return this.sftpSession.createSftpInputStream(remotePath, offset);
         } catch (SftpException | JSchException e) {
             logger.error("mkdir():createInputStream='{}' => Exception:{}", remotePath,
                     e.getMessage());
@@ -288,6 +368,26 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
 
     }
 
+    public RandomReadable createRandomReadable(String remotePath) throws VrsException {
+        try {
+            return this.sftpSession.createSftpRandomReader(remotePath);
+        } catch (SftpException e) {
+            throw convertSftpException(e, "createRandomReadable():" + remotePath);
+        } catch (JSchException e) {
+            throw new VrsException("Performing createRandomReadable() on remotePath:" + remotePath, e);
+        }
+    }
+
+    public RandomWritable createRandomWritable(String remotePath) throws VrsException {
+        try {
+            return this.sftpSession.createSftpRandomWriter(remotePath);
+        } catch (SftpException e) {
+            throw convertSftpException(e, "createRandomWritable():" + remotePath);
+        } catch (JSchException e) {
+            throw new VrsException("Performing createRandomWritable() on remotePath:" + remotePath, e);
+        }
+    }
+
     // =========================
     // Misc.
     // =========================
@@ -323,7 +423,7 @@ public class SftpFileSystem extends VFileSystemNode implements VStreamCreator,
     @Override
     public boolean close() throws IOException {
         logger.info("SftpFileSystem closing:" + this);
-        this.sftpChannel.close();
+        // closes channel pool as well.
         this.sftpSession.close();
         return true;
     }
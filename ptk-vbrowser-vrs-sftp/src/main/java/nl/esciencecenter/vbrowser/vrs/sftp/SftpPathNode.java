@@ -54,6 +54,14 @@ public class SftpPathNode extends VFSPathNode implements VStreamAccessable, VRan
         init(vrl.getPath());
     }
 
+    /**
+     * Create node with already fetched attributes, for example from a directory listing.
+     */
+    protected SftpPathNode(SftpFileSystem sftpfs, VRL vrl, SftpATTRS attrs) {
+        this(sftpfs, vrl);
+        this.attrs = attrs;
+    }
+
     protected void init(String path) {
         this.path = path;
     }
@@ -110,6 +118,14 @@ public class SftpPathNode extends VFSPathNode implements VStreamAccessable, VRan
         return this.sftpfs.createInputStream(path);
     }
 
+    /**
+     * Opens the remote file at the offset, so resuming a copy doesn't download the skipped bytes.
+     */
+    @Override
+    public InputStream createInputStream(long offset) throws VrsException {
+        return this.sftpfs.createInputStream(path, offset);
+    }
+
     @Override
     public boolean mkdir(boolean ignoreExisting) throws VrsException {
         return this.sftpfs.mkdir(this.getPathAsString(), ignoreExisting);
@@ -142,12 +158,12 @@ public class SftpPathNode extends VFSPathNode implements VStreamAccessable, VRan
 
     @Override
     public RandomReadable createRandomReadable() throws VrsException {
-        throw new VrsException("Not Implemented: createRandomReadable()");
+        return this.sftpfs.createRandomReadable(path);
     }
 
     @Override
     public RandomWritable createRandomWritable() throws VrsException {
-        throw new VrsException("Not Implemented: createRandomWritable()");
+        return this.sftpfs.createRandomWritable(path);
     }
 
     @Override
@@ -49,6 +49,15 @@ public class SftpChannel implements AutoCloseable {
         }
     }
 
+    /**
+     * Set number of outstanding read requests for InputStreams created by this channel.
+     */
+    public void setBulkRequests(int numRequests) throws JSchException {
+        synchronized (channelMutex) {
+            this.channel.setBulkRequests(numRequests);
+        }
+    }
+
     public boolean isConnected() {
         synchronized (channelMutex) {
             return ((this.channel != null) && (this.channel.isConnected()));
@@ -224,6 +233,32 @@ public class SftpChannel implements AutoCloseable {
         return this.channel.put(remotePath, mode);
     }
 
+    /**
+     * Performs 'get()' starting at the specified file offset.
+     * 
+     * @see #get(String)
+     */
+    protected InputStream get(String path, long fileOffset) throws SftpException {
+        check();
+        return channel.get(path, null, fileOffset);
+    }
+
+    /**
+     * Performs 'put()' starting at the specified file offset without truncating the remote file.
+     * JSch only supports positioned writes relative to the current file size (RESUME mode), so the
+     * current size of the remote file must be specified as well.
+     * 
+     * @param fileOffset
+     *            - absolute offset in the remote file to start writing at.
+     * @param currentSize
+     *            - current size of the remote file, 0 if it doesn't exist.
+     * @see #put(String, int)
+     */
+    protected OutputStream put(String remotePath, long fileOffset, long currentSize) throws SftpException {
+        check();
+        return this.channel.put(remotePath, null, ChannelSftp.RESUME, fileOffset - currentSize);
+    }
+
     // =========
     // LifeCycle 
     // =========
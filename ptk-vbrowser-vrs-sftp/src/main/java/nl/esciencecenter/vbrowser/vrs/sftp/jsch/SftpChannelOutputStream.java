@@ -25,7 +25,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 /**
- * Private SftpChannel+ SftpOutputStream combination. Autocloses both OutputStream and SftpChannel.
+ * OutputStream to a sftp file. Each write to the sftp OutputStream is sent as a write request
+ * without waiting for the acknowledgement of the previous request. To keep the requests at an
+ * efficient size, small writes are collected into requests of <code>requestSize</code> bytes and
+ * large writes are split into requests of that size.
  */
 public class SftpChannelOutputStream extends OutputStream implements AutoCloseable {
 
@@ -33,32 +36,94 @@ public class SftpChannelOutputStream extends OutputStream implements AutoCloseab
 
     private SftpChannel channel;
 
+    private byte requestBuffer[];
+
+    private int numBuffered = 0;
+
     public SftpChannelOutputStream(OutputStream outps, SftpChannel outputChannel) {
+        this(outps, outputChannel, 0);
+    }
+
+    /**
+     * @param outputChannel
+     *            - private channel which is closed when this stream is closed, or null if the
+     *            channel is owned by the caller.
+     * @param requestSize
+     *            - size of a single write request, set to &lt;=0 to pass writes as-is.
+     */
+    public SftpChannelOutputStream(OutputStream outps, SftpChannel outputChannel, int requestSize) {
         this.outps = outps;
         this.channel = outputChannel;
+        if (requestSize > 0) {
+            this.requestBuffer = new byte[requestSize];
+        }
     }
 
     @Override
     public void write(int b) throws IOException {
-        outps.write(b);
+        if (requestBuffer == null) {
+            outps.write(b);
+            return;
+        }
+
+        requestBuffer[numBuffered++] = (byte) b;
+        if (numBuffered >= requestBuffer.length) {
+            flushRequestBuffer();
+        }
     }
 
     @Override
     public void write(byte bytes[]) throws IOException {
-        outps.write(bytes);
+        write(bytes, 0, bytes.length);
     }
 
     @Override
     public void write(byte bytes[], int offset, int len) throws IOException {
-        outps.write(bytes, offset, len);
+        if (requestBuffer == null) {
+            outps.write(bytes, offset, len);
+            return;
+        }
+
+        while (len > 0) {
+            if ((numBuffered == 0) && (len >= requestBuffer.length)) {
+                // full request: no need to copy.
+                outps.write(bytes, offset, requestBuffer.length);
+                offset += requestBuffer.length;
+                len -= requestBuffer.length;
+            } else {
+                int num = Math.min(len, requestBuffer.length - numBuffered);
+                System.arraycopy(bytes, offset, requestBuffer, numBuffered, num);
+                numBuffered += num;
+                offset += num;
+                len -= num;
+
+                if (numBuffered >= requestBuffer.length) {
+                    flushRequestBuffer();
+                }
+            }
+        }
+    }
+
+    private void flushRequestBuffer() throws IOException {
+        if (numBuffered > 0) {
+            outps.write(requestBuffer, 0, numBuffered);
+            numBuffered = 0;
+        }
     }
 
     public void close() throws IOException {
-        outps.close();
-        channel.disconnect();
+        try {
+            flushRequestBuffer();
+            outps.close();
+        } finally {
+            if (channel != null) {
+                channel.disconnect();
+            }
+        }
     }
 
     public void flush() throws IOException {
+        flushRequestBuffer();
         outps.flush();
     }
 
@@ -0,0 +1,414 @@
+package nl.esciencecenter.vbrowser.vrs.sftp.jsch;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+
+/**
+ * Bounded pool of SftpChannels which share one SshSession. Independent sftp operations can borrow
+ * their own channel so they don't have to wait for each other. A borrowed channel must always be
+ * returned, typically in a finally block:
+ *
+ * <pre>
+ * SftpChannel channel = pool.borrowChannel();
+ * try {
+ *     channel.mkdir(path);
+ * } finally {
+ *     pool.returnChannel(channel);
+ * }
+ * </pre>
+ *
+ * Channels which are disconnected are discarded when borrowed or returned. Channels which have
+ * been idle for longer than the idle timeout are closed by a shared daemon timer, except for the
+ * last one.
+ */
+public class SftpChannelPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SftpChannelPool.class);
+
+    /**
+     * Minimum interval between idle evictions.
+     */
+    public static final long MIN_EVICTION_INTERVAL = 1000;
+
+    private static Timer evictionTimer = null;
+
+    private static synchronized Timer getEvictionTimer() {
+        if (evictionTimer == null) {
+            evictionTimer = new Timer("SftpChannelPool-IdleEvictor", true);
+        }
+        return evictionTimer;
+    }
+
+    /**
+     * Creates the (unconnected) channels of the pool.
+     */
+    public static interface ChannelFactory {
+        SftpChannel createChannel() throws SftpException, JSchException;
+    }
+
+    protected static class IdleChannel {
+        protected final SftpChannel channel;
+
+        protected final long idleSince;
+
+        protected IdleChannel(SftpChannel channel) {
+            this.channel = channel;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+
+    // === instance ===
+
+    private final SshSession sshSession;
+
+    private final ChannelFactory channelFactory;
+
+    private final int maxChannels;
+
+    private final long idleTimeoutMillis;
+
+    private final Object poolMutex = new Object();
+
+    /** Most recently returned channel first */
+    private final Deque<IdleChannel> idleChannels = new ArrayDeque<IdleChannel>();
+
+    /** Number of connected (or connecting) channels, either idle or borrowed */
+    private int numChannels = 0;
+
+    private int numBorrowed = 0;
+
+    private int numWaiters = 0;
+
+    private boolean closed = false;
+
+    private TimerTask evictionTask;
+
+    // === statistics ===
+
+    private long numBorrows = 0;
+
+    private long numWaits = 0;
+
+    private long totalWaitTimeMillis = 0;
+
+    private long maxWaitTimeMillis = 0;
+
+    private long numCreated = 0;
+
+    private long numEvicted = 0;
+
+    /**
+     * @param session
+     *            - connected SshSession to create the channels with.
+     * @param maxChannels
+     *            - maximum number of concurrent sftp channels.
+     * @param idleTimeoutMillis
+     *            - idle time after which an unused channel is closed. Set to &lt;=0 to keep idle
+     *            channels open.
+     */
+    public SftpChannelPool(final SshSession session, int maxChannels, long idleTimeoutMillis) {
+        this(session, new ChannelFactory() {
+            public SftpChannel createChannel() throws SftpException, JSchException {
+                return session.createSftpChannel();
+            }
+        }, maxChannels, idleTimeoutMillis);
+    }
+
+    /**
+     * @param session
+     *            - SshSession of the channels, used for logging only.
+     * @param channelFactory
+     *            - creates the channels, which are connected by the pool.
+     * @param maxChannels
+     *            - maximum number of concurrent sftp channels.
+     * @param idleTimeoutMillis
+     *            - idle time after which an unused channel is closed. Set to &lt;=0 to keep idle
+     *            channels open.
+     */
+    public SftpChannelPool(SshSession session, ChannelFactory channelFactory, int maxChannels,
+            long idleTimeoutMillis) {
+        this.sshSession = session;
+        this.channelFactory = channelFactory;
+        this.maxChannels = (maxChannels > 0) ? maxChannels : 1;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+
+        if (idleTimeoutMillis > 0) {
+            long interval = Math.max(MIN_EVICTION_INTERVAL, idleTimeoutMillis / 2);
+
+            evictionTask = new TimerTask() {
+                public void run() {
+                    evictIdleChannels(false);
+                }
+            };
+
+            getEvictionTimer().schedule(evictionTask, interval, interval);
+        }
+    }
+
+    /**
+     * Borrow a connected channel. Blocks if all channels are in use. The channel must be returned
+     * with {@link #returnChannel(SftpChannel)}.
+     *
+     * @return connected SftpChannel
+     * @throws JSchException
+     *             if a new channel couldn't be connected, the pool is closed or the current thread
+     *             was interrupted while waiting.
+     */
+    public SftpChannel borrowChannel() throws JSchException {
+        long startWait = 0;
+
+        evictIdleChannels(false);
+
+        synchronized (poolMutex) {
+            while (true) {
+                if (closed) {
+                    throw new JSchException("SftpChannelPool is closed for:" + sshSession);
+                }
+
+                // health check: only reuse connected channels.
+                IdleChannel idle = idleChannels.pollFirst();
+                if (idle != null) {
+                    if (idle.channel.isConnected() == false) {
+                        logger.info("borrowChannel(): discarding disconnected channel:{}", idle.channel);
+                        numChannels--;
+                        continue;
+                    }
+                    markBorrowed(startWait);
+                    return idle.channel;
+                }
+
+                // reserve slot for new channel, connect outside mutex.
+                if (numChannels < maxChannels) {
+                    numChannels++;
+                    markBorrowed(startWait);
+                    break;
+                }
+
+                if (startWait == 0) {
+                    startWait = System.currentTimeMillis();
+                }
+
+                numWaiters++;
+                try {
+                    poolMutex.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JSchException("Interrupted while waiting for SftpChannel to:" + sshSession, e);
+                } finally {
+                    numWaiters--;
+                }
+            }
+        }
+
+        try {
+            SftpChannel channel = channelFactory.createChannel();
+            channel.connect();
+            synchronized (poolMutex) {
+                numCreated++;
+            }
+            logger.debug("borrowChannel(): created new channel:{}", channel);
+            return channel;
+        } catch (Exception e) {
+            synchronized (poolMutex) {
+                numChannels--;
+                numBorrowed--;
+                poolMutex.notify();
+            }
+            if (e instanceof JSchException) {
+                throw (JSchException) e;
+            }
+            throw new JSchException("Failed to create SftpChannel to:" + sshSession, e);
+        }
+    }
+
+    private void markBorrowed(long startWait) {
+        numBorrowed++;
+        numBorrows++;
+        if (startWait > 0) {
+            long waitTime = System.currentTimeMillis() - startWait;
+            numWaits++;
+            totalWaitTimeMillis += waitTime;
+            if (waitTime > maxWaitTimeMillis) {
+                maxWaitTimeMillis = waitTime;
+            }
+        }
+    }
+
+    /**
+     * Return borrowed channel to the pool. Disconnected channels are discarded.
+     */
+    public void returnChannel(SftpChannel channel) {
+        if (channel == null) {
+            return;
+        }
+
+        boolean disconnect = false;
+
+        synchronized (poolMutex) {
+            numBorrowed--;
+
+            if ((closed) || (channel.isConnected() == false)) {
+                numChannels--;
+                disconnect = true;
+            } else {
+                idleChannels.addFirst(new IdleChannel(channel));
+            }
+
+            poolMutex.notify();
+        }
+
+        if (disconnect) {
+            channel.disconnect();
+        }
+    }
+
+    /**
+     * Close channels which have been idle longer than the idle timeout. The most recently used
+     * channel is kept open.
+     *
+     * @param all
+     *            - close all idle channels regardless of their idle time.
+     * @return number of closed channels.
+     */
+    public int evictIdleChannels(boolean all) {
+        Deque<SftpChannel> evicted = new ArrayDeque<SftpChannel>();
+
+        synchronized (poolMutex) {
+            long now = System.currentTimeMillis();
+            Iterator<IdleChannel> iterator = idleChannels.descendingIterator();
+
+            while (iterator.hasNext()) {
+                IdleChannel idle = iterator.next();
+                boolean expired = (idleTimeoutMillis > 0) && (now - idle.idleSince > idleTimeoutMillis);
+                boolean keepLast = (all == false) && (numChannels <= 1);
+
+                if (all || (expired && (keepLast == false)) || (idle.channel.isConnected() == false)) {
+                    iterator.remove();
+                    numChannels--;
+                    numEvicted++;
+                    evicted.add(idle.channel);
+                }
+            }
+
+            if (evicted.size() > 0) {
+                poolMutex.notifyAll();
+            }
+        }
+
+        // disconnect outside mutex
+        for (SftpChannel channel : evicted) {
+            logger.debug("evictIdleChannels(): closing channel:{}", channel);
+            channel.disconnect();
+        }
+
+        return evicted.size();
+    }
+
+    /**
+     * Close pool, stop idle eviction and close all idle channels. Borrowed channels are closed when
+     * they are returned.
+     */
+    @Override
+    public void close() {
+        TimerTask task;
+
+        synchronized (poolMutex) {
+            this.closed = true;
+            task = evictionTask;
+            evictionTask = null;
+            poolMutex.notifyAll();
+        }
+
+        if (task != null) {
+            task.cancel();
+        }
+        evictIdleChannels(true);
+    }
+
+    // =========
+    // Metrics
+    // =========
+
+    public int getMaxChannels() {
+        return maxChannels;
+    }
+
+    /** @return number of open channels, both idle and borrowed. */
+    public int getNumChannels() {
+        synchronized (poolMutex) {
+            return numChannels;
+        }
+    }
+
+    /** @return number of channels currently borrowed. */
+    public int getNumBorrowed() {
+        synchronized (poolMutex) {
+            return numBorrowed;
+        }
+    }
+
+    /** @return number of threads currently waiting for a channel. */
+    public int getNumWaiters() {
+        synchronized (poolMutex) {
+            return numWaiters;
+        }
+    }
+
+    /** @return total number of borrows. */
+    public long getNumBorrows() {
+        synchronized (poolMutex) {
+            return numBorrows;
+        }
+    }
+
+    /** @return number of borrows which had to wait for a free channel. */
+    public long getNumWaits() {
+        synchronized (poolMutex) {
+            return numWaits;
+        }
+    }
+
+    /** @return accumulated time borrowers had to wait for a channel. */
+    public long getTotalWaitTimeMillis() {
+        synchronized (poolMutex) {
+            return totalWaitTimeMillis;
+        }
+    }
+
+    public long getMaxWaitTimeMillis() {
+        synchronized (poolMutex) {
+            return maxWaitTimeMillis;
+        }
+    }
+
+    public long getNumCreated() {
+        synchronized (poolMutex) {
+            return numCreated;
+        }
+    }
+
+    public long getNumEvicted() {
+        synchronized (poolMutex) {
+            return numEvicted;
+        }
+    }
+
+    public String toString() {
+        synchronized (poolMutex) {
+            return "SftpChannelPool:[sshSession:'" + sshSession + "',channels:" + numChannels + "/" + maxChannels
+                    + ",borrowed:" + numBorrowed + ",waiters:" + numWaiters + ",borrows:" + numBorrows
+                    + ",waits:" + numWaits + ",totalWaitTime:" + totalWaitTimeMillis + "ms,maxWaitTime:"
+                    + maxWaitTimeMillis + "ms,created:" + numCreated + ",evicted:" + numEvicted + "]";
+        }
+    }
+
+}
@@ -33,6 +33,30 @@ public class SftpConfig {
 
     public String[] publicKeys;
 
+    /** Maximum number of concurrent sftp channels per session, see SftpChannelPool */
+    public int maxSftpChannels = 4;
+
+    /** Idle time in milliseconds after which an unused sftp channel is closed */
+    public long sftpChannelIdleTimeout = 60 * 1000;
+
+    /**
+     * Number of outstanding read requests of a sftp InputStream. Together with the (32k) read
+     * packet size this matches the default local channel window of 2MB.
+     */
+    public int sftpBulkRequests = 64;
+
+    /**
+     * Size of a single sftp write request. Small writes are collected into requests of this size,
+     * which are sent without waiting for the acknowledgement of the previous request.
+     */
+    public int sftpRequestSize = 32000;
+
+    /** Block size of the read-ahead cache used for random reads */
+    public int sftpReadBlockSize = 64 * 1024;
+
+    /** Number of blocks cached for random reads */
+    public int sftpReadCacheBlocks = 16;
+
     protected Properties properties = new Properties();
 
     public Properties getProperties() {
@@ -65,6 +89,7 @@ public class SftpConfig {
                 + "',userConfigDir:'" + userConfigDir + "', passwd="
                 + ((passwd != null) ? "<PWD>" : "<NO PWD") + ",sshKnowHostFile:'" + sshKnowHostFile
                 + "',privateKeys:'[" + Arrays.toString(privateKeys) + "],publicKeys:["
-                + Arrays.toString(publicKeys) + "]]";
+                + Arrays.toString(publicKeys) + "],maxSftpChannels:" + maxSftpChannels
+                + ",sftpBulkRequests:" + sftpBulkRequests + ",sftpRequestSize:" + sftpRequestSize + "]";
     }
 }
@@ -0,0 +1,187 @@
+package nl.esciencecenter.vbrowser.vrs.sftp.jsch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.esciencecenter.ptk.io.RandomReadable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+
+/**
+ * RandomReadable over a private SftpChannel. Reads are performed in blocks of
+ * <code>blockSize</code> starting at the block boundary, so a small read also fetches the bytes
+ * following it. The most recently used blocks are kept in a small LRU cache, so sequential small
+ * reads, as done by viewers, only cause a remote read once per block.
+ */
+public class SftpRandomReader implements RandomReadable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SftpRandomReader.class);
+
+    private final SftpChannel channel;
+
+    private final String remotePath;
+
+    private final int blockSize;
+
+    private final Map<Long, byte[]> blockCache;
+
+    private long length;
+
+    private long numBlockReads = 0;
+
+    private long numCacheHits = 0;
+
+    /**
+     * @param channel
+     *            - connected private channel, this channel is closed when this reader is closed.
+     * @param remotePath
+     *            - absolute path of remote file.
+     * @param blockSize
+     *            - size of read-ahead block.
+     * @param maxBlocks
+     *            - maximum number of cached blocks.
+     */
+    public SftpRandomReader(SftpChannel channel, String remotePath, int blockSize, final int maxBlocks)
+            throws SftpException {
+        this.channel = channel;
+        this.remotePath = remotePath;
+        this.blockSize = (blockSize > 0) ? blockSize : 32 * 1024;
+        this.blockCache = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > Math.max(1, maxBlocks);
+            }
+        };
+        this.length = statLength();
+    }
+
+    private long statLength() throws SftpException {
+        SftpATTRS attrs = channel.statSftpAttrs(remotePath, false);
+        return attrs.getSize();
+    }
+
+    @Override
+    public synchronized int readBytes(long fileOffset, byte[] buffer, int bufferOffset, int nrBytes)
+            throws IOException {
+        if (fileOffset >= length) {
+            return -1;
+        }
+
+        int numRead = 0;
+
+        while (numRead < nrBytes) {
+            long offset = fileOffset + numRead;
+            long blockIndex = offset / blockSize;
+            int blockOffset = (int) (offset - blockIndex * blockSize);
+
+            byte block[] = getBlock(blockIndex);
+            if (blockOffset >= block.length) {
+                // EOF
+                break;
+            }
+
+            int num = Math.min(block.length - blockOffset, nrBytes - numRead);
+            System.arraycopy(block, blockOffset, buffer, bufferOffset + numRead, num);
+            numRead += num;
+
+            if (block.length < blockSize) {
+                // last block.
+                break;
+            }
+        }
+
+        return (numRead > 0) ? numRead : -1;
+    }
+
+    private byte[] getBlock(long blockIndex) throws IOException {
+        byte block[] = blockCache.get(blockIndex);
+        if (block != null) {
+            numCacheHits++;
+            return block;
+        }
+
+        block = readBlock(blockIndex * blockSize);
+        blockCache.put(blockIndex, block);
+        return block;
+    }
+
+    private byte[] readBlock(long fileOffset) throws IOException {
+        int size = (int) Math.min(blockSize, Math.max(0, length - fileOffset));
+        byte block[] = new byte[size];
+        int numRead = 0;
+
+        numBlockReads++;
+
+        try (InputStream inps = channel.get(remotePath, fileOffset)) {
+            while (numRead < size) {
+                int num = inps.read(block, numRead, size - numRead);
+                if (num < 0) {
+                    break;
+                }
+                numRead += num;
+            }
+        } catch (SftpException e) {
+            throw new IOException("Failed to read block at offset " + fileOffset + " from:" + remotePath, e);
+        }
+
+        if (numRead < size) {
+            // file was truncated since stat.
+            logger.warn("readBlock(): remote file is shorter than expected:{} < {}", fileOffset + numRead, length);
+            this.length = fileOffset + numRead;
+            byte shortBlock[] = new byte[numRead];
+            System.arraycopy(block, 0, shortBlock, 0, numRead);
+            return shortBlock;
+        }
+
+        return block;
+    }
+
+    /**
+     * @return length of remote file when this reader was created.
+     */
+    @Override
+    public synchronized long getLength() throws IOException {
+        return length;
+    }
+
+    /**
+     * Clear block cache and update length of remote file.
+     */
+    public synchronized void refresh() throws IOException {
+        blockCache.clear();
+        try {
+            this.length = statLength();
+        } catch (SftpException e) {
+            throw new IOException("Failed to stat:" + remotePath, e);
+        }
+    }
+
+    public synchronized long getNumBlockReads() {
+        return numBlockReads;
+    }
+
+    public synchronized long getNumCacheHits() {
+        return numCacheHits;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            blockCache.clear();
+        }
+        channel.disconnect();
+    }
+
+    public String toString() {
+        return "SftpRandomReader:[remotePath:'" + remotePath + "',length:" + length + ",blockSize:" + blockSize
+                + ",blockReads:" + numBlockReads + ",cacheHits:" + numCacheHits + "]";
+    }
+}
@@ -0,0 +1,131 @@
+package nl.esciencecenter.vbrowser.vrs.sftp.jsch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import nl.esciencecenter.ptk.io.RandomWritable;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+
+/**
+ * RandomWritable over a private SftpChannel. The remote file is opened at the offset of a write
+ * without truncating it and kept open for the following writes as long as they are sequential.
+ * The bytes are written using pipelined write requests. The writer must be closed to send the
+ * last request and to check the result of the outstanding requests.
+ * <p>
+ * Limitation: JSch has no public API for positional writes (SSH_FXP_WRITE at an explicit offset)
+ * to an open handle. Its only positioned write is a 'put' in RESUME mode at an offset relative to
+ * the current size of the remote file, which costs a stat and an open for every non-sequential
+ * write. The length of the remote file is tracked by this writer, so there should be no other
+ * writers to the same file.
+ */
+public class SftpRandomWriter implements RandomWritable {
+
+    private final SftpChannel channel;
+
+    private final String remotePath;
+
+    private final int requestSize;
+
+    private long length;
+
+    /** Open stream for sequential writes or null */
+    private OutputStream outps = null;
+
+    /** File offset of the next byte written to outps */
+    private long position;
+
+    /**
+     * @param channel
+     *            - connected private channel, this channel is closed when this writer is closed.
+     * @param remotePath
+     *            - absolute path of remote file. The file is created if it doesn't exist.
+     * @param requestSize
+     *            - size of a single write request.
+     */
+    public SftpRandomWriter(SftpChannel channel, String remotePath, int requestSize) throws SftpException {
+        this.channel = channel;
+        this.remotePath = remotePath;
+        this.requestSize = requestSize;
+
+        try {
+            this.length = channel.statSftpAttrs(remotePath, false).getSize();
+        } catch (SftpException e) {
+            if (e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                throw e;
+            }
+            this.length = 0;
+        }
+    }
+
+    @Override
+    public synchronized void writeBytes(long fileOffset, byte[] buffer, int bufferOffset, int nrBytes)
+            throws IOException {
+        if ((outps == null) || (fileOffset != position)) {
+            // all bytes must have been written before the file is opened at the new offset.
+            closeStream();
+
+            try {
+                outps = new SftpChannelOutputStream(channel.put(remotePath, fileOffset, length), null, requestSize);
+                position = fileOffset;
+            } catch (SftpException e) {
+                throw new IOException("Failed to open:" + remotePath + " at offset:" + fileOffset, e);
+            }
+        }
+
+        try {
+            outps.write(buffer, bufferOffset, nrBytes);
+        } catch (IOException e) {
+            abortStream();
+            throw new IOException("Failed to write bytes at offset " + fileOffset + " to:" + remotePath, e);
+        }
+
+        position += nrBytes;
+
+        if (position > length) {
+            length = position;
+        }
+    }
+
+    /**
+     * Send the buffered bytes and wait for the outstanding write requests.
+     */
+    private void closeStream() throws IOException {
+        if (outps == null) {
+            return;
+        }
+
+        try {
+            outps.close();
+        } finally {
+            outps = null;
+        }
+    }
+
+    private void abortStream() {
+        try {
+            closeStream();
+        } catch (IOException e) {
+            // already failed.
+        }
+    }
+
+    @Override
+    public synchronized long getLength() throws IOException {
+        return length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            closeStream();
+        } finally {
+            channel.disconnect();
+        }
+    }
+
+    public String toString() {
+        return "SftpRandomWriter:[remotePath:'" + remotePath + "',length:" + length + "]";
+    }
+}
@@ -77,11 +77,14 @@ public class SshSession implements AutoCloseable {
 
     private SftpConfig config;
 
+    private SftpChannelPool channelPool;
+
     public SshSession(JSch jsch, SftpConfig config, boolean autoConnect) throws JSchException {
         this.jsch = jsch;
         this.config = config;
 
         initSession();
+        this.channelPool = new SftpChannelPool(this, config.maxSftpChannels, config.sftpChannelIdleTimeout);
 
         if (autoConnect) {
             connect();
@@ -147,13 +150,38 @@ public class SshSession implements AutoCloseable {
         return new SftpChannel(this, (ChannelSftp) channel);
     }
 
+    /**
+     * Shared pool of SftpChannels for this session. Use this pool for short lived sftp operations
+     * like ls, stat and mkdir.
+     */
+    public SftpChannelPool getSftpChannelPool() {
+        return this.channelPool;
+    }
+
     public SftpChannelInputStream createSftpInputStream(String remotePath) throws SftpException,
             JSchException {
-        logger.debug("createSftpInputStream() to:{}", this);
+        return createSftpInputStream(remotePath, 0);
+    }
+
+    /**
+     * Create InputStream which starts reading at the specified file offset. The bytes before the
+     * offset are not transferred.
+     */
+    public SftpChannelInputStream createSftpInputStream(String remotePath, long fileOffset)
+            throws SftpException, JSchException {
+        logger.debug("createSftpInputStream() to:{} at offset:{}", this, fileOffset);
         SftpChannel newChannel = this.createSftpChannel();
         newChannel.connect();
-        InputStream inps = newChannel.get(remotePath);
-        return new SftpChannelInputStream(newChannel, inps);
+        try {
+            // pipelined reads: keep multiple read requests outstanding.
+            newChannel.setBulkRequests(config.sftpBulkRequests);
+            InputStream inps = (fileOffset > 0) ? newChannel.get(remotePath, fileOffset) : newChannel
+                    .get(remotePath);
+            return new SftpChannelInputStream(newChannel, inps);
+        } catch (SftpException | JSchException e) {
+            newChannel.disconnect();
+            throw e;
+        }
     }
 
     public SftpChannelOutputStream createSftpOutputStream(String remotePath, boolean append)
@@ -168,10 +196,47 @@ public class SshSession implements AutoCloseable {
         }
 
         OutputStream outps = outputChannel.put(remotePath, mode);
-        return new SftpChannelOutputStream(outps, outputChannel);
+        return new SftpChannelOutputStream(outps, outputChannel, config.sftpRequestSize);
+    }
+
+    /**
+     * Create RandomReadable with a private SftpChannel. The reader must be closed to close the
+     * channel.
+     */
+    public SftpRandomReader createSftpRandomReader(String remotePath) throws SftpException, JSchException {
+        logger.debug("createSftpRandomReader() to:{}", this);
+        SftpChannel newChannel = this.createSftpChannel();
+        newChannel.connect();
+        // one block is read using pipelined requests of 32k.
+        newChannel.setBulkRequests(Math.max(1, config.sftpReadBlockSize / (32 * 1024)));
+        try {
+            return new SftpRandomReader(newChannel, remotePath, config.sftpReadBlockSize,
+                    config.sftpReadCacheBlocks);
+        } catch (SftpException e) {
+            newChannel.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Create RandomWritable with a private SftpChannel. The writer must be closed to close the
+     * channel.
+     */
+    public SftpRandomWriter createSftpRandomWriter(String remotePath) throws SftpException, JSchException {
+        logger.debug("createSftpRandomWriter() to:{}", this);
+        SftpChannel newChannel = this.createSftpChannel();
+        newChannel.connect();
+        try {
+            return new SftpRandomWriter(newChannel, remotePath, config.sftpRequestSize);
+        } catch (SftpException e) {
+            newChannel.disconnect();
+            throw e;
+        }
     }
 
     protected void disconnect() {
+        this.channelPool.close();
+
         if (this.session.isConnected()) {
             this.session.disconnect();
         }
@@ -0,0 +1,139 @@
+package nl.esciencecenter.vbrowser.vrs.sftp;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import nl.esciencecenter.vbrowser.vrs.sftp.jsch.SftpConfig;
+import nl.esciencecenter.vbrowser.vrs.sftp.jsch.SshSession;
+
+import com.jcraft.jsch.JSch;
+
+/**
+ * Manual throughput test for pipelined sftp reads and writes. Writes a test file using different
+ * write request sizes and reads it back using different numbers of outstanding read requests. To
+ * simulate a high latency link to localhost use for example:
+ * <code>tc qdisc add dev lo root netem delay 25ms</code>.
+ * <p>
+ * The test account is specified by the system properties {@value #TEST_SFTP_USER_PROP} and
+ * {@value #TEST_SFTP_PASSWORD_PROP}, optionally {@value #TEST_SFTP_HOST_PROP} and
+ * {@value #TEST_SFTP_PORT_PROP}. The test is skipped if no account is specified.
+ */
+public class TestSftpThroughput {
+
+    public static final String TEST_SFTP_HOST_PROP = "platinum.test.sftp.host";
+
+    public static final String TEST_SFTP_PORT_PROP = "platinum.test.sftp.port";
+
+    public static final String TEST_SFTP_USER_PROP = "platinum.test.sftp.user";
+
+    public static final String TEST_SFTP_PASSWORD_PROP = "platinum.test.sftp.password";
+
+    public static final int FILE_SIZE = 64 * 1024 * 1024;
+
+    public static void main(String args[]) {
+
+        try {
+            SftpConfig config = getTestConfig();
+
+            if (config == null) {
+                System.out.printf("Skipping sftp throughput test: no test account, specify -D%s=<user> -D%s=<password>\n",
+                        TEST_SFTP_USER_PROP, TEST_SFTP_PASSWORD_PROP);
+                return;
+            }
+
+            testWriteThroughput(config, new int[] { 4 * 1024, 16 * 1024, 32000, 64 * 1024 });
+            testReadThroughput(config, new int[] { 1, 4, 16, 64 });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return configuration of the test account or null if no account has been specified.
+     */
+    public static SftpConfig getTestConfig() {
+        String user = System.getProperty(TEST_SFTP_USER_PROP);
+        String passwd = System.getProperty(TEST_SFTP_PASSWORD_PROP);
+
+        if ((user == null) || (passwd == null)) {
+            return null;
+        }
+
+        SftpConfig config = new SftpConfig();
+
+        config.host = System.getProperty(TEST_SFTP_HOST_PROP, "localhost");
+        config.port = Integer.parseInt(System.getProperty(TEST_SFTP_PORT_PROP, "22"));
+        config.user = user;
+        config.passwd = passwd.toCharArray();
+
+        return config;
+    }
+
+    /**
+     * Write the test file once per request size. Writes are pipelined, the request size
+     * (sftpRequestSize) determines the number of requests.
+     */
+    public static void testWriteThroughput(SftpConfig config, int requestSizes[]) throws Exception {
+        String remotePath = "sftpthroughput.dat";
+        byte buffer[] = new byte[1024 * 1024];
+
+        for (int requestSize : requestSizes) {
+            config.sftpRequestSize = requestSize;
+            SshSession session = connect(config);
+
+            long start = System.currentTimeMillis();
+            OutputStream outps = session.createSftpOutputStream(remotePath, false);
+            for (int i = 0; i < FILE_SIZE / buffer.length; i++) {
+                outps.write(buffer);
+            }
+            outps.close();
+            long writeTime = System.currentTimeMillis() - start;
+
+            System.out.printf(" - requestSize=%6d: write %6.1f MB/s (%d bytes)\n", requestSize,
+                    mbPerSecond(FILE_SIZE, writeTime), FILE_SIZE);
+
+            session.close();
+        }
+    }
+
+    /**
+     * Read the test file, which must have been written by testWriteThroughput(), once per number of
+     * outstanding read requests (sftpBulkRequests).
+     */
+    public static void testReadThroughput(SftpConfig config, int bulkRequests[]) throws Exception {
+        String remotePath = "sftpthroughput.dat";
+        byte buffer[] = new byte[1024 * 1024];
+
+        for (int numRequests : bulkRequests) {
+            config.sftpBulkRequests = numRequests;
+            SshSession session = connect(config);
+
+            long start = System.currentTimeMillis();
+            InputStream inps = session.createSftpInputStream(remotePath);
+            long total = 0;
+            int num;
+            while ((num = inps.read(buffer)) > 0) {
+                total += num;
+            }
+            inps.close();
+            long readTime = System.currentTimeMillis() - start;
+
+            System.out.printf(" - bulkRequests=%2d: read %6.1f MB/s (%d bytes)\n", numRequests,
+                    mbPerSecond(total, readTime), total);
+
+            session.close();
+        }
+    }
+
+    private static SshSession connect(SftpConfig config) throws Exception {
+        SshSession session = new SshSession(new JSch(), config, false);
+        session.setUserUI(new UserRobot(config.user, config.passwd, null, true));
+        session.connect();
+        return session;
+    }
+
+    private static double mbPerSecond(long numBytes, long millis) {
+        return (numBytes / (1024.0 * 1024.0)) / (Math.max(millis, 1) / 1000.0);
+    }
+
+}
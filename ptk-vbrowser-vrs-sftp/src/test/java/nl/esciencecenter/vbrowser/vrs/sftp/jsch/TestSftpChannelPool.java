@@ -0,0 +1,194 @@
+package nl.esciencecenter.vbrowser.vrs.sftp.jsch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jcraft.jsch.JSchException;
+
+public class TestSftpChannelPool {
+
+    public static class FakeChannel extends SftpChannel {
+
+        protected boolean connected = false;
+
+        public FakeChannel() {
+            super(null, null);
+        }
+
+        @Override
+        public void connect() throws JSchException {
+            connected = true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        protected void disconnect() {
+            connected = false;
+        }
+    }
+
+    public static class FakeChannelFactory implements SftpChannelPool.ChannelFactory {
+
+        protected List<FakeChannel> channels = new ArrayList<FakeChannel>();
+
+        protected boolean fail = false;
+
+        @Override
+        public SftpChannel createChannel() throws JSchException {
+            if (fail) {
+                throw new JSchException("Fake failure");
+            }
+            FakeChannel channel = new FakeChannel();
+            channels.add(channel);
+            return channel;
+        }
+    }
+
+    @Test
+    public void testBorrowReturnReuse() throws Exception {
+        FakeChannelFactory factory = new FakeChannelFactory();
+        SftpChannelPool pool = new SftpChannelPool(null, factory, 2, 0);
+
+        SftpChannel first = pool.borrowChannel();
+        Assert.assertTrue("Borrowed channel must be connected", first.isConnected());
+        Assert.assertEquals(1, pool.getNumBorrowed());
+        pool.returnChannel(first);
+        Assert.assertEquals(0, pool.getNumBorrowed());
+
+        SftpChannel second = pool.borrowChannel();
+        Assert.assertSame("Idle channel must be reused", first, second);
+        Assert.assertEquals(1, factory.channels.size());
+
+        SftpChannel third = pool.borrowChannel();
+        Assert.assertNotSame(second, third);
+        Assert.assertEquals(2, pool.getNumChannels());
+
+        pool.returnChannel(second);
+        pool.returnChannel(third);
+        Assert.assertEquals(3, pool.getNumBorrows());
+        Assert.assertEquals(2, pool.getNumCreated());
+
+        pool.close();
+        Assert.assertEquals(0, pool.getNumChannels());
+        Assert.assertFalse(first.isConnected());
+        Assert.assertFalse(third.isConnected());
+    }
+
+    @Test
+    public void testDisconnectedChannelDiscarded() throws Exception {
+        FakeChannelFactory factory = new FakeChannelFactory();
+        SftpChannelPool pool = new SftpChannelPool(null, factory, 2, 0);
+
+        SftpChannel channel = pool.borrowChannel();
+        pool.returnChannel(channel);
+        ((FakeChannel) channel).connected = false;
+
+        SftpChannel other = pool.borrowChannel();
+        Assert.assertNotSame("Disconnected channel may not be reused", channel, other);
+        Assert.assertEquals(1, pool.getNumChannels());
+
+        // disconnected while borrowed.
+        ((FakeChannel) other).connected = false;
+        pool.returnChannel(other);
+        Assert.assertEquals(0, pool.getNumChannels());
+        pool.close();
+    }
+
+    @Test
+    public void testCreateFailureReleasesSlot() throws Exception {
+        FakeChannelFactory factory = new FakeChannelFactory();
+        SftpChannelPool pool = new SftpChannelPool(null, factory, 1, 0);
+
+        factory.fail = true;
+        try {
+            pool.borrowChannel();
+            Assert.fail("borrowChannel() must fail when channel can't be created");
+        } catch (JSchException e) {
+            // ok
+        }
+        Assert.assertEquals(0, pool.getNumChannels());
+        Assert.assertEquals(0, pool.getNumBorrowed());
+
+        factory.fail = false;
+        pool.returnChannel(pool.borrowChannel());
+        Assert.assertEquals(1, pool.getNumChannels());
+        pool.close();
+    }
+
+    @Test
+    public void testWaitForReturnedChannel() throws Exception {
+        FakeChannelFactory factory = new FakeChannelFactory();
+        final SftpChannelPool pool = new SftpChannelPool(null, factory, 1, 0);
+        final SftpChannel channel = pool.borrowChannel();
+
+        Thread returner = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                pool.returnChannel(channel);
+            }
+        };
+        returner.start();
+
+        SftpChannel waited = pool.borrowChannel();
+        Assert.assertSame("Waiter must get returned channel", channel, waited);
+        Assert.assertEquals(1, pool.getNumWaits());
+        Assert.assertEquals(1, factory.channels.size());
+        pool.returnChannel(waited);
+        pool.close();
+    }
+
+    @Test
+    public void testEvictIdleChannels() throws Exception {
+        FakeChannelFactory factory = new FakeChannelFactory();
+        SftpChannelPool pool = new SftpChannelPool(null, factory, 3, 50);
+
+        SftpChannel channels[] = new SftpChannel[3];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = pool.borrowChannel();
+        }
+        for (SftpChannel channel : channels) {
+            pool.returnChannel(channel);
+        }
+        Assert.assertEquals("Channels may not be evicted before idle timeout", 0, pool.evictIdleChannels(false));
+
+        Thread.sleep(100);
+        Assert.assertEquals("Last channel must be kept open", 2, pool.evictIdleChannels(false));
+        Assert.assertEquals(1, pool.getNumChannels());
+        Assert.assertTrue("Most recently returned channel must be kept", channels[2].isConnected());
+        pool.close();
+    }
+
+    @Test
+    public void testEvictionTimer() throws Exception {
+        FakeChannelFactory factory = new FakeChannelFactory();
+        SftpChannelPool pool = new SftpChannelPool(null, factory, 2, 100);
+
+        SftpChannel first = pool.borrowChannel();
+        SftpChannel second = pool.borrowChannel();
+        pool.returnChannel(first);
+        pool.returnChannel(second);
+
+        // no borrows: the timer must evict the idle channel.
+        long end = System.currentTimeMillis() + 5 * SftpChannelPool.MIN_EVICTION_INTERVAL;
+        while ((pool.getNumEvicted() == 0) && (System.currentTimeMillis() < end)) {
+            Thread.sleep(50);
+        }
+
+        Assert.assertEquals("Idle channel must be evicted without borrowing", 1, pool.getNumEvicted());
+        Assert.assertFalse(first.isConnected());
+        Assert.assertTrue(second.isConnected());
+        pool.close();
+    }
+
+}
@@ -0,0 +1,131 @@
+package nl.esciencecenter.vbrowser.vrs.sftp.jsch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+
+public class TestSftpRandomWriter {
+
+    /**
+     * In-memory remote file which emulates the JSch 'put' in RESUME mode: writing starts at the
+     * current size of the file plus the specified skip.
+     */
+    public static class FakeSftpChannel extends SftpChannel {
+
+        protected byte data[] = new byte[0];
+
+        protected int numOpened = 0;
+
+        protected int numOpenStreams = 0;
+
+        protected boolean disconnected = false;
+
+        public FakeSftpChannel() {
+            super(null, null);
+        }
+
+        @Override
+        public SftpATTRS statSftpAttrs(String remotePath, boolean resolveLink) throws SftpException {
+            throw new SftpException(ChannelSftp.SSH_FX_NO_SUCH_FILE, "No such file:" + remotePath);
+        }
+
+        @Override
+        protected OutputStream put(String remotePath, long fileOffset, long currentSize) throws SftpException {
+            numOpened++;
+            numOpenStreams++;
+            final long skip = fileOffset - currentSize;
+
+            return new OutputStream() {
+                private long position = data.length + skip;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte bytes[], int offset, int len) throws IOException {
+                    if (position + len > data.length) {
+                        data = Arrays.copyOf(data, (int) (position + len));
+                    }
+                    System.arraycopy(bytes, offset, data, (int) position, len);
+                    position += len;
+                }
+
+                @Override
+                public void close() {
+                    numOpenStreams--;
+                }
+            };
+        }
+
+        @Override
+        protected void disconnect() {
+            disconnected = true;
+        }
+    }
+
+    protected byte[] createBytes(int size, int seed) {
+        byte bytes[] = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (seed + i * 13);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testSequentialWrites() throws Exception {
+        FakeSftpChannel channel = new FakeSftpChannel();
+        SftpRandomWriter writer = new SftpRandomWriter(channel, "/tmp/file", 1000);
+
+        byte expected[] = createBytes(10 * 1500, 1);
+        for (int i = 0; i < 10; i++) {
+            writer.writeBytes(i * 1500, expected, i * 1500, 1500);
+        }
+
+        Assert.assertEquals("Sequential writes must use one open handle", 1, channel.numOpened);
+        Assert.assertEquals(expected.length, writer.getLength());
+
+        writer.close();
+        Assert.assertEquals(0, channel.numOpenStreams);
+        Assert.assertTrue(channel.disconnected);
+        Assert.assertArrayEquals(expected, channel.data);
+    }
+
+    @Test
+    public void testRandomWrites() throws Exception {
+        FakeSftpChannel channel = new FakeSftpChannel();
+        SftpRandomWriter writer = new SftpRandomWriter(channel, "/tmp/file", 1000);
+
+        byte expected[] = new byte[6000];
+        byte first[] = createBytes(2000, 1);
+        byte gap[] = createBytes(1000, 2);
+        byte middle[] = createBytes(500, 3);
+
+        // append, write beyond the end, overwrite.
+        writer.writeBytes(0, first, 0, first.length);
+        writer.writeBytes(5000, gap, 0, gap.length);
+        writer.writeBytes(1000, middle, 0, middle.length);
+        // sequential after overwrite: same handle.
+        writer.writeBytes(1500, middle, 0, middle.length);
+
+        System.arraycopy(first, 0, expected, 0, first.length);
+        System.arraycopy(gap, 0, expected, 5000, gap.length);
+        System.arraycopy(middle, 0, expected, 1000, middle.length);
+        System.arraycopy(middle, 0, expected, 1500, middle.length);
+
+        Assert.assertEquals(3, channel.numOpened);
+        Assert.assertEquals(6000, writer.getLength());
+
+        writer.close();
+        Assert.assertEquals(0, channel.numOpenStreams);
+        Assert.assertArrayEquals(expected, channel.data);
+    }
+}
@@ -16,4 +16,55 @@ public class VRSContextProperties {
 
     public static final String VBROWSER_INSTALL_SYSCONFDIR_PROP_ = "vbrowser.install.sysconfdir";
 
+    /**
+     * Default number of concurrent file transfers during a (heap) copy. Can be overridden per
+     * resource system with the ResourceConfigInfo attribute 'maxParallelTransfers'.
+     */
+    public static final String VRS_COPY_MAX_PARALLEL_TRANSFERS_PROP = "vbrowser.vrs.copy.maxParallelTransfers";
+
+    /**
+     * Enable resumable file copies. Progress checkpoints are recorded per file and a retried copy
+     * continues from the last checkpoint if the target file supports appending or random writes.
+     */
+    public static final String VRS_COPY_RESUME_ENABLED_PROP = "vbrowser.vrs.copy.resume.enabled";
+
+    /**
+     * Verify the checksum of the last block before the resume offset before resuming a copy. This
+     * also allows resuming without a checkpoint, based on the length of the target file.
+     */
+    public static final String VRS_COPY_RESUME_VERIFY_PROP = "vbrowser.vrs.copy.resume.verify";
+
+    /** Number of bytes between two progress checkpoints of a resumable copy. */
+    public static final String VRS_COPY_CHECKPOINT_INTERVAL_PROP = "vbrowser.vrs.copy.checkpointInterval";
+
+    /**
+     * Number of parallel byte range segments used to download a file from a random readable source,
+     * like a HTTP server which accepts range requests. Set to 1 to disable segmented downloads.
+     */
+    public static final String VRS_COPY_SEGMENTS_PROP = "vbrowser.vrs.copy.segments";
+
+    /** Minimum file size in bytes for a segmented download. */
+    public static final String VRS_COPY_SEGMENTED_MIN_SIZE_PROP = "vbrowser.vrs.copy.segmented.minSize";
+
+    /**
+     * Comma separated list of source schemes for which segmented downloads are used. Default is
+     * "http,https". Only schemes with cheap random reads should be added. The target must be a local
+     * file.
+     */
+    public static final String VRS_COPY_SEGMENTED_SCHEMES_PROP = "vbrowser.vrs.copy.segmented.schemes";
+
+    /**
+     * Enable the on-disk HTTP response cache. Cached responses are revalidated with conditional
+     * GET requests. Default is true, the cache is only used if a cache directory is configured or
+     * a persistent configuration location is enabled.
+     */
+    public static final String VRS_HTTP_CACHE_ENABLED_PROP = "vbrowser.vrs.http.cache.enabled";
+
+    /** HTTP response cache directory. Default is 'httpcache' in the persistent configuration location. */
+    public static final String VRS_HTTP_CACHE_DIR_PROP = "vbrowser.vrs.http.cache.dir";
+
+    /** Maximum size of the HTTP response cache in megabytes. */
+    public static final String VRS_HTTP_CACHE_MAX_SIZE_PROP = "vbrowser.vrs.http.cache.maxSizeMB";
+
+
 }
@@ -21,6 +21,9 @@
 package nl.esciencecenter.vbrowser.vrs.event;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import nl.esciencecenter.ptk.events.IEvent;
 import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
@@ -75,6 +78,72 @@ public class VRSEvent implements IEvent<VRSEventType>, Serializable  {
         return event;
     }
 
+    /**
+     * Check whether two events of the same type and parent can be merged into one event.
+     * Attribute events and events with different types or parents can not be merged.
+     */
+    public static boolean canMerge(VRSEvent first, VRSEvent second) {
+        if ((first.type != second.type) || (first.attributeNames != null) || (second.attributeNames != null)) {
+            return false;
+        }
+
+        if ((first.parentSource == null) ? (second.parentSource != null) : (first.parentSource
+                .equals(second.parentSource) == false)) {
+            return false;
+        }
+
+        if ((first.type == VRSEventType.RESOURCES_RENAMED)
+                && ((first.otherResources == null) || (second.otherResources == null))) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Merge two events of the same type and parent into one event.
+     * 
+     * @return merged event or null if the events can not be merged.
+     * @see #canMerge(VRSEvent, VRSEvent)
+     */
+    public static VRSEvent merge(VRSEvent first, VRSEvent second) {
+        if (canMerge(first, second) == false) {
+            return null;
+        }
+        List<VRSEvent> events = new ArrayList<VRSEvent>(2);
+        events.add(first);
+        events.add(second);
+        return merge(events);
+    }
+
+    /**
+     * Merge consecutive events into one event. All events must be mergeable with the first event,
+     * see {@link #canMerge(VRSEvent, VRSEvent)}. The resources are gathered first and copied once
+     * into the resources of the merged event.
+     */
+    public static VRSEvent merge(List<VRSEvent> events) {
+        VRSEvent first = events.get(0);
+        List<VRL> resources = new ArrayList<VRL>();
+        List<VRL> otherResources = new ArrayList<VRL>();
+
+        for (VRSEvent event : events) {
+            addAll(resources, event.resources);
+            addAll(otherResources, event.otherResources);
+        }
+
+        VRSEvent event = new VRSEvent(first.parentSource, first.type, resources.toArray(new VRL[0]));
+        if (first.type == VRSEventType.RESOURCES_RENAMED) {
+            event.otherResources = otherResources.toArray(new VRL[0]);
+        }
+        return event;
+    }
+
+    private static void addAll(List<VRL> list, VRL[] vrls) {
+        if (vrls != null) {
+            list.addAll(Arrays.asList(vrls));
+        }
+    }
+
     // ========================================================================
     //
     // ========================================================================
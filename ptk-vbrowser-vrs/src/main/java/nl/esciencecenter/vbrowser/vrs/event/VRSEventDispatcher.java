@@ -13,7 +13,7 @@ public class VRSEventDispatcher extends
 
     @Override
     protected boolean matchEventSource(VRSEventListener listener, Object wantedEventSource, VRSEvent event) {
-        LoggerFactory.getLogger(VRSEventDispatcher.class).info(">>>COMPARE:'{}' <=> '{}'", event.getEventSource(), wantedEventSource);
+        LoggerFactory.getLogger(VRSEventDispatcher.class).debug(">>>COMPARE:'{}' <=> '{}'", event.getEventSource(), wantedEventSource);
         // filter VRLs?
         return super.matchEventSource(listener, wantedEventSource, event);
     }
@@ -1,5 +1,7 @@
 package nl.esciencecenter.vbrowser.vrs.event;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +14,11 @@ public class VRSEventNotifier extends
     //
     // ========================================================================
 
+    /**
+     * Time in milliseconds to wait for more resource events to merge with.
+     */
+    public static final long DEFAULT_COALESCE_WINDOW = 50;
+
     private static VRSEventNotifier instance;
 
     private static Logger logger;
@@ -35,15 +42,35 @@ public class VRSEventNotifier extends
     
     public VRSEventNotifier(boolean autoStart) {
         super(autoStart);
+        this.setCoalesceWindow(DEFAULT_COALESCE_WINDOW);
     }
 
     @Override
     protected boolean matchEventSource(VRSEventListener listener, Object wantedEventSource, VRSEvent event) {
-        logger.info(">>>COMPARE:'{}' <=> '{}'", event.getEventSource(), wantedEventSource);
+        logger.debug(">>>COMPARE:'{}' <=> '{}'", event.getEventSource(), wantedEventSource);
         // filter VRLs?
         return super.matchEventSource(listener, wantedEventSource, event);
     }
 
+    /**
+     * Resource events for the same parent are merged, for example when many files are created or
+     * deleted by one (bulk) action.
+     */
+    @Override
+    protected boolean canCoalesce(VRSEvent event) {
+        return (event.getType() != VRSEventType.ATTRIBUTES_UPDATED) && (event.getAttributeNames() == null);
+    }
+
+    @Override
+    protected boolean canCoalesce(VRSEvent first, VRSEvent next) {
+        return VRSEvent.canMerge(first, next);
+    }
+
+    @Override
+    protected VRSEvent coalesceEvents(List<VRSEvent> events) {
+        return VRSEvent.merge(events);
+    }
+
     public void scheduleEvent(VRSEvent newEvent) {
         this.fireEvent(newEvent);
     }
@@ -1,5 +1,8 @@
 package nl.esciencecenter.vbrowser.vrs.io;
 
+import java.io.InputStream;
+
+import nl.esciencecenter.ptk.io.IOUtil;
 import nl.esciencecenter.ptk.io.RandomReadable;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VrsException;
 
@@ -7,4 +10,14 @@ public interface VRandomReadable {
 
     RandomReadable createRandomReadable() throws VrsException;
 
+    /**
+     * Create InputStream which starts reading at the specified offset, without reading the bytes
+     * before it. The default implementation performs ranged reads on
+     * {@link #createRandomReadable()}. Resources which can open a stream at an offset should
+     * override this.
+     */
+    public default InputStream createInputStream(long offset) throws VrsException {
+        return new IOUtil.RandomReaderInputStream(createRandomReadable(), offset);
+    }
+
 }
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+package nl.esciencecenter.vbrowser.vrs.io.copy;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import nl.esciencecenter.ptk.util.ResourceLoader;
+import nl.esciencecenter.ptk.util.logging.PLogger;
+import nl.esciencecenter.vbrowser.vrs.VPath;
+import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
+
+/**
+ * Per file progress checkpoints of (heap) copies. A checkpoint records how many bytes of a source
+ * file have been written and flushed to the target file, so that a failed or cancelled copy can be
+ * resumed from that offset instead of from the start. <br>
+ * Checkpoints are kept until the copy action which created them has finished and are optionally
+ * saved to a properties file so that a copy can also be resumed after a restart. Changes are saved
+ * at most once per save interval; a checkpoint which is lost because it wasn't saved yet only makes
+ * a resumed copy start at an earlier offset. Use {@link #flush()} to save pending changes.
+ */
+public class CopyCheckpoints {
+
+    private static final PLogger logger = PLogger.getLogger(CopyCheckpoints.class);
+
+    /**
+     * Minimum time in milliseconds between two saves of the checkpoints file.
+     */
+    public static final long SAVE_INTERVAL = 1000;
+
+    public static class Checkpoint {
+
+        protected final VRL sourceVrl;
+
+        protected final VRL targetVrl;
+
+        protected final long sourceLength;
+
+        protected long offset;
+
+        protected boolean isDone;
+
+        protected Checkpoint(VRL sourceVrl, VRL targetVrl, long sourceLength, long offset) {
+            this.sourceVrl = sourceVrl;
+            this.targetVrl = targetVrl;
+            this.sourceLength = sourceLength;
+            this.offset = offset;
+        }
+
+        public VRL getSourceVRL() {
+            return sourceVrl;
+        }
+
+        public VRL getTargetVRL() {
+            return targetVrl;
+        }
+
+        public long getSourceLength() {
+            return sourceLength;
+        }
+
+        /**
+         * @return Number of bytes verified to be written to the target.
+         */
+        public synchronized long getOffset() {
+            return offset;
+        }
+
+        public synchronized boolean isDone() {
+            return isDone;
+        }
+
+        public String toString() {
+            return "Checkpoint:[source:'" + sourceVrl + "',target:'" + targetVrl + "',sourceLength:" + sourceLength
+                    + ",offset:" + offset + ",isDone:" + isDone + "]";
+        }
+    }
+
+    // ========
+    // Instance
+    // ========
+
+    /** Checkpoints by target VRL */
+    private final Map<VRL, Checkpoint> checkpoints = new LinkedHashMap<VRL, Checkpoint>();
+
+    private URL saveLocation;
+
+    /** Number of changes, guarded by the checkpoints map. */
+    private long modCount = 0;
+
+    private long lastSaveTime = 0;
+
+    /** Number of changes saved to the checkpoints file, guarded by saveMutex. */
+    private long savedModCount = 0;
+
+    private final Object saveMutex = new Object();
+
+    /**
+     * @param optSaveLocation
+     *            - optional location of properties file to load and save the checkpoints from.
+     */
+    public CopyCheckpoints(URL optSaveLocation) {
+        this.saveLocation = optSaveLocation;
+        if (saveLocation != null) {
+            load();
+        }
+    }
+
+    /**
+     * @return checkpoint of the previous copy of source to target or null if there is no checkpoint
+     *         or it belongs to another source.
+     */
+    public Checkpoint get(VRL sourceVrl, VRL targetVrl) {
+        synchronized (checkpoints) {
+            Checkpoint checkpoint = checkpoints.get(targetVrl);
+            if ((checkpoint != null) && (checkpoint.sourceVrl.equals(sourceVrl))) {
+                return checkpoint;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Start (or restart) checkpointing of source to target, starting at the specified offset.
+     */
+    public Checkpoint start(VRL sourceVrl, VRL targetVrl, long sourceLength, long offset) {
+        Checkpoint checkpoint = new Checkpoint(sourceVrl, targetVrl, sourceLength, offset);
+        synchronized (checkpoints) {
+            checkpoints.put(targetVrl, checkpoint);
+        }
+        changed(false);
+        return checkpoint;
+    }
+
+    /**
+     * Update offset of flushed bytes.
+     */
+    public void update(Checkpoint checkpoint, long offset) {
+        synchronized (checkpoint) {
+            checkpoint.offset = offset;
+        }
+        changed(false);
+    }
+
+    /**
+     * Mark copy as done. The checkpoint is kept until the whole copy action has finished.
+     */
+    public void done(Checkpoint checkpoint) {
+        synchronized (checkpoint) {
+            checkpoint.offset = checkpoint.sourceLength;
+            checkpoint.isDone = true;
+        }
+        changed(false);
+    }
+
+    /**
+     * Remove checkpoints of the specified target paths, for example after a successful copy.
+     */
+    public void removeAll(List<? extends VPath> targetPaths) {
+        if (targetPaths == null) {
+            return;
+        }
+
+        boolean changed = false;
+
+        synchronized (checkpoints) {
+            // copy since the list might be modified concurrently.
+            for (VPath path : new ArrayList<VPath>(targetPaths)) {
+                changed |= (checkpoints.remove(path.getVRL()) != null);
+            }
+        }
+
+        if (changed) {
+            changed(true);
+        }
+    }
+
+    public int size() {
+        synchronized (checkpoints) {
+            return checkpoints.size();
+        }
+    }
+
+    // ===========
+    // Persistance
+    // ===========
+
+    protected void load() {
+        Properties props;
+
+        try {
+            props = ResourceLoader.getDefault().loadProperties(saveLocation);
+        } catch (IOException e) {
+            logger.debugPrintf("No copy checkpoints at:%s\n", saveLocation);
+            return;
+        }
+
+        synchronized (checkpoints) {
+            for (int i = 0; props.getProperty(i + ".target") != null; i++) {
+                try {
+                    VRL sourceVrl = new VRL(props.getProperty(i + ".source"));
+                    VRL targetVrl = new VRL(props.getProperty(i + ".target"));
+                    Checkpoint checkpoint = new Checkpoint(sourceVrl, targetVrl, Long.parseLong(props
+                            .getProperty(i + ".sourceLength")), Long.parseLong(props.getProperty(i + ".offset")));
+                    checkpoint.isDone = Boolean.parseBoolean(props.getProperty(i + ".isDone"));
+                    checkpoints.put(targetVrl, checkpoint);
+                } catch (Exception e) {
+                    logger.warnPrintf("Invalid copy checkpoint #%d in:%s:%s\n", i, saveLocation, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Save pending changes.
+     */
+    public void flush() {
+        if (saveLocation != null) {
+            save();
+        }
+    }
+
+    /**
+     * Register change and save the checkpoints if forced or the save interval has passed.
+     */
+    protected void changed(boolean forceSave) {
+        if (saveLocation == null) {
+            return;
+        }
+
+        synchronized (checkpoints) {
+            modCount++;
+            long time = System.currentTimeMillis();
+            if ((forceSave == false) && (time - lastSaveTime < SAVE_INTERVAL)) {
+                return;
+            }
+            lastSaveTime = time;
+        }
+
+        save();
+    }
+
+    /**
+     * Save a snapshot of the checkpoints. The file is written outside the checkpoints lock, so
+     * copies can update their checkpoints while the file is being written.
+     */
+    protected void save() {
+        if (saveLocation == null) {
+            return;
+        }
+
+        Properties props = new Properties();
+        long snapshotModCount;
+
+        synchronized (checkpoints) {
+            snapshotModCount = modCount;
+            int index = 0;
+            for (Checkpoint checkpoint : checkpoints.values()) {
+                synchronized (checkpoint) {
+                    props.setProperty(index + ".source", checkpoint.sourceVrl.toString());
+                    props.setProperty(index + ".target", checkpoint.targetVrl.toString());
+                    props.setProperty(index + ".sourceLength", "" + checkpoint.sourceLength);
+                    props.setProperty(index + ".offset", "" + checkpoint.offset);
+                    props.setProperty(index + ".isDone", "" + checkpoint.isDone);
+                }
+                index++;
+            }
+        }
+
+        synchronized (saveMutex) {
+            // skip if this or a newer snapshot has already been saved.
+            if (snapshotModCount <= savedModCount) {
+                return;
+            }
+
+            try {
+                ResourceLoader.getDefault().saveProperties(saveLocation, props, "VRS copy checkpoints");
+                savedModCount = snapshotModCount;
+            } catch (IOException e) {
+                logger.warnPrintf("Failed to save copy checkpoints to:%s:%s\n", saveLocation, e);
+            }
+        }
+    }
+
+}
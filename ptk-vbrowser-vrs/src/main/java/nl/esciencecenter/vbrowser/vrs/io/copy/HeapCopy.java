@@ -1,13 +1,24 @@
 package nl.esciencecenter.vbrowser.vrs.io.copy;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import nl.esciencecenter.ptk.data.ExtendedList;
 import nl.esciencecenter.ptk.presentation.Presentation;
 import nl.esciencecenter.ptk.task.ITaskMonitor;
 import nl.esciencecenter.ptk.task.MonitorStats;
 import nl.esciencecenter.ptk.task.TaskMonitorAdaptor;
+import nl.esciencecenter.ptk.task.ThrottledTaskMonitor;
 import nl.esciencecenter.ptk.util.logging.PLogger;
 import nl.esciencecenter.vbrowser.vrs.VFSPath;
 import nl.esciencecenter.vbrowser.vrs.VPath;
@@ -24,6 +35,7 @@ public class HeapCopy {
         protected String sourceType;
         protected VFSPath destDirPath;
         protected long size;
+        protected boolean isComposite;
         protected boolean isDeleted = false;
         public boolean isDone = false;
         public VFSPath resolvedDestPath;
@@ -34,6 +46,42 @@ public class HeapCopy {
         }
     }
 
+    /**
+     * Private monitor for a single file transfer of a parallel copy, so concurrent transfers don't
+     * share the sub tasks of the copy monitor. Logging and cancellation of the copy monitor are
+     * forwarded. Progress is added to the total bytes copied, which is reported by the copy thread.
+     */
+    protected class WorkerMonitor extends TaskMonitorAdaptor {
+
+        /** Bytes of the current file which have been added to the total. */
+        private long fileBytesDone = 0;
+
+        @Override
+        public boolean isCancelled() {
+            return (super.isCancelled()) || (workerMustStop());
+        }
+
+        @Override
+        public void logPrintf(String format, Object... args) {
+            monitorLogPrintf(format, args);
+        }
+
+        @Override
+        public void updateSubTaskDone(String taskName, long done) {
+            super.updateSubTaskDone(taskName, done);
+            totalBytesCopied.addAndGet(done - fileBytesDone);
+            fileBytesDone = done;
+        }
+
+        /**
+         * Correct total for the actual file size once the file has been copied.
+         */
+        protected void fileDone(long fileSize) {
+            totalBytesCopied.addAndGet(fileSize - fileBytesDone);
+            fileBytesDone = fileSize;
+        }
+    }
+
     protected List<? extends VPath> orgSources;
 
     protected ExtendedList<HeapCopyElement> pathHeap;
@@ -44,6 +92,9 @@ public class HeapCopy {
 
     protected ITaskMonitor monitor;
 
+    /** Throttled monitor for the (per file) progress updates */
+    protected ThrottledTaskMonitor progressMonitor;
+
     private List<VFSPath> resultPaths;
 
     private List<VPath> deletedPaths;
@@ -56,9 +107,22 @@ public class HeapCopy {
 
     private boolean stopped;
 
+    /**
+     * Number of concurrent leaf (file) transfers. Default (1) is sequential heap copy.
+     */
+    private int maxParallelTransfers = 1;
+
+    /**
+     * Set when one of the workers failed, so that the other workers can stop.
+     */
+    private volatile boolean stopWorkers = false;
+
     long totalBytesTodo = 0;
 
-    long totalBytesCopied = 0;
+    /**
+     * Total of copied bytes, updated concurrently by the workers of a parallel copy.
+     */
+    final AtomicLong totalBytesCopied = new AtomicLong();
 
     Object mutex = new Object();
 
@@ -75,6 +139,21 @@ public class HeapCopy {
         this.stopped = false;
     }
 
+    /**
+     * Set number of files which may be copied concurrently. Directories are always created first in
+     * heap order before the files are copied. Must be called before {@link #copy()}.
+     * 
+     * @param numTransfers
+     *            - maximum number of concurrent file transfers. Values &lt;= 1 mean sequential copy.
+     */
+    public void setMaxParallelTransfers(int numTransfers) {
+        this.maxParallelTransfers = (numTransfers > 1) ? numTransfers : 1;
+    }
+
+    public int getMaxParallelTransfers() {
+        return this.maxParallelTransfers;
+    }
+
     public void copy() throws VrsException {
         //
         synchronized (mutex) {
@@ -87,7 +166,13 @@ public class HeapCopy {
         try {
             pre();
             doScan();
-            doCopy();
+            try {
+                doCopy();
+            } finally {
+                if (progressMonitor != null) {
+                    progressMonitor.flush();
+                }
+            }
             post();
         } catch (Throwable t) {
             if (monitor != null) {
@@ -101,9 +186,10 @@ public class HeapCopy {
 
     protected void pre() {
         totalBytesTodo = 0;
-        totalBytesCopied = 0;
-        resultPaths = new ArrayList<VFSPath>();
-        deletedPaths = new ArrayList<VPath>();
+        totalBytesCopied.set(0);
+        // workers add paths concurrently when copying in parallel.
+        resultPaths = Collections.synchronizedList(new ArrayList<VFSPath>());
+        deletedPaths = Collections.synchronizedList(new ArrayList<VPath>());
         pathHeap = new ExtendedList<HeapCopyElement>();
 
         if (monitor == null) {
@@ -133,6 +219,20 @@ public class HeapCopy {
         return false;
     }
 
+    /**
+     * Stop check for worker threads. Interrupts of workers are not forwarded to the monitor since
+     * they are caused by the stopping of the worker pool.
+     */
+    private boolean workerMustStop() {
+        if (stopWorkers) {
+            return true;
+        }
+        if ((monitor != null) && (monitor.isCancelled())) {
+            return true;
+        }
+        return Thread.currentThread().isInterrupted();
+    }
+
     protected void doScan() throws VrsException, InterruptedException {
         ArrayList<VPath> nodes = new ArrayList<VPath>();
 
@@ -164,7 +264,7 @@ public class HeapCopy {
                 VFSPath subTargetDir = targetDir.resolve(node.getVRL().getBasename());
 
                 monitorLogPrintf(" - scanning directory:%s\n", node.getVRL());
-                heapAddPath(targetDir, node, node.getResourceType());
+                heapAddPath(targetDir, node, node.getResourceType(), true);
                 // recursive add, depth first!
 
                 if ((isMove) && isSameFileSystem(targetDirPath, node)) {
@@ -178,7 +278,7 @@ public class HeapCopy {
         // add leaf nodes:
         for (VPath node : nodes) {
             if (!node.isComposite()) {
-                heapAddPath(targetDir, node, node.getResourceType());
+                heapAddPath(targetDir, node, node.getResourceType(), false);
             }
         }
     }
@@ -187,9 +287,11 @@ public class HeapCopy {
         return (vfsPath.getFileSystem().equals(node.getResourceSystem()));
     }
 
-    private void heapAddPath(VFSPath targetDirPath, VPath vpath, String type) throws VrsException {
+    private void heapAddPath(VFSPath targetDirPath, VPath vpath, String type, boolean isComposite)
+            throws VrsException {
         logger.debugPrintf(" - adding path:%s\n", vpath);
         HeapCopyElement el = new HeapCopyElement(vpath, type);
+        el.isComposite = isComposite;
         if (vpath instanceof VFSPath) {
             el.size = ((VFSPath) vpath).fileLength();
             totalBytesTodo += el.size;
@@ -210,81 +312,184 @@ public class HeapCopy {
     protected void doCopy() throws VrsException, InterruptedException {
         monitorStartCopy(totalBytesTodo);
 
+        if (maxParallelTransfers > 1) {
+            doParallelCopy();
+            return;
+        }
+
+        for (int i = 0; i < pathHeap.size(); i++) {
+            if (mustStop()) {
+                throw new InterruptedException("Got cancelled");
+            }
+            HeapCopyElement heapEl = pathHeap.get(i);
+            copyElement(heapEl, monitor);
+            addBytesCopied(heapEl.size);
+        }
+    }
+
+    /**
+     * Parallel heap copy. Pass one creates (or renames) the directories in heap order, pass two
+     * copies the leaf nodes using a bounded worker pool. Each file transfer gets its own
+     * {@link WorkerMonitor}, the total progress is reported by the calling thread.
+     */
+    protected void doParallelCopy() throws VrsException, InterruptedException {
+        List<HeapCopyElement> leafs = new ArrayList<HeapCopyElement>();
+
         for (int i = 0; i < pathHeap.size(); i++) {
             if (mustStop()) {
                 throw new InterruptedException("Got cancelled");
             }
 
             HeapCopyElement heapEl = pathHeap.get(i);
-            VPath sourcePath = heapEl.sourcePath;
-            boolean copyAll = true;
+            if (heapEl.isComposite) {
+                copyElement(heapEl, monitor);
+                addBytesCopied(heapEl.size);
+            } else {
+                leafs.add(heapEl);
+            }
+        }
 
-            if (sourcePath instanceof VFSPath) {
-                boolean status = false;
+        if (leafs.size() <= 0) {
+            return;
+        }
 
-                VFSPath resolvedTargetPath = heapEl.destDirPath.resolve(sourcePath.getVRL().getBasename());
-                heapEl.resolvedDestPath = resolvedTargetPath;
+        int numWorkers = Math.min(maxParallelTransfers, leafs.size());
+        monitorLogPrintf(" - %s %d files using %d parallel transfers.\n", actionStr, leafs.size(), numWorkers);
 
-                logger.debugPrintf("Resolved targetFile: '%s' + '%s' => '%s'\n", targetDirPath.getVRL(), sourcePath
-                        .getVRL().getBasename(), resolvedTargetPath.getVRL());
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+            private int workerNr = 0;
 
-                VFSPath vfsPath = (VFSPath) sourcePath;
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, actionStr + "-worker-" + (workerNr++));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
-                if (vfsPath.exists() == false) {
-                    // can happen if directory changed since last scan.
-                    throw new ResourceNotFoundException("Source path doesn't exists!. Has it been moved ?:" + vfsPath,
-                            null);
-                } else if (vfsPath.isDir()) {
-                    monitorLogPrintf(" - %s directory:%s => %s\n", actionStr, sourcePath.getVRL(),
-                            resolvedTargetPath.getVRL());
+        ExecutorCompletionService<HeapCopyElement> completion = new ExecutorCompletionService<HeapCopyElement>(
+                executor);
 
-                    if ((isMove) && (isSameFileSystem(vfsPath, resolvedTargetPath))) {
-                        // sourcePath must be VFSPath:
-                        status = copyManager.fileSystemRename((VFSPath) sourcePath, resolvedTargetPath, monitor);
-                    } else {
-                        status = resolvedTargetPath.mkdir(true);
+        try {
+            for (final HeapCopyElement heapEl : leafs) {
+                completion.submit(new Callable<HeapCopyElement>() {
+                    @Override
+                    public HeapCopyElement call() throws Exception {
+                        if (workerMustStop() == false) {
+                            WorkerMonitor workerMonitor = new WorkerMonitor();
+                            copyElement(heapEl, workerMonitor);
+                            workerMonitor.fileDone(heapEl.size);
+                        }
+                        return heapEl;
                     }
-                } else if (copyAll || vfsPath.isFile()) {
-                    monitorLogPrintf(" - %s file:%s => %s\n", actionStr, sourcePath.getVRL(),
-                            resolvedTargetPath.getVRL());
-                    status = copyManager.doCopyMoveResourceToFile(vfsPath, resolvedTargetPath, isMove, monitor);
-                } else {
-                    monitorLogPrintf(" - Error: Unknown VFS resource:%s\n", vfsPath);
-                    throw new ResourceTypeMismatchException("Can not copy VFSPath:" + vfsPath, null);
+                });
+            }
+
+            for (int i = 0; i < leafs.size(); i++) {
+                Future<HeapCopyElement> future = null;
+
+                while (future == null) {
+                    if (mustStop()) {
+                        throw new InterruptedException("Got cancelled");
+                    }
+                    future = completion.poll(100, TimeUnit.MILLISECONDS);
+                    monitorUpdateBytesCopied(totalBytesCopied.get());
                 }
 
-                if (status) {
-                    resultPaths.add(resolvedTargetPath);
-                    if (isMove) {
-                        deletedPaths.add(sourcePath);
-                        heapEl.isDeleted = true;
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof VrsException) {
+                        throw (VrsException) cause;
                     }
-                    heapEl.isDone = true;
+                    throw new VrsException("Copy failed:" + cause.getMessage(), cause);
+                }
+            }
+        } finally {
+            // Stop (and interrupt) remaining workers if the copy failed or was cancelled.
+            stopWorkers = true;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Copy or move a single heap element.
+     * 
+     * @param elementMonitor
+     *            - monitor for the transfer of this element.
+     */
+    protected void copyElement(HeapCopyElement heapEl, ITaskMonitor elementMonitor) throws VrsException {
+        VPath sourcePath = heapEl.sourcePath;
+        boolean copyAll = true;
+
+        if (sourcePath instanceof VFSPath) {
+            boolean status = false;
+
+            VFSPath resolvedTargetPath = heapEl.destDirPath.resolve(sourcePath.getVRL().getBasename());
+            heapEl.resolvedDestPath = resolvedTargetPath;
+
+            logger.debugPrintf("Resolved targetFile: '%s' + '%s' => '%s'\n", targetDirPath.getVRL(), sourcePath
+                    .getVRL().getBasename(), resolvedTargetPath.getVRL());
+
+            VFSPath vfsPath = (VFSPath) sourcePath;
+
+            if (vfsPath.exists() == false) {
+                // can happen if directory changed since last scan.
+                throw new ResourceNotFoundException("Source path doesn't exists!. Has it been moved ?:" + vfsPath,
+                        null);
+            } else if (vfsPath.isDir()) {
+                monitorLogPrintf(" - %s directory:%s => %s\n", actionStr, sourcePath.getVRL(),
+                        resolvedTargetPath.getVRL());
+
+                if ((isMove) && (isSameFileSystem(vfsPath, resolvedTargetPath))) {
+                    // sourcePath must be VFSPath:
+                    status = copyManager.fileSystemRename((VFSPath) sourcePath, resolvedTargetPath,
+                            elementMonitor);
                 } else {
-                    throw new VrsException("Invalid state, copy or move went wrong for:" + sourcePath);
+                    status = resolvedTargetPath.mkdir(true);
                 }
+            } else if (copyAll || vfsPath.isFile()) {
+                monitorLogPrintf(" - %s file:%s => %s\n", actionStr, sourcePath.getVRL(),
+                        resolvedTargetPath.getVRL());
+                status = copyManager.doCopyMoveResourceToFile(vfsPath, resolvedTargetPath, isMove, elementMonitor);
             } else {
-                monitorLogPrintf(" - Error: non VFS Path:%s\n", sourcePath);
-                throw new ResourceTypeMismatchException("Can not copy:" + sourcePath, null);
+                monitorLogPrintf(" - Error: Unknown VFS resource:%s\n", vfsPath);
+                throw new ResourceTypeMismatchException("Can not copy VFSPath:" + vfsPath, null);
             }
 
-            // update total done:
-            if (heapEl.size > 0) {
-                totalBytesCopied += heapEl.size;
-                monitorUpdateBytesCopied(totalBytesCopied);
+            if (status) {
+                resultPaths.add(resolvedTargetPath);
+                if (isMove) {
+                    deletedPaths.add(sourcePath);
+                    heapEl.isDeleted = true;
+                }
+                heapEl.isDone = true;
+            } else {
+                throw new VrsException("Invalid state, copy or move went wrong for:" + sourcePath);
             }
+        } else {
+            monitorLogPrintf(" - Error: non VFS Path:%s\n", sourcePath);
+            throw new ResourceTypeMismatchException("Can not copy:" + sourcePath, null);
+        }
+    }
+
+    private void addBytesCopied(long numBytes) {
+        if (numBytes > 0) {
+            monitorUpdateBytesCopied(totalBytesCopied.addAndGet(numBytes));
         }
     }
 
     private void monitorUpdateBytesCopied(long numBytes) {
-        if (monitor != null) {
-            monitor.updateSubTaskDone("" + MonitorStats.MonitorStatsType.TOTAL_BYTES_TRANSFERRED, numBytes);
-            monitor.updateTaskDone((numBytes));
+        if (progressMonitor != null) {
+            progressMonitor.updateSubTaskDone("" + MonitorStats.MonitorStatsType.TOTAL_BYTES_TRANSFERRED, numBytes);
+            progressMonitor.updateTaskDone((numBytes));
         }
     }
 
     private void monitorStartCopy(long numBytes) {
         if (monitor != null) {
+            progressMonitor = new ThrottledTaskMonitor(monitor, ThrottledTaskMonitor.DEFAULT_UPDATE_RATE);
             monitor.startTask("HeapCopy", numBytes);
             monitor.startSubTask("" + MonitorStats.MonitorStatsType.TOTAL_BYTES_TRANSFERRED, numBytes);
         }
@@ -20,29 +20,51 @@
 
 package nl.esciencecenter.vbrowser.vrs.io.copy;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 import nl.esciencecenter.ptk.data.ExtendedList;
 import nl.esciencecenter.ptk.data.ListHolder;
 import nl.esciencecenter.ptk.data.VARHolder;
 import nl.esciencecenter.ptk.data.VARListHolder;
 import nl.esciencecenter.ptk.io.IOUtil;
+import nl.esciencecenter.ptk.io.RandomReadable;
+import nl.esciencecenter.ptk.io.RandomWritable;
 import nl.esciencecenter.ptk.task.ITaskMonitor;
 import nl.esciencecenter.ptk.util.logging.PLogger;
 import nl.esciencecenter.vbrowser.vrs.VFSPath;
 import nl.esciencecenter.vbrowser.vrs.VFileSystem;
 import nl.esciencecenter.vbrowser.vrs.VPath;
 import nl.esciencecenter.vbrowser.vrs.VRSClient;
+import nl.esciencecenter.vbrowser.vrs.VRSContext;
+import nl.esciencecenter.vbrowser.vrs.VRSContextProperties;
 import nl.esciencecenter.vbrowser.vrs.VResourceSystem;
 import nl.esciencecenter.vbrowser.vrs.data.AttributeSet;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VrsException;
 import nl.esciencecenter.vbrowser.vrs.infors.VInfoResourcePath;
 import nl.esciencecenter.vbrowser.vrs.io.VFSDeletable;
+import nl.esciencecenter.vbrowser.vrs.io.VRandomReadable;
+import nl.esciencecenter.vbrowser.vrs.io.VRandomWritable;
 import nl.esciencecenter.vbrowser.vrs.io.VStreamReadable;
 import nl.esciencecenter.vbrowser.vrs.io.VStreamWritable;
+import nl.esciencecenter.vbrowser.vrs.localfs.LocalFSPathNode;
+import nl.esciencecenter.vbrowser.vrs.registry.ResourceConfigInfo;
 import nl.esciencecenter.vbrowser.vrs.task.VRSTaskWatcher;
 import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
 
@@ -54,6 +76,17 @@ public class VRSCopyManager implements VRSTransferManager {
 
     private static final PLogger logger = PLogger.getLogger(VRSCopyManager.class);
 
+    public static final String COPY_CHECKPOINTS_FILE = "copycheckpoints.props";
+
+    /** Size of the block which is compared before resuming a copy */
+    public static final int RESUME_VERIFY_BLOCK_SIZE = 64 * 1024;
+
+    /** Default minimum size of a segmented download. */
+    public static final int SEGMENTED_COPY_MIN_SIZE = 16 * 1024 * 1024;
+
+    /** Default source schemes for segmented downloads. */
+    public static final String SEGMENTED_COPY_SCHEMES = "http,https";
+
     // ========
     // Instance
     // ========
@@ -62,10 +95,41 @@ public class VRSCopyManager implements VRSTransferManager {
 
     protected VRSTaskWatcher taskWatcher;
 
+    protected CopyCheckpoints checkpoints;
+
     public VRSCopyManager(VRSClient vrsClient) {
         this.vrsClient = vrsClient;
         // Use static instance for now:
         this.taskWatcher = VRSTaskWatcher.getTaskWatcher();
+        this.checkpoints = new CopyCheckpoints(getCheckpointsLocation());
+    }
+
+    /**
+     * @return location of the persistant copy checkpoints or null if there is no (local) persistant
+     *         configuration.
+     */
+    protected URL getCheckpointsLocation() {
+        VRSContext context = vrsClient.getVRSContext();
+
+        if (context.hasPersistantConfig() == false) {
+            return null;
+        }
+
+        VRL configDir = context.getPersistantConfigLocation();
+        if ((configDir == null) || (configDir.hasScheme("file") == false)) {
+            return null;
+        }
+
+        try {
+            return configDir.appendPath(COPY_CHECKPOINTS_FILE).toURL();
+        } catch (Exception e) {
+            logger.warnPrintf("Invalid copy checkpoints location:%s:%s\n", configDir, e);
+            return null;
+        }
+    }
+
+    public CopyCheckpoints getCheckpoints() {
+        return checkpoints;
     }
 
     // ===
@@ -219,6 +283,7 @@ public class VRSCopyManager implements VRSTransferManager {
             }
 
             status = doCopyMoveResourceToFile(firstPath, vfsDestPath, isMove, monitor);
+            checkpoints.removeAll(Collections.singletonList(vfsDestPath));
             if (isMove) {
                 ArrayList<VPath> deletedPaths = new ArrayList<VPath>();
                 deletedPaths.add(firstPath);
@@ -346,7 +411,10 @@ public class VRSCopyManager implements VRSTransferManager {
         }
 
         HeapCopy heapCopy = new HeapCopy(this, sources, targetDirPath, isMove, monitor);
+        heapCopy.setMaxParallelTransfers(getMaxParallelTransfers(sources, targetDirPath));
         heapCopy.copy();
+        // copy completed: checkpoints are not needed anymore.
+        checkpoints.removeAll(heapCopy.getResultPaths());
 
         if (resultPathsH != null) {
             resultPathsH.set(heapCopy.getResultPaths());
@@ -363,6 +431,44 @@ public class VRSCopyManager implements VRSTransferManager {
         return true;
     }
 
+    /**
+     * Returns the number of concurrent file transfers allowed between the source resource(s) and
+     * the target file system. This is the minimum of the configured values of all the resource
+     * systems involved.
+     */
+    protected int getMaxParallelTransfers(List<? extends VPath> sources, VFSPath targetPath) throws VrsException {
+        int numTransfers = getMaxParallelTransfers(targetPath.getFileSystem());
+
+        for (VPath source : sources) {
+            numTransfers = Math.min(numTransfers, getMaxParallelTransfers(source.getResourceSystem()));
+        }
+
+        return numTransfers;
+    }
+
+    /**
+     * Returns configured number of concurrent transfers for the specified resource system. The
+     * ResourceConfigInfo attribute {@link ResourceConfigInfo#ATTR_MAX_PARALLEL_TRANSFERS} overrides
+     * the global VRSContext property.
+     */
+    protected int getMaxParallelTransfers(VResourceSystem resourceSystem) {
+        VRSContext context = vrsClient.getVRSContext();
+        int numTransfers = context.getProperties().getIntegerProperty(
+                VRSContextProperties.VRS_COPY_MAX_PARALLEL_TRANSFERS_PROP, 1);
+
+        try {
+            ResourceConfigInfo info = context.getResourceSystemInfoFor(resourceSystem);
+            String value = (info != null) ? info.getProperty(ResourceConfigInfo.ATTR_MAX_PARALLEL_TRANSFERS) : null;
+            if ((value != null) && (value.trim().length() > 0)) {
+                numTransfers = Integer.parseInt(value.trim());
+            }
+        } catch (Exception e) {
+            logger.warnPrintf("Couldn't get max parallel transfers for:%s:%s\n", resourceSystem, e);
+        }
+
+        return (numTransfers > 1) ? numTransfers : 1;
+    }
+
     public void streamCopyFile(VPath sourcePath, VFSPath targetFile, ITaskMonitor monitor) throws VrsException {
 
         if ((sourcePath instanceof VStreamReadable) == false) {
@@ -373,6 +479,22 @@ public class VRSCopyManager implements VRSTransferManager {
             throw new VrsException("Can not write to target file (not stream writable):" + targetFile);
         }
 
+        // resume before the local fast path, so interrupted local copies can be resumed as well.
+        if ((isResumeEnabled()) && (sourcePath instanceof VFSPath)) {
+            resumableCopyFile((VFSPath) sourcePath, targetFile, monitor);
+            return;
+        }
+
+        // local to local copy: let the OS perform the copy.
+        if ((sourcePath instanceof LocalFSPathNode) && (targetFile instanceof LocalFSPathNode)) {
+            ((LocalFSPathNode) sourcePath).copyToFile((LocalFSPathNode) targetFile, monitor);
+            return;
+        }
+
+        if (segmentedCopyFile(sourcePath, targetFile, monitor)) {
+            return;
+        }
+
         // actual copy:
 
         try {
@@ -397,6 +519,516 @@ public class VRSCopyManager implements VRSTransferManager {
         }
     }
 
+    protected int getNumCopySegments() {
+        return vrsClient.getVRSContext().getProperties()
+                .getIntegerProperty(VRSContextProperties.VRS_COPY_SEGMENTS_PROP, 4);
+    }
+
+    protected long getSegmentedCopyMinSize() {
+        return vrsClient.getVRSContext().getProperties()
+                .getLongProperty(VRSContextProperties.VRS_COPY_SEGMENTED_MIN_SIZE_PROP, SEGMENTED_COPY_MIN_SIZE);
+    }
+
+    /**
+     * Whether a segmented download may be used to copy source to target. The source scheme must be
+     * listed in the segmented copy schemes, by default only HTTP(S), and the target must be a local
+     * file. Random writes to remote targets, like SFTP, cost several round trips per write.
+     */
+    protected boolean isSegmentedCopyEnabled(VRL sourceVrl, VRL targetVrl) {
+        if ((getNumCopySegments() <= 1) || (targetVrl.hasScheme("file") == false)) {
+            return false;
+        }
+
+        String schemes = vrsClient.getVRSContext().getProperties()
+                .getStringProperty(VRSContextProperties.VRS_COPY_SEGMENTED_SCHEMES_PROP);
+        if (schemes == null) {
+            schemes = SEGMENTED_COPY_SCHEMES;
+        }
+
+        for (String scheme : schemes.split(",")) {
+            if ((scheme.trim().length() > 0) && (sourceVrl.hasScheme(scheme.trim()))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Download a large file from a random readable source in parallel byte range segments. The
+     * target file is pre-allocated and each segment is written at its own offset using a private
+     * reader and writer.<br>
+     * Before the target is touched, the last byte of the source is read to check that random reads
+     * actually work, for example that a HTTP server replies with partial content. If a segment fails
+     * the target is deleted.
+     * 
+     * @return false if segmented copies are not enabled for the source and target, they don't support
+     *         random access, the file is too small or random reads failed before anything was
+     *         copied. In that case a stream copy should be used.
+     */
+    protected boolean segmentedCopyFile(VPath sourcePath, final VFSPath targetFile, ITaskMonitor monitor)
+            throws VrsException {
+        final int numSegments = getNumCopySegments();
+
+        if (((sourcePath instanceof VRandomReadable) == false) || ((targetFile instanceof VRandomWritable) == false)
+                || (isSegmentedCopyEnabled(sourcePath.getVRL(), targetFile.getVRL()) == false)) {
+            return false;
+        }
+
+        final VRandomReadable source = (VRandomReadable) sourcePath;
+        RandomReadable firstReader;
+        final long len;
+
+        try {
+            firstReader = source.createRandomReadable();
+            len = firstReader.getLength();
+        } catch (Exception e) {
+            logger.debugPrintf("No random access to:%s, using stream copy:%s\n", sourcePath, e);
+            return false;
+        }
+
+        if (len < Math.max(getSegmentedCopyMinSize(), numSegments)) {
+            closeReader(firstReader, sourcePath);
+            return false;
+        }
+
+        // probe random read support before the target is truncated.
+        try {
+            if (firstReader.readBytes(len - 1, new byte[1], 0, 1) != 1) {
+                throw new IOException("Couldn't read last byte");
+            }
+        } catch (Exception e) {
+            logger.infoPrintf("Random read of:%s failed, using stream copy:%s\n", sourcePath, e);
+            closeReader(firstReader, sourcePath);
+            return false;
+        }
+
+        String subTaskName = "Performing segmented copy";
+        final AtomicLong numDone = new AtomicLong();
+        long segmentSize = (len + numSegments - 1) / numSegments;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numSegments, new ThreadFactory() {
+            private int segmentNr = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SegmentedCopy-segment-" + (segmentNr++));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            preallocate(targetFile, len);
+
+            if (monitor != null) {
+                monitor.startSubTask(subTaskName, len);
+            }
+
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+
+            for (int i = 0; i < numSegments; i++) {
+                final long start = i * segmentSize;
+                final long end = Math.min(len, start + segmentSize);
+                // first segment reuses the reader which has been used to get the length.
+                final RandomReadable reader = (i == 0) ? firstReader : null;
+                final ITaskMonitor segmentMonitor = monitor;
+
+                futures.add(executor.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        return copySegment(source, reader, targetFile, start, end, numDone, segmentMonitor);
+                    }
+                }));
+            }
+            firstReader = null;
+
+            for (Future<Long> future : futures) {
+                while (true) {
+                    try {
+                        future.get(250, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        if ((monitor != null) && (monitor.isCancelled())) {
+                            throw new InterruptedIOException("Transfer interrupted!");
+                        }
+                    } finally {
+                        if (monitor != null) {
+                            monitor.updateSubTaskDone(subTaskName, numDone.get());
+                        }
+                    }
+                }
+            }
+
+            if (monitor != null) {
+                monitor.endSubTask(subTaskName);
+            }
+
+            return true;
+        } catch (Exception e) {
+            executor.shutdownNow();
+            if (monitor != null) {
+                monitor.endSubTask(subTaskName);
+            }
+
+            Throwable cause = ((e instanceof ExecutionException) && (e.getCause() != null)) ? e.getCause() : e;
+            // don't leave a pre-allocated target with missing segments behind.
+            awaitTermination(executor);
+            deleteTarget(targetFile);
+
+            boolean cancelled = (monitor != null) && (monitor.isCancelled());
+            if ((numDone.get() == 0) && (cancelled == false)) {
+                logger.infoPrintf("Segmented copy of:%s failed before any data was copied, using stream copy:%s\n",
+                        sourcePath, cause);
+                return false;
+            }
+
+            throw new VrsException("Copy Failed:" + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+            closeReader(firstReader, sourcePath);
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) {
+        try {
+            if (executor.awaitTermination(10, TimeUnit.SECONDS) == false) {
+                logger.warnPrintf("Segment copy threads still running after shutdown\n");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deleteTarget(VFSPath targetFile) {
+        try {
+            if (targetFile.exists()) {
+                targetFile.delete();
+            }
+        } catch (Exception e) {
+            logger.warnPrintf("Failed to delete incomplete target file:%s:%s\n", targetFile, e);
+        }
+    }
+
+    /**
+     * Create or truncate the target file and extend it to the specified length, so segments can be
+     * written at any offset.
+     */
+    protected void preallocate(VFSPath targetFile, long len) throws Exception {
+        OutputStream outps = ((VStreamWritable) targetFile).createOutputStream(false);
+        outps.close();
+
+        try (RandomWritable writer = ((VRandomWritable) targetFile).createRandomWritable()) {
+            writer.writeBytes(len - 1, new byte[1], 0, 1);
+        }
+    }
+
+    /**
+     * Copy bytes [start,end) from source to the same offset in the target.
+     * 
+     * @param optReader
+     *            - optional reader to use, a new reader is created if null.
+     * @return number of bytes copied.
+     */
+    protected long copySegment(VRandomReadable source, RandomReadable optReader, VFSPath targetFile, long start,
+            long end, AtomicLong numDone, ITaskMonitor monitor) throws Exception {
+        RandomReadable reader = optReader;
+        RandomWritable writer = null;
+
+        try {
+            if (reader == null) {
+                reader = source.createRandomReadable();
+            }
+            writer = ((VRandomWritable) targetFile).createRandomWritable();
+
+            byte buffer[] = new byte[1024 * 1024];
+            long position = start;
+
+            while (position < end) {
+                if (((monitor != null) && (monitor.isCancelled())) || Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Transfer interrupted!");
+                }
+
+                int num = reader.readBytes(position, buffer, 0, (int) Math.min(buffer.length, end - position));
+                if (num < 0) {
+                    throw new IOException("Source file is shorter than expected:" + position + "<" + end);
+                }
+
+                writer.writeBytes(position, buffer, 0, num);
+                position += num;
+                numDone.addAndGet(num);
+            }
+
+            return end - start;
+        } finally {
+            closeReader(reader, source);
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    private void closeReader(RandomReadable reader, Object source) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (Exception e) {
+            logger.warnPrintf("Failed to close RandomReadable of:%s:%s\n", source, e);
+        }
+    }
+
+    protected boolean isResumeEnabled() {
+        return vrsClient.getVRSContext().getProperties()
+                .getBooleanProperty(VRSContextProperties.VRS_COPY_RESUME_ENABLED_PROP, false);
+    }
+
+    protected boolean isResumeVerifyEnabled() {
+        return vrsClient.getVRSContext().getProperties()
+                .getBooleanProperty(VRSContextProperties.VRS_COPY_RESUME_VERIFY_PROP, false);
+    }
+
+    protected long getCheckpointInterval() {
+        return vrsClient.getVRSContext().getProperties()
+                .getIntegerProperty(VRSContextProperties.VRS_COPY_CHECKPOINT_INTERVAL_PROP, 16 * 1024 * 1024);
+    }
+
+    /**
+     * Resumable stream copy. If a previous copy of the source to the target has been interrupted the
+     * copy continues from the last checkpoint. Progress is checkpointed every checkpoint interval.
+     */
+    protected void resumableCopyFile(VFSPath sourcePath, VFSPath targetFile, ITaskMonitor monitor)
+            throws VrsException {
+        String subTaskName = "Performing resumable copy";
+
+        long len = sourcePath.fileLength();
+        long offset = getResumeOffset(sourcePath, targetFile, len);
+        long targetLen = (offset > 0) ? targetFile.fileLength() : 0;
+
+        CopyCheckpoints.Checkpoint checkpoint = checkpoints.get(sourcePath.getVRL(), targetFile.getVRL());
+
+        if ((offset >= len) && (checkpoint != null) && (checkpoint.isDone())) {
+            if (monitor != null) {
+                monitor.logPrintf(" - Already copied:%s\n", sourcePath.getVRL());
+            }
+            return;
+        }
+
+        if ((offset > 0) && (monitor != null)) {
+            monitor.logPrintf(" - Resuming copy of %s at offset:%d\n", sourcePath.getVRL(), offset);
+        }
+
+        checkpoint = checkpoints.start(sourcePath.getVRL(), targetFile.getVRL(), len, offset);
+
+        InputStream inps = null;
+        OutputStream outps = null;
+        RandomWritable writer = null;
+
+        try {
+            inps = createInputStream(sourcePath, offset);
+
+            if (offset == targetLen) {
+                // append to existing target or create new one.
+                outps = ((VStreamWritable) targetFile).createOutputStream(offset > 0);
+            } else {
+                // target contains unverified bytes after offset: overwrite them.
+                writer = ((VRandomWritable) targetFile).createRandomWritable();
+            }
+
+            if (monitor != null) {
+                monitor.startSubTask(subTaskName, len);
+                monitor.updateSubTaskDone(subTaskName, offset);
+            }
+
+            long checkpointInterval = getCheckpointInterval();
+            long lastCheckpoint = offset;
+            long position = offset;
+            byte buffer[] = new byte[1024 * 1024];
+
+            while (position < len) {
+                if (((monitor != null) && (monitor.isCancelled())) || Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Transfer interrupted!");
+                }
+
+                int num = inps.read(buffer, 0, (int) Math.min(buffer.length, len - position));
+                if (num < 0) {
+                    throw new IOException("Source file is shorter than expected:" + position + "<" + len);
+                }
+
+                if (outps != null) {
+                    outps.write(buffer, 0, num);
+                } else {
+                    writer.writeBytes(position, buffer, 0, num);
+                }
+                position += num;
+
+                if (position - lastCheckpoint >= checkpointInterval) {
+                    if (outps != null) {
+                        outps.flush();
+                    }
+                    checkpoints.update(checkpoint, position);
+                    lastCheckpoint = position;
+                }
+
+                if (monitor != null) {
+                    monitor.updateSubTaskDone(subTaskName, position);
+                }
+            }
+
+            // close explicitly: close() might still fail.
+            if (outps != null) {
+                outps.close();
+                outps = null;
+            } else {
+                writer.close();
+                writer = null;
+            }
+
+            checkpoints.done(checkpoint);
+
+            if (monitor != null) {
+                monitor.endSubTask(subTaskName);
+            }
+        } catch (Exception e) {
+            // save the last checkpoint for a later resume.
+            checkpoints.flush();
+            if (monitor != null) {
+                monitor.endSubTask(subTaskName);
+            }
+            throw new VrsException("Copy Failed:" + e.getMessage(), e);
+        } finally {
+            IOUtil.autoClose(inps);
+            IOUtil.autoClose(outps);
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (Exception e) {
+                    logger.warnPrintf("Failed to close RandomWritable of:%s:%s\n", targetFile, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns offset from which the copy of source to the existing target can be resumed, or 0 if
+     * the copy must start from the beginning. Without a checkpoint the copy can only be resumed when
+     * verification is enabled.
+     */
+    protected long getResumeOffset(VFSPath sourcePath, VFSPath targetFile, long len) throws VrsException {
+        if ((len <= 0) || (targetFile.exists() == false)) {
+            return 0;
+        }
+
+        long targetLen = targetFile.fileLength();
+        if (targetLen > len) {
+            // can't truncate target.
+            return 0;
+        }
+
+        boolean verify = isResumeVerifyEnabled();
+        CopyCheckpoints.Checkpoint checkpoint = checkpoints.get(sourcePath.getVRL(), targetFile.getVRL());
+        long offset;
+
+        if ((checkpoint != null) && (checkpoint.getSourceLength() == len)) {
+            offset = Math.min(checkpoint.getOffset(), targetLen);
+        } else if (verify) {
+            offset = targetLen;
+        } else {
+            return 0;
+        }
+
+        if (offset <= 0) {
+            return 0;
+        }
+
+        // unverified bytes after offset can only be overwritten using random writes.
+        if ((offset < targetLen) && ((targetFile instanceof VRandomWritable) == false)) {
+            return 0;
+        }
+
+        if ((verify) && (verifyBlock(sourcePath, targetFile, offset) == false)) {
+            logger.infoPrintf("Checksum mismatch, restarting copy of:%s\n", sourcePath);
+            return 0;
+        }
+
+        return offset;
+    }
+
+    /**
+     * Compare CRC32 checksums of the block before the specified offset of both source and target.
+     */
+    protected boolean verifyBlock(VFSPath sourcePath, VFSPath targetFile, long offset) {
+        if (((sourcePath instanceof VRandomReadable) == false) || ((targetFile instanceof VRandomReadable) == false)) {
+            return false;
+        }
+
+        int size = (int) Math.min(RESUME_VERIFY_BLOCK_SIZE, offset);
+        long blockOffset = offset - size;
+
+        try (RandomReadable sourceReader = ((VRandomReadable) sourcePath).createRandomReadable();
+                RandomReadable targetReader = ((VRandomReadable) targetFile).createRandomReadable()) {
+            return (blockChecksum(sourceReader, blockOffset, size) == blockChecksum(targetReader, blockOffset, size));
+        } catch (Exception e) {
+            logger.warnPrintf("Couldn't verify block at offset %d of:%s:%s\n", blockOffset, targetFile, e);
+            return false;
+        }
+    }
+
+    private long blockChecksum(RandomReadable reader, long offset, int size) throws IOException {
+        byte buffer[] = new byte[size];
+        int numRead = 0;
+
+        while (numRead < size) {
+            int num = reader.readBytes(offset + numRead, buffer, numRead, size - numRead);
+            if (num < 0) {
+                throw new IOException("EOF while reading block at offset:" + (offset + numRead));
+            }
+            numRead += num;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer, 0, size);
+        return crc.getValue();
+    }
+
+    /**
+     * Open source at the resume offset. Sources with random access are opened at the offset, other
+     * sources are read from the start and the bytes before the offset are skipped.
+     */
+    protected InputStream createInputStream(VFSPath sourcePath, long offset) throws VrsException, IOException {
+        if ((offset > 0) && (sourcePath instanceof VRandomReadable)) {
+            return ((VRandomReadable) sourcePath).createInputStream(offset);
+        }
+
+        InputStream inps = ((VStreamReadable) sourcePath).createInputStream();
+        try {
+            skipFully(inps, offset);
+        } catch (IOException e) {
+            IOUtil.autoClose(inps);
+            throw e;
+        }
+        return inps;
+    }
+
+    private void skipFully(InputStream inps, long numBytes) throws IOException {
+        byte buffer[] = null;
+
+        while (numBytes > 0) {
+            long num = inps.skip(numBytes);
+            if (num <= 0) {
+                // skip not supported (or EOF): read instead.
+                if (buffer == null) {
+                    buffer = new byte[64 * 1024];
+                }
+                num = inps.read(buffer, 0, (int) Math.min(buffer.length, numBytes));
+                if (num < 0) {
+                    throw new IOException("EOF while skipping to resume offset");
+                }
+            }
+            numBytes -= num;
+        }
+    }
+
     public void dispose() {
         // TODO: check running tranfers
         this.vrsClient = null;
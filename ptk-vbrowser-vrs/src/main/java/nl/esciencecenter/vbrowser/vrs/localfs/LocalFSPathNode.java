@@ -31,6 +31,7 @@ import nl.esciencecenter.ptk.io.FSPath;
 import nl.esciencecenter.ptk.io.FSUtil;
 import nl.esciencecenter.ptk.io.RandomReadable;
 import nl.esciencecenter.ptk.io.RandomWritable;
+import nl.esciencecenter.ptk.task.ITaskMonitor;
 import nl.esciencecenter.ptk.util.logging.PLogger;
 import nl.esciencecenter.vbrowser.vrs.VFSPath;
 import nl.esciencecenter.vbrowser.vrs.exceptions.ResourceAccessDeniedException;
@@ -128,6 +129,25 @@ public class LocalFSPathNode extends VFSPathNode implements VStreamAccessable, V
         }
     }
 
+    /**
+     * Local file copy to other local file. The copy is performed by the operating system and file
+     * contents aren't buffered in the JVM.
+     * 
+     * @param targetNode
+     *            - target file, will be created or truncated.
+     * @param monitor
+     *            - optional Task Monitor
+     * @return number of bytes copied.
+     */
+    public long copyToFile(LocalFSPathNode targetNode, ITaskMonitor monitor) throws VrsException {
+        try {
+            return getFSUtil().copyFile(fsNode, targetNode.fsNode, monitor);
+        } catch (IOException e) {
+            throw LocalFileSystem.convertException(this, "Failed to copy:" + getVRL() + " to:" + targetNode.getVRL(),
+                    e);
+        }
+    }
+
     @Override
     public boolean createFile(boolean ignoreExisting) throws VrsException {
         try {
@@ -218,6 +238,20 @@ public class LocalFSPathNode extends VFSPathNode implements VStreamAccessable, V
 
     }
 
+    /**
+     * Create RandomReadable which optionally memory maps the file. Files which are modified while
+     * they are read should be read without memory mapping.
+     * 
+     * @see nl.esciencecenter.ptk.io.FSUtil#createRandomReader(nl.esciencecenter.ptk.io.FSPath, boolean)
+     */
+    public RandomReadable createRandomReadable(boolean memoryMapped) throws VrsException {
+        try {
+            return this.localfs.getFSUtil().createRandomReader(fsNode, memoryMapped);
+        } catch (IOException e) {
+            throw LocalFileSystem.convertException(this, "Couldn't create RandomReadable from:" + getVRL(), e);
+        }
+    }
+
     @Override
     public RandomWritable createRandomWritable() throws VrsException {
         try {
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 
 import nl.esciencecenter.ptk.util.logging.PLogger;
@@ -105,29 +106,34 @@ public class Registry {
         return list.get(0).vrsFactory;
     }
 
-    public VResourceSystem getVResourceSystemFor(VRSContext vrsContext, VRL vrl) throws VrsException {
+    public VResourceSystem getVResourceSystemFor(final VRSContext vrsContext, final VRL vrl) throws VrsException {
         if (vrl == null) {
             throw new NullPointerException("VRL is NULL");
         }
 
-        VResourceSystemFactory factory = getVResourceSystemFactoryFor(vrsContext, vrl.getScheme());
+        final VResourceSystemFactory factory = getVResourceSystemFactoryFor(vrsContext, vrl.getScheme());
 
         if (factory == null) {
             throw new VrsException("No VResourceSystem registered for:" + vrl);
         }
 
-        synchronized (instances) {
-            String id = factory.createResourceSystemId(vrl);
+        String id = factory.createResourceSystemId(vrl);
 
-            VResourceSystem resourceSystem = instances.getResourceSystem(vrsContext, id);
+        // fast path: no locking for existing resource systems.
+        VResourceSystem resourceSystem = instances.getResourceSystem(vrsContext, id);
+        if (resourceSystem != null) {
+            return resourceSystem;
+        }
 
-            if (resourceSystem == null) {
+        // Creating (and connecting) happens outside any global lock. Concurrent callers for the same
+        // id wait for the same creation.
+        return instances.getOrCreateResourceSystem(vrsContext, id, new Callable<VResourceSystem>() {
+            @Override
+            public VResourceSystem call() throws Exception {
                 ResourceConfigInfo info = getResourceSystemInfo(vrsContext, vrl, true);
-                resourceSystem = factory.createResourceSystemFor(vrsContext, info, vrl);
-                instances.putResourceSystem("" + vrsContext.getID(), id, resourceSystem);
+                return factory.createResourceSystemFor(vrsContext, info, vrl);
             }
-            return resourceSystem;
-        }
+        });
     }
 
     protected ResourceConfigInfo getResourceSystemInfo(VRSContext vrsContext, VRL vrl, boolean autoCreate)
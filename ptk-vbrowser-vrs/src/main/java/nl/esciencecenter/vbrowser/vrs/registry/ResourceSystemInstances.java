@@ -22,37 +22,139 @@ package nl.esciencecenter.vbrowser.vrs.registry;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import nl.esciencecenter.vbrowser.vrs.VRSContext;
 import nl.esciencecenter.vbrowser.vrs.VResourceSystem;
+import nl.esciencecenter.vbrowser.vrs.exceptions.VrsException;
 
-public class ResourceSystemInstances extends LinkedHashMap<String, LinkedHashMap<String, VResourceSystem>> {
-    // not serializable!
-    private static final long serialVersionUID = 1L;
+/**
+ * ResourceSystem instances per VRSContext. Instances are stored as Futures, so that creating a
+ * (slow) resource system doesn't need a global lock: concurrent callers for the same resource id
+ * wait for the same Future, while lookups of other resource systems continue.
+ */
+public class ResourceSystemInstances {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Future<VResourceSystem>>> instances = new ConcurrentHashMap<String, ConcurrentMap<String, Future<VResourceSystem>>>();
+
+    protected ConcurrentMap<String, Future<VResourceSystem>> getFuturesFor(String contextId, boolean autoCreate) {
+        ConcurrentMap<String, Future<VResourceSystem>> futures = instances.get(contextId);
+
+        if ((futures == null) && (autoCreate)) {
+            futures = new ConcurrentHashMap<String, Future<VResourceSystem>>();
+            ConcurrentMap<String, Future<VResourceSystem>> prev = instances.putIfAbsent(contextId, futures);
+            if (prev != null) {
+                futures = prev;
+            }
+        }
+
+        return futures;
+    }
 
+    /**
+     * Returns the already created resource systems of the VRSContext. Resource systems which are
+     * still being created are skipped.
+     */
     public Map<String, VResourceSystem> getResourceSystemsFor(VRSContext vrsContext) {
-        return this.get("" + vrsContext.getID());
+        Map<String, VResourceSystem> resourceSystems = new LinkedHashMap<String, VResourceSystem>();
+        Map<String, Future<VResourceSystem>> futures = getFuturesFor("" + vrsContext.getID(), false);
+
+        if (futures != null) {
+            for (Map.Entry<String, Future<VResourceSystem>> entry : futures.entrySet()) {
+                VResourceSystem resourceSystem = getIfDone(entry.getValue());
+                if (resourceSystem != null) {
+                    resourceSystems.put(entry.getKey(), resourceSystem);
+                }
+            }
+        }
+
+        return resourceSystems;
     }
 
+    /**
+     * Returns resource system if it has been created, does not wait for resource systems which are
+     * still being created.
+     */
     public VResourceSystem getResourceSystem(VRSContext vrsContext, String resourceId) {
-        Map<String, VResourceSystem> list = this.getResourceSystemsFor(vrsContext);
-        if (list == null)
+        Map<String, Future<VResourceSystem>> futures = getFuturesFor("" + vrsContext.getID(), false);
+        if (futures == null) {
             return null;
+        }
 
-        return list.get(resourceId);
+        return getIfDone(futures.get(resourceId));
     }
 
-    public VResourceSystem putResourceSystem(String contextId, String resourceId, VResourceSystem vrs) {
-        LinkedHashMap<String, VResourceSystem> list = this.get(contextId);
-        if (list == null) {
-            list = new LinkedHashMap<String, VResourceSystem>();
-            this.put(contextId, list);
+    /**
+     * Returns existing resource system or creates a new one using the creator. The creator is
+     * called at most once per resource id, in the current thread. Other threads asking for the same
+     * resource id wait until it has been created. If the creation fails all waiting threads get the
+     * exception and the next call will try to create the resource system again.
+     */
+    public VResourceSystem getOrCreateResourceSystem(VRSContext vrsContext, String resourceId,
+            Callable<VResourceSystem> creator) throws VrsException {
+        ConcurrentMap<String, Future<VResourceSystem>> futures = getFuturesFor("" + vrsContext.getID(), true);
+
+        Future<VResourceSystem> future = futures.get(resourceId);
+
+        if (future == null) {
+            FutureTask<VResourceSystem> task = new FutureTask<VResourceSystem>(creator);
+            future = futures.putIfAbsent(resourceId, task);
+            if (future == null) {
+                future = task;
+                // create in current thread, outside any lock.
+                task.run();
+            }
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // allow retry.
+            futures.remove(resourceId, future);
+            Throwable cause = e.getCause();
+            if (cause instanceof VrsException) {
+                throw (VrsException) cause;
+            }
+            throw new VrsException("Failed to create resource system:" + resourceId + "\n" + cause.getMessage(),
+                    cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VrsException("Interrupted while waiting for resource system:" + resourceId, e);
         }
-        return list.put(resourceId, vrs);
+    }
+
+    public VResourceSystem putResourceSystem(String contextId, String resourceId, VResourceSystem vrs) {
+        FutureTask<VResourceSystem> task = new FutureTask<VResourceSystem>(new Runnable() {
+            public void run() {
+            }
+        }, vrs);
+        task.run();
+
+        return getIfDone(getFuturesFor(contextId, true).put(resourceId, task));
     }
 
     public void unregisterResourceSystemsFor(VRSContext vrsContext) {
-        this.remove("" + vrsContext.getID());
+        instances.remove("" + vrsContext.getID());
+    }
+
+    private VResourceSystem getIfDone(Future<VResourceSystem> future) {
+        if ((future == null) || (future.isDone() == false)) {
+            return null;
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
 
 }
@@ -66,6 +66,15 @@ public final class VRL implements Cloneable, Comparable<VRL>, Duplicatable<VRL>,
 
     protected URIFactory uriFactory;
 
+    /**
+     * Cached normalized String. A VRL is immutable: all methods which change a part of the VRL
+     * return a new VRL.
+     */
+    private transient String normalizedString;
+
+    /** Cached hash code of the normalized String, 0 if not computed yet. */
+    private transient int hash;
+
     protected VRL() {
     }
 
@@ -165,6 +174,8 @@ public final class VRL implements Cloneable, Comparable<VRL>, Duplicatable<VRL>,
         // (not) null > null ?
         if (other == null)
             return 1;
+        if (other == this)
+            return 0;
         return StringUtil.compare(this.toNormalizedString(), other.toNormalizedString(), false);
     }
 
@@ -180,18 +191,32 @@ public final class VRL implements Cloneable, Comparable<VRL>, Duplicatable<VRL>,
      */
     @Override
     public int hashCode() {
-        return toNormalizedString().hashCode();
+        int h = hash;
+        if (h == 0) {
+            h = toNormalizedString().hashCode();
+            hash = h;
+        }
+        return h;
     }
 
+    /**
+     * Compares the normalized String representations. VRLs with different hash codes are never
+     * equal, so most comparisons are decided without comparing the Strings.
+     */
     @Override
     public boolean equals(Object other) {
-        if (other == null)
-            return false;
+        if (other == this)
+            return true;
 
         if ((other instanceof VRL) == false)
             return false;
 
-        return (compareTo((VRL) other) == 0);
+        VRL otherVrl = (VRL) other;
+
+        if (hashCode() != otherVrl.hashCode())
+            return false;
+
+        return toNormalizedString().equals(otherVrl.toNormalizedString());
     }
 
     // ========================================================================
@@ -199,7 +224,7 @@ public final class VRL implements Cloneable, Comparable<VRL>, Duplicatable<VRL>,
     // ========================================================================
 
     public String toString() {
-        return uriFactory.toString();
+        return toNormalizedString();
     }
 
     public java.net.URI toURI() throws URISyntaxException {
@@ -207,7 +232,12 @@ public final class VRL implements Cloneable, Comparable<VRL>, Duplicatable<VRL>,
     }
 
     public String toNormalizedString() {
-        return uriFactory.toNormalizedString();
+        String str = normalizedString;
+        if (str == null) {
+            str = uriFactory.toNormalizedString();
+            normalizedString = str;
+        }
+        return str;
     }
 
     /**
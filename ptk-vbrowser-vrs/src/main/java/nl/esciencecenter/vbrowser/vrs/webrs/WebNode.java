@@ -21,32 +21,38 @@
 package nl.esciencecenter.vbrowser.vrs.webrs;
 
 import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_CHARSET;
+import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_FILE_SIZE;
 import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_HOSTNAME;
 import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_ICON;
 import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_LOCATION;
 import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_MIMETYPE;
+import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_MODIFICATION_TIME;
 import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_NAME;
 import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_PATH;
 import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_PORT;
 import static nl.esciencecenter.vbrowser.vrs.data.AttributeNames.ATTR_RESOURCE_TYPE;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.Map;
 
 import nl.esciencecenter.ptk.data.StringHolder;
 import nl.esciencecenter.ptk.data.StringList;
-import nl.esciencecenter.ptk.io.IOUtil;
 import nl.esciencecenter.ptk.util.StringUtil;
+import nl.esciencecenter.ptk.web.ResponseHeaders;
 import nl.esciencecenter.ptk.web.ResponseInputStream;
 import nl.esciencecenter.ptk.web.ResponseOutputStream;
 import nl.esciencecenter.ptk.web.WebClient;
 import nl.esciencecenter.ptk.web.WebException;
+import nl.esciencecenter.ptk.web.WebRandomReader;
 import nl.esciencecenter.vbrowser.vrs.VRS;
+import nl.esciencecenter.vbrowser.vrs.data.Attribute;
 import nl.esciencecenter.vbrowser.vrs.data.AttributeDescription;
 import nl.esciencecenter.vbrowser.vrs.data.AttributeType;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VRLSyntaxException;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VrsException;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VrsIOException;
+import nl.esciencecenter.vbrowser.vrs.io.VRandomReadable;
 import nl.esciencecenter.vbrowser.vrs.io.VStreamAccessable;
 import nl.esciencecenter.vbrowser.vrs.node.VPathNode;
 import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
@@ -54,14 +60,15 @@ import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
 /**
  * Class represents a HTTP reference
  */
-public class WebNode extends VPathNode implements VStreamAccessable {
+public class WebNode extends VPathNode implements VStreamAccessable, VRandomReadable {
 
     // =====
     // Class
     // =====
 
     static private StringList attributeNames = new StringList(ATTR_RESOURCE_TYPE, ATTR_NAME, ATTR_HOSTNAME, ATTR_PORT,
-            ATTR_ICON, ATTR_PATH, ATTR_MIMETYPE, ATTR_CHARSET, ATTR_LOCATION);
+            ATTR_ICON, ATTR_PATH, ATTR_MIMETYPE, ATTR_CHARSET, ATTR_LOCATION, ATTR_FILE_SIZE,
+            ATTR_MODIFICATION_TIME);
 
     // ========
     // Instance
@@ -69,6 +76,11 @@ public class WebNode extends VPathNode implements VStreamAccessable {
 
     private String mimeType = null;
 
+    /**
+     * Headers from HEAD request, cleared by sync().
+     */
+    private ResponseHeaders headers = null;
+
     private WebResourceSystem httprs;
 
     private boolean isHTTPS = false;
@@ -101,36 +113,54 @@ public class WebNode extends VPathNode implements VStreamAccessable {
     }
 
     /**
-     * Get mimetype as reported by remote Server. Open Connection and tries get the ContentType
-     * header from the request.
+     * Create RandomReadable using HTTP byte range requests.
+     * 
+     * @throws VrsException
+     *             if the server doesn't advertise "Accept-Ranges: bytes".
      */
-    @Override
-    public String getMimeType() throws VrsException {
-        if (mimeType != null) {
-            return mimeType;
+    public WebRandomReader createRandomReadable() throws VrsException {
+        ResponseHeaders headers = getHeaders();
+
+        if ((headers.acceptsByteRanges() == false) || (headers.getContentLength() < 0)) {
+            throw new VrsException("Server doesn't support byte range requests for:" + getVRL());
         }
 
-        String str;
         try {
-            ResponseInputStream inps = createInputStream();
-            str = inps.getMimeType();
-            IOUtil.autoClose(inps);
-        } catch (VrsIOException e) {
-            throw e;
+            return new WebRandomReader(getWebClient(), getVRL().toURI(), headers.getContentLength(),
+                    headers.getIfRangeValidator(), WebRandomReader.DEFAULT_READ_AHEAD_SIZE);
+        } catch (Exception e) {
+            throw new VrsIOException(e.getMessage(), e);
         }
+    }
 
-        if (str == null) {
-            return "text/html";
+    /**
+     * Returns the response headers of a HEAD request. The headers are fetched once, use sync() to
+     * refresh them.
+     */
+    public ResponseHeaders getHeaders() throws VrsException {
+        if (headers != null) {
+            return headers;
         }
 
-        String strs[] = str.split(";");
+        try {
+            headers = getWebClient().doHead(getVRL().toURI());
+            return headers;
+        } catch (Exception e) {
+            throw new VrsIOException(e.getMessage(), e);
+        }
+    }
 
-        if (strs.length < 1) {
-            mimeType = str;
-        } else {
-            mimeType = strs[0];
+    /**
+     * Get mimetype as reported by remote Server. Uses the Content-Type header from a HEAD request.
+     */
+    @Override
+    public String getMimeType() throws VrsException {
+        if (mimeType != null) {
+            return mimeType;
         }
 
+        mimeType = getHeaders().getMimeType();
+
         if (mimeType == null) {
             return "text/html";
         }
@@ -138,6 +168,41 @@ public class WebNode extends VPathNode implements VStreamAccessable {
         return mimeType;
     }
 
+    /**
+     * @return Content-Length as reported by the remote server or -1 if unknown.
+     */
+    public long getLength() throws VrsException {
+        return getHeaders().getContentLength();
+    }
+
+    /**
+     * @return Last-Modified time in milliseconds or -1 if unknown.
+     */
+    public long getModificationTime() throws VrsException {
+        return getHeaders().getLastModified();
+    }
+
+    @Override
+    public Attribute getResourceAttribute(String name) throws VrsException {
+        if (name.equals(ATTR_FILE_SIZE)) {
+            return new Attribute(name, getLength());
+        } else if (name.equals(ATTR_MODIFICATION_TIME)) {
+            long time = getModificationTime();
+            return (time >= 0) ? new Attribute(name, new Date(time)) : null;
+        } else if (name.equals(ATTR_CHARSET)) {
+            return new Attribute(name, getHeaders().getCharset());
+        }
+
+        return super.getResourceAttribute(name);
+    }
+
+    @Override
+    public boolean sync() throws VrsException {
+        headers = null;
+        mimeType = null;
+        return true;
+    }
+
     /**
      * Get the names of the attributes this resource has
      */
@@ -188,12 +253,12 @@ public class WebNode extends VPathNode implements VStreamAccessable {
         VRL vrl = getVRL();
         String queryStr = vrl.getPath();
 
-        if (vrl.getFragment() != null) {
-            queryStr += queryStr + "#" + vrl.getFragment();
+        if (vrl.getQuery() != null) {
+            queryStr += "?" + vrl.getQuery();
         }
 
-        if (vrl.getQuery() != null) {
-            queryStr += queryStr + "?" + vrl.getQuery();
+        if (vrl.getFragment() != null) {
+            queryStr += "#" + vrl.getFragment();
         }
 
         StringHolder statusH = new StringHolder();
@@ -210,8 +275,7 @@ public class WebNode extends VPathNode implements VStreamAccessable {
 
     public boolean exists(String query) {
         try {
-            ResponseInputStream inps = getWebClient().doGetInputStream(query);
-            inps.autoClose();
+            getWebClient().doHead(query);
             return true;
         } catch (IOException e) {
             return false;
@@ -20,20 +20,26 @@
 
 package nl.esciencecenter.vbrowser.vrs.webrs;
 
+import java.io.IOException;
 import java.net.URISyntaxException;
 
+import nl.esciencecenter.ptk.io.FSPath;
+import nl.esciencecenter.ptk.io.FSUtil;
 import nl.esciencecenter.ptk.ssl.CertUI;
 import nl.esciencecenter.ptk.ssl.CertificateStore;
 import nl.esciencecenter.ptk.ssl.CertificateStore.CaCertOptions;
 import nl.esciencecenter.ptk.ssl.CertificateStoreException;
 import nl.esciencecenter.ptk.ui.UI;
 import nl.esciencecenter.ptk.util.logging.PLogger;
+import nl.esciencecenter.ptk.web.WebCache;
 import nl.esciencecenter.ptk.web.WebClient;
 import nl.esciencecenter.ptk.web.WebConfig.AuthenticationType;
 import nl.esciencecenter.ptk.web.WebException;
 import nl.esciencecenter.ptk.web.WebException.Reason;
 import nl.esciencecenter.vbrowser.vrs.VPath;
 import nl.esciencecenter.vbrowser.vrs.VRSContext;
+import nl.esciencecenter.vbrowser.vrs.VRSContextProperties;
+import nl.esciencecenter.vbrowser.vrs.VRSProperties;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VRLSyntaxException;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VrsException;
 import nl.esciencecenter.vbrowser.vrs.exceptions.VrsIOException;
@@ -72,6 +78,7 @@ public class WebResourceSystem extends VResourceSystemNode {
             // multithreaded web client (!) 
             webClient = WebClient.createMultiThreadedFor(info.getServerVRL().toURI(), AuthenticationType.NONE);
             webClient.setCertificateStore(certStore);
+            initWebCache();
 
         } catch (WebException | URISyntaxException | CertificateStoreException e) {
             throw new VrsException(e.getMessage(), e);
@@ -81,6 +88,37 @@ public class WebResourceSystem extends VResourceSystemNode {
         connect();
     }
 
+    /**
+     * Configure the shared on-disk HTTP response cache.
+     */
+    protected void initWebCache() {
+        VRSProperties props = vrsContext.getProperties();
+
+        if (props.getBooleanProperty(VRSContextProperties.VRS_HTTP_CACHE_ENABLED_PROP, true) == false) {
+            return;
+        }
+
+        String cacheDirPath = props.getStringProperty(VRSContextProperties.VRS_HTTP_CACHE_DIR_PROP);
+
+        if ((cacheDirPath == null) && (vrsContext.hasPersistantConfig())) {
+            cacheDirPath = vrsContext.getPersistantConfigLocation().appendPath("httpcache").getPath();
+        }
+
+        if (cacheDirPath == null) {
+            logger.debugPrintf("initWebCache(): No HTTP cache directory configured.\n");
+            return;
+        }
+
+        long maxSize = props.getLongProperty(VRSContextProperties.VRS_HTTP_CACHE_MAX_SIZE_PROP, 1024);
+
+        try {
+            FSPath cacheDir = FSUtil.getDefault().resolvePath(cacheDirPath);
+            webClient.setWebCache(WebCache.getWebCache(cacheDir, maxSize * 1024 * 1024));
+        } catch (IOException e) {
+            logger.warnPrintf("Failed to initialize HTTP cache at:%s:%s\n", cacheDirPath, e);
+        }
+    }
+
     public String getID() {
         return DEFAULT_HTTPRS_SERVERID;
     }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.vbrowser.vrs.vrl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
+
+/**
+ * Lookup benchmark for VRLs used as map keys, like the ProxyCache and the ResourceTableModel do.
+ * Each VRL is looked up with an equal but distinct VRL instance, so the lookups can't be decided
+ * on object identity.
+ * 
+ * <pre>
+ * Demo_VRLMap [-num &lt;number of VRLs&gt;]
+ * </pre>
+ */
+public class Demo_VRLMap {
+
+    public static final int NUM_VRLS = 100000;
+
+    public static final int NUM_RUNS = 5;
+
+    public static void main(String args[]) {
+        try {
+            int numVrls = NUM_VRLS;
+
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-num")) {
+                    numVrls = Integer.parseInt(args[++i]);
+                }
+            }
+
+            List<VRL> keys = createVRLs(numVrls);
+            List<VRL> lookups = createVRLs(numVrls);
+
+            benchmark("HashMap", new HashMap<VRL, Integer>(), keys, lookups);
+            benchmark("TreeMap", new TreeMap<VRL, Integer>(), keys, lookups);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static List<VRL> createVRLs(int num) {
+        List<VRL> vrls = new ArrayList<VRL>(num);
+
+        for (int i = 0; i < num; i++) {
+            vrls.add(new VRL("sftp", "user", "host" + (i % 10) + ".domain.org", 22, "/home/user/dir"
+                    + (i % 100) + "/subdir" + (i % 1000) + "/file" + i + ".txt"));
+        }
+
+        return vrls;
+    }
+
+    public static void benchmark(String name, Map<VRL, Integer> map, List<VRL> keys,
+            List<VRL> lookups) {
+        long putTime = 0;
+        long getTime = 0;
+        long numFound = 0;
+
+        // first run is warm up.
+        for (int run = 0; run <= NUM_RUNS; run++) {
+            map.clear();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < keys.size(); i++) {
+                map.put(keys.get(i), i);
+            }
+            long put = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long found = 0;
+            for (VRL vrl : lookups) {
+                if (map.get(vrl) != null) {
+                    found++;
+                }
+            }
+            long get = System.nanoTime() - start;
+
+            if (run > 0) {
+                putTime += put;
+                getTime += get;
+                numFound += found;
+            }
+        }
+
+        double numOps = (double) keys.size() * NUM_RUNS;
+
+        System.out.printf("%-8s: put: %8.1f ns/op, get: %8.1f ns/op, found: %d/%d\n", name,
+                putTime / numOps, getTime / numOps, numFound / NUM_RUNS, keys.size());
+    }
+
+}
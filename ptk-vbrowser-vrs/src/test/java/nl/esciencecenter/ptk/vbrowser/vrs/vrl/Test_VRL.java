@@ -288,6 +288,29 @@ public class Test_VRL {
         Assert.assertEquals("Port numbers less then 0 should match against any itself", vrl1, vrl2);
     }
 
+    @Test
+    public void testHashCodeAndCompare() throws Exception {
+        VRL vrl1 = new VRL("sftp://user@host:22/path/to/file.txt?query#frag");
+        VRL vrl2 = new VRL("sftp", "user", "host", 22, "/path/to/file.txt", "query", "frag");
+        VRL other = new VRL("sftp://user@host:22/path/to/other.txt?query#frag");
+
+        Assert.assertEquals("Equal VRLs must have equal hash codes.", vrl1.hashCode(), vrl2.hashCode());
+        Assert.assertEquals("Hash code must be hash code of normalized String.",
+                vrl1.toNormalizedString().hashCode(), vrl1.hashCode());
+        Assert.assertEquals(vrl1, vrl2);
+        Assert.assertEquals(0, vrl1.compareTo(vrl2));
+        Assert.assertFalse(vrl1.equals(other));
+        Assert.assertTrue(vrl1.compareTo(other) < 0);
+        Assert.assertTrue(other.compareTo(vrl1) > 0);
+
+        // derived VRLs must not share cached values with their origin.
+        VRL parent = new VRL("sftp://user@host:22/path/to/file.txt").getParent();
+        Assert.assertEquals("sftp://user@host:22/path/to", parent.toNormalizedString());
+        Assert.assertEquals(new VRL("sftp://user@host:22/path/to").hashCode(), parent.hashCode());
+        Assert.assertEquals(vrl1, vrl1.duplicate());
+        Assert.assertEquals(vrl1.hashCode(), vrl1.duplicate().hashCode());
+    }
+
     @Test
     public void testGetParent() throws Exception {
         VRL local = new VRL("file", null, "/etc");
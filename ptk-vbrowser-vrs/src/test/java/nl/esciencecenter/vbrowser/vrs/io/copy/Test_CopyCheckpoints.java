@@ -0,0 +1,92 @@
+/*
+ * Copyrighted 2012-2013 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").  
+ * You may not use this file except in compliance with the License. 
+ * For details, see the LICENCE.txt file location in the root directory of this 
+ * distribution or obtain the Apache License at the following location: 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENCE.txt (located in the root folder of this distribution). 
+ * ---
+ */
+// source: 
+
+package nl.esciencecenter.vbrowser.vrs.io.copy;
+
+import java.io.File;
+
+import nl.esciencecenter.vbrowser.vrs.io.copy.CopyCheckpoints.Checkpoint;
+import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_CopyCheckpoints {
+
+    @Test
+    public void testCheckpoints() throws Exception {
+        CopyCheckpoints checkpoints = new CopyCheckpoints(null);
+
+        VRL source = new VRL("file:///tmp/source/file.dat");
+        VRL target = new VRL("sftp://user@host/target/file.dat");
+
+        Assert.assertNull(checkpoints.get(source, target));
+
+        Checkpoint checkpoint = checkpoints.start(source, target, 1000, 0);
+        checkpoints.update(checkpoint, 500);
+
+        Assert.assertSame(checkpoint, checkpoints.get(source, target));
+        Assert.assertEquals(500, checkpoints.get(source, target).getOffset());
+        Assert.assertFalse(checkpoint.isDone());
+        // checkpoint of other source may not be used:
+        Assert.assertNull(checkpoints.get(new VRL("file:///tmp/source/other.dat"), target));
+
+        checkpoints.done(checkpoint);
+        Assert.assertTrue(checkpoint.isDone());
+        Assert.assertEquals(1000, checkpoint.getOffset());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("copycheckpoints", ".props");
+        file.delete();
+
+        try {
+            CopyCheckpoints checkpoints = new CopyCheckpoints(file.toURI().toURL());
+
+            VRL source1 = new VRL("file:///tmp/source/file1.dat");
+            VRL target1 = new VRL("sftp://user@host/target/file1.dat");
+            VRL source2 = new VRL("file:///tmp/source/file2.dat");
+            VRL target2 = new VRL("sftp://user@host/target/file2.dat");
+
+            checkpoints.update(checkpoints.start(source1, target1, 1000, 0), 256);
+            checkpoints.done(checkpoints.start(source2, target2, 2000, 0));
+            checkpoints.flush();
+
+            // reload:
+            checkpoints = new CopyCheckpoints(file.toURI().toURL());
+            Assert.assertEquals(2, checkpoints.size());
+
+            Checkpoint checkpoint1 = checkpoints.get(source1, target1);
+            Assert.assertNotNull(checkpoint1);
+            Assert.assertEquals(1000, checkpoint1.getSourceLength());
+            Assert.assertEquals(256, checkpoint1.getOffset());
+            Assert.assertFalse(checkpoint1.isDone());
+
+            Checkpoint checkpoint2 = checkpoints.get(source2, target2);
+            Assert.assertNotNull(checkpoint2);
+            Assert.assertEquals(2000, checkpoint2.getOffset());
+            Assert.assertTrue(checkpoint2.isDone());
+        } finally {
+            file.delete();
+        }
+    }
+
+}
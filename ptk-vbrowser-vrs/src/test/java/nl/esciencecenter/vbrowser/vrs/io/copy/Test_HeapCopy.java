@@ -0,0 +1,124 @@
+/*
+ * Copyrighted 2012-2013 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").  
+ * You may not use this file except in compliance with the License. 
+ * For details, see the LICENCE.txt file location in the root directory of this 
+ * distribution or obtain the Apache License at the following location: 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENCE.txt (located in the root folder of this distribution). 
+ * ---
+ */
+// source: 
+
+
+package nl.esciencecenter.vbrowser.vrs.io.copy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.esciencecenter.ptk.task.ITaskMonitor.TaskStats;
+import nl.esciencecenter.ptk.task.MonitorStats;
+import nl.esciencecenter.ptk.task.TaskMonitorAdaptor;
+import nl.esciencecenter.vbrowser.vrs.VFSPath;
+import nl.esciencecenter.vbrowser.vrs.VPath;
+import nl.esciencecenter.vbrowser.vrs.VRSClient;
+import nl.esciencecenter.vbrowser.vrs.VRSContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_HeapCopy {
+
+    protected File createTempDir() throws Exception {
+        File dir = File.createTempFile("heapcopy", ".dir");
+        dir.delete();
+        Assert.assertTrue(dir.mkdir());
+        return dir;
+    }
+
+    protected void createFile(File file, int size, int seed) throws Exception {
+        byte bytes[] = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ((i + seed) % 251);
+        }
+        try (FileOutputStream outps = new FileOutputStream(file)) {
+            outps.write(bytes);
+        }
+    }
+
+    protected void deleteAll(File file) {
+        File files[] = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+
+    protected VFSPath openPath(VRSClient client, File file) throws Exception {
+        return client.openVFSPath(client.resolvePath(file.getAbsolutePath()));
+    }
+
+    @Test
+    public void testParallelCopy() throws Exception {
+        VRSClient client = new VRSClient(new VRSContext());
+        File sourceDir = createTempDir();
+        File targetDir = createTempDir();
+
+        try {
+            File subDir = new File(sourceDir, "subdir");
+            Assert.assertTrue(subDir.mkdir());
+
+            List<File> sourceFiles = new ArrayList<File>();
+            for (int i = 0; i < 12; i++) {
+                File file = new File((i % 2 == 0) ? sourceDir : subDir, "file" + i + ".dat");
+                createFile(file, 100 * 1024 + i * 1013, i);
+                sourceFiles.add(file);
+            }
+
+            List<VPath> sources = new ArrayList<VPath>();
+            sources.add(openPath(client, sourceDir));
+
+            TaskMonitorAdaptor monitor = new TaskMonitorAdaptor();
+            HeapCopy heapCopy = new HeapCopy(new VRSCopyManager(client), sources, openPath(client, targetDir),
+                    false, monitor);
+            heapCopy.setMaxParallelTransfers(4);
+            heapCopy.copy();
+
+            String sourcePrefix = sourceDir.getAbsolutePath();
+            File copyDir = new File(targetDir, sourceDir.getName());
+            for (File sourceFile : sourceFiles) {
+                File targetFile = new File(copyDir, sourceFile.getAbsolutePath().substring(sourcePrefix.length()));
+                Assert.assertTrue("Missing copy of:" + sourceFile, targetFile.exists());
+                Assert.assertArrayEquals("Contents of " + targetFile + " differ", Files.readAllBytes(sourceFile
+                        .toPath()), Files.readAllBytes(targetFile.toPath()));
+            }
+
+            Assert.assertEquals("Number of copied paths", 14, heapCopy.getResultPaths().size());
+            Assert.assertFalse("Copy failed:" + monitor.getException(), monitor.hasError());
+
+            // final progress must equal the total, even with concurrent transfers.
+            TaskStats bytesStats = monitor.getSubTaskStats(""
+                    + MonitorStats.MonitorStatsType.TOTAL_BYTES_TRANSFERRED);
+            Assert.assertNotNull(bytesStats);
+            Assert.assertEquals("Total bytes transferred", heapCopy.totalBytesTodo, bytesStats.done);
+            Assert.assertEquals("Task done", heapCopy.totalBytesTodo, monitor.getTaskStats().done);
+        } finally {
+            deleteAll(sourceDir);
+            deleteAll(targetDir);
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyrighted 2012-2013 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").  
+ * You may not use this file except in compliance with the License. 
+ * For details, see the LICENCE.txt file location in the root directory of this 
+ * distribution or obtain the Apache License at the following location: 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENCE.txt (located in the root folder of this distribution). 
+ * ---
+ */
+// source: 
+
+package nl.esciencecenter.vbrowser.vrs.io.copy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.esciencecenter.ptk.io.IOUtil;
+import nl.esciencecenter.ptk.task.ITaskMonitor;
+import nl.esciencecenter.ptk.task.TaskMonitorAdaptor;
+import nl.esciencecenter.vbrowser.vrs.VFSPath;
+import nl.esciencecenter.vbrowser.vrs.VPath;
+import nl.esciencecenter.vbrowser.vrs.VRSClient;
+import nl.esciencecenter.vbrowser.vrs.VRSContext;
+import nl.esciencecenter.vbrowser.vrs.VRSContextProperties;
+import nl.esciencecenter.vbrowser.vrs.exceptions.VrsException;
+import nl.esciencecenter.vbrowser.vrs.vrl.VRL;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_VRSCopyManager {
+
+    protected VRSClient createClient() {
+        VRSContext context = new VRSContext();
+        context.getProperties().set(VRSContextProperties.VRS_COPY_SEGMENTED_MIN_SIZE_PROP, 1024);
+        return new VRSClient(context);
+    }
+
+    protected File createTempFile(int size) throws Exception {
+        File file = File.createTempFile("copymanager", ".dat");
+        file.deleteOnExit();
+        byte bytes[] = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % 253);
+        }
+        try (FileOutputStream outps = new FileOutputStream(file)) {
+            outps.write(bytes);
+        }
+        return file;
+    }
+
+    protected VFSPath openPath(VRSClient client, File file) throws Exception {
+        return client.openVFSPath(client.resolvePath(file.getAbsolutePath()));
+    }
+
+    @Test
+    public void testSegmentedCopySchemes() throws Exception {
+        VRSCopyManager manager = new VRSCopyManager(createClient());
+        VRL httpFile = new VRL("http://www.example.com/data.bin");
+        VRL localFile = new VRL("file:///tmp/data.bin");
+        VRL sftpFile = new VRL("sftp://user@host/data.bin");
+
+        Assert.assertTrue(manager.isSegmentedCopyEnabled(httpFile, localFile));
+        Assert.assertTrue(manager.isSegmentedCopyEnabled(new VRL("https://www.example.com/data.bin"), localFile));
+        // SFTP and local sources are copied as stream:
+        Assert.assertFalse(manager.isSegmentedCopyEnabled(sftpFile, localFile));
+        Assert.assertFalse(manager.isSegmentedCopyEnabled(localFile, localFile));
+        // random writes to remote targets are not used:
+        Assert.assertFalse(manager.isSegmentedCopyEnabled(httpFile, sftpFile));
+        Assert.assertFalse(manager.isSegmentedCopyEnabled(localFile, sftpFile));
+
+        VRSClient client = createClient();
+        client.getVRSContext().getProperties().set(VRSContextProperties.VRS_COPY_SEGMENTS_PROP, 1);
+        Assert.assertFalse(new VRSCopyManager(client).isSegmentedCopyEnabled(httpFile, localFile));
+
+        client = createClient();
+        client.getVRSContext().getProperties().set(VRSContextProperties.VRS_COPY_SEGMENTED_SCHEMES_PROP, "sftp");
+        Assert.assertTrue(new VRSCopyManager(client).isSegmentedCopyEnabled(sftpFile, localFile));
+        Assert.assertFalse(new VRSCopyManager(client).isSegmentedCopyEnabled(httpFile, localFile));
+    }
+
+    @Test
+    public void testLocalCopyNotSegmented() throws Exception {
+        VRSClient client = createClient();
+        final AtomicInteger numSegmented = new AtomicInteger();
+
+        VRSCopyManager manager = new VRSCopyManager(client) {
+            protected boolean segmentedCopyFile(VPath sourcePath, VFSPath targetFile,
+                    ITaskMonitor monitor) throws VrsException {
+                boolean result = super.segmentedCopyFile(sourcePath, targetFile, monitor);
+                if (result) {
+                    numSegmented.incrementAndGet();
+                }
+                return result;
+            }
+        };
+
+        File source = createTempFile(64 * 1024 + 7);
+        File target = File.createTempFile("copymanager", ".target");
+        target.deleteOnExit();
+
+        manager.streamCopyFile(openPath(client, source), openPath(client, target), null);
+        Assert.assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+
+        // also not when the local fast path is skipped:
+        Assert.assertFalse(manager.segmentedCopyFile(openPath(client, source), openPath(client, target), null));
+        Assert.assertEquals(0, numSegmented.get());
+    }
+
+    @Test
+    public void testSegmentedCopy() throws Exception {
+        VRSClient client = createClient();
+
+        // enable segmented copies for local files to test the segment logic:
+        VRSCopyManager manager = new VRSCopyManager(client) {
+            protected boolean isSegmentedCopyEnabled(VRL sourceVrl, VRL targetVrl) {
+                return true;
+            }
+        };
+
+        File source = createTempFile(1024 * 1024 + 13);
+        File target = File.createTempFile("copymanager", ".target");
+        target.deleteOnExit();
+
+        Assert.assertTrue(manager.segmentedCopyFile(openPath(client, source), openPath(client, target), null));
+        Assert.assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+    }
+
+    /**
+     * Monitor which cancels the copy when the specified number of bytes has been copied.
+     */
+    public static class CancellingMonitor extends TaskMonitorAdaptor {
+
+        protected long cancelAt;
+
+        public CancellingMonitor(long cancelAt) {
+            this.cancelAt = cancelAt;
+        }
+
+        public void updateSubTaskDone(String taskName, long done) {
+            super.updateSubTaskDone(taskName, done);
+            if (done >= cancelAt) {
+                setIsCancelled();
+            }
+        }
+    }
+
+    /**
+     * Copy manager which records the last resume offset and the source stream opened for it.
+     */
+    public static class ResumeCopyManager extends VRSCopyManager {
+
+        protected AtomicLong resumeOffset = new AtomicLong(-1);
+
+        protected InputStream sourceStream;
+
+        protected long sourceStreamStart = -1;
+
+        public ResumeCopyManager(VRSClient client) {
+            super(client);
+        }
+
+        protected long getResumeOffset(VFSPath sourcePath, VFSPath targetFile, long len) throws VrsException {
+            long offset = super.getResumeOffset(sourcePath, targetFile, len);
+            resumeOffset.set(offset);
+            return offset;
+        }
+
+        protected InputStream createInputStream(VFSPath sourcePath, long offset) throws VrsException, IOException {
+            sourceStream = super.createInputStream(sourcePath, offset);
+            if (sourceStream instanceof IOUtil.RandomReaderInputStream) {
+                sourceStreamStart = ((IOUtil.RandomReaderInputStream) sourceStream).getPosition();
+            }
+            return sourceStream;
+        }
+    }
+
+    protected VRSClient createResumeClient(boolean verify) {
+        VRSClient client = createClient();
+        client.getVRSContext().getProperties().set(VRSContextProperties.VRS_COPY_RESUME_ENABLED_PROP, true);
+        client.getVRSContext().getProperties().set(VRSContextProperties.VRS_COPY_RESUME_VERIFY_PROP, verify);
+        client.getVRSContext().getProperties().set(VRSContextProperties.VRS_COPY_CHECKPOINT_INTERVAL_PROP, 64 * 1024);
+        return client;
+    }
+
+    /**
+     * Start copy and cancel it after the first megabyte.
+     */
+    protected void interruptedCopy(VRSCopyManager manager, VRSClient client, File source, File target)
+            throws Exception {
+        try {
+            manager.streamCopyFile(openPath(client, source), openPath(client, target), new CancellingMonitor(
+                    1024 * 1024));
+            Assert.fail("Copy should have been cancelled");
+        } catch (VrsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testResumeAppend() throws Exception {
+        VRSClient client = createResumeClient(false);
+        ResumeCopyManager manager = new ResumeCopyManager(client);
+
+        File source = createTempFile(3 * 1024 * 1024 + 13);
+        File target = File.createTempFile("copymanager", ".target");
+        target.delete();
+        target.deleteOnExit();
+
+        interruptedCopy(manager, client, source, target);
+        Assert.assertEquals("New copy should start at 0", 0, manager.resumeOffset.get());
+
+        VRL sourceVrl = openPath(client, source).getVRL();
+        VRL targetVrl = openPath(client, target).getVRL();
+        CopyCheckpoints.Checkpoint checkpoint = manager.getCheckpoints().get(sourceVrl, targetVrl);
+        Assert.assertNotNull("Interrupted copy must have a checkpoint", checkpoint);
+        Assert.assertFalse(checkpoint.isDone());
+        long offset = checkpoint.getOffset();
+        Assert.assertTrue("Checkpoint should be after first megabyte:" + offset, offset >= 1024 * 1024);
+        Assert.assertTrue("Checkpoint should be before end:" + offset, offset < source.length());
+        Assert.assertEquals("Flushed target should end at checkpoint", offset, target.length());
+
+        // resume: append to target.
+        manager.streamCopyFile(openPath(client, source), openPath(client, target), null);
+        Assert.assertEquals("Copy should resume at checkpoint", offset, manager.resumeOffset.get());
+        Assert.assertTrue("Random readable source must be opened at offset",
+                manager.sourceStream instanceof IOUtil.RandomReaderInputStream);
+        Assert.assertEquals("Source bytes before offset may not be read", offset, manager.sourceStreamStart);
+        Assert.assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+        Assert.assertTrue(manager.getCheckpoints().get(sourceVrl, targetVrl).isDone());
+
+        // copy again: already done.
+        manager.streamCopyFile(openPath(client, source), openPath(client, target), null);
+        Assert.assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testResumeOverwrite() throws Exception {
+        VRSClient client = createResumeClient(false);
+        ResumeCopyManager manager = new ResumeCopyManager(client);
+
+        File source = createTempFile(3 * 1024 * 1024 + 13);
+        File target = File.createTempFile("copymanager", ".target");
+        target.delete();
+        target.deleteOnExit();
+
+        interruptedCopy(manager, client, source, target);
+        long offset = target.length();
+
+        // unverified (garbage) bytes after the checkpoint:
+        try (FileOutputStream outps = new FileOutputStream(target, true)) {
+            outps.write(new byte[1000]);
+        }
+
+        manager.streamCopyFile(openPath(client, source), openPath(client, target), null);
+        Assert.assertEquals("Copy should resume at checkpoint", offset, manager.resumeOffset.get());
+        Assert.assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testResumeVerify() throws Exception {
+        VRSClient client = createResumeClient(true);
+        File source = createTempFile(3 * 1024 * 1024 + 13);
+        File target = File.createTempFile("copymanager", ".target");
+        target.delete();
+        target.deleteOnExit();
+
+        interruptedCopy(new VRSCopyManager(client), client, source, target);
+        long targetLength = target.length();
+
+        // without checkpoint, the verified target length is used.
+        ResumeCopyManager manager = new ResumeCopyManager(client);
+        manager.streamCopyFile(openPath(client, source), openPath(client, target), null);
+        Assert.assertEquals("Copy should resume at end of target", targetLength, manager.resumeOffset.get());
+        Assert.assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+
+        // corrupt the last block of a partial copy: checksum mismatch restarts the copy.
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.setLength(targetLength);
+            file.seek(targetLength - 10);
+            file.write(255);
+        }
+
+        manager = new ResumeCopyManager(client);
+        manager.streamCopyFile(openPath(client, source), openPath(client, target), null);
+        Assert.assertEquals("Corrupt target should be copied from start", 0, manager.resumeOffset.get());
+        Assert.assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyrighted 2012-2013 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").  
+ * You may not use this file except in compliance with the License. 
+ * For details, see the LICENCE.txt file location in the root directory of this 
+ * distribution or obtain the Apache License at the following location: 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ * 
+ * For the full license, see: LICENCE.txt (located in the root folder of this distribution). 
+ * ---
+ */
+// source: 
+
+package nl.esciencecenter.vbrowser.vrs.registry;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.esciencecenter.vbrowser.vrs.VRSContext;
+import nl.esciencecenter.vbrowser.vrs.VResourceSystem;
+import nl.esciencecenter.vbrowser.vrs.exceptions.VrsException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_ResourceSystemInstances {
+
+    protected static VResourceSystem createDummyResourceSystem() {
+        return (VResourceSystem) Proxy.newProxyInstance(VResourceSystem.class.getClassLoader(),
+                new Class<?>[] { VResourceSystem.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        } else if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    @Test
+    public void testCreateOnce() throws Exception {
+        final ResourceSystemInstances instances = new ResourceSystemInstances();
+        final VRSContext context = new VRSContext();
+        final AtomicInteger numCreated = new AtomicInteger();
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Callable<VResourceSystem> slowCreator = new Callable<VResourceSystem>() {
+            @Override
+            public VResourceSystem call() throws Exception {
+                numCreated.incrementAndGet();
+                creating.countDown();
+                release.await();
+                return createDummyResourceSystem();
+            }
+        };
+
+        final VResourceSystem results[] = new VResourceSystem[2];
+        Thread threads[] = new Thread[2];
+
+        for (int i = 0; i < 2; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        results[index] = instances.getOrCreateResourceSystem(context, "slow", slowCreator);
+                    } catch (VrsException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        Assert.assertTrue("Creator wasn't called.", creating.await(10, TimeUnit.SECONDS));
+        Assert.assertNull("Resource system still being created must not be returned.",
+                instances.getResourceSystem(context, "slow"));
+
+        // other resource systems may not be blocked by the slow creation.
+        VResourceSystem other = instances.getOrCreateResourceSystem(context, "other", new Callable<VResourceSystem>() {
+            @Override
+            public VResourceSystem call() throws Exception {
+                return createDummyResourceSystem();
+            }
+        });
+        Assert.assertNotNull(other);
+        Assert.assertSame(other, instances.getResourceSystem(context, "other"));
+
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        Assert.assertEquals("Creator must be called only once.", 1, numCreated.get());
+        Assert.assertNotNull(results[0]);
+        Assert.assertSame(results[0], results[1]);
+        Assert.assertEquals(2, instances.getResourceSystemsFor(context).size());
+
+        instances.unregisterResourceSystemsFor(context);
+        Assert.assertEquals(0, instances.getResourceSystemsFor(context).size());
+    }
+
+    @Test
+    public void testRetryAfterFailure() throws Exception {
+        ResourceSystemInstances instances = new ResourceSystemInstances();
+        VRSContext context = new VRSContext();
+
+        try {
+            instances.getOrCreateResourceSystem(context, "failing", new Callable<VResourceSystem>() {
+                @Override
+                public VResourceSystem call() throws Exception {
+                    throw new VrsException("Connection failed");
+                }
+            });
+            Assert.fail("Exception expected.");
+        } catch (VrsException e) {
+            Assert.assertEquals("Connection failed", e.getMessage());
+        }
+
+        VResourceSystem resourceSystem = instances.getOrCreateResourceSystem(context, "failing",
+                new Callable<VResourceSystem>() {
+                    @Override
+                    public VResourceSystem call() throws Exception {
+                        return createDummyResourceSystem();
+                    }
+                });
+        Assert.assertNotNull(resourceSystem);
+    }
+
+}
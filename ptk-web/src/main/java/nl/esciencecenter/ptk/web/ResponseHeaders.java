@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.web;
+
+import java.util.Date;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+/**
+ * Resource meta data from the headers of a HTTP response, typically from a HEAD request.
+ * 
+ * @see WebClient#doHead(java.net.URI)
+ */
+public class ResponseHeaders {
+
+    /**
+     * Parse HTTP date header value.
+     * 
+     * @return time in milliseconds or -1 if the value is null or not a valid HTTP date.
+     */
+    public static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            return DateUtils.parseDate(value).getTime();
+        } catch (DateParseException e) {
+            return -1;
+        }
+    }
+
+    public static String formatDate(long time) {
+        return DateUtils.formatDate(new Date(time));
+    }
+
+    protected static String getHeaderValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return (header != null) ? header.getValue() : null;
+    }
+
+    // === Instance ===
+
+    private int httpStatus;
+
+    private String contentType;
+
+    private long contentLength = -1;
+
+    private long lastModified = -1;
+
+    private String etag;
+
+    private String acceptRanges;
+
+    private String cacheControl;
+
+    public ResponseHeaders(HttpResponse response) {
+        this.httpStatus = response.getStatusLine().getStatusCode();
+        this.contentType = getHeaderValue(response, WebConst.HEADER_CONTENT_TYPE);
+        this.lastModified = parseDate(getHeaderValue(response, WebConst.HEADER_LAST_MODIFIED));
+        this.etag = getHeaderValue(response, WebConst.HEADER_ETAG);
+        this.acceptRanges = getHeaderValue(response, WebConst.HEADER_ACCEPT_RANGES);
+        this.cacheControl = getHeaderValue(response, WebConst.HEADER_CACHE_CONTROL);
+
+        String lengthStr = getHeaderValue(response, WebConst.HEADER_CONTENT_LENGTH);
+        if (lengthStr != null) {
+            try {
+                this.contentLength = Long.parseLong(lengthStr.trim());
+            } catch (NumberFormatException e) {
+                this.contentLength = -1;
+            }
+        }
+    }
+
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    /**
+     * @return Full Content-Type header value, for example "text/html; charset=UTF-8".
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return mime type part of the Content-Type or null if not specified.
+     */
+    public String getMimeType() {
+        if (contentType == null) {
+            return null;
+        }
+
+        String mimeType = contentType.split(";")[0].trim();
+        return (mimeType.length() > 0) ? mimeType : null;
+    }
+
+    /**
+     * @return charset parameter of the Content-Type or null if not specified.
+     */
+    public String getCharset() {
+        if (contentType == null) {
+            return null;
+        }
+
+        String parts[] = contentType.split(";");
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (part.toLowerCase().startsWith("charset=")) {
+                return part.substring("charset=".length()).replace("\"", "").trim();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return content length or -1 if unknown.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return Last-Modified time in milliseconds or -1 if unknown.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * @return value for an "If-Range" header: the entity tag if it is a strong one, otherwise the
+     *         Last-Modified date, or null if there is no usable validator. Servers must ignore a weak
+     *         entity tag in If-Range (RFC 7233) and would reply with the complete resource.
+     */
+    public String getIfRangeValidator() {
+        if ((etag != null) && (isWeakETag(etag) == false)) {
+            return etag;
+        }
+
+        if (lastModified >= 0) {
+            return formatDate(lastModified);
+        }
+
+        return null;
+    }
+
+    public static boolean isWeakETag(String etag) {
+        return (etag != null) && (etag.startsWith("W/"));
+    }
+
+    public String getCacheControl() {
+        return cacheControl;
+    }
+
+    /**
+     * @return true if the server advertises "Accept-Ranges: bytes".
+     */
+    public boolean acceptsByteRanges() {
+        return (acceptRanges != null) && (acceptRanges.toLowerCase().contains("bytes"));
+    }
+
+    public String toString() {
+        return "ResponseHeaders:[status:" + httpStatus + ",contentType:" + contentType
+                + ",contentLength:" + contentLength + ",lastModified:" + lastModified + ",etag:"
+                + etag + ",acceptRanges:" + acceptRanges + ",cacheControl:" + cacheControl + "]";
+    }
+
+}
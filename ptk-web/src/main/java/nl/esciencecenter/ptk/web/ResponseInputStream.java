@@ -40,6 +40,12 @@ import org.apache.http.client.methods.HttpGet;
 public class ResponseInputStream extends InputStream implements WebStream, Disposable,
         AutoCloseable {
 
+    /**
+     * Maximum number of unread bytes which are skipped when closing the stream, so that the
+     * connection can be reused. Larger remainders abort the connection.
+     */
+    public static final long MAX_DRAIN_SIZE = 64 * 1024;
+
     protected WebClient webClient;
 
     protected HttpGet getMethod;
@@ -52,6 +58,10 @@ public class ResponseInputStream extends InputStream implements WebStream, Dispo
 
     private IOException closeException;
 
+    private long bytesRead = 0;
+
+    private boolean eof = false;
+
     public ResponseInputStream(WebClient client, HttpGet getMethod, HttpEntity entity)
             throws IllegalStateException, IOException {
         this.webClient = client;
@@ -69,7 +79,13 @@ public class ResponseInputStream extends InputStream implements WebStream, Dispo
         }
 
         try {
-            return sourceStream.read();
+            int val = sourceStream.read();
+            if (val < 0) {
+                eof = true;
+            } else {
+                bytesRead++;
+            }
+            return val;
         } catch (IOException e) {
             autoClose();
             throw e;
@@ -84,7 +100,7 @@ public class ResponseInputStream extends InputStream implements WebStream, Dispo
         }
 
         try {
-            return sourceStream.read(bytes);
+            return updateRead(sourceStream.read(bytes));
         } catch (IOException e) {
             autoClose();
             throw e;
@@ -99,13 +115,35 @@ public class ResponseInputStream extends InputStream implements WebStream, Dispo
         }
 
         try {
-            return sourceStream.read(bytes, offset, length);
+            return updateRead(sourceStream.read(bytes, offset, length));
         } catch (IOException e) {
             autoClose();
             throw e;
         }
     }
 
+    private int updateRead(int numRead) {
+        if (numRead < 0) {
+            eof = true;
+        } else {
+            bytesRead += numRead;
+        }
+        return numRead;
+    }
+
+    /**
+     * Whether the remainder of the response is small enough to be read when closing, so the
+     * keep-alive connection can be reused.
+     */
+    protected boolean canReuseConnection() {
+        if (eof) {
+            return true;
+        }
+
+        long length = (responseEntity != null) ? responseEntity.getContentLength() : -1;
+        return ((length >= 0) && (length - bytesRead <= MAX_DRAIN_SIZE));
+    }
+
     @Override
     public void reset() throws IOException {
         sourceStream.reset();
@@ -183,9 +221,21 @@ public class ResponseInputStream extends InputStream implements WebStream, Dispo
 
     public void close() throws IOException {
         //
-        if (getMethod != null) {
-            getMethod.releaseConnection();
-            getMethod = null;
+        try {
+            if ((sourceStream != null) && (getMethod != null) && canReuseConnection()) {
+                // Closing the content stream skips the remainder and releases the connection back
+                // to the pool. Releasing the method first would abort the connection.
+                try {
+                    sourceStream.close();
+                } finally {
+                    sourceStream = null;
+                }
+            }
+        } finally {
+            if (getMethod != null) {
+                getMethod.releaseConnection();
+                getMethod = null;
+            }
         }
         //
         if (this.sourceStream != null) {
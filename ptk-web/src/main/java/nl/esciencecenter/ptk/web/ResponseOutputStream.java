@@ -21,14 +21,24 @@
 package nl.esciencecenter.ptk.web;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import nl.esciencecenter.ptk.object.Disposable;
+import nl.esciencecenter.ptk.web.WebException.Reason;
+import nl.esciencecenter.ptk.web.content.PipedEntity;
+
 import org.apache.http.client.methods.HttpPut;
 
 /**
- * Managed ResponseOutputStream. Under construction.
+ * Managed ResponseOutputStream for a streaming HttpPut.<br>
+ * The content is written directly to the (chunked) connection stream while the HttpPut is
+ * executed by a background thread. The upload is finished by {@link #close()}, which waits for the
+ * response and throws a WebException if the server returned an error. Use {@link #abort()} to
+ * cancel an incomplete upload.
  */
 public class ResponseOutputStream extends OutputStream implements WebStream, Disposable,
         AutoCloseable {
@@ -37,48 +47,155 @@ public class ResponseOutputStream extends OutputStream implements WebStream, Dis
 
     protected HttpPut putMethod;
 
+    protected PipedEntity entity;
+
+    protected Future<Integer> result;
+
+    /**
+     * Output stream of the connection, available when the request has been sent.
+     */
     protected OutputStream sourceStream;
 
     private URI uri;
 
-    public ResponseOutputStream(WebClient client, HttpPut putMethod) throws IllegalStateException,
-            IOException {
+    private boolean closed = false;
+
+    private long bytesWritten = 0;
+
+    private int httpStatus = -1;
+
+    public ResponseOutputStream(WebClient client, HttpPut putMethod, PipedEntity entity,
+            Future<Integer> result) {
         this.webClient = client;
         this.putMethod = putMethod;
+        this.entity = entity;
+        this.result = result;
         this.uri = putMethod.getURI();
     }
 
+    protected OutputStream getTargetStream() throws IOException {
+        if (closed) {
+            throw new IOException("ResponseOutputStream already closed:" + uri);
+        }
+
+        if (sourceStream == null) {
+            try {
+                sourceStream = entity.getOutputStream();
+            } catch (IOException e) {
+                // Request failed before the content could be written: report actual cause.
+                closed = true;
+                waitForResult();
+                throw e;
+            }
+        }
+
+        return sourceStream;
+    }
+
     @Override
     public void write(int b) throws IOException {
-        sourceStream.write(b);
+        try {
+            getTargetStream().write(b);
+            bytesWritten++;
+        } catch (IOException e) {
+            abort(e);
+            throw e;
+        }
     }
 
     @Override
     public void write(byte bytes[], int offset, int numBytes) throws IOException {
-        sourceStream.write(bytes, offset, numBytes);
+        try {
+            getTargetStream().write(bytes, offset, numBytes);
+            bytesWritten += numBytes;
+        } catch (IOException e) {
+            abort(e);
+            throw e;
+        }
     }
 
     @Override
     public void flush() throws IOException {
-        sourceStream.flush();
+        if (sourceStream != null) {
+            sourceStream.flush();
+        }
+    }
+
+    /**
+     * Finish the upload and wait for the response. The HttpClient closes the connection stream.
+     * 
+     * @throws WebException
+     *             if the upload failed or the server returned an error status.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        // empty upload: request must still be sent.
+        getTargetStream();
+        closed = true;
+        entity.writeDone();
+        httpStatus = waitForResult();
+    }
+
+    /**
+     * Cancel the upload and abort the connection. The server receives an incomplete chunked
+     * request.
+     */
+    public void abort() {
+        abort(new IOException("Upload aborted:" + uri));
+    }
+
+    protected void abort(IOException reason) {
+        closed = true;
+        entity.abort(reason);
+        putMethod.abort();
+    }
+
+    protected int waitForResult() throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new InterruptedIOException("Interrupted while waiting for response of:" + uri);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new WebException(Reason.IOEXCEPTION, "Upload failed:" + uri + "\n"
+                    + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * @return HTTP status of a completed upload or -1 if the upload isn't finished.
+     */
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
     }
 
     /**
-     * Close the underlying InputStream. If the InputStream was already closed or an IOException
-     * occure this method will return false. If the close was successful the method return true
+     * Finish the upload. If the upload failed or the server returned an error this method will
+     * return false. If the close was successful the method return true
      * 
      * @returns - true if the close was successful, false if the stream was already close or an
      *          Exception occured.
      */
     public boolean autoClose() {
         //
-        if ((this.sourceStream == null) && (putMethod == null)) {
+        if (closed) {
             return false;
         }
         //
         try {
             close();
-            //webClient.getLogger().debugPrintf("autoClose(): successful for:"+this);
             return true;
         } catch (IOException e) {
             return false;
@@ -89,13 +206,18 @@ public class ResponseOutputStream extends OutputStream implements WebStream, Dis
         autoClose();
     }
 
+    /**
+     * Never complete a (possibly incomplete) upload from the finalizer.
+     */
     public void finalize() {
-        autoClose();
+        if (closed == false) {
+            abort();
+        }
     }
 
     public String toString() {
-        return "<ResponseOutputStream:> open=" + (sourceStream == null ? "open" : "close")
-                + ", uri=" + uri;
+        return "<ResponseOutputStream:> open=" + (closed ? "false" : "true") + ", uri=" + uri
+                + ", bytesWritten=" + bytesWritten;
     }
 
 }
@@ -0,0 +1,797 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.esciencecenter.ptk.io.FSPath;
+import nl.esciencecenter.ptk.io.FSUtil;
+import nl.esciencecenter.ptk.util.StringUtil;
+import nl.esciencecenter.ptk.util.logging.PLogger;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * On-disk cache for HTTP GET responses.<br>
+ * Responses with an ETag or Last-Modified validator are stored while they are being read. When the
+ * resource is opened again, a fresh entry (Cache-Control max-age or Expires) is read from disk
+ * without contacting the server, a stale entry is revalidated with a conditional GET and read from
+ * disk if the server replies with "304 Not Modified". Responses with "Cache-Control: no-store" or
+ * "private", a Vary header or to a request with an Authorization header are never stored, "no-cache"
+ * entries are always revalidated.<br>
+ * Each entry consists of a body file and a meta data file, named after the SHA-1 hash of the URI.
+ * The least recently used entries are removed when the total size exceeds the maximum cache size.
+ * 
+ * @see WebClient#setWebCache(WebCache)
+ */
+public class WebCache {
+
+    private static PLogger logger = PLogger.getLogger(WebCache.class);
+
+    public static final long DEFAULT_MAX_CACHE_SIZE = 1024L * 1024 * 1024;
+
+    public static final long DEFAULT_MAX_ENTRY_SIZE = 256L * 1024 * 1024;
+
+    protected static final String META_EXT = ".meta";
+
+    protected static final String BODY_EXT = ".body";
+
+    protected static final String TEMP_EXT = ".tmp";
+
+    // meta data properties
+    private static final String PROP_URI = "uri";
+
+    private static final String PROP_ETAG = "etag";
+
+    private static final String PROP_LAST_MODIFIED = "lastModified";
+
+    private static final String PROP_CONTENT_TYPE = "contentType";
+
+    private static final String PROP_CONTENT_LENGTH = "contentLength";
+
+    private static final String PROP_STORED_TIME = "storedTime";
+
+    private static final String PROP_EXPIRES = "expires";
+
+    private static Map<String, WebCache> webCaches = new HashMap<String, WebCache>();
+
+    /**
+     * Returns shared WebCache for the cache directory. Multiple WebClients can use the same cache.
+     */
+    public static WebCache getWebCache(FSPath cacheDir, long maxCacheSize) throws IOException {
+        synchronized (webCaches) {
+            String key = cacheDir.getPathname();
+            WebCache cache = webCaches.get(key);
+
+            if (cache == null) {
+                cache = new WebCache(cacheDir, maxCacheSize, Math.min(DEFAULT_MAX_ENTRY_SIZE,
+                        maxCacheSize / 4));
+                webCaches.put(key, cache);
+            }
+
+            return cache;
+        }
+    }
+
+    /**
+     * Whether the response to the request may be stored. Responses to requests with an
+     * Authorization header may contain user specific content and are not stored.
+     * 
+     * @see #isCacheable(HttpResponse)
+     */
+    public static boolean isCacheable(HttpRequest request, HttpResponse response) {
+        if ((request != null) && (request.containsHeader(WebConst.HEADER_AUTHORIZATION))) {
+            return false;
+        }
+        return isCacheable(response);
+    }
+
+    /**
+     * Whether the response may be stored: a complete "200 OK" response which may be stored in a
+     * shared cache and which has a validator or explicit freshness. Entries are stored by URI only,
+     * so responses with a Vary header are not stored.
+     */
+    public static boolean isCacheable(HttpResponse response) {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            return false;
+        }
+
+        String cacheControl = ResponseHeaders.getHeaderValue(response,
+                WebConst.HEADER_CACHE_CONTROL);
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase();
+                if ((directive.equals("no-store")) || (directive.startsWith("private"))) {
+                    return false;
+                }
+            }
+        }
+
+        if (response.getFirstHeader(WebConst.HEADER_VARY) != null) {
+            return false;
+        }
+
+        return (response.getFirstHeader(WebConst.HEADER_ETAG) != null)
+                || (response.getFirstHeader(WebConst.HEADER_LAST_MODIFIED) != null)
+                || (getExpires(response, System.currentTimeMillis()) > System.currentTimeMillis());
+    }
+
+    /**
+     * Returns time until when a response is fresh. Cache-Control max-age takes precedence over
+     * Expires.
+     * 
+     * @return expiration time in milliseconds, 0 if the response must always be revalidated.
+     */
+    public static long getExpires(HttpResponse response, long now) {
+        String cacheControl = ResponseHeaders.getHeaderValue(response,
+                WebConst.HEADER_CACHE_CONTROL);
+
+        if (cacheControl != null) {
+            long maxAge = -1;
+
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase();
+
+                if (directive.equals("no-cache")) {
+                    return 0;
+                } else if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAge = Long.parseLong(directive.substring("max-age=".length()).trim());
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+
+            if (maxAge >= 0) {
+                return now + maxAge * 1000;
+            }
+        }
+
+        long expires = ResponseHeaders.parseDate(ResponseHeaders.getHeaderValue(response,
+                WebConst.HEADER_EXPIRES));
+        return (expires > 0) ? expires : 0;
+    }
+
+    /**
+     * @return true if the response specifies its freshness by Cache-Control max-age, no-cache or
+     *         an Expires header.
+     */
+    public static boolean hasFreshness(HttpResponse response) {
+        if (response.getFirstHeader(WebConst.HEADER_EXPIRES) != null) {
+            return true;
+        }
+
+        String cacheControl = ResponseHeaders.getHeaderValue(response,
+                WebConst.HEADER_CACHE_CONTROL);
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase();
+                if ((directive.equals("no-cache")) || (directive.startsWith("max-age="))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Meta data of a cached response.
+     */
+    public static class CacheEntry {
+
+        protected String key;
+
+        protected URI uri;
+
+        protected String etag;
+
+        protected String lastModified;
+
+        protected String contentType;
+
+        protected long contentLength = -1;
+
+        protected long storedTime;
+
+        protected long expires;
+
+        protected FSPath bodyFile;
+
+        protected CacheEntry(String key, URI uri) {
+            this.key = key;
+            this.uri = uri;
+        }
+
+        public URI getURI() {
+            return uri;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        public long getStoredTime() {
+            return storedTime;
+        }
+
+        /**
+         * @return true if the entry may be used without revalidation.
+         */
+        public boolean isFresh() {
+            return System.currentTimeMillis() < expires;
+        }
+
+        public String toString() {
+            return "CacheEntry:[uri:" + uri + ",etag:" + etag + ",lastModified:" + lastModified
+                    + ",contentLength:" + contentLength + ",fresh:" + isFresh() + "]";
+        }
+    }
+
+    /**
+     * Stores the content while it is read. The entry is only added to the cache when the complete
+     * response has been read.
+     */
+    protected class CachingInputStream extends FilterInputStream {
+
+        private CacheEntry entry;
+
+        private FSPath tempFile;
+
+        private OutputStream cacheOutput;
+
+        private long numWritten = 0;
+
+        protected CachingInputStream(CacheEntry entry, InputStream source) {
+            super(source);
+            this.entry = entry;
+
+            try {
+                tempFile = cacheDir.resolve(entry.key + "-" + tempCounter.incrementAndGet()
+                        + TEMP_EXT);
+                cacheOutput = FSUtil.getDefault().createOutputStream(tempFile, false);
+            } catch (IOException e) {
+                logger.warnPrintf("Couldn't create cache file for:%s:%s\n", entry.uri, e);
+                cacheOutput = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int val = super.read();
+
+            if (val < 0) {
+                commit();
+            } else if (cacheOutput != null) {
+                write(new byte[] { (byte) val }, 0, 1);
+            }
+
+            return val;
+        }
+
+        @Override
+        public int read(byte bytes[], int offset, int length) throws IOException {
+            int numRead = super.read(bytes, offset, length);
+
+            if (numRead < 0) {
+                commit();
+            } else {
+                write(bytes, offset, numRead);
+            }
+
+            return numRead;
+        }
+
+        @Override
+        public long skip(long numBytes) throws IOException {
+            // skipped content can't be stored.
+            abandon();
+            return super.skip(numBytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                abandon();
+            }
+        }
+
+        private void write(byte bytes[], int offset, int length) {
+            if (cacheOutput == null) {
+                return;
+            }
+
+            try {
+                cacheOutput.write(bytes, offset, length);
+                numWritten += length;
+
+                if (numWritten > maxEntrySize) {
+                    abandon();
+                }
+            } catch (IOException e) {
+                logger.warnPrintf("Failed to write cache file:%s:%s\n", tempFile, e);
+                abandon();
+            }
+        }
+
+        private void commit() {
+            if (cacheOutput == null) {
+                return;
+            }
+
+            try {
+                cacheOutput.close();
+                cacheOutput = null;
+
+                if ((entry.contentLength >= 0) && (entry.contentLength != numWritten)) {
+                    logger.warnPrintf("Content length mismatch for:%s (%d!=%d)\n", entry.uri,
+                            entry.contentLength, numWritten);
+                    tempFile.delete();
+                } else {
+                    entry.contentLength = numWritten;
+                    storeEntry(entry, tempFile);
+                }
+            } catch (IOException e) {
+                logger.warnPrintf("Failed to store cache entry for:%s:%s\n", entry.uri, e);
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (cacheOutput != null) {
+                try {
+                    cacheOutput.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                cacheOutput = null;
+            }
+
+            try {
+                if ((tempFile != null) && (tempFile.exists())) {
+                    tempFile.delete();
+                }
+            } catch (IOException e) {
+                logger.warnPrintf("Failed to delete cache file:%s:%s\n", tempFile, e);
+            }
+        }
+    }
+
+    // === Instance ===
+
+    private FSPath cacheDir;
+
+    private long maxCacheSize;
+
+    private long maxEntrySize;
+
+    private long totalSize = 0;
+
+    private AtomicLong tempCounter = new AtomicLong();
+
+    // === Statistics ===
+
+    private AtomicLong numHits = new AtomicLong();
+
+    private AtomicLong numRevalidated = new AtomicLong();
+
+    private AtomicLong numMisses = new AtomicLong();
+
+    private AtomicLong numStored = new AtomicLong();
+
+    private AtomicLong numEvicted = new AtomicLong();
+
+    /**
+     * Create new cache. Use {@link #getWebCache(FSPath, long)} to share a cache directory.
+     * 
+     * @param cacheDir
+     *            - cache directory, is created if it doesn't exist.
+     * @param maxCacheSize
+     *            - maximum total size of the cached content.
+     * @param maxEntrySize
+     *            - maximum size of a single response.
+     */
+    public WebCache(FSPath cacheDir, long maxCacheSize, long maxEntrySize) throws IOException {
+        this.cacheDir = cacheDir;
+        this.maxCacheSize = maxCacheSize;
+        this.maxEntrySize = maxEntrySize;
+
+        if (cacheDir.exists() == false) {
+            FSUtil.getDefault().mkdirs(cacheDir);
+        }
+
+        // cleanup incomplete downloads and determine size.
+        for (FSPath file : cacheDir.list()) {
+            String name = file.getBasename();
+            if (name.endsWith(TEMP_EXT)) {
+                file.delete();
+            } else if (name.endsWith(BODY_EXT)) {
+                totalSize += file.getFileSize();
+            }
+        }
+    }
+
+    public FSPath getCacheDir() {
+        return cacheDir;
+    }
+
+    protected String createKey(URI uri) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return StringUtil.toHexString(digest.digest(uri.toString().getBytes("UTF-8")), false);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("Failed to create cache key for:" + uri, e);
+        }
+    }
+
+    /**
+     * Returns cached entry for the URI or null if not cached.
+     */
+    public CacheEntry getEntry(URI uri) {
+        String key = createKey(uri);
+
+        try {
+            FSPath metaFile = cacheDir.resolve(key + META_EXT);
+            FSPath bodyFile = cacheDir.resolve(key + BODY_EXT);
+
+            if ((metaFile.exists() == false) || (bodyFile.exists() == false)) {
+                numMisses.incrementAndGet();
+                return null;
+            }
+
+            Properties props = new Properties();
+            try (InputStream inps = FSUtil.getDefault().createInputStream(metaFile)) {
+                props.load(inps);
+            }
+
+            if (uri.toString().equals(props.getProperty(PROP_URI)) == false) {
+                numMisses.incrementAndGet();
+                return null; // hash collision.
+            }
+
+            CacheEntry entry = new CacheEntry(key, uri);
+            entry.etag = props.getProperty(PROP_ETAG);
+            entry.lastModified = props.getProperty(PROP_LAST_MODIFIED);
+            entry.contentType = props.getProperty(PROP_CONTENT_TYPE);
+            entry.contentLength = Long.parseLong(props.getProperty(PROP_CONTENT_LENGTH, "-1"));
+            entry.storedTime = Long.parseLong(props.getProperty(PROP_STORED_TIME, "0"));
+            entry.expires = Long.parseLong(props.getProperty(PROP_EXPIRES, "0"));
+            entry.bodyFile = bodyFile;
+
+            // access time for LRU eviction:
+            long now = System.currentTimeMillis();
+            Files.setLastModifiedTime(metaFile.path(), FileTime.fromMillis(now));
+            return entry;
+        } catch (IOException | NumberFormatException e) {
+            logger.warnPrintf("Removing invalid cache entry for:%s:%s\n", uri, e);
+            removeEntry(key);
+            numMisses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Add validators of the cached entry to a (GET) request.
+     */
+    public void addConditionalHeaders(HttpRequest request, CacheEntry entry) {
+        if (entry.etag != null) {
+            request.setHeader(WebConst.HEADER_IF_NONE_MATCH, entry.etag);
+        }
+
+        if (entry.lastModified != null) {
+            request.setHeader(WebConst.HEADER_IF_MODIFIED_SINCE, entry.lastModified);
+        }
+    }
+
+    /**
+     * Create entity to read the cached content from disk.
+     */
+    public HttpEntity createEntity(CacheEntry entry) {
+        numHits.incrementAndGet();
+        FileEntity entity = new FileEntity(entry.bodyFile.toJavaFile());
+
+        if (entry.contentType != null) {
+            entity.setContentType(entry.contentType);
+        }
+
+        return entity;
+    }
+
+    /**
+     * Wrap the entity of a cacheable response so that the content is stored while it is read.
+     * 
+     * @param request
+     *            - the request as sent, including headers added by the HttpClient.
+     * @return wrapped entity or the original entity if the response can't be cached.
+     */
+    public HttpEntity wrapEntity(URI uri, HttpRequest request, HttpResponse response,
+            HttpEntity entity) {
+        if ((entity == null) || (isCacheable(request, response) == false)
+                || (entity.getContentLength() > maxEntrySize)) {
+            return entity;
+        }
+
+        long now = System.currentTimeMillis();
+        final CacheEntry entry = new CacheEntry(createKey(uri), uri);
+        entry.etag = ResponseHeaders.getHeaderValue(response, WebConst.HEADER_ETAG);
+        entry.lastModified = ResponseHeaders.getHeaderValue(response,
+                WebConst.HEADER_LAST_MODIFIED);
+        entry.contentType = ResponseHeaders.getHeaderValue(response,
+                WebConst.HEADER_CONTENT_TYPE);
+        entry.contentLength = entity.getContentLength();
+        entry.storedTime = now;
+        entry.expires = getExpires(response, now);
+
+        return new HttpEntityWrapper(entity) {
+            @Override
+            public InputStream getContent() throws IOException {
+                return new CachingInputStream(entry, super.getContent());
+            }
+        };
+    }
+
+    /**
+     * Update cached entry after a "304 Not Modified" response. The cached freshness is kept unless
+     * the response specifies a new one.
+     */
+    public void updateEntry(CacheEntry entry, HttpResponse notModifiedResponse) {
+        numRevalidated.incrementAndGet();
+
+        long now = System.currentTimeMillis();
+        String etag = ResponseHeaders.getHeaderValue(notModifiedResponse, WebConst.HEADER_ETAG);
+        if (etag != null) {
+            entry.etag = etag;
+        }
+
+        String lastModified = ResponseHeaders.getHeaderValue(notModifiedResponse,
+                WebConst.HEADER_LAST_MODIFIED);
+        if (lastModified != null) {
+            entry.lastModified = lastModified;
+        }
+
+        if (hasFreshness(notModifiedResponse)) {
+            entry.storedTime = now;
+            entry.expires = getExpires(notModifiedResponse, now);
+        }
+
+        try {
+            synchronized (this) {
+                // entry might have been evicted meanwhile.
+                if (entry.bodyFile.exists()) {
+                    writeMeta(entry);
+                }
+            }
+        } catch (IOException e) {
+            logger.warnPrintf("Failed to update cache entry for:%s:%s\n", entry.uri, e);
+        }
+    }
+
+    protected synchronized void storeEntry(CacheEntry entry, FSPath tempFile) throws IOException {
+        FSPath bodyFile = cacheDir.resolve(entry.key + BODY_EXT);
+
+        if (bodyFile.exists()) {
+            totalSize -= bodyFile.getFileSize();
+        }
+
+        moveFile(tempFile, bodyFile);
+
+        entry.bodyFile = bodyFile;
+        writeMeta(entry);
+
+        totalSize += entry.contentLength;
+        numStored.incrementAndGet();
+        logger.debugPrintf("storeEntry(): %s\n", entry);
+
+        if (totalSize > maxCacheSize) {
+            evict(maxCacheSize);
+        }
+    }
+
+    /**
+     * Writes the meta data to a temporary file which replaces the meta data file, so that
+     * {@link #getEntry(URI)} never reads a partially written file.
+     */
+    protected void writeMeta(CacheEntry entry) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(PROP_URI, entry.uri.toString());
+        setProperty(props, PROP_ETAG, entry.etag);
+        setProperty(props, PROP_LAST_MODIFIED, entry.lastModified);
+        setProperty(props, PROP_CONTENT_TYPE, entry.contentType);
+        props.setProperty(PROP_CONTENT_LENGTH, Long.toString(entry.contentLength));
+        props.setProperty(PROP_STORED_TIME, Long.toString(entry.storedTime));
+        props.setProperty(PROP_EXPIRES, Long.toString(entry.expires));
+
+        FSPath metaFile = cacheDir.resolve(entry.key + META_EXT);
+        FSPath tempFile = cacheDir.resolve(entry.key + "-" + tempCounter.incrementAndGet()
+                + TEMP_EXT);
+        try {
+            try (OutputStream outps = FSUtil.getDefault().createOutputStream(tempFile, false)) {
+                props.store(outps, null);
+            }
+            moveFile(tempFile, metaFile);
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private void moveFile(FSPath source, FSPath target) throws IOException {
+        try {
+            Files.move(source.path(), target.path(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.path(), target.path(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void setProperty(Properties props, String name, String value) {
+        if (value != null) {
+            props.setProperty(name, value);
+        }
+    }
+
+    /**
+     * Remove cached entry for the URI.
+     */
+    public void removeEntry(URI uri) {
+        removeEntry(createKey(uri));
+    }
+
+    protected synchronized void removeEntry(String key) {
+        try {
+            FSPath bodyFile = cacheDir.resolve(key + BODY_EXT);
+            if (bodyFile.exists()) {
+                totalSize -= bodyFile.getFileSize();
+                bodyFile.delete();
+            }
+
+            FSPath metaFile = cacheDir.resolve(key + META_EXT);
+            if (metaFile.exists()) {
+                metaFile.delete();
+            }
+        } catch (IOException e) {
+            logger.warnPrintf("Failed to remove cache entry:%s:%s\n", key, e);
+        }
+    }
+
+    /**
+     * Remove least recently used entries until the total size is below the specified size.
+     */
+    public synchronized void evict(long maxSize) {
+        List<FSPath> metaFiles = new ArrayList<FSPath>();
+        final Map<FSPath, Long> accessTimes = new HashMap<FSPath, Long>();
+
+        try {
+            for (FSPath file : cacheDir.list()) {
+                if (file.getBasename().endsWith(META_EXT)) {
+                    metaFiles.add(file);
+                    accessTimes.put(file, file.getModificationTimeMillies());
+                }
+            }
+        } catch (IOException e) {
+            logger.warnPrintf("Failed to list cache directory:%s:%s\n", cacheDir, e);
+            return;
+        }
+
+        Collections.sort(metaFiles, new Comparator<FSPath>() {
+            public int compare(FSPath file1, FSPath file2) {
+                return Long.compare(accessTimes.get(file1), accessTimes.get(file2));
+            }
+        });
+
+        for (FSPath metaFile : metaFiles) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            String name = metaFile.getBasename();
+            removeEntry(name.substring(0, name.length() - META_EXT.length()));
+            numEvicted.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        evict(-1);
+    }
+
+    // =========
+    // Metrics
+    // =========
+
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /** @return number of responses read from the cache, either fresh or revalidated. */
+    public long getNumHits() {
+        return numHits.get();
+    }
+
+    /** @return number of "304 Not Modified" responses. */
+    public long getNumRevalidated() {
+        return numRevalidated.get();
+    }
+
+    public long getNumMisses() {
+        return numMisses.get();
+    }
+
+    public long getNumStored() {
+        return numStored.get();
+    }
+
+    public long getNumEvicted() {
+        return numEvicted.get();
+    }
+
+    public String toString() {
+        return "WebCache:[cacheDir:" + cacheDir + ",size:" + getTotalSize() + "/" + maxCacheSize
+                + ",hits:" + numHits + ",revalidated:" + numRevalidated + ",misses:" + numMisses
+                + ",stored:" + numStored + ",evicted:" + numEvicted + "]";
+    }
+
+}
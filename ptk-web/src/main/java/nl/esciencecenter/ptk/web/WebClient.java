@@ -26,6 +26,8 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 
 import javax.net.ssl.SSLContext;
 
@@ -48,22 +50,24 @@ import nl.esciencecenter.ptk.web.WebConfig.AuthenticationType;
 import nl.esciencecenter.ptk.web.WebException.Reason;
 import nl.esciencecenter.ptk.web.content.ByteBufferBody;
 import nl.esciencecenter.ptk.web.content.FSNodeBody;
+import nl.esciencecenter.ptk.web.content.PipedEntity;
 
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.AbstractVerifier;
 import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
 import org.apache.http.conn.ssl.SSLSocketFactory;
@@ -72,9 +76,12 @@ import org.apache.http.cookie.Cookie;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 
 /**
  * Generic Rest and Web Service client.<br>
@@ -120,6 +127,15 @@ public class WebClient {
     // status:
     private DefaultHttpClient httpClient;
 
+    private WebConnectionPool connectionPool;
+
+    /**
+     * Keep SSLSocketFactory, and thus the SSLContext, between connects to reuse TLS sessions.
+     */
+    private SSLSocketFactory sslSocketFactory;
+
+    private WebCache webCache;
+
     private String jsessionID;
 
     private int lastHttpStatus;
@@ -202,6 +218,7 @@ public class WebClient {
     }
 
     public void setCertificateStore(CertificateStore certStore) throws CertificateStoreException {
+        this.sslSocketFactory = null;
         initSSL(certStore, false);
     }
 
@@ -233,11 +250,13 @@ public class WebClient {
 
     public boolean connect() throws WebException {
         //
-        httpClient = new DefaultHttpClient();
-
         if (config.isMultiThreaded()) {
-            ClientConnectionManager connectionManager = new PoolingClientConnectionManager();
-            httpClient = new DefaultHttpClient(connectionManager);
+            if ((connectionPool == null) || (connectionPool.isShutdown())) {
+                connectionPool = new WebConnectionPool(config.getConnectionPoolOptions());
+            }
+            httpClient = connectionPool.createHttpClient();
+        } else {
+            httpClient = new DefaultHttpClient();
         }
 
         try {
@@ -386,7 +405,12 @@ public class WebClient {
         // When the HttpClient instance is no longer needed,
         // shut down the connection manager to ensure
         // immediate deallocation of all system resources
-        httpClient.getConnectionManager().shutdown();
+        if (connectionPool != null) {
+            connectionPool.shutdown();
+            connectionPool = null;
+        } else {
+            httpClient.getConnectionManager().shutdown();
+        }
         this.httpClient = null;
     }
 
@@ -442,24 +466,50 @@ public class WebClient {
     }
 
     protected void initHTTPS() throws CertificateStoreException {
-        // Create SSL Socket factory with custom Certificate Store.
-        // Default protocol is TLS (newer when SSL).
-        // SSLContext sslContext = certStore.createSSLContext("SSLv3");
-        SSLContext sslContext = certStore.createSSLContext(SslConst.PROTOCOL_TLS);
-        AbstractVerifier verifier;
-
-        if (config.sslOptions.disable_strict_hostname_checking) {
-            verifier = new AllowAllHostnameVerifier();
-        } else {
-            verifier = new StrictHostnameVerifier();
+        // TLS sessions are cached per SSLContext: reuse the socket factory.
+        if (sslSocketFactory == null) {
+            // Create SSL Socket factory with custom Certificate Store.
+            // Default protocol is TLS (newer when SSL).
+            // SSLContext sslContext = certStore.createSSLContext("SSLv3");
+            SSLContext sslContext = certStore.createSSLContext(SslConst.PROTOCOL_TLS);
+            AbstractVerifier verifier;
+
+            if (config.sslOptions.disable_strict_hostname_checking) {
+                verifier = new AllowAllHostnameVerifier();
+            } else {
+                verifier = new StrictHostnameVerifier();
+            }
+
+            sslSocketFactory = new SSLSocketFactory(sslContext, verifier);
         }
 
-        // Create and register HTTPS socket factory
-        SSLSocketFactory socketFactory = new SSLSocketFactory(sslContext, verifier);
-        SchemeRegistry schemeRegistry = new SchemeRegistry();
-        schemeRegistry.register(new Scheme("https", config.getPort(), socketFactory));
+        // Register HTTPS socket factory
         ClientConnectionManager manager = this.httpClient.getConnectionManager();
-        manager.getSchemeRegistry().register(new Scheme("https", config.getPort(), socketFactory));
+        manager.getSchemeRegistry().register(
+                new Scheme("https", config.getPort(), sslSocketFactory));
+    }
+
+    /**
+     * Set on-disk cache for HttpGet responses or null to disable caching.
+     * 
+     * @see #doGetInputStream(URI)
+     */
+    public void setWebCache(WebCache cache) {
+        this.webCache = cache;
+    }
+
+    public WebCache getWebCache() {
+        return webCache;
+    }
+
+    /**
+     * Returns the connection pool of a multi-threaded WebClient. Use the pool statistics to tune
+     * the ConnectionPoolOptions of the WebConfig.
+     * 
+     * @return WebConnectionPool or null if this WebClient isn't multi-threaded or not connected.
+     */
+    public WebConnectionPool getConnectionPool() {
+        return connectionPool;
     }
 
     // ========================================================================
@@ -732,22 +782,65 @@ public class WebClient {
         return doGetInputStream(resolve(query));
     }
 
+    /**
+     * Performs a HttpGet and returns the content as stream. If a WebCache has been set, the
+     * content is read from the cache if it is still valid or if the server replies with
+     * "304 Not Modified". Cacheable responses are stored while they are read.
+     */
     public ResponseInputStream doGetInputStream(URI uri) throws WebException {
         //
         HttpGet getMethod = new HttpGet(uri);
+        WebCache.CacheEntry cacheEntry = null;
+
+        if (webCache != null) {
+            cacheEntry = webCache.getEntry(uri);
+
+            if ((cacheEntry != null) && (cacheEntry.isFresh())) {
+                ResponseInputStream inps = createCachedInputStream(getMethod, cacheEntry);
+                if (inps != null) {
+                    return inps;
+                }
+                cacheEntry = null;
+            }
+
+            if (cacheEntry != null) {
+                webCache.addConditionalHeaders(getMethod, cacheEntry);
+            }
+        }
 
         try {
             logger.debugPrintf("doGetInputStream()[thread:%d]:'%s'\n", Thread.currentThread()
                     .getId(), getMethod.getRequestLine());
 
             HttpResponse response;
-            response = httpClient.execute(getMethod);
+            HttpContext context = new BasicHttpContext();
+            response = httpClient.execute(getMethod, context);
 
             logger.debugPrintf("--------------- HttpGet Response -------------------------\n");
             logger.debugPrintf(" - statusLine: %s\n", response.getStatusLine());
 
             HttpEntity entity = response.getEntity();
 
+            if ((cacheEntry != null)
+                    && (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED)) {
+                EntityUtils.consume(entity);
+                webCache.updateEntry(cacheEntry, response);
+                ResponseInputStream inps = createCachedInputStream(getMethod, cacheEntry);
+                if (inps != null) {
+                    return inps;
+                }
+                // cache file removed: get again without conditional headers.
+                return doGetInputStream(uri);
+            }
+
+            if (webCache != null) {
+                // request as sent, including an Authorization header added by the HttpClient.
+                HttpRequest sentRequest = (HttpRequest) context
+                        .getAttribute(ExecutionContext.HTTP_REQUEST);
+                entity = webCache.wrapEntity(uri, (sentRequest != null) ? sentRequest : getMethod,
+                        response, entity);
+            }
+
             if (entity == null) {
                 logger.debugPrintf("NULL Entity\n");
                 getMethod.releaseConnection();
@@ -765,8 +858,163 @@ public class WebClient {
             return responseInps;
         } catch (ClientProtocolException e) {
             throw new WebException(WebException.Reason.HTTP_CLIENTEXCEPTION, e.getMessage(), e);
+        } catch (WebException e) {
+            // error response: release connection.
+            getMethod.releaseConnection();
+            if ((webCache != null) && (e.getReason() == Reason.RESOURCE_NOT_FOUND)) {
+                webCache.removeEntry(uri);
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new WebException(WebException.Reason.IOEXCEPTION, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return stream to read the cached content or null if the cached file has been removed.
+     */
+    protected ResponseInputStream createCachedInputStream(HttpGet getMethod,
+            WebCache.CacheEntry cacheEntry) {
+        try {
+            logger.debugPrintf("createCachedInputStream(): %s\n", cacheEntry);
+            return new ResponseInputStream(this, getMethod, webCache.createEntity(cacheEntry));
+        } catch (IOException e) {
+            logger.warnPrintf("Failed to read cached content of:%s:%s\n", getMethod.getURI(), e);
+            webCache.removeEntry(getMethod.getURI());
+            return null;
+        }
+    }
+
+    /**
+     * Performs a HttpGet with a byte "Range" header and returns the partial content as stream. The
+     * WebCache is not used for range requests.
+     * 
+     * @param uri
+     *            - location of the resource.
+     * @param offset
+     *            - offset of the first byte to get.
+     * @param length
+     *            - number of bytes to get or -1 to get all bytes from offset to the end.
+     * @param optIfRange
+     *            - optional strong entity tag or HTTP date which is sent as "If-Range" header. If
+     *            the resource has changed the server replies with the complete resource, which is
+     *            treated as an error. Weak entity tags are not sent, since servers ignore them.
+     * @see ResponseHeaders#getIfRangeValidator()
+     * @return stream which returns at most length bytes.
+     * @throws WebException
+     *             if the request failed or the server didn't reply with "206 Partial Content".
+     */
+    public ResponseInputStream doGetRangeInputStream(URI uri, long offset, long length,
+            String optIfRange) throws WebException {
+        //
+        HttpGet getMethod = new HttpGet(uri);
+        String range = "bytes=" + offset + "-" + ((length >= 0) ? (offset + length - 1) : "");
+        getMethod.setHeader(WebConst.HEADER_RANGE, range);
+
+        if ((optIfRange != null) && (ResponseHeaders.isWeakETag(optIfRange) == false)) {
+            getMethod.setHeader(WebConst.HEADER_IF_RANGE, optIfRange);
+        }
+
+        try {
+            logger.debugPrintf("doGetRangeInputStream():'%s' %s\n", getMethod.getRequestLine(),
+                    range);
+
+            HttpResponse response = httpClient.execute(getMethod);
+            handleResponseStatus(response, "doGetRangeInputStream:'" + getMethod + "' for:+" + uri
+                    + "\n");
+
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+
+            if ((status != HttpStatus.SC_PARTIAL_CONTENT) || (entity == null)) {
+                // don't download the complete resource.
+                getMethod.abort();
+                throw new WebException(WebException.Reason.INVALID_RESPONSE, status,
+                        "Server didn't return partial content for range:" + range + " of:" + uri);
+            }
+
+            return new ResponseInputStream(this, getMethod, entity);
+        } catch (ClientProtocolException e) {
+            throw new WebException(WebException.Reason.HTTP_CLIENTEXCEPTION, e.getMessage(), e);
+        } catch (WebException e) {
+            getMethod.releaseConnection();
+            throw e;
+        } catch (IOException e) {
+            throw new WebException(WebException.Reason.IOEXCEPTION, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create RandomReadable which reads the resource using byte range requests. A HEAD request is
+     * performed to get the length and the validator (strong entity tag or Last-Modified date) of
+     * the resource.
+     * 
+     * @throws WebException
+     *             if the server doesn't advertise "Accept-Ranges: bytes" or doesn't report the
+     *             Content-Length.
+     */
+    public WebRandomReader createRandomReader(URI uri) throws WebException {
+        ResponseHeaders headers = doHead(uri);
+
+        if ((headers.acceptsByteRanges() == false) || (headers.getContentLength() < 0)) {
+            throw new WebException(WebException.Reason.INVALID_REQUEST, headers.getHttpStatus(),
+                    "Server doesn't support byte range requests for:" + uri);
+        }
+
+        return new WebRandomReader(this, uri, headers.getContentLength(),
+                headers.getIfRangeValidator(), WebRandomReader.DEFAULT_READ_AHEAD_SIZE);
+    }
+
+    public ResponseHeaders doHead(String query) throws WebException {
+        return doHead(resolve(query));
+    }
+
+    /**
+     * Performs a HttpHead to get the meta data of a resource without downloading the content. If
+     * the server doesn't support HEAD requests, a HttpGet is aborted after the headers have been
+     * received. Recognized HTTP Error codes are transformed to Web Exceptions.
+     * 
+     * @return response headers
+     * @throws WebException
+     *             if the request failed or the server returned an error.
+     */
+    public ResponseHeaders doHead(URI uri) throws WebException {
+        //
+        if (this.httpClient == null) {
+            throw new NullPointerException("HTTP Client not properly initialized: httpClient==null");
+        }
+
+        HttpHead headMethod = new HttpHead(uri);
+        logger.debugPrintf("doHead():'%s'\n", headMethod.getRequestLine());
+
+        try {
+            HttpResponse response = httpClient.execute(headMethod);
+            int status = response.getStatusLine().getStatusCode();
+
+            if ((status == HttpStatus.SC_METHOD_NOT_ALLOWED)
+                    || (status == HttpStatus.SC_NOT_IMPLEMENTED)) {
+                headMethod.releaseConnection();
+                HttpGet getMethod = new HttpGet(uri);
+                try {
+                    response = httpClient.execute(getMethod);
+                    status = response.getStatusLine().getStatusCode();
+                } finally {
+                    // Don't download content.
+                    getMethod.abort();
+                }
+            }
+
+            this.lastHttpStatus = status;
+            checkHttpStatus(status, "doHead(): Failed for:" + uri, null, null);
+            return new ResponseHeaders(response);
+        } catch (ClientProtocolException e) {
+            throw new WebException(WebException.Reason.HTTP_CLIENTEXCEPTION, e.getMessage(), e);
+        } catch (WebException e) {
+            throw e;
         } catch (IOException e) {
             throw new WebException(WebException.Reason.IOEXCEPTION, e.getMessage(), e);
+        } finally {
+            headMethod.releaseConnection();
         }
     }
 
@@ -923,10 +1171,67 @@ public class WebClient {
 
     public ResponseOutputStream doPutOutputStream(String query, StringHolder resultStrH)
             throws WebException {
-        URI uri = resolve(query);
-        HttpPut putMethod = new HttpPut(uri);
+        return doPutOutputStream(resolve(query), null, resultStrH);
+    }
+
+    /**
+     * Performs a streaming HttpPut. The content is sent with chunked transfer encoding while it is
+     * written to the returned ResponseOutputStream, so the size of the upload isn't limited by the
+     * available memory. The request is executed by a background thread. Closing the stream
+     * finishes the upload and checks the HTTP status.<br>
+     * A single-threaded WebClient can't execute other requests until the stream is closed.
+     * 
+     * @param uri
+     *            - URI to upload to.
+     * @param mimeType
+     *            - optional mimeType of content, if null "application/octet-stream" is used.
+     * @param resultStrH
+     *            - optional StringHolder for the response, set when the stream is closed.
+     * @return ResponseOutputStream which must be closed to finish the upload.
+     * @throws WebException
+     */
+    public ResponseOutputStream doPutOutputStream(URI uri, String mimeType,
+            StringHolder resultStrH) throws WebException {
+        //
+        if (this.httpClient == null) {
+            throw new NullPointerException("HTTP Client not properly initialized: httpClient==null");
+        }
+
+        if (mimeType == null) {
+            mimeType = "application/octet-stream";
+        }
+
+        if (resultStrH == null) {
+            resultStrH = new StringHolder();
+        }
+
+        final HttpPut putMethod = new HttpPut(uri);
+        final PipedEntity entity = new PipedEntity(mimeType);
+        final StringHolder responseH = resultStrH;
+        final String message = "doPutOutputStream() uri=" + uri;
+
+        putMethod.setEntity(entity);
         logger.debugPrintf("doPutOutputStream():'%s'\n", putMethod.getRequestLine());
-        throw new WebException("Not Yet Supported.");
+
+        FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+            public Integer call() throws WebException {
+                StringHolder contentTypeH = new StringHolder();
+                int status = executePut(putMethod, responseH, contentTypeH);
+                return checkHttpStatus(status, message, responseH, contentTypeH);
+            }
+        }) {
+            protected void done() {
+                // Release writer if the request failed before the content was sent.
+                entity.abort(new IOException("Request finished before content was sent:"
+                        + message));
+            }
+        };
+
+        Thread putThread = new Thread(task, "WebClient-Put:" + uri);
+        putThread.setDaemon(true);
+        putThread.start();
+
+        return new ResponseOutputStream(this, putMethod, entity, task);
     }
 
     /**
@@ -43,6 +43,40 @@ public class WebConfig {
         public boolean disable_strict_hostname_checking = true;
     }
 
+    /**
+     * Connection pool settings for multi-threaded WebClients.
+     */
+    public static class ConnectionPoolOptions {
+        /**
+         * Maximum number of concurrent connections to one server (route).
+         */
+        public int maxPerRoute = 8;
+
+        /**
+         * Maximum number of concurrent connections in total.
+         */
+        public int maxTotal = 32;
+
+        /**
+         * Time in milliseconds after which an idle connection is closed. Set to &lt;=0 to keep idle
+         * connections open until the server closes them.
+         */
+        public long idleTimeout = 60000;
+
+        /**
+         * Time in milliseconds after which an idle connection is checked for staleness before it
+         * is reused. Set to 0 to check before every request, set to &lt;0 to never check.
+         */
+        public long validateAfterInactivity = 2000;
+
+        /**
+         * Keep alive time in milliseconds when the server doesn't specify a Keep-Alive timeout.
+         * Set to &lt;0 to keep the connection alive until it is idle for longer than the idle
+         * timeout.
+         */
+        public long defaultKeepAlive = 30000;
+    }
+
     public static enum AuthenticationType {
         NONE, BASIC
     };
@@ -94,6 +128,8 @@ public class WebConfig {
 
     protected SslOptions sslOptions = new SslOptions(); // defaults
 
+    protected ConnectionPoolOptions poolOptions = new ConnectionPoolOptions(); // defaults
+
     protected WebConfig() {
     }
 
@@ -265,6 +301,13 @@ public class WebConfig {
         this.isMultiThreaded = value;
     }
 
+    /**
+     * Connection pool settings, only used when multi-threaded.
+     */
+    public ConnectionPoolOptions getConnectionPoolOptions() {
+        return poolOptions;
+    }
+
     public boolean getAllowUserInteraction() {
         return allowUserInteraction;
     }
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.web;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.esciencecenter.ptk.util.logging.PLogger;
+import nl.esciencecenter.ptk.web.WebConfig.ConnectionPoolOptions;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Pool of keep-alive HTTP(S) connections for a multi-threaded WebClient.<br>
+ * Wraps a PoolingClientConnectionManager configured by the {@link ConnectionPoolOptions} of a
+ * WebConfig and adds:
+ * <ul>
+ * <li>Idle eviction: a shared daemon timer closes connections which have been idle longer than
+ * the idle timeout.
+ * <li>Validate after inactivity: a pooled connection is only checked for staleness when it has
+ * been idle for a while, instead of before every request.
+ * <li>Keep-alive: the server's Keep-Alive timeout is honoured, with a configurable default.
+ * <li>Statistics to size the pool.
+ * </ul>
+ * TLS sessions are cached per SSLContext, so register the https Scheme once per pool with one
+ * SSLSocketFactory to let new connections to the same server resume the TLS session.
+ */
+public class WebConnectionPool {
+
+    private static PLogger logger = PLogger.getLogger(WebConnectionPool.class);
+
+    /**
+     * Minimum interval between idle evictions.
+     */
+    public static final long MIN_EVICTION_INTERVAL = 1000;
+
+    private static Timer evictionTimer = null;
+
+    private static synchronized Timer getEvictionTimer() {
+        if (evictionTimer == null) {
+            evictionTimer = new Timer("WebConnectionPool-IdleEvictor", true);
+        }
+        return evictionTimer;
+    }
+
+    /**
+     * Connection Manager which checks connections which have been idle longer then the
+     * validate-after-inactivity time before they are leased.
+     */
+    protected class ValidatingConnectionManager extends PoolingClientConnectionManager {
+
+        public ValidatingConnectionManager() {
+            super(SchemeRegistryFactory.createDefault());
+        }
+
+        @Override
+        public ClientConnectionRequest requestConnection(final HttpRoute route,
+                final Object state) {
+            final ClientConnectionRequest request = super.requestConnection(route, state);
+
+            return new ClientConnectionRequest() {
+
+                @Override
+                public ManagedClientConnection getConnection(long timeout, TimeUnit unit)
+                        throws InterruptedException, ConnectionPoolTimeoutException {
+                    ManagedClientConnection conn = request.getConnection(timeout, unit);
+                    leased(conn);
+                    return conn;
+                }
+
+                @Override
+                public void abortRequest() {
+                    request.abortRequest();
+                }
+            };
+        }
+
+        @Override
+        public void releaseConnection(ManagedClientConnection conn, long keepalive, TimeUnit unit) {
+            released(conn);
+            super.releaseConnection(conn, keepalive, unit);
+        }
+    }
+
+    protected class KeepAliveStrategy extends DefaultConnectionKeepAliveStrategy {
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long duration = super.getKeepAliveDuration(response, context);
+
+            if (duration < 0) {
+                duration = options.defaultKeepAlive;
+            }
+
+            // Don't keep connection longer in the pool then allowed to be idle.
+            if ((options.idleTimeout > 0) && ((duration < 0) || (duration > options.idleTimeout))) {
+                duration = options.idleTimeout;
+            }
+
+            return duration;
+        }
+    }
+
+    // === Instance ===
+
+    private ConnectionPoolOptions options;
+
+    private ValidatingConnectionManager connectionManager;
+
+    private KeepAliveStrategy keepAliveStrategy;
+
+    private TimerTask evictionTask;
+
+    /**
+     * Release times of idle connections. Open connections are identified by their local socket
+     * address.
+     */
+    private Map<String, Long> idleSince = new ConcurrentHashMap<String, Long>();
+
+    private volatile boolean isShutdown = false;
+
+    // === Statistics ===
+
+    private AtomicLong numLeases = new AtomicLong();
+
+    private AtomicLong numReused = new AtomicLong();
+
+    private AtomicLong numValidated = new AtomicLong();
+
+    private AtomicLong numStale = new AtomicLong();
+
+    private AtomicLong numEvictions = new AtomicLong();
+
+    public WebConnectionPool(ConnectionPoolOptions options) {
+        this.options = options;
+        this.connectionManager = new ValidatingConnectionManager();
+        this.connectionManager.setMaxTotal(Math.max(1, options.maxTotal));
+        this.connectionManager.setDefaultMaxPerRoute(Math.max(1, options.maxPerRoute));
+        this.keepAliveStrategy = new KeepAliveStrategy();
+
+        if (options.idleTimeout > 0) {
+            long interval = Math.max(MIN_EVICTION_INTERVAL, options.idleTimeout / 2);
+
+            evictionTask = new TimerTask() {
+                public void run() {
+                    evictIdleConnections();
+                }
+            };
+
+            getEvictionTimer().schedule(evictionTask, interval, interval);
+        }
+    }
+
+    /**
+     * Create new HttpClient which uses this pool. Multiple HttpClients may share one pool.
+     */
+    public DefaultHttpClient createHttpClient() {
+        DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager);
+        httpClient.setKeepAliveStrategy(keepAliveStrategy);
+        // Staleness is checked by the connection manager after inactivity only.
+        HttpConnectionParams.setStaleCheckingEnabled(httpClient.getParams(), false);
+        return httpClient;
+    }
+
+    /**
+     * Register (custom) Scheme, for example a https Scheme with a SSLSocketFactory from a custom
+     * CertificateStore.
+     */
+    public void registerScheme(Scheme scheme) {
+        connectionManager.getSchemeRegistry().register(scheme);
+    }
+
+    public PoolingClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    public ConnectionPoolOptions getOptions() {
+        return options;
+    }
+
+    protected void leased(ManagedClientConnection conn) {
+        numLeases.incrementAndGet();
+
+        if ((conn == null) || (conn.isOpen() == false)) {
+            return; // new or closed connection, will be (re)opened.
+        }
+
+        Long since = idleSince.remove(getConnectionKey(conn));
+        long idleTime = (since != null) ? System.currentTimeMillis() - since : Long.MAX_VALUE;
+
+        long validateAfter = options.validateAfterInactivity;
+
+        if ((validateAfter >= 0) && (idleTime >= validateAfter)) {
+            numValidated.incrementAndGet();
+
+            if (conn.isStale()) {
+                numStale.incrementAndGet();
+                logger.debugPrintf("leased(): closing stale connection:%s\n", conn);
+                try {
+                    // The request director will open a new connection.
+                    conn.close();
+                } catch (IOException e) {
+                    logger.debugPrintf("leased(): IOException when closing stale connection:%s\n",
+                            e);
+                }
+                return;
+            }
+        }
+
+        numReused.incrementAndGet();
+    }
+
+    protected void released(ManagedClientConnection conn) {
+        if ((conn != null) && (conn.isOpen())) {
+            String key = getConnectionKey(conn);
+            if (key != null) {
+                idleSince.put(key, System.currentTimeMillis());
+            }
+        }
+    }
+
+    private String getConnectionKey(ManagedClientConnection conn) {
+        try {
+            return conn.getLocalAddress() + ":" + conn.getLocalPort();
+        } catch (RuntimeException e) {
+            // connection closed concurrently.
+            return null;
+        }
+    }
+
+    /**
+     * Close expired connections and connections which have been idle longer than the idle timeout.
+     * Is called periodically if an idle timeout has been configured.
+     */
+    public void evictIdleConnections() {
+        if (isShutdown) {
+            return;
+        }
+
+        numEvictions.incrementAndGet();
+        connectionManager.closeExpiredConnections();
+
+        if (options.idleTimeout > 0) {
+            connectionManager.closeIdleConnections(options.idleTimeout, TimeUnit.MILLISECONDS);
+
+            // purge release times of closed connections.
+            long now = System.currentTimeMillis();
+            Iterator<Long> iterator = idleSince.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next() > options.idleTimeout) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Close all connections and stop idle eviction. HttpClients which use this pool can not be
+     * used anymore.
+     */
+    public void shutdown() {
+        isShutdown = true;
+
+        if (evictionTask != null) {
+            evictionTask.cancel();
+            evictionTask = null;
+        }
+
+        connectionManager.shutdown();
+        idleSince.clear();
+    }
+
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    // =========
+    // Metrics
+    // =========
+
+    /**
+     * @return Pool statistics: number of leased, available (idle) and pending requests.
+     */
+    public PoolStats getTotalStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    public PoolStats getStats(HttpRoute route) {
+        return connectionManager.getStats(route);
+    }
+
+    /** @return total number of leased connections, both new and reused. */
+    public long getNumLeases() {
+        return numLeases.get();
+    }
+
+    /** @return number of leases which reused an open keep-alive connection. */
+    public long getNumReused() {
+        return numReused.get();
+    }
+
+    /** @return number of idle connections which have been checked for staleness. */
+    public long getNumValidated() {
+        return numValidated.get();
+    }
+
+    /** @return number of stale connections which have been closed. */
+    public long getNumStale() {
+        return numStale.get();
+    }
+
+    public long getNumEvictions() {
+        return numEvictions.get();
+    }
+
+    public String toString() {
+        return "WebConnectionPool:[maxTotal:" + connectionManager.getMaxTotal() + ",maxPerRoute:"
+                + connectionManager.getDefaultMaxPerRoute() + ",stats:" + getTotalStats()
+                + ",leases:" + numLeases + ",reused:" + numReused + ",validated:" + numValidated
+                + ",stale:" + numStale + ",shutdown:" + isShutdown + "]";
+    }
+
+}
@@ -47,6 +47,36 @@ public class WebConst {
      */
     public static final String MIMETYPE_CSV_MS_EXCEL = "application/vnd.ms-excel";
 
+    // HTTP Headers
+
+    public static final String HEADER_CONTENT_TYPE = "Content-Type";
+
+    public static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+    public static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    public static final String HEADER_ETAG = "ETag";
+
+    public static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+
+    public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+
+    public static final String HEADER_EXPIRES = "Expires";
+
+    public static final String HEADER_VARY = "Vary";
+
+    public static final String HEADER_AUTHORIZATION = "Authorization";
+
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    public static final String HEADER_RANGE = "Range";
+
+    public static final String HEADER_IF_RANGE = "If-Range";
+
+    public static final String HEADER_CONTENT_RANGE = "Content-Range";
+
     /** Scheme Types */
     public static enum Schemes {
         HTTP, HTTPS
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.web;
+
+import java.io.IOException;
+import java.net.URI;
+
+import nl.esciencecenter.ptk.io.RandomReadable;
+import nl.esciencecenter.ptk.util.logging.PLogger;
+
+/**
+ * RandomReadable which reads a web resource using HTTP byte range requests. Each range request
+ * fetches at least <code>readAheadSize</code> bytes. The response stream is kept open, so
+ * sequential reads continue from the same stream and only cause a new request once per
+ * read-ahead block. A read at another offset closes the current stream and starts a new range
+ * request.<br>
+ * The validator of the resource (strong entity tag or Last-Modified date) is sent as "If-Range"
+ * header. If the resource has changed on the server, the read fails instead of returning bytes
+ * of a different version.
+ */
+public class WebRandomReader implements RandomReadable {
+
+    private static final PLogger logger = PLogger.getLogger(WebRandomReader.class);
+
+    public static final int DEFAULT_READ_AHEAD_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Maximum forward gap which is skipped by reading from the current stream instead of starting a
+     * new range request.
+     */
+    public static final int MAX_SKIP_SIZE = 64 * 1024;
+
+    private final WebClient webClient;
+
+    private final URI uri;
+
+    private final long length;
+
+    private final String ifRange;
+
+    private final int readAheadSize;
+
+    private ResponseInputStream rangeStream;
+
+    /** File offset of next byte returned by rangeStream */
+    private long streamPosition = -1;
+
+    /** File offset after last byte of current range */
+    private long streamEnd = -1;
+
+    private long numRangeRequests = 0;
+
+    /**
+     * @param webClient
+     *            - connected WebClient.
+     * @param uri
+     *            - location of the resource.
+     * @param length
+     *            - length of the resource as reported by the server.
+     * @param optIfRange
+     *            - optional strong entity tag or HTTP date to send as "If-Range" header.
+     * @param readAheadSize
+     *            - minimum number of bytes to request per range request.
+     */
+    public WebRandomReader(WebClient webClient, URI uri, long length, String optIfRange,
+            int readAheadSize) {
+        this.webClient = webClient;
+        this.uri = uri;
+        this.length = length;
+        this.ifRange = optIfRange;
+        this.readAheadSize = (readAheadSize > 0) ? readAheadSize : DEFAULT_READ_AHEAD_SIZE;
+    }
+
+    @Override
+    public synchronized int readBytes(long fileOffset, byte[] buffer, int bufferOffset, int nrBytes)
+            throws IOException {
+        if (fileOffset >= length) {
+            return -1;
+        }
+
+        if (nrBytes <= 0) {
+            return 0;
+        }
+
+        nrBytes = (int) Math.min(nrBytes, length - fileOffset);
+
+        positionStream(fileOffset, nrBytes);
+
+        int num = rangeStream.read(buffer, bufferOffset,
+                (int) Math.min(nrBytes, streamEnd - streamPosition));
+
+        if (num < 0) {
+            closeStream();
+            throw new IOException("Unexpected end of range at offset:" + streamPosition + " of:"
+                    + uri);
+        }
+
+        streamPosition += num;
+        return num;
+    }
+
+    /**
+     * Make sure the current range stream is positioned at fileOffset, start a new range request
+     * otherwise.
+     */
+    private void positionStream(long fileOffset, int nrBytes) throws IOException {
+        if (rangeStream != null) {
+            long gap = fileOffset - streamPosition;
+
+            if ((gap > 0) && (gap <= MAX_SKIP_SIZE) && (fileOffset < streamEnd)) {
+                skipStream(gap);
+            }
+
+            if ((fileOffset == streamPosition) && (streamPosition < streamEnd)) {
+                return;
+            }
+
+            closeStream();
+        }
+
+        long rangeLength = Math.min(Math.max(nrBytes, readAheadSize), length - fileOffset);
+        logger.debugPrintf("New range request #%d at:%d (length=%d) of:%s\n", numRangeRequests,
+                fileOffset, rangeLength, uri);
+
+        rangeStream = webClient.doGetRangeInputStream(uri, fileOffset, rangeLength, ifRange);
+        streamPosition = fileOffset;
+        streamEnd = fileOffset + rangeLength;
+        numRangeRequests++;
+    }
+
+    private void skipStream(long numBytes) throws IOException {
+        byte skipBuffer[] = new byte[(int) numBytes];
+        int numSkipped = 0;
+
+        while (numSkipped < numBytes) {
+            int num = rangeStream.read(skipBuffer, numSkipped, (int) numBytes - numSkipped);
+            if (num < 0) {
+                return;
+            }
+            numSkipped += num;
+            streamPosition += num;
+        }
+    }
+
+    private void closeStream() {
+        if (rangeStream == null) {
+            return;
+        }
+
+        try {
+            rangeStream.close();
+        } catch (IOException e) {
+            logger.debugPrintf("Failed to close range stream of:%s:%s\n", uri, e);
+        }
+
+        rangeStream = null;
+        streamPosition = -1;
+        streamEnd = -1;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    public URI getURI() {
+        return uri;
+    }
+
+    /**
+     * @return validator sent as "If-Range" header or null.
+     */
+    public String getIfRange() {
+        return ifRange;
+    }
+
+    /**
+     * @return number of range requests performed by this reader.
+     */
+    public synchronized long getNumRangeRequests() {
+        return numRangeRequests;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeStream();
+    }
+
+    public String toString() {
+        return "WebRandomReader:[uri:" + uri + ",length:" + length + ",ifRange:" + ifRange
+                + ",rangeRequests:" + numRangeRequests + "]";
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2012-2014 Netherlands eScience Center.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at the following location:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For the full license, see: LICENSE.txt (located in the root folder of this distribution).
+ * ---
+ */
+// source:
+
+
+package nl.esciencecenter.ptk.web.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Streaming entity which is written by another thread.<br>
+ * When the HttpClient sends the request, the connection's (chunked) output stream is handed over
+ * to the writer thread, which writes directly into it. The sending thread blocks until the writer
+ * calls {@link #writeDone()} or {@link #abort(IOException)}. No content is buffered, so the memory
+ * use is constant regardless of the size of the upload.
+ * 
+ * <pre>
+ * sending thread:                       writer thread:
+ *   httpClient.execute(put)               out = entity.getOutputStream();
+ *     -&gt; entity.writeTo(connectionOut)    out.write(...);
+ *        ... waits ...                    entity.writeDone();
+ *   handle response
+ * </pre>
+ */
+public class PipedEntity extends AbstractHttpEntity {
+
+    private final Object mutex = new Object();
+
+    private OutputStream targetStream;
+
+    private boolean writeStarted = false;
+
+    private boolean writeDone = false;
+
+    private IOException abortException;
+
+    public PipedEntity(String mimeType) {
+        setContentType(mimeType);
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        throw new UnsupportedOperationException("PipedEntity can only be written.");
+    }
+
+    /**
+     * Called by the HttpClient. Hands over the connection stream and blocks until the writer is
+     * done.
+     */
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        synchronized (mutex) {
+            if (writeStarted) {
+                throw new IOException("PipedEntity can only be written once.");
+            }
+
+            writeStarted = true;
+            targetStream = outstream;
+            mutex.notifyAll();
+
+            try {
+                while ((writeDone == false) && (abortException == null)) {
+                    mutex.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abortException = new InterruptedIOException(
+                        "Interrupted while writing PipedEntity.");
+            } finally {
+                targetStream = null;
+                mutex.notifyAll();
+            }
+
+            if (abortException != null) {
+                throw abortException;
+            }
+        }
+    }
+
+    /**
+     * Wait until the HttpClient starts sending the request and return the output stream of the
+     * connection.
+     * 
+     * @return connection output stream to write the content to.
+     * @throws IOException
+     *             if the request has been aborted before the content could be sent.
+     */
+    public OutputStream getOutputStream() throws IOException {
+        synchronized (mutex) {
+            try {
+                while ((targetStream == null) && (writeDone == false) && (abortException == null)) {
+                    mutex.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for connection.");
+            }
+
+            if (abortException != null) {
+                throw new IOException("Request aborted:" + abortException.getMessage(),
+                        abortException);
+            }
+
+            if (targetStream == null) {
+                throw new IOException("PipedEntity already closed.");
+            }
+
+            return targetStream;
+        }
+    }
+
+    /**
+     * Signal that all content has been written. Releases the sending thread.
+     */
+    public void writeDone() {
+        synchronized (mutex) {
+            writeDone = true;
+            mutex.notifyAll();
+        }
+    }
+
+    /**
+     * Abort the write. The sending thread will fail with the given exception, a waiting writer
+     * will fail as well.
+     */
+    public void abort(IOException reason) {
+        synchronized (mutex) {
+            if ((writeDone == false) && (abortException == null)) {
+                abortException = reason;
+            }
+            mutex.notifyAll();
+        }
+    }
+
+    /**
+     * @return true if the HttpClient has started to send the content.
+     */
+    public boolean isWriteStarted() {
+        synchronized (mutex) {
+            return writeStarted;
+        }
+    }
+
+}
@@ -1,7 +1,116 @@
 package nl.esciencecenter.ptk.web;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import nl.esciencecenter.ptk.data.StringHolder;
+import nl.esciencecenter.ptk.web.WebConfig.AuthenticationType;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 public class TestWebClient {
 
     // Currently only some basic sanity tests. 
 
+    private HttpServer server;
+
+    private URI serverUri;
+
+    private volatile String lastTransferEncoding;
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // Count uploaded bytes and return the number of bytes as response.
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                long total = 0;
+                byte buffer[] = new byte[32 * 1024];
+                int numRead;
+
+                try (InputStream inps = exchange.getRequestBody()) {
+                    while ((numRead = inps.read(buffer)) >= 0) {
+                        total += numRead;
+                    }
+                }
+
+                lastTransferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                String path = exchange.getRequestURI().getPath();
+                int status = path.startsWith("/forbidden") ? 403 : 201;
+                byte response[] = Long.toString(total).getBytes();
+                exchange.sendResponseHeaders(status, response.length);
+
+                try (OutputStream outps = exchange.getResponseBody()) {
+                    outps.write(response);
+                }
+            }
+        });
+        server.start();
+        serverUri = new URI("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testPutOutputStream() throws Exception {
+        WebClient client = WebClient.createMultiThreadedFor(serverUri, AuthenticationType.NONE);
+        client.connect();
+
+        // Large upload which is streamed with chunked encoding, not buffered in memory first.
+        long size = 256L * 1024 * 1024;
+        byte chunk[] = new byte[64 * 1024];
+        StringHolder resultH = new StringHolder();
+
+        ResponseOutputStream outps = client.doPutOutputStream(serverUri.resolve("upload"), null,
+                resultH);
+        for (long written = 0; written < size; written += chunk.length) {
+            outps.write(chunk);
+        }
+        outps.close();
+
+        Assert.assertEquals("HTTP status must be 'Created'.", 201, outps.getHttpStatus());
+        Assert.assertEquals("Server must have received all bytes.", Long.toString(size),
+                resultH.value);
+        Assert.assertEquals("Upload must be chunked.", "chunked", lastTransferEncoding);
+
+        // Empty upload.
+        outps = client.doPutOutputStream("empty", resultH);
+        outps.close();
+        Assert.assertEquals("0", resultH.value);
+
+        client.disconnect();
+    }
+
+    @Test
+    public void testPutOutputStreamError() throws Exception {
+        WebClient client = WebClient.createMultiThreadedFor(serverUri, AuthenticationType.NONE);
+        client.connect();
+
+        ResponseOutputStream outps = client.doPutOutputStream(serverUri.resolve("forbidden"),
+                null, null);
+        outps.write(new byte[1000]);
+
+        try {
+            outps.close();
+            Assert.fail("Close must throw WebException for HTTP status 403.");
+        } catch (WebException e) {
+            Assert.assertEquals(403, e.getHttpStatus());
+        }
+
+        client.disconnect();
+    }
+
 }
@@ -0,0 +1,137 @@
+package nl.esciencecenter.ptk.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import nl.esciencecenter.ptk.web.WebConfig.AuthenticationType;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestWebConnectionPool {
+
+    private static final int SMALL_SIZE = 1000;
+
+    private static final int LARGE_SIZE = 4 * 1024 * 1024;
+
+    private HttpServer server;
+
+    private URI serverUri;
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                int size = exchange.getRequestURI().getPath().startsWith("/large") ? LARGE_SIZE
+                        : SMALL_SIZE;
+                byte bytes[] = new byte[size];
+                exchange.sendResponseHeaders(200, size);
+                try (OutputStream outps = exchange.getResponseBody()) {
+                    outps.write(bytes);
+                } catch (IOException e) {
+                    // client closed connection.
+                }
+            }
+        });
+        server.start();
+        serverUri = new URI("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testPoolOptions() throws Exception {
+        WebConfig config = new WebConfig(serverUri, AuthenticationType.NONE, true);
+        config.getConnectionPoolOptions().maxPerRoute = 3;
+        config.getConnectionPoolOptions().maxTotal = 5;
+
+        WebClient client = new WebClient(config);
+        client.connect();
+
+        WebConnectionPool pool = client.getConnectionPool();
+        Assert.assertNotNull("Multi-threaded WebClient must have a connection pool.", pool);
+        Assert.assertEquals(3, pool.getConnectionManager().getDefaultMaxPerRoute());
+        Assert.assertEquals(5, pool.getConnectionManager().getMaxTotal());
+
+        client.disconnect();
+        Assert.assertTrue("Pool must be shut down after disconnect.", pool.isShutdown());
+    }
+
+    @Test
+    public void testKeepAliveReuse() throws Exception {
+        WebClient client = WebClient.createMultiThreadedFor(serverUri, AuthenticationType.NONE);
+        client.connect();
+        WebConnectionPool pool = client.getConnectionPool();
+
+        int numRequests = 10;
+        for (int i = 0; i < numRequests; i++) {
+            readAll(client.doGetInputStream(serverUri.resolve("small" + i)));
+        }
+
+        outPrintf("pool=%s\n", pool);
+        Assert.assertEquals("Connections must be released.", 0, pool.getTotalStats().getLeased());
+        Assert.assertEquals("Only one connection must be opened.", 1, pool.getTotalStats()
+                .getAvailable());
+        // first lease is connect()
+        Assert.assertEquals("Keep-alive connection must be reused.", numRequests,
+                pool.getNumReused());
+
+        client.disconnect();
+    }
+
+    @Test
+    public void testAbortLargeRemainder() throws Exception {
+        WebClient client = WebClient.createMultiThreadedFor(serverUri, AuthenticationType.NONE);
+        client.connect();
+        WebConnectionPool pool = client.getConnectionPool();
+
+        // Close with a small remainder: drained and reused.
+        ResponseInputStream inps = client.doGetInputStream(serverUri.resolve("small"));
+        inps.read(new byte[10]);
+        inps.close();
+        Assert.assertEquals(1, pool.getTotalStats().getAvailable());
+
+        // Close with a large remainder: must not download the rest, connection is aborted.
+        inps = client.doGetInputStream(serverUri.resolve("large"));
+        inps.read(new byte[10]);
+        inps.close();
+
+        outPrintf("pool=%s\n", pool);
+        Assert.assertEquals("Connections must be released.", 0, pool.getTotalStats().getLeased());
+        Assert.assertEquals("Aborted connection can not be reused.", 0, pool.getTotalStats()
+                .getAvailable());
+
+        client.disconnect();
+    }
+
+    protected long readAll(ResponseInputStream inps) throws IOException {
+        long total = 0;
+        byte buffer[] = new byte[8192];
+        try {
+            int numRead;
+            while ((numRead = inps.read(buffer)) >= 0) {
+                total += numRead;
+            }
+        } finally {
+            inps.close();
+        }
+        return total;
+    }
+
+    protected void outPrintf(String format, Object... args) {
+        System.out.printf(format, args);
+    }
+
+}
@@ -0,0 +1,212 @@
+package nl.esciencecenter.ptk.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nl.esciencecenter.ptk.web.WebConfig.AuthenticationType;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestWebRandomReader {
+
+    private static final String ETAG = "\"v1\"";
+
+    private static final String WEAK_ETAG = "W/\"v1\"";
+
+    private static final String LAST_MODIFIED = "Tue, 15 Nov 1994 08:12:31 GMT";
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private HttpServer server;
+
+    private URI serverUri;
+
+    private byte content[];
+
+    private int numRangeRequests = 0;
+
+    @Before
+    public void setup() throws Exception {
+        content = new byte[1024 * 1024 + 13];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+
+                boolean weak = path.startsWith("/weakranges");
+                boolean ranges = path.startsWith("/ranges") || weak;
+
+                if (ranges) {
+                    exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                }
+                exchange.getResponseHeaders().set("ETag", weak ? WEAK_ETAG : ETAG);
+                exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+
+                if (exchange.getRequestMethod().equals("HEAD")) {
+                    exchange.getResponseHeaders().set("Content-Length", "" + content.length);
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                    return;
+                }
+
+                int start = 0;
+                int end = content.length;
+                int status = 200;
+
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                Matcher matcher = (range != null) ? RANGE_PATTERN.matcher(range) : null;
+
+                // weak entity tags in If-Range must be ignored: full response.
+                boolean ifRangeMatches = (ifRange == null) || (ifRange.equals(LAST_MODIFIED))
+                        || ((weak == false) && (ifRange.equals(ETAG)));
+
+                if ((ranges) && (matcher != null) && (matcher.matches()) && (ifRangeMatches)) {
+                    numRangeRequests++;
+                    status = 206;
+                    start = Integer.parseInt(matcher.group(1));
+                    if (matcher.group(2).length() > 0) {
+                        end = Math.min(end, Integer.parseInt(matcher.group(2)) + 1);
+                    }
+                    exchange.getResponseHeaders().set("Content-Range",
+                            "bytes " + start + "-" + (end - 1) + "/" + content.length);
+                }
+
+                exchange.sendResponseHeaders(status, end - start);
+                try (OutputStream outps = exchange.getResponseBody()) {
+                    outps.write(content, start, end - start);
+                }
+            }
+        });
+        server.start();
+        serverUri = new URI("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        server.stop(0);
+    }
+
+    protected WebClient createClient() throws Exception {
+        WebClient client = WebClient.createMultiThreadedFor(serverUri, AuthenticationType.NONE);
+        client.connect();
+        return client;
+    }
+
+    @Test
+    public void testRangeInputStream() throws Exception {
+        WebClient client = createClient();
+
+        ResponseInputStream inps = client.doGetRangeInputStream(serverUri.resolve("ranges.bin"),
+                1000, 100, ETAG);
+        byte bytes[] = new byte[100];
+        int numRead = 0;
+        while (numRead < bytes.length) {
+            int num = inps.read(bytes, numRead, bytes.length - numRead);
+            Assert.assertTrue("Premature end of range.", num > 0);
+            numRead += num;
+        }
+        Assert.assertEquals("Range must end after requested length.", -1, inps.read());
+        inps.close();
+
+        for (int i = 0; i < bytes.length; i++) {
+            Assert.assertEquals(content[1000 + i], bytes[i]);
+        }
+
+        try {
+            client.doGetRangeInputStream(serverUri.resolve("ranges.bin"), 0, 100, "\"v2\"");
+            Assert.fail("Changed resource must not be returned as range.");
+        } catch (WebException e) {
+            Assert.assertEquals(WebException.Reason.INVALID_RESPONSE, e.getReason());
+        }
+
+        client.disconnect();
+    }
+
+    @Test
+    public void testRandomReader() throws Exception {
+        WebClient client = createClient();
+        WebRandomReader reader = new WebRandomReader(client, serverUri.resolve("ranges.bin"),
+                content.length, ETAG, 256 * 1024);
+
+        Assert.assertEquals(content.length, reader.getLength());
+
+        // sequential reads: one range request per read-ahead block.
+        byte bytes[] = new byte[content.length];
+        int offset = 0;
+        while (offset < content.length) {
+            int num = reader.readBytes(offset, bytes, offset,
+                    Math.min(10000, content.length - offset));
+            Assert.assertTrue(num > 0);
+            offset += num;
+        }
+        Assert.assertArrayEquals(content, bytes);
+        Assert.assertEquals(5, reader.getNumRangeRequests());
+        Assert.assertEquals(-1, reader.readBytes(content.length, bytes, 0, 10));
+
+        // random read:
+        byte block[] = new byte[10];
+        Assert.assertEquals(10, reader.readBytes(12345, block, 0, 10));
+        for (int i = 0; i < block.length; i++) {
+            Assert.assertEquals(content[12345 + i], block[i]);
+        }
+
+        reader.close();
+        client.disconnect();
+    }
+
+    @Test
+    public void testWeakETagUsesLastModified() throws Exception {
+        WebClient client = createClient();
+        WebRandomReader reader = client.createRandomReader(serverUri.resolve("weakranges.bin"));
+
+        Assert.assertEquals(LAST_MODIFIED, reader.getIfRange());
+
+        byte block[] = new byte[10];
+        Assert.assertEquals(10, reader.readBytes(54321, block, 0, 10));
+        for (int i = 0; i < block.length; i++) {
+            Assert.assertEquals(content[54321 + i], block[i]);
+        }
+        Assert.assertEquals(1, reader.getNumRangeRequests());
+
+        // a weak tag is not sent as If-Range:
+        ResponseInputStream inps = client.doGetRangeInputStream(
+                serverUri.resolve("weakranges.bin"), 0, 10, WEAK_ETAG);
+        inps.close();
+
+        reader.close();
+        client.disconnect();
+    }
+
+    @Test
+    public void testNoRangeSupport() throws Exception {
+        WebClient client = createClient();
+
+        Assert.assertNotNull(client.createRandomReader(serverUri.resolve("ranges.bin")));
+
+        try {
+            client.createRandomReader(serverUri.resolve("plain.bin"));
+            Assert.fail("Server without Accept-Ranges must be rejected.");
+        } catch (WebException e) {
+            Assert.assertEquals(WebException.Reason.INVALID_REQUEST, e.getReason());
+        }
+
+        client.disconnect();
+    }
+
+}